@@ -80,6 +80,23 @@ public final class AudioWaveForm {
             return;
         }
 
+        AudioHash audioHash = attachment.getAudioHash();
+        if (audioHash != null) {
+            AudioFileInfo audioFileInfo = AudioFileInfo.fromDatabaseProtobuf(audioHash.getAudioWaveForm());
+            if (audioFileInfo.waveForm.length == 0) {
+                Log.w(TAG, "Recovering from a wave form generation error  " + cacheKey);
+                ThreadUtil.runOnMain(onFailure);
+                return;
+            } else if (audioFileInfo.waveForm.length != BAR_COUNT) {
+                Log.w(TAG, "Wave form from database does not match bar count, regenerating " + cacheKey);
+            } else {
+                WAVE_FORM_CACHE.put(cacheKey, audioFileInfo);
+                Log.i(TAG, "Loaded wave form from DB " + cacheKey);
+                ThreadUtil.runOnMain(() -> onSuccess.accept(audioFileInfo));
+                return;
+            }
+        }
+
         AUDIO_DECODER_EXECUTOR.execute(() -> {
             AudioFileInfo cachedInExecutor = WAVE_FORM_CACHE.get(cacheKey);
             if (cachedInExecutor != null) {
@@ -88,23 +105,6 @@ public final class AudioWaveForm {
                 return;
             }
 
-            AudioHash audioHash = attachment.getAudioHash();
-            if (audioHash != null) {
-                AudioFileInfo audioFileInfo = AudioFileInfo.fromDatabaseProtobuf(audioHash.getAudioWaveForm());
-                if (audioFileInfo.waveForm.length == 0) {
-                    Log.w(TAG, "Recovering from a wave form generation error  " + cacheKey);
-                    ThreadUtil.runOnMain(onFailure);
-                    return;
-                } else if (audioFileInfo.waveForm.length != BAR_COUNT) {
-                    Log.w(TAG, "Wave form from database does not match bar count, regenerating " + cacheKey);
-                } else {
-                    WAVE_FORM_CACHE.put(cacheKey, audioFileInfo);
-                    Log.i(TAG, "Loaded wave form from DB " + cacheKey);
-                    ThreadUtil.runOnMain(() -> onSuccess.accept(audioFileInfo));
-                    return;
-                }
-            }
-
             try {
                 AttachmentDatabase attachmentDatabase = DatabaseFactory.getAttachmentDatabase(context);
                 DatabaseAttachment dbAttachment       = (DatabaseAttachment) attachment;
@@ -114,7 +114,7 @@ public final class AudioWaveForm {
 
                 Log.i(TAG, String.format("Starting wave form generation (%s)", cacheKey));
 
-                AudioFileInfo fileInfo = generateWaveForm(uri);
+                AudioFileInfo fileInfo = generateWaveForm(context, uri);
 
                 Log.i(TAG, String.format(Locale.US, "Audio wave form generation time %d ms (%s)", System.currentTimeMillis() - startTime, cacheKey));
 
@@ -129,6 +129,20 @@ public final class AudioWaveForm {
         });
     }
 
+    /**
+     * Decodes a wave form ahead of it being displayed, so that binding the attachment later finds it
+     * in the database or the cache rather than waiting on a decode. Persisting the result is left to
+     * the caller, so that it can write many at once.
+     */
+    @WorkerThread
+    public static @NonNull AudioWaveFormData precompute(@NonNull Context context, @NonNull Uri uri) throws IOException {
+        AudioFileInfo fileInfo = generateWaveForm(context, uri);
+
+        WAVE_FORM_CACHE.put(uri.toString(), fileInfo);
+
+        return fileInfo.toDatabaseProtobuf();
+    }
+
     /**
      * Based on decode sample from:
      * <p>
@@ -136,7 +150,7 @@ public final class AudioWaveForm {
      */
     @WorkerThread
     @RequiresApi(api = 23)
-    private @NonNull AudioFileInfo generateWaveForm(@NonNull Uri uri) throws IOException {
+    private static @NonNull AudioFileInfo generateWaveForm(@NonNull Context context, @NonNull Uri uri) throws IOException {
         try (MediaInput dataSource = DecryptableUriMediaInput.createForUri(context, uri)) {
             long[] wave        = new long[BAR_COUNT];
             int[]  waveSamples = new int[BAR_COUNT];
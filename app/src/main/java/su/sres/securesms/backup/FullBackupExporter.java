@@ -88,7 +88,7 @@ public class FullBackupExporter extends FullBackupBase {
       throws IOException
   {
     try (OutputStream outputStream = new FileOutputStream(output)) {
-      internalExport(context, attachmentSecret, input, outputStream, passphrase, true, cancellationSignal);
+      internalExport(context, attachmentSecret, input, new EncryptedBackupFrameOutputStream(outputStream, passphrase), true, cancellationSignal);
     }
   }
 
@@ -102,10 +102,13 @@ public class FullBackupExporter extends FullBackupBase {
           throws IOException
   {
     try (OutputStream outputStream = Objects.requireNonNull(context.getContentResolver().openOutputStream(output.getUri()))) {
-      internalExport(context, attachmentSecret, input, outputStream, passphrase, true, cancellationSignal);
+      internalExport(context, attachmentSecret, input, new EncryptedBackupFrameOutputStream(outputStream, passphrase), true, cancellationSignal);
     }
   }
 
+  /**
+   * Sends a backup in the file format, for receivers that can only read that.
+   */
   public static void transfer(@NonNull Context context,
                               @NonNull AttachmentSecret attachmentSecret,
                               @NonNull SQLiteDatabase input,
@@ -113,20 +116,31 @@ public class FullBackupExporter extends FullBackupBase {
                               @NonNull String passphrase)
           throws IOException
   {
-    internalExport(context, attachmentSecret, input, outputStream, passphrase, false, () -> false);
+    internalExport(context, attachmentSecret, input, new EncryptedBackupFrameOutputStream(outputStream, passphrase), false, () -> false);
+  }
+
+  /**
+   * Sends a backup without encrypting it, for a receiver on the other end of an already secured
+   * connection. Read with {@link FullBackupImporter#importTransfer}.
+   */
+  public static void transfer(@NonNull Context context,
+                              @NonNull AttachmentSecret attachmentSecret,
+                              @NonNull SQLiteDatabase input,
+                              @NonNull OutputStream outputStream)
+          throws IOException
+  {
+    internalExport(context, attachmentSecret, input, new TransferFrameOutputStream(outputStream), false, () -> false);
   }
 
   private static void internalExport(@NonNull Context context,
                                      @NonNull AttachmentSecret attachmentSecret,
                                      @NonNull SQLiteDatabase input,
-                                     @NonNull OutputStream fileOutputStream,
-                                     @NonNull String passphrase,
+                                     @NonNull BackupFrameOutputStream outputStream,
                                      boolean closeOutputStream,
                                      @NonNull BackupCancellationSignal cancellationSignal)
           throws IOException
   {
-    BackupFrameOutputStream outputStream = new BackupFrameOutputStream(fileOutputStream, passphrase);
-    int                     count        = 0;
+    int count = 0;
 
     try {
       outputStream.writeDatabaseVersion(input.getVersion());
@@ -424,46 +438,23 @@ public class FullBackupExporter extends FullBackupBase {
   }
 
 
-  private static class BackupFrameOutputStream extends BackupStream {
-
-    private final OutputStream outputStream;
-    private final Cipher       cipher;
-    private final Mac          mac;
-
-    private final byte[]       cipherKey;
-    private final byte[]       macKey;
-
-    private byte[] iv;
-    private int    counter;
-
-    private BackupFrameOutputStream(@NonNull OutputStream output, @NonNull String passphrase) throws IOException {
-      try {
-        byte[]   salt    = Util.getSecretBytes(32);
-        byte[]   key     = getBackupKey(passphrase, salt);
-        byte[]   derived = new HKDFv3().deriveSecrets(key, "Backup Export".getBytes(), 64);
-        byte[][] split   = ByteUtil.split(derived, 32, 32);
-
-        this.cipherKey = split[0];
-        this.macKey    = split[1];
+  /**
+   * Writes the frames of a backup. Subclasses decide how each frame and attachment stream is put on
+   * the wire, after a header that tells the reader which format follows.
+   */
+  private static abstract class BackupFrameOutputStream extends BackupStream {
 
-        this.cipher       = Cipher.getInstance("AES/CTR/NoPadding");
-        this.mac          = Mac.getInstance("HmacSHA256");
-        this.outputStream = output;
-        this.iv           = Util.getSecretBytes(16);
-        this.counter      = Conversions.byteArrayToInt(iv);
+    protected final OutputStream outputStream;
 
-        mac.init(new SecretKeySpec(macKey, "HmacSHA256"));
+    private BackupFrameOutputStream(@NonNull OutputStream outputStream) {
+      this.outputStream = outputStream;
+    }
 
-        byte[] header = BackupProtos.BackupFrame.newBuilder().setHeader(BackupProtos.Header.newBuilder()
-                                                                                           .setIv(ByteString.copyFrom(iv))
-                                                                                           .setSalt(ByteString.copyFrom(salt)))
-                                                .build().toByteArray();
+    protected void writeHeader(@NonNull BackupProtos.Header header) throws IOException {
+      byte[] headerFrame = BackupProtos.BackupFrame.newBuilder().setHeader(header).build().toByteArray();
 
-        outputStream.write(Conversions.intToByteArray(header.length));
-        outputStream.write(header);
-      } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException e) {
-        throw new AssertionError(e);
-      }
+      outputStream.write(Conversions.intToByteArray(headerFrame.length));
+      outputStream.write(headerFrame);
     }
 
     public void write(BackupProtos.SharedPreference preference) throws IOException {
@@ -531,7 +522,60 @@ public class FullBackupExporter extends FullBackupBase {
     /**
      * @return The amount of data written from the provided InputStream.
      */
-    private long writeStream(@NonNull InputStream inputStream) throws IOException {
+    protected abstract long writeStream(@NonNull InputStream inputStream) throws IOException;
+
+    protected abstract void write(@NonNull OutputStream out, @NonNull BackupProtos.BackupFrame frame) throws IOException;
+
+    public void close() throws IOException {
+      outputStream.close();
+    }
+  }
+
+  /**
+   * The format of backup files, where each frame and attachment is encrypted and authenticated with a
+   * key derived from the passphrase.
+   */
+  private static class EncryptedBackupFrameOutputStream extends BackupFrameOutputStream {
+
+    private final Cipher       cipher;
+    private final Mac          mac;
+
+    private final byte[]       cipherKey;
+    private final byte[]       macKey;
+
+    private byte[] iv;
+    private int    counter;
+
+    private EncryptedBackupFrameOutputStream(@NonNull OutputStream output, @NonNull String passphrase) throws IOException {
+      super(output);
+
+      try {
+        byte[]   salt    = Util.getSecretBytes(32);
+        byte[]   key     = getBackupKey(passphrase, salt);
+        byte[]   derived = new HKDFv3().deriveSecrets(key, "Backup Export".getBytes(), 64);
+        byte[][] split   = ByteUtil.split(derived, 32, 32);
+
+        this.cipherKey = split[0];
+        this.macKey    = split[1];
+
+        this.cipher       = Cipher.getInstance("AES/CTR/NoPadding");
+        this.mac          = Mac.getInstance("HmacSHA256");
+        this.iv           = Util.getSecretBytes(16);
+        this.counter      = Conversions.byteArrayToInt(iv);
+
+        mac.init(new SecretKeySpec(macKey, "HmacSHA256"));
+
+        writeHeader(BackupProtos.Header.newBuilder()
+                                       .setIv(ByteString.copyFrom(iv))
+                                       .setSalt(ByteString.copyFrom(salt))
+                                       .build());
+      } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    @Override
+    protected long writeStream(@NonNull InputStream inputStream) throws IOException {
       try {
         Conversions.intToByteArray(iv, 0, counter++);
         cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(cipherKey, "AES"), new IvParameterSpec(iv));
@@ -566,7 +610,8 @@ public class FullBackupExporter extends FullBackupBase {
       }
     }
 
-    private void write(@NonNull OutputStream out, @NonNull BackupProtos.BackupFrame frame) throws IOException {
+    @Override
+    protected void write(@NonNull OutputStream out, @NonNull BackupProtos.BackupFrame frame) throws IOException {
       try {
         Conversions.intToByteArray(iv, 0, counter++);
         cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(cipherKey, "AES"), new IvParameterSpec(iv));
@@ -582,10 +627,62 @@ public class FullBackupExporter extends FullBackupBase {
         throw new AssertionError(e);
       }
     }
+  }
 
+  /**
+   * The format of device transfers, which already run over a TLS connection that both users have
+   * verified. Frames are written as they are, and attachments as length prefixed chunks ending with
+   * an empty one, so no passphrase is derived and nothing is encrypted twice.
+   */
+  private static class TransferFrameOutputStream extends BackupFrameOutputStream {
 
-    public void close() throws IOException {
-      outputStream.close();
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private TransferFrameOutputStream(@NonNull OutputStream output) throws IOException {
+      super(output);
+
+      writeHeader(BackupProtos.Header.newBuilder().setPlaintext(true).build());
+    }
+
+    @Override
+    protected long writeStream(@NonNull InputStream inputStream) throws IOException {
+      byte[] buffer = new byte[CHUNK_SIZE];
+      long   total  = 0;
+
+      int read;
+
+      while ((read = fill(inputStream, buffer)) > 0) {
+        outputStream.write(Conversions.intToByteArray(read));
+        outputStream.write(buffer, 0, read);
+
+        total += read;
+      }
+
+      outputStream.write(Conversions.intToByteArray(0));
+
+      return total;
+    }
+
+    /**
+     * Reads until the buffer is full or the stream ends, as decrypting streams return little at a time.
+     */
+    private static int fill(@NonNull InputStream inputStream, @NonNull byte[] buffer) throws IOException {
+      int filled = 0;
+      int read;
+
+      while (filled < buffer.length && (read = inputStream.read(buffer, filled, buffer.length - filled)) != -1) {
+        filled += read;
+      }
+
+      return filled;
+    }
+
+    @Override
+    protected void write(@NonNull OutputStream out, @NonNull BackupProtos.BackupFrame frame) throws IOException {
+      byte[] plaintext = frame.toByteArray();
+
+      out.write(Conversions.intToByteArray(plaintext.length));
+      out.write(plaintext);
     }
   }
 
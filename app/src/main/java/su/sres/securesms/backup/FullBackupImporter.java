@@ -26,7 +26,6 @@ import su.sres.securesms.crypto.AttachmentSecret;
 import su.sres.securesms.crypto.ModernEncryptingPartOutputStream;
 import su.sres.securesms.database.AttachmentDatabase;
 import su.sres.securesms.database.KeyValueDatabase;
-import su.sres.securesms.database.SearchDatabase;
 import su.sres.securesms.database.StickerDatabase;
 import su.sres.securesms.dependencies.ApplicationDependencies;
 import su.sres.securesms.keyvalue.KeyValueDataSet;
@@ -50,8 +49,6 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Objects;
 
 import javax.crypto.BadPaddingException;
@@ -79,12 +76,32 @@ public class FullBackupImporter extends FullBackupBase {
   public static void importFile(@NonNull Context context, @NonNull AttachmentSecret attachmentSecret,
                                 @NonNull SQLiteDatabase db, @NonNull InputStream is, @NonNull String passphrase)
           throws IOException
+  {
+    importStream(context, attachmentSecret, db, is, passphrase, false);
+  }
+
+  /**
+   * Restores a backup sent over a secured device transfer connection, which may be unencrypted if the
+   * sender wrote it with {@link FullBackupExporter#transfer(Context, AttachmentSecret, SQLiteDatabase, OutputStream)}.
+   * Senders too old for that still send the file format, encrypted with the passphrase.
+   */
+  public static void importTransfer(@NonNull Context context, @NonNull AttachmentSecret attachmentSecret,
+                                    @NonNull SQLiteDatabase db, @NonNull InputStream is, @NonNull String passphrase)
+          throws IOException
+  {
+    importStream(context, attachmentSecret, db, is, passphrase, true);
+  }
+
+  private static void importStream(@NonNull Context context, @NonNull AttachmentSecret attachmentSecret,
+                                   @NonNull SQLiteDatabase db, @NonNull InputStream is, @NonNull String passphrase,
+                                   boolean allowPlaintext)
+          throws IOException
   {
     int count = 0;
 
     SQLiteDatabase keyValueDatabase = KeyValueDatabase.getInstance(ApplicationDependencies.getApplication()).getSqlCipherDatabase();
-    try {
-      BackupRecordInputStream inputStream = new BackupRecordInputStream(is, passphrase);
+    try (RestoreStatementExecutor statementExecutor = new RestoreStatementExecutor(db)) {
+      BackupRecordInputStream inputStream = BackupRecordInputStream.open(is, passphrase, allowPlaintext);
 
       db.beginTransaction();
       keyValueDatabase.beginTransaction();
@@ -98,7 +115,7 @@ public class FullBackupImporter extends FullBackupBase {
         count++;
 
         if      (frame.hasVersion())    processVersion(db, frame.getVersion());
-        else if (frame.hasStatement())  processStatement(db, frame.getStatement());
+        else if (frame.hasStatement())  statementExecutor.execute(frame.getStatement());
         else if (frame.hasPreference()) processPreference(context, frame.getPreference());
         else if (frame.hasAttachment()) processAttachment(context, attachmentSecret, db, frame.getAttachment(), inputStream);
         else if (frame.hasSticker())    processSticker(context, attachmentSecret, db, frame.getSticker(), inputStream);
@@ -107,6 +124,8 @@ public class FullBackupImporter extends FullBackupBase {
         else                            count--;
       }
 
+      statementExecutor.finish();
+
       db.setTransactionSuccessful();
       keyValueDatabase.setTransactionSuccessful();
     } finally {
@@ -134,30 +153,6 @@ public class FullBackupImporter extends FullBackupBase {
         db.setVersion(version.getVersion());
   }
 
-  private static void processStatement(@NonNull SQLiteDatabase db, SqlStatement statement) {
-    boolean isForSmsFtsSecretTable = statement.getStatement().contains(SearchDatabase.SMS_FTS_TABLE_NAME + "_");
-    boolean isForMmsFtsSecretTable = statement.getStatement().contains(SearchDatabase.MMS_FTS_TABLE_NAME + "_");
-    boolean isForSqliteSecretTable = statement.getStatement().toLowerCase().startsWith("create table sqlite_");
-
-    if (isForSmsFtsSecretTable || isForMmsFtsSecretTable || isForSqliteSecretTable) {
-      Log.i(TAG, "Ignoring import for statement: " + statement.getStatement());
-      return;
-    }
-
-    List<Object> parameters = new LinkedList<>();
-
-    for (SqlStatement.SqlParameter parameter : statement.getParametersList()) {
-      if      (parameter.hasStringParamter())   parameters.add(parameter.getStringParamter());
-      else if (parameter.hasDoubleParameter())  parameters.add(parameter.getDoubleParameter());
-      else if (parameter.hasIntegerParameter()) parameters.add(parameter.getIntegerParameter());
-      else if (parameter.hasBlobParameter())    parameters.add(parameter.getBlobParameter().toByteArray());
-      else if (parameter.hasNullparameter())    parameters.add(null);
-    }
-
-    if (parameters.size() > 0) db.execSQL(statement.getStatement(), parameters.toArray());
-    else                       db.execSQL(statement.getStatement());
-  }
-
   private static void processAttachment(@NonNull Context context, @NonNull AttachmentSecret attachmentSecret, @NonNull SQLiteDatabase db, @NonNull Attachment attachment, BackupRecordInputStream inputStream)
       throws IOException
   {
@@ -272,37 +267,67 @@ public class FullBackupImporter extends FullBackupBase {
     }
   }
 
-  private static class BackupRecordInputStream extends BackupStream {
+  /**
+   * Reads the frames of a backup in whichever format its header says follows.
+   */
+  private static abstract class BackupRecordInputStream extends BackupStream {
 
-    private final InputStream in;
-    private final Cipher      cipher;
-    private final Mac         mac;
+    protected final InputStream in;
 
-    private final byte[] cipherKey;
-    private final byte[] macKey;
+    private BackupRecordInputStream(@NonNull InputStream in) {
+      this.in = in;
+    }
 
-    private byte[] iv;
-    private int    counter;
+    /**
+     * @param allowPlaintext Whether to accept a backup that is not encrypted, which is only safe when
+     *                       it comes over a connection that is already secured.
+     */
+    static @NonNull BackupRecordInputStream open(@NonNull InputStream in, @NonNull String passphrase, boolean allowPlaintext) throws IOException {
+      byte[] headerLengthBytes = new byte[4];
+      StreamUtil.readFully(in, headerLengthBytes);
 
-    private BackupRecordInputStream(@NonNull InputStream in, @NonNull String passphrase) throws IOException {
-      try {
-        this.in = in;
+      int headerLength = Conversions.byteArrayToInt(headerLengthBytes);
+      byte[] headerFrame = new byte[headerLength];
+      StreamUtil.readFully(in, headerFrame);
 
-        byte[] headerLengthBytes = new byte[4];
-        StreamUtil.readFully(in, headerLengthBytes);
+      BackupFrame frame = BackupFrame.parseFrom(headerFrame);
 
-        int headerLength = Conversions.byteArrayToInt(headerLengthBytes);
-        byte[] headerFrame = new byte[headerLength];
-        StreamUtil.readFully(in, headerFrame);
+      if (!frame.hasHeader()) {
+        throw new IOException("Backup stream does not start with header!");
+      }
 
-        BackupFrame frame = BackupFrame.parseFrom(headerFrame);
+      BackupProtos.Header header = frame.getHeader();
 
-        if (!frame.hasHeader()) {
-          throw new IOException("Backup stream does not start with header!");
+      if (header.getPlaintext()) {
+        if (!allowPlaintext) {
+          throw new IOException("Backup stream is not encrypted!");
         }
+        return new TransferRecordInputStream(in);
+      } else {
+        return new EncryptedRecordInputStream(in, passphrase, header);
+      }
+    }
 
-        BackupProtos.Header header = frame.getHeader();
+    abstract BackupFrame readFrame() throws IOException;
 
+    abstract void readAttachmentTo(OutputStream out, int length) throws IOException;
+  }
+
+  private static class EncryptedRecordInputStream extends BackupRecordInputStream {
+
+    private final Cipher      cipher;
+    private final Mac         mac;
+
+    private final byte[] cipherKey;
+    private final byte[] macKey;
+
+    private byte[] iv;
+    private int    counter;
+
+    private EncryptedRecordInputStream(@NonNull InputStream in, @NonNull String passphrase, @NonNull BackupProtos.Header header) throws IOException {
+      super(in);
+
+      try {
         this.iv = header.getIv().toByteArray();
 
         if (iv.length != 16) {
@@ -326,10 +351,12 @@ public class FullBackupImporter extends FullBackupBase {
       }
     }
 
+    @Override
     BackupFrame readFrame() throws IOException {
       return readFrame(in);
     }
 
+    @Override
     void readAttachmentTo(OutputStream out, int length) throws IOException {
       try {
         Conversions.intToByteArray(iv, 0, counter++);
@@ -408,6 +435,61 @@ public class FullBackupImporter extends FullBackupBase {
     }
   }
 
+  /**
+   * Reads what {@code FullBackupExporter.TransferFrameOutputStream} writes: frames as they are, and
+   * attachments as length prefixed chunks ending with an empty one.
+   */
+  private static class TransferRecordInputStream extends BackupRecordInputStream {
+
+    private static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    private TransferRecordInputStream(@NonNull InputStream in) {
+      super(in);
+    }
+
+    @Override
+    BackupFrame readFrame() throws IOException {
+      byte[] length = new byte[4];
+      StreamUtil.readFully(in, length);
+
+      byte[] frame = new byte[Conversions.byteArrayToInt(length)];
+      StreamUtil.readFully(in, frame);
+
+      return BackupFrame.parseFrom(frame);
+    }
+
+    @Override
+    void readAttachmentTo(OutputStream out, int length) throws IOException {
+      byte[] chunkLengthBytes = new byte[4];
+      byte[] buffer           = new byte[MAX_CHUNK_SIZE];
+      long   total            = 0;
+
+      while (true) {
+        StreamUtil.readFully(in, chunkLengthBytes);
+
+        int chunkLength = Conversions.byteArrayToInt(chunkLengthBytes);
+
+        if (chunkLength == 0) {
+          break;
+        }
+
+        if (chunkLength < 0 || chunkLength > MAX_CHUNK_SIZE || total + chunkLength > length) {
+          throw new IOException("Invalid chunk length: " + chunkLength);
+        }
+
+        StreamUtil.readFully(in, buffer, chunkLength);
+        out.write(buffer, 0, chunkLength);
+        total += chunkLength;
+      }
+
+      out.close();
+
+      if (total != length) {
+        throw new IOException("Attachment ended early!");
+      }
+    }
+  }
+
   private static class BadMacException extends IOException {}
 
   public static class DatabaseDowngradeException extends IOException {
@@ -0,0 +1,131 @@
+package su.sres.securesms.backup;
+
+import androidx.annotation.NonNull;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+import su.sres.core.util.logging.Log;
+import su.sres.securesms.backup.BackupProtos.SqlStatement;
+import su.sres.securesms.database.SearchDatabase;
+import su.sres.securesms.util.SqlUtil;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs the SQL statements of a backup against the database being restored.
+ * <p>
+ * Every row of a table is restored with the same insert, so each distinct insert is compiled once
+ * and then only rebound for each row. Indexes and triggers are held back until all of the rows are
+ * in, so that they are built once in bulk instead of being updated for every row, and the search
+ * indexes that the triggers would have filled are rebuilt from their content tables in one pass.
+ */
+final class RestoreStatementExecutor implements Closeable {
+
+  private static final String TAG = RestoreStatementExecutor.class.getSimpleName();
+
+  private static final String[] FTS_TABLES = { SearchDatabase.SMS_FTS_TABLE_NAME, SearchDatabase.MMS_FTS_TABLE_NAME };
+
+  private final SQLiteDatabase               db;
+  private final Map<String, SQLiteStatement> statements = new HashMap<>();
+  private final List<String>                 indexes    = new LinkedList<>();
+  private final List<String>                 triggers   = new LinkedList<>();
+
+  private int rows;
+
+  RestoreStatementExecutor(@NonNull SQLiteDatabase db) {
+    this.db = db;
+  }
+
+  void execute(@NonNull SqlStatement statement) {
+    String sql   = statement.getStatement();
+    String lower = sql.trim().toLowerCase(Locale.US);
+
+    boolean isForSmsFtsSecretTable = sql.contains(SearchDatabase.SMS_FTS_TABLE_NAME + "_");
+    boolean isForMmsFtsSecretTable = sql.contains(SearchDatabase.MMS_FTS_TABLE_NAME + "_");
+    boolean isForSqliteSecretTable = lower.startsWith("create table sqlite_");
+
+    if (isForSmsFtsSecretTable || isForMmsFtsSecretTable || isForSqliteSecretTable) {
+      Log.i(TAG, "Ignoring import for statement: " + sql);
+      return;
+    }
+
+    if (lower.startsWith("create index") || lower.startsWith("create unique index")) {
+      indexes.add(sql);
+    } else if (lower.startsWith("create trigger")) {
+      triggers.add(sql);
+    } else if (lower.startsWith("insert") && statement.getParametersCount() > 0) {
+      insert(sql, statement.getParametersList());
+    } else {
+      db.execSQL(sql);
+    }
+  }
+
+  private void insert(@NonNull String sql, @NonNull List<SqlStatement.SqlParameter> parameters) {
+    SQLiteStatement compiled = statements.get(sql);
+
+    if (compiled == null) {
+      compiled = db.compileStatement(sql);
+      statements.put(sql, compiled);
+    } else {
+      compiled.clearBindings();
+    }
+
+    for (int i = 0; i < parameters.size(); i++) {
+      SqlStatement.SqlParameter parameter = parameters.get(i);
+      int                       index     = i + 1;
+
+      if      (parameter.hasStringParamter())   compiled.bindString(index, parameter.getStringParamter());
+      else if (parameter.hasDoubleParameter())  compiled.bindDouble(index, parameter.getDoubleParameter());
+      else if (parameter.hasIntegerParameter()) compiled.bindLong(index, parameter.getIntegerParameter());
+      else if (parameter.hasBlobParameter())    compiled.bindBlob(index, parameter.getBlobParameter().toByteArray());
+      else                                      compiled.bindNull(index);
+    }
+
+    compiled.execute();
+    rows++;
+  }
+
+  /**
+   * Creates the indexes and triggers that were held back, and rebuilds the search indexes. Must be
+   * called in the same transaction as the inserts, once they are all done.
+   */
+  void finish() {
+    long start = System.currentTimeMillis();
+
+    for (String index : indexes) {
+      db.execSQL(index);
+    }
+
+    long indexed = System.currentTimeMillis();
+
+    for (String table : FTS_TABLES) {
+      if (SqlUtil.tableExists(db, table)) {
+        db.execSQL("INSERT INTO " + table + "(" + table + ") VALUES('rebuild')");
+      }
+    }
+
+    for (String trigger : triggers) {
+      db.execSQL(trigger);
+    }
+
+    long finished = System.currentTimeMillis();
+
+    Log.i(TAG, String.format(Locale.US, "Restored %d row(s) with %d statement(s). Built %d index(es) in %d ms, search in %d ms.",
+                             rows, statements.size(), indexes.size(), indexed - start, finished - indexed));
+  }
+
+  @Override
+  public void close() {
+    for (SQLiteStatement statement : statements.values()) {
+      statement.close();
+    }
+
+    statements.clear();
+  }
+}
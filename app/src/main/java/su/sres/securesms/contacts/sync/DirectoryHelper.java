@@ -68,9 +68,12 @@ public class DirectoryHelper {
         Map<String, String> fullUpdate = directoryResult.getUpdateContents().get();
         Set<String> userLoginsToInsert = fullUpdate.keySet();
 
+        Map<String, RecipientId> currentIds = recipientDatabase.getOrInsertFromUserLogins(currentUserLogins);
+        Map<String, RecipientId> updatedIds = recipientDatabase.getOrInsertFromUserLogins(userLoginsToInsert);
+
         for(String userLogin : currentUserLogins) {
 
-          RecipientId id = recipientDatabase.getOrInsertFromUserLogin(userLogin);
+          RecipientId id = currentIds.get(userLogin);
 
           if (!userLoginsToInsert.contains(userLogin)) {
             recipientDatabase.markUnregistered(id);
@@ -81,7 +84,7 @@ public class DirectoryHelper {
 
         for(Map.Entry<String, String> entry : fullUpdate.entrySet()) {
 
-          RecipientId id = recipientDatabase.getOrInsertFromUserLogin(entry.getKey());
+          RecipientId id = updatedIds.get(entry.getKey());
           String field = entry.getValue();
           UUID uuid = null;
 
@@ -156,10 +159,11 @@ public class DirectoryHelper {
             int ins = 0;
 
             Map<String, String> fullUpdate = result.getUpdateContents().get();
+            Map<String, RecipientId> ids = recipientDatabase.getOrInsertFromUserLogins(fullUpdate.keySet());
 
             for(Map.Entry<String, String> entry : fullUpdate.entrySet()) {
 
-              RecipientId id = recipientDatabase.getOrInsertFromUserLogin(entry.getKey());
+              RecipientId id = ids.get(entry.getKey());
               DirectoryEntryValue entryValue = JsonUtil.fromJson(entry.getValue(), DirectoryEntryValue.class);
               UUID uuid = entryValue.getUuid();
 
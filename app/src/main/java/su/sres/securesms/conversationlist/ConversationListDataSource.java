@@ -9,10 +9,12 @@ import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 
 import su.sres.paging.PagedDataSource;
+import su.sres.paging.PagingController;
 import su.sres.securesms.conversationlist.model.Conversation;
 import su.sres.securesms.conversationlist.model.ConversationReader;
 import su.sres.securesms.database.DatabaseFactory;
 import su.sres.securesms.database.ThreadDatabase;
+import su.sres.securesms.database.ThreadSummaryIndex;
 import su.sres.securesms.database.model.ThreadRecord;
 import su.sres.securesms.dependencies.ApplicationDependencies;
 import su.sres.core.util.logging.Log;
@@ -23,12 +25,21 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
-abstract class ConversationListDataSource implements PagedDataSource<Conversation> {
+/**
+ * Pages the conversation list out of the {@link ThreadSummaryIndex}. Once listening, threads that
+ * move because a message arrived are passed on to the {@link PagingController} as positional
+ * changes, so only the rows that changed are loaded again.
+ */
+abstract class ConversationListDataSource implements PagedDataSource<Conversation>, ThreadSummaryIndex.Listener {
 
     private static final String TAG = Log.tag(ConversationListDataSource.class);
 
     protected final ThreadDatabase threadDatabase;
 
+    private volatile PagingController pagingController;
+    private volatile Runnable         onThreadChanged;
+    private volatile Runnable         onReset;
+
     protected ConversationListDataSource(@NonNull Context context) {
         this.threadDatabase = DatabaseFactory.getThreadDatabase(context);
     }
@@ -73,6 +84,84 @@ abstract class ConversationListDataSource implements PagedDataSource<Conversatio
         return conversations;
     }
 
+    /**
+     * @param onThreadChanged Run after each positional change has been passed on.
+     * @param onReset         Run instead of invalidating when the whole index is reset, so that the
+     *                        caller can fold a burst of resets into one reload.
+     */
+    void startListening(@NonNull PagingController pagingController, @NonNull Runnable onThreadChanged, @NonNull Runnable onReset) {
+        this.pagingController = pagingController;
+        this.onThreadChanged  = onThreadChanged;
+        this.onReset          = onReset;
+        threadDatabase.addSummaryListener(this);
+    }
+
+    void stopListening() {
+        threadDatabase.removeSummaryListener(this);
+        this.pagingController = null;
+        this.onThreadChanged  = null;
+        this.onReset          = null;
+    }
+
+    @Override
+    public void onReset() {
+        Runnable callback = onReset;
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    protected void notifyItemInserted(int position) {
+        PagingController controller = pagingController;
+        if (controller != null) {
+            controller.onDataItemInserted(position);
+        }
+        notifyThreadChanged();
+    }
+
+    protected void notifyItemRemoved(int position) {
+        PagingController controller = pagingController;
+        if (controller != null) {
+            controller.onDataItemRemoved(position);
+        }
+        notifyThreadChanged();
+    }
+
+    protected void notifyItemMoved(int fromPosition, int toPosition) {
+        PagingController controller = pagingController;
+        if (controller != null) {
+            controller.onDataItemMoved(fromPosition, toPosition);
+        }
+        notifyThreadChanged();
+    }
+
+    protected void notifyItemChanged(int position) {
+        PagingController controller = pagingController;
+        if (controller != null) {
+            controller.onDataItemChanged(position);
+        }
+        notifyThreadChanged();
+    }
+
+    /**
+     * For changes that add or remove a header or footer, which are rare enough to not be worth
+     * describing by position.
+     */
+    protected void notifyInvalidated() {
+        PagingController controller = pagingController;
+        if (controller != null) {
+            controller.onDataInvalidated();
+        }
+        notifyThreadChanged();
+    }
+
+    private void notifyThreadChanged() {
+        Runnable callback = onThreadChanged;
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
     protected abstract int getTotalCount();
     protected abstract Cursor getCursor(long offset, long limit);
 
@@ -91,15 +180,40 @@ abstract class ConversationListDataSource implements PagedDataSource<Conversatio
         protected Cursor getCursor(long offset, long limit) {
             return threadDatabase.getArchivedConversationList(offset, limit);
         }
+
+        @Override
+        public void onThreadInserted(@NonNull ThreadSummaryIndex.Section section, int index) {
+            if (section == ThreadSummaryIndex.Section.ARCHIVED) {
+                notifyItemInserted(index);
+            }
+        }
+
+        @Override
+        public void onThreadRemoved(@NonNull ThreadSummaryIndex.Section section, int index) {
+            if (section == ThreadSummaryIndex.Section.ARCHIVED) {
+                notifyItemRemoved(index);
+            }
+        }
+
+        @Override
+        public void onThreadMoved(@NonNull ThreadSummaryIndex.Section section, int fromIndex, int toIndex) {
+            if (section == ThreadSummaryIndex.Section.ARCHIVED) {
+                notifyItemMoved(fromIndex, toIndex);
+            }
+        }
+
+        @Override
+        public void onThreadChanged(@NonNull ThreadSummaryIndex.Section section, int index) {
+            if (section == ThreadSummaryIndex.Section.ARCHIVED) {
+                notifyItemChanged(index);
+            }
+        }
     }
 
     @VisibleForTesting
     static class UnarchivedConversationListDataSource extends ConversationListDataSource {
 
-        private int totalCount;
-        private int pinnedCount;
-        private int archivedCount;
-        private int unpinnedCount;
+        private volatile Counts counts = Counts.EMPTY;
 
         UnarchivedConversationListDataSource(@NonNull Context context) {
             super(context);
@@ -107,34 +221,22 @@ abstract class ConversationListDataSource implements PagedDataSource<Conversatio
 
         @Override
         protected int getTotalCount() {
+            int pinnedCount     = threadDatabase.getPinnedConversationListCount();
             int unarchivedCount = threadDatabase.getUnarchivedConversationListCount();
+            int archivedCount   = threadDatabase.getArchivedConversationListCount();
 
-            pinnedCount   = threadDatabase.getPinnedConversationListCount();
-            archivedCount = threadDatabase.getArchivedConversationListCount();
-            unpinnedCount = unarchivedCount - pinnedCount;
-            totalCount    = unarchivedCount;
-
-            if (archivedCount != 0) {
-                totalCount++;
-            }
-
-            if (pinnedCount != 0) {
-                if (unpinnedCount != 0) {
-                    totalCount += 2;
-                } else {
-                    totalCount += 1;
-                }
-            }
+            counts = new Counts(pinnedCount, unarchivedCount - pinnedCount, archivedCount);
 
-            return totalCount;
+            return counts.total;
         }
 
         @Override
         protected Cursor getCursor(long offset, long limit) {
+            Counts       counts        = this.counts;
             List<Cursor> cursors       = new ArrayList<>(5);
             long         originalLimit = limit;
 
-            if (offset == 0 && hasPinnedHeader()) {
+            if (offset == 0 && counts.hasPinnedHeader()) {
                 MatrixCursor pinnedHeaderCursor = new MatrixCursor(ConversationReader.HEADER_COLUMN);
                 pinnedHeaderCursor.addRow(ConversationReader.PINNED_HEADER);
                 cursors.add(pinnedHeaderCursor);
@@ -145,44 +247,190 @@ abstract class ConversationListDataSource implements PagedDataSource<Conversatio
             cursors.add(pinnedCursor);
             limit -= pinnedCursor.getCount();
 
-            if (offset == 0 && hasUnpinnedHeader()) {
+            if (offset == 0 && counts.hasUnpinnedHeader()) {
                 MatrixCursor unpinnedHeaderCursor = new MatrixCursor(ConversationReader.HEADER_COLUMN);
                 unpinnedHeaderCursor.addRow(ConversationReader.UNPINNED_HEADER);
                 cursors.add(unpinnedHeaderCursor);
                 limit--;
             }
 
-            long   unpinnedOffset = Math.max(0, offset - pinnedCount - getHeaderOffset());
+            long   unpinnedOffset = Math.max(0, offset - counts.pinned - counts.getHeaderOffset());
             Cursor unpinnedCursor = threadDatabase.getUnarchivedConversationList(false, unpinnedOffset, limit);
             cursors.add(unpinnedCursor);
 
-            if (offset + originalLimit >= totalCount && hasArchivedFooter()) {
+            if (offset + originalLimit >= counts.total && counts.hasArchivedFooter()) {
                 MatrixCursor archivedFooterCursor = new MatrixCursor(ConversationReader.ARCHIVED_COLUMNS);
-                archivedFooterCursor.addRow(ConversationReader.createArchivedFooterRow(archivedCount));
+                archivedFooterCursor.addRow(ConversationReader.createArchivedFooterRow(counts.archived));
                 cursors.add(archivedFooterCursor);
             }
 
             return new MergeCursor(cursors.toArray(new Cursor[]{}));
         }
 
+        /**
+         * Keeps the counts in step with the index, so that later pages line up, and maps the section
+         * position to a list position around the headers and the archived footer.
+         */
+        @Override
+        public void onThreadInserted(@NonNull ThreadSummaryIndex.Section section, int index) {
+            Counts updated;
+
+            switch (section) {
+                case PINNED:
+                    updated = counts = counts.plus(1, 0, 0);
+                    if (updated.pinned == 1) {
+                        notifyInvalidated();
+                    } else {
+                        notifyItemInserted(updated.getPinnedStart() + index);
+                    }
+                    break;
+                case UNPINNED:
+                    updated = counts = counts.plus(0, 1, 0);
+                    if (updated.hasPinnedHeader() && updated.unpinned == 1) {
+                        notifyInvalidated();
+                    } else {
+                        notifyItemInserted(updated.getUnpinnedStart() + index);
+                    }
+                    break;
+                case ARCHIVED:
+                    updated = counts = counts.plus(0, 0, 1);
+                    onArchivedCountChanged(updated, updated.archived == 1);
+                    break;
+            }
+        }
+
+        @Override
+        public void onThreadRemoved(@NonNull ThreadSummaryIndex.Section section, int index) {
+            Counts updated;
+
+            switch (section) {
+                case PINNED:
+                    updated = counts = counts.plus(-1, 0, 0);
+                    if (updated.pinned == 0) {
+                        notifyInvalidated();
+                    } else {
+                        notifyItemRemoved(updated.getPinnedStart() + index);
+                    }
+                    break;
+                case UNPINNED:
+                    updated = counts = counts.plus(0, -1, 0);
+                    if (updated.hasPinnedHeader() && updated.unpinned == 0) {
+                        notifyInvalidated();
+                    } else {
+                        notifyItemRemoved(updated.getUnpinnedStart() + index);
+                    }
+                    break;
+                case ARCHIVED:
+                    updated = counts = counts.plus(0, 0, -1);
+                    onArchivedCountChanged(updated, updated.archived == 0);
+                    break;
+            }
+        }
+
+        @Override
+        public void onThreadMoved(@NonNull ThreadSummaryIndex.Section section, int fromIndex, int toIndex) {
+            Counts counts = this.counts;
+
+            switch (section) {
+                case PINNED:
+                    notifyItemMoved(counts.getPinnedStart() + fromIndex, counts.getPinnedStart() + toIndex);
+                    break;
+                case UNPINNED:
+                    notifyItemMoved(counts.getUnpinnedStart() + fromIndex, counts.getUnpinnedStart() + toIndex);
+                    break;
+            }
+        }
+
+        @Override
+        public void onThreadChanged(@NonNull ThreadSummaryIndex.Section section, int index) {
+            Counts counts = this.counts;
+
+            switch (section) {
+                case PINNED:
+                    notifyItemChanged(counts.getPinnedStart() + index);
+                    break;
+                case UNPINNED:
+                    notifyItemChanged(counts.getUnpinnedStart() + index);
+                    break;
+            }
+        }
+
+        private void onArchivedCountChanged(@NonNull Counts counts, boolean footerChanged) {
+            if (footerChanged) {
+                notifyInvalidated();
+            } else {
+                notifyItemChanged(counts.total - 1);
+            }
+        }
+
         @VisibleForTesting
         int getHeaderOffset() {
-            return (hasPinnedHeader() ? 1 : 0) + (hasUnpinnedHeader() ? 1 : 0);
+            return counts.getHeaderOffset();
         }
 
         @VisibleForTesting
         boolean hasPinnedHeader() {
-            return pinnedCount != 0;
+            return counts.hasPinnedHeader();
         }
 
         @VisibleForTesting
         boolean hasUnpinnedHeader() {
-            return hasPinnedHeader() && unpinnedCount != 0;
+            return counts.hasUnpinnedHeader();
         }
 
         @VisibleForTesting
         boolean hasArchivedFooter() {
-            return archivedCount != 0;
+            return counts.hasArchivedFooter();
+        }
+
+        /**
+         * The section sizes list positions are worked out from. Summary changes and size() replace it
+         * as a whole, so a page being fetched never mixes a count from one change with a total from
+         * another.
+         */
+        private static final class Counts {
+
+            static final Counts EMPTY = new Counts(0, 0, 0);
+
+            final int pinned;
+            final int unpinned;
+            final int archived;
+            final int total;
+
+            Counts(int pinned, int unpinned, int archived) {
+                this.pinned   = pinned;
+                this.unpinned = unpinned;
+                this.archived = archived;
+                this.total    = pinned + unpinned + getHeaderOffset() + (hasArchivedFooter() ? 1 : 0);
+            }
+
+            @NonNull Counts plus(int pinnedDelta, int unpinnedDelta, int archivedDelta) {
+                return new Counts(pinned + pinnedDelta, unpinned + unpinnedDelta, archived + archivedDelta);
+            }
+
+            int getPinnedStart() {
+                return hasPinnedHeader() ? 1 : 0;
+            }
+
+            int getUnpinnedStart() {
+                return pinned + getHeaderOffset();
+            }
+
+            int getHeaderOffset() {
+                return (hasPinnedHeader() ? 1 : 0) + (hasUnpinnedHeader() ? 1 : 0);
+            }
+
+            boolean hasPinnedHeader() {
+                return pinned != 0;
+            }
+
+            boolean hasUnpinnedHeader() {
+                return hasPinnedHeader() && unpinned != 0;
+            }
+
+            boolean hasArchivedFooter() {
+                return archived != 0;
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -11,6 +11,7 @@ import androidx.annotation.NonNull;
 import android.text.TextUtils;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import su.sres.core.util.ThreadUtil;
 import su.sres.paging.PagedData;
@@ -41,7 +42,8 @@ class ConversationListViewModel extends ViewModel {
 
     private final MutableLiveData<Megaphone>     megaphone;
     private final MutableLiveData<SearchResult>  searchResult;
-    private final PagedData<Conversation> pagedData;
+    private final ConversationListDataSource     dataSource;
+    private final PagedData<Conversation>        pagedData;
     private final LiveData<Boolean>              hasNoConversations;
     private final SearchRepository               searchRepository;
     private final MegaphoneRepository            megaphoneRepository;
@@ -50,6 +52,8 @@ class ConversationListViewModel extends ViewModel {
     private final DatabaseObserver.Observer      observer;
     private final Invalidator                    invalidator;
 
+    private final AtomicBoolean                  invalidationPending;
+
     private String lastQuery;
     private int    pinnedCount;
 
@@ -61,19 +65,14 @@ class ConversationListViewModel extends ViewModel {
         this.searchDebouncer     = new Debouncer(300);
         this.updateDebouncer     = new ThrottledDebouncer(500);
         this.invalidator         = new Invalidator();
-        this.pagedData           = PagedData.create(ConversationListDataSource.create(application, isArchived),
+        this.invalidationPending = new AtomicBoolean(false);
+        this.dataSource          = ConversationListDataSource.create(application, isArchived);
+        this.pagedData           = PagedData.create(dataSource,
                 new PagingConfig.Builder()
                         .setPageSize(15)
                         .setBufferPages(2)
                         .build());
-        this.observer            = () -> {
-            updateDebouncer.publish(() -> {
-                if (!TextUtils.isEmpty(getLastQuery())) {
-                    searchRepository.query(getLastQuery(), searchResult::postValue);
-                }
-                pagedData.getController().onDataInvalidated();
-            });
-        };
+        this.observer            = () -> updateDebouncer.publish(this::onDataUpdated);
 
         this.hasNoConversations = LiveDataUtil.mapAsync(pagedData.getData(), conversations -> {
             pinnedCount = DatabaseFactory.getThreadDatabase(application).getPinnedConversationListCount();
@@ -86,6 +85,28 @@ class ConversationListViewModel extends ViewModel {
         });
 
         ApplicationDependencies.getDatabaseObserver().registerConversationListObserver(observer);
+        dataSource.startListening(pagedData.getController(), () -> {
+            if (!TextUtils.isEmpty(getLastQuery())) {
+                searchDebouncer.publish(() -> searchRepository.query(getLastQuery(), searchResult::postValue));
+            }
+        }, () -> {
+            invalidationPending.set(true);
+            updateDebouncer.publish(this::onDataUpdated);
+        });
+    }
+
+    /**
+     * Shared by the observer and index resets so that neither can replace the other's pending run in
+     * the debouncer. A reset only flags the list, which is reloaded at most once per debounce period.
+     */
+    private void onDataUpdated() {
+        if (invalidationPending.getAndSet(false)) {
+            pagedData.getController().onDataInvalidated();
+        }
+
+        if (!TextUtils.isEmpty(getLastQuery())) {
+            searchRepository.query(getLastQuery(), searchResult::postValue);
+        }
     }
 
     public LiveData<Boolean> hasNoConversations() {
@@ -120,6 +141,7 @@ class ConversationListViewModel extends ViewModel {
     void onVisible() {
         megaphoneRepository.getNextMegaphone(megaphone::postValue);
         if (!coldStart) {
+            pagedData.getController().onDataInvalidated();
             ApplicationDependencies.getDatabaseObserver().notifyConversationListListeners();
         }
 
@@ -161,6 +183,7 @@ class ConversationListViewModel extends ViewModel {
         searchDebouncer.clear();
         updateDebouncer.clear();
         ApplicationDependencies.getDatabaseObserver().unregisterObserver(observer);
+        dataSource.stopListening();
     }
 
     public static class Factory extends ViewModelProvider.NewInstanceFactory {
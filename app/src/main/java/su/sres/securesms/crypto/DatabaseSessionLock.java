@@ -1,48 +1,76 @@
 package su.sres.securesms.crypto;
 
+import androidx.annotation.NonNull;
+
 import net.sqlcipher.database.SQLiteDatabase;
 
-import java.util.concurrent.locks.ReentrantLock;
+import org.whispersystems.libsignal.SignalProtocolAddress;
 
 import su.sres.securesms.database.DatabaseFactory;
 import su.sres.securesms.dependencies.ApplicationDependencies;
+import su.sres.securesms.recipients.RecipientId;
 import su.sres.securesms.util.FeatureFlags;
 import su.sres.signalservice.api.SignalSessionLock;
+import su.sres.signalservice.api.util.UuidUtil;
 
 /**
- * An implementation of {@link SignalSessionLock} that effectively re-uses our database lock.
+ * An implementation of {@link SignalSessionLock}. For internal users it effectively re-uses our
+ * database lock, see {@link TransactionSessionLock}. Everyone else gets a lock per recipient, backed
+ * by a {@link StripedSessionLock}, where work that may touch any number of recipients locks all
+ * sessions.
  */
 public enum DatabaseSessionLock implements SignalSessionLock {
 
     INSTANCE;
 
-    public static final long NO_OWNER = -1;
-
-    private volatile long ownerThreadId = NO_OWNER;
+    public static final long NO_OWNER = TransactionSessionLock.NO_OWNER;
 
-    private static final ReentrantLock LEGACY_LOCK = new ReentrantLock();
+    private final TransactionSessionLock          transactionLock = new TransactionSessionLock(new DatabaseTransactor());
+    private final StripedSessionLock<RecipientId> stripedLock     = new StripedSessionLock<>(DatabaseSessionLock::resolve);
 
     @Override
     public Lock acquire() {
         if (FeatureFlags.internalUser()) {
-            SQLiteDatabase db = DatabaseFactory.getInstance(ApplicationDependencies.getApplication()).getRawDatabase();
+            return transactionLock.acquire();
+        } else {
+            return stripedLock.acquire();
+        }
+    }
 
-        if (db.isDbLockedByCurrentThread()) {
-            return () -> {};
+    /**
+     * Locks only the sessions of the recipient the address belongs to, unless the database lock is
+     * in use, in which case all sessions are locked.
+     */
+    @Override
+    public Lock acquire(@NonNull SignalProtocolAddress address) {
+        if (FeatureFlags.internalUser()) {
+            return transactionLock.acquire(address);
+        } else {
+            return stripedLock.acquire(address);
         }
+    }
 
-        db.beginTransaction();
+    /**
+     * Locks only the sessions of the given recipient, unless the database lock is in use, in which
+     * case all sessions are locked.
+     */
+    public Lock acquire(@NonNull RecipientId recipientId) {
+        if (FeatureFlags.internalUser()) {
+            return transactionLock.acquire();
+        } else {
+            return stripedLock.acquireKey(recipientId);
+        }
+    }
 
-        ownerThreadId = Thread.currentThread().getId();
+    public @NonNull StripedSessionLock.Metrics getMetrics() {
+        return stripedLock.getMetrics();
+    }
 
-            return () -> {
-                ownerThreadId = -1;
-                db.setTransactionSuccessful();
-                db.endTransaction();
-            };
+    private static @NonNull RecipientId resolve(@NonNull String name) {
+        if (UuidUtil.isUuid(name)) {
+            return RecipientId.from(UuidUtil.parseOrThrow(name), null);
         } else {
-            LEGACY_LOCK.lock();
-            return LEGACY_LOCK::unlock;
+            return RecipientId.from(null, name);
         }
     }
 
@@ -53,7 +81,7 @@ public enum DatabaseSessionLock implements SignalSessionLock {
      * @return True if it's likely that some other thread owns this lock, and it's not you.
      */
     public boolean isLikelyHeldByOtherThread() {
-        long ownerThreadId = this.ownerThreadId;
+        long ownerThreadId = transactionLock.getOwnerThreadId();
         return ownerThreadId != -1 && ownerThreadId == Thread.currentThread().getId();
     }
 
@@ -65,6 +93,30 @@ public enum DatabaseSessionLock implements SignalSessionLock {
      * @return The ID of the thread that likely owns this lock, or {@link #NO_OWNER} if no one owns it.
      */
     public long getLikeyOwnerThreadId() {
-        return ownerThreadId;
+        return transactionLock.getOwnerThreadId();
+    }
+
+    private static final class DatabaseTransactor implements TransactionSessionLock.Transactor {
+
+        private static @NonNull SQLiteDatabase getDatabase() {
+            return DatabaseFactory.getInstance(ApplicationDependencies.getApplication()).getRawDatabase();
+        }
+
+        @Override
+        public boolean isHeldByCurrentThread() {
+            return getDatabase().isDbLockedByCurrentThread();
+        }
+
+        @Override
+        public void begin() {
+            getDatabase().beginTransaction();
+        }
+
+        @Override
+        public void end() {
+            SQLiteDatabase db = getDatabase();
+            db.setTransactionSuccessful();
+            db.endTransaction();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,265 @@
+package su.sres.securesms.crypto;
+
+import androidx.annotation.NonNull;
+
+import org.whispersystems.libsignal.SignalProtocolAddress;
+
+import su.sres.signalservice.api.SignalSessionLock;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link SignalSessionLock} that lets work on different recipients run at the same time.
+ *
+ * Every address is resolved to a recipient key, and each key maps onto one of a fixed set of
+ * stripes, so all of a recipient's devices share a stripe. Locking an address takes the read side
+ * of a global lock and then the recipient's stripe. Locking all sessions takes the write side, which
+ * waits for every address lock to be released and keeps new ones out from the moment it starts
+ * waiting until it is released itself.
+ *
+ * The rules that keep this free of deadlocks:
+ * <ul>
+ *   <li>A thread holding all sessions may lock any address, which is then a no-op.</li>
+ *   <li>A thread holding an address may lock that recipient's addresses again, but not another
+ *       recipient's, and may not go on to lock all sessions.</li>
+ * </ul>
+ * Breaking either of the last two throws an {@link IllegalStateException} rather than risking a
+ * deadlock with another thread doing the opposite.
+ */
+public final class StripedSessionLock<K> implements SignalSessionLock {
+
+    static final int DEFAULT_STRIPES = 64;
+
+    private final KeyResolver<K>         resolver;
+    private final ReentrantReadWriteLock global;
+    private final ReentrantLock[]        stripes;
+    private final ThreadLocal<Held>      held;
+    private final Stats                  globalStats;
+    private final Stats                  addressStats;
+
+    public StripedSessionLock(@NonNull KeyResolver<K> resolver) {
+        this(resolver, DEFAULT_STRIPES);
+    }
+
+    StripedSessionLock(@NonNull KeyResolver<K> resolver, int stripeCount) {
+        if (Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two!");
+        }
+
+        this.resolver     = resolver;
+        this.global       = new ReentrantReadWriteLock();
+        this.stripes      = new ReentrantLock[stripeCount];
+        this.held         = new ThreadLocal<>();
+        this.globalStats  = new Stats();
+        this.addressStats = new Stats();
+
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Locks all sessions.
+     */
+    @Override
+    public @NonNull Lock acquire() {
+        ReentrantReadWriteLock.WriteLock writeLock = global.writeLock();
+
+        if (!writeLock.isHeldByCurrentThread() && global.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Cannot lock all sessions while holding the lock of an address!");
+        }
+
+        lock(writeLock, globalStats);
+
+        return writeLock::unlock;
+    }
+
+    /**
+     * Locks the sessions of the recipient the address belongs to.
+     */
+    @Override
+    public @NonNull Lock acquire(@NonNull SignalProtocolAddress address) {
+        if (global.isWriteLockedByCurrentThread()) {
+            return () -> {};
+        }
+
+        return acquireKey(resolver.resolve(address.getName()));
+    }
+
+    /**
+     * Locks the sessions of the recipient with the given key.
+     */
+    public @NonNull Lock acquireKey(@NonNull K key) {
+        if (global.isWriteLockedByCurrentThread()) {
+            return () -> {};
+        }
+
+        Held current = held.get();
+
+        if (current != null && !current.key.equals(key)) {
+            throw new IllegalStateException("Cannot lock the sessions of two recipients at once!");
+        }
+
+        ReentrantLock stripe    = stripes[indexFor(key)];
+        long          start     = System.nanoTime();
+        boolean       contended = global.isWriteLocked() || global.hasQueuedThreads();
+
+        // Not tryLock(), which would barge past a queued acquire() and could keep it out for as long
+        // as address locks overlap.
+        global.readLock().lock();
+
+        if (!stripe.tryLock()) {
+            contended = true;
+            stripe.lock();
+        }
+
+        addressStats.record(contended, System.nanoTime() - start);
+
+        if (current == null) {
+            current = new Held(key);
+            held.set(current);
+        }
+
+        current.count++;
+
+        Held owner = current;
+
+        return () -> {
+            if (--owner.count == 0) {
+                held.remove();
+            }
+
+            stripe.unlock();
+            global.readLock().unlock();
+        };
+    }
+
+    public @NonNull Metrics getMetrics() {
+        return new Metrics(globalStats.snapshot(), addressStats.snapshot());
+    }
+
+    private int indexFor(@NonNull K key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    private static void lock(@NonNull java.util.concurrent.locks.Lock lock, @NonNull Stats stats) {
+        if (lock.tryLock()) {
+            stats.record(false, 0);
+        } else {
+            long start = System.nanoTime();
+            lock.lock();
+            stats.record(true, System.nanoTime() - start);
+        }
+    }
+
+    public interface KeyResolver<K> {
+        /**
+         * @param name The name of a {@link SignalProtocolAddress}.
+         * @return The key of the recipient the name belongs to. Any of a recipient's names must
+         *         resolve to equal keys.
+         */
+        @NonNull K resolve(@NonNull String name);
+    }
+
+    private static final class Held {
+        private final Object key;
+        private       int    count;
+
+        private Held(@NonNull Object key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Stats {
+        private final AtomicLong acquired       = new AtomicLong();
+        private final AtomicLong contended      = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos   = new AtomicLong();
+
+        void record(boolean wasContended, long waitNanos) {
+            acquired.incrementAndGet();
+
+            if (wasContended) {
+                contended.incrementAndGet();
+                totalWaitNanos.addAndGet(waitNanos);
+
+                long max;
+                do {
+                    max = maxWaitNanos.get();
+                } while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos));
+            }
+        }
+
+        @NonNull Counts snapshot() {
+            return new Counts(acquired.get(), contended.get(), totalWaitNanos.get(), maxWaitNanos.get());
+        }
+    }
+
+    public static final class Counts {
+        private final long acquired;
+        private final long contended;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+
+        private Counts(long acquired, long contended, long totalWaitNanos, long maxWaitNanos) {
+            this.acquired       = acquired;
+            this.contended      = contended;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos   = maxWaitNanos;
+        }
+
+        public long getAcquired() {
+            return acquired;
+        }
+
+        public long getContended() {
+            return contended;
+        }
+
+        /**
+         * @return The average time spent waiting by the acquisitions that had to wait.
+         */
+        public long getAverageWaitMs() {
+            return contended > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / contended) : 0;
+        }
+
+        public long getMaxWaitMs() {
+            return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+        }
+
+        @Override
+        public @NonNull String toString() {
+            return String.format(Locale.US, "acquired: %d, contended: %d, avgWait: %d ms, maxWait: %d ms",
+                                 acquired, contended, getAverageWaitMs(), getMaxWaitMs());
+        }
+    }
+
+    public static final class Metrics {
+        private final Counts global;
+        private final Counts address;
+
+        private Metrics(@NonNull Counts global, @NonNull Counts address) {
+            this.global  = global;
+            this.address = address;
+        }
+
+        public @NonNull Counts getGlobal() {
+            return global;
+        }
+
+        public @NonNull Counts getAddress() {
+            return address;
+        }
+
+        @Override
+        public @NonNull String toString() {
+            return "All sessions -- " + global + "\n" +
+                   "Per address  -- " + address;
+        }
+    }
+}
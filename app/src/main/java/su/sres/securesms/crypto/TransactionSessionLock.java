@@ -0,0 +1,64 @@
+package su.sres.securesms.crypto;
+
+import androidx.annotation.NonNull;
+
+import org.whispersystems.libsignal.SignalProtocolAddress;
+
+import su.sres.signalservice.api.SignalSessionLock;
+
+/**
+ * A {@link SignalSessionLock} that is a database transaction, so that sessions and the rest of the
+ * database can only ever be locked in one order. A thread already in a transaction holds every
+ * session, and no other thread can hold any session until that transaction ends.
+ *
+ * Every address shares the one lock, as a lock per address would have to be taken either before or
+ * after the database, and some callers already hold the database when they reach a store.
+ */
+final class TransactionSessionLock implements SignalSessionLock {
+
+    static final long NO_OWNER = -1;
+
+    private final Transactor transactor;
+
+    private volatile long ownerThreadId = NO_OWNER;
+
+    TransactionSessionLock(@NonNull Transactor transactor) {
+        this.transactor = transactor;
+    }
+
+    @Override
+    public @NonNull Lock acquire() {
+        if (transactor.isHeldByCurrentThread()) {
+            return () -> {};
+        }
+
+        transactor.begin();
+
+        ownerThreadId = Thread.currentThread().getId();
+
+        return () -> {
+            ownerThreadId = NO_OWNER;
+            transactor.end();
+        };
+    }
+
+    @Override
+    public @NonNull Lock acquire(@NonNull SignalProtocolAddress address) {
+        return acquire();
+    }
+
+    long getOwnerThreadId() {
+        return ownerThreadId;
+    }
+
+    interface Transactor {
+        boolean isHeldByCurrentThread();
+
+        void begin();
+
+        /**
+         * Commits the transaction started by {@link #begin()}.
+         */
+        void end();
+    }
+}
@@ -14,6 +14,7 @@ import org.whispersystems.libsignal.state.SignedPreKeyRecord;
 import org.whispersystems.libsignal.state.SignedPreKeyStore;
 
 import java.util.List;
+import java.util.Map;
 
 import su.sres.signalservice.api.SignalServiceProtocolStore;
 import su.sres.signalservice.api.SignalServiceSessionStore;
@@ -92,6 +93,11 @@ public class SignalProtocolStoreImpl implements SignalServiceProtocolStore {
     sessionStore.storeSession(axolotlAddress, record);
   }
 
+  @Override
+  public void storeSessions(Map<SignalProtocolAddress, SessionRecord> sessions) {
+    sessionStore.storeSessions(sessions);
+  }
+
   @Override
   public boolean containsSession(SignalProtocolAddress axolotlAddress) {
     return sessionStore.containsSession(axolotlAddress);
@@ -48,9 +48,10 @@ public class TextSecureIdentityKeyStore implements IdentityKeyStore {
   }
 
   public boolean saveIdentity(SignalProtocolAddress address, IdentityKey identityKey, boolean nonBlockingApproval) {
-    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire()) {
+    Recipient recipient = Recipient.external(context, address.getName());
+
+    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire(recipient.getId())) {
       IdentityDatabase         identityDatabase = DatabaseFactory.getIdentityDatabase(context);
-      Recipient                recipient        = Recipient.external(context, address.getName());
       Optional<IdentityRecord> identityRecord   = identityDatabase.getIdentity(recipient.getId());
 
       if (!identityRecord.isPresent()) {
@@ -94,28 +95,28 @@ public class TextSecureIdentityKeyStore implements IdentityKeyStore {
 
   @Override
   public boolean isTrustedIdentity(SignalProtocolAddress address, IdentityKey identityKey, Direction direction) {
-    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire()) {
-      if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(address.getName())) {
-        IdentityDatabase identityDatabase = DatabaseFactory.getIdentityDatabase(context);
-        RecipientId      ourRecipientId   = Recipient.self().getId();
-        RecipientId      theirRecipientId = Recipient.external(context, address.getName()).getId();
+    if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(address.getName())) {
+      IdentityDatabase identityDatabase = DatabaseFactory.getIdentityDatabase(context);
+      RecipientId      ourRecipientId   = Recipient.self().getId();
+      RecipientId      theirRecipientId = Recipient.external(context, address.getName()).getId();
 
       if (ourRecipientId.equals(theirRecipientId)) {
         return identityKey.equals(IdentityKeyUtil.getIdentityKey(context));
       }
 
+      try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire(theirRecipientId)) {
         switch (direction) {
           case SENDING:   return isTrustedForSending(identityKey, identityDatabase.getIdentity(theirRecipientId));
           case RECEIVING: return true;
           default:        throw new AssertionError("Unknown direction: " + direction);
         }
-      } else {
-        Log.w(TAG, "Tried to check if identity is trusted for " + address.getName() + ", but no matching recipient existed!");
-        switch (direction) {
-          case SENDING:   return false;
-          case RECEIVING: return true;
-          default:        throw new AssertionError("Unknown direction: " + direction);
-        }
+      }
+    } else {
+      Log.w(TAG, "Tried to check if identity is trusted for " + address.getName() + ", but no matching recipient existed!");
+      switch (direction) {
+        case SENDING:   return false;
+        case RECEIVING: return true;
+        default:        throw new AssertionError("Unknown direction: " + direction);
       }
     }
   }
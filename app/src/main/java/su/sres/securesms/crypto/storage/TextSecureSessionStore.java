@@ -17,7 +17,9 @@ import org.whispersystems.libsignal.protocol.CiphertextMessage;
 import org.whispersystems.libsignal.state.SessionRecord;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class TextSecureSessionStore implements SignalServiceSessionStore {
 
@@ -31,8 +33,9 @@ public class TextSecureSessionStore implements SignalServiceSessionStore {
 
   @Override
   public SessionRecord loadSession(@NonNull SignalProtocolAddress address) {
-    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire()) {
-      RecipientId   recipientId   = Recipient.external(context, address.getName()).getId();
+    RecipientId recipientId = Recipient.external(context, address.getName()).getId();
+
+    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire(recipientId)) {
       SessionRecord sessionRecord = DatabaseFactory.getSessionDatabase(context).load(recipientId, address.getDeviceId());
 
       if (sessionRecord == null) {
@@ -46,45 +49,72 @@ public class TextSecureSessionStore implements SignalServiceSessionStore {
 
   @Override
   public void storeSession(@NonNull SignalProtocolAddress address, @NonNull SessionRecord record) {
-    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire()) {
-      RecipientId id = Recipient.external(context, address.getName()).getId();
+    RecipientId id = Recipient.external(context, address.getName()).getId();
+
+    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire(id)) {
       DatabaseFactory.getSessionDatabase(context).store(id, address.getDeviceId(), record);
     }
   }
 
+  @Override
+  public void storeSessions(@NonNull Map<SignalProtocolAddress, SessionRecord> sessions) {
+    Map<RecipientId, Map<Integer, SessionRecord>> byRecipient = new LinkedHashMap<>();
+
+    for (Map.Entry<SignalProtocolAddress, SessionRecord> session : sessions.entrySet()) {
+      RecipientId                 id      = Recipient.external(context, session.getKey().getName()).getId();
+      Map<Integer, SessionRecord> records = byRecipient.get(id);
+
+      if (records == null) {
+        records = new LinkedHashMap<>();
+        byRecipient.put(id, records);
+      }
+
+      records.put(session.getKey().getDeviceId(), session.getValue());
+    }
+
+    for (Map.Entry<RecipientId, Map<Integer, SessionRecord>> entry : byRecipient.entrySet()) {
+      try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire(entry.getKey())) {
+        DatabaseFactory.getSessionDatabase(context).store(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
   @Override
   public boolean containsSession(SignalProtocolAddress address) {
-    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire()) {
-      if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(address.getName())) {
-        RecipientId   recipientId   = Recipient.external(context, address.getName()).getId();
+    if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(address.getName())) {
+      RecipientId recipientId = Recipient.external(context, address.getName()).getId();
+
+      try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire(recipientId)) {
         SessionRecord sessionRecord = DatabaseFactory.getSessionDatabase(context).load(recipientId, address.getDeviceId());
 
         return sessionRecord != null &&
                 sessionRecord.getSessionState().hasSenderChain() &&
                 sessionRecord.getSessionState().getSessionVersion() == CiphertextMessage.CURRENT_VERSION;
-      } else {
-        return false;
       }
+    } else {
+      return false;
     }
   }
 
   @Override
   public void deleteSession(SignalProtocolAddress address) {
-    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire()) {
-      if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(address.getName())) {
-        RecipientId recipientId = Recipient.external(context, address.getName()).getId();
+    if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(address.getName())) {
+      RecipientId recipientId = Recipient.external(context, address.getName()).getId();
+
+      try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire(recipientId)) {
         DatabaseFactory.getSessionDatabase(context).delete(recipientId, address.getDeviceId());
-      } else {
-        Log.w(TAG, "Tried to delete session for " + address.toString() + ", but none existed!");
       }
+    } else {
+      Log.w(TAG, "Tried to delete session for " + address.toString() + ", but none existed!");
     }
   }
 
   @Override
   public void deleteAllSessions(String name) {
-    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire()) {
-      if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(name)) {
-        RecipientId recipientId = Recipient.external(context, name).getId();
+    if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(name)) {
+      RecipientId recipientId = Recipient.external(context, name).getId();
+
+      try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire(recipientId)) {
         DatabaseFactory.getSessionDatabase(context).deleteAllFor(recipientId);
       }
     }
@@ -92,29 +122,28 @@ public class TextSecureSessionStore implements SignalServiceSessionStore {
 
   @Override
   public List<Integer> getSubDeviceSessions(String name) {
-    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire()) {
-      if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(name)) {
-        RecipientId recipientId = Recipient.external(context, name).getId();
+    if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(name)) {
+      RecipientId recipientId = Recipient.external(context, name).getId();
+
+      try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire(recipientId)) {
         return DatabaseFactory.getSessionDatabase(context).getSubDevices(recipientId);
-      } else {
-        Log.w(TAG, "Tried to get sub device sessions for " + name + ", but none existed!");
-        return Collections.emptyList();
       }
+    } else {
+      Log.w(TAG, "Tried to get sub device sessions for " + name + ", but none existed!");
+      return Collections.emptyList();
     }
   }
 
   @Override
   public void archiveSession(SignalProtocolAddress address) {
-    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire()) {
-      if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(address.getName())) {
-        RecipientId recipientId = Recipient.external(context, address.getName()).getId();
-        archiveSession(recipientId, address.getDeviceId());
-      }
+    if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(address.getName())) {
+      RecipientId recipientId = Recipient.external(context, address.getName()).getId();
+      archiveSession(recipientId, address.getDeviceId());
     }
   }
 
   public void archiveSession(@NonNull RecipientId recipientId, int deviceId) {
-    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire()) {
+    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire(recipientId)) {
       SessionRecord session = DatabaseFactory.getSessionDatabase(context).load(recipientId, deviceId);
       if (session != null) {
         session.archiveCurrentState();
@@ -124,10 +153,11 @@ public class TextSecureSessionStore implements SignalServiceSessionStore {
   }
 
   public void archiveSiblingSessions(@NonNull SignalProtocolAddress address) {
-    try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire()) {
-      if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(address.getName())) {
-        RecipientId                      recipientId = Recipient.external(context, address.getName()).getId();
-        List<SessionDatabase.SessionRow> sessions    = DatabaseFactory.getSessionDatabase(context).getAllFor(recipientId);
+    if (DatabaseFactory.getRecipientDatabase(context).containsPhoneOrUuid(address.getName())) {
+      RecipientId recipientId = Recipient.external(context, address.getName()).getId();
+
+      try (SignalSessionLock.Lock unused = DatabaseSessionLock.INSTANCE.acquire(recipientId)) {
+        List<SessionDatabase.SessionRow> sessions = DatabaseFactory.getSessionDatabase(context).getAllFor(recipientId);
 
         for (SessionDatabase.SessionRow row : sessions) {
           if (row.getDeviceId() != address.getDeviceId()) {
@@ -135,10 +165,9 @@ public class TextSecureSessionStore implements SignalServiceSessionStore {
             storeSession(new SignalProtocolAddress(Recipient.resolved(row.getRecipientId()).requireServiceId(), row.getDeviceId()), row.getRecord());
           }
         }
-
-      } else {
-        Log.w(TAG, "Tried to archive sibling sessions for " + address.toString() + ", but none existed!");
       }
+    } else {
+      Log.w(TAG, "Tried to archive sibling sessions for " + address.toString() + ", but none existed!");
     }
   }
 
@@ -65,6 +65,7 @@ import su.sres.securesms.util.FileUtils;
 import su.sres.securesms.util.JsonUtils;
 import su.sres.securesms.util.MediaUtil;
 import su.sres.securesms.util.SetUtil;
+import su.sres.securesms.util.SqlUtil;
 import su.sres.securesms.util.StorageUtil;
 import su.sres.securesms.video.EncryptedMediaDataSource;
 
@@ -345,6 +346,51 @@ public class AttachmentDatabase extends Database {
         notifyAttachmentListeners();
     }
 
+    /**
+     * Deletes the attachments of a batch of messages. The rows go first, so a file shared between
+     * messages in the batch is seen as unused and removed along with them. Files, and Glide's disk
+     * cache, are only cleared once the surrounding transaction commits. Leaves notifying listeners to
+     * the caller.
+     */
+    void deleteAttachmentsForMessages(@NonNull Collection<Long> mmsIds) {
+        if (mmsIds.isEmpty()) {
+            return;
+        }
+
+        SQLiteDatabase            database     = databaseHelper.getWritableDatabase();
+        SqlUtil.Query             query        = SqlUtil.buildCollectionQuery(MMS_ID, mmsIds);
+        Map<String, AttachmentId> ids          = new HashMap<>();
+        Map<String, String>       contentTypes = new HashMap<>();
+
+        try (Cursor cursor = database.query(TABLE_NAME, new String[]{DATA, CONTENT_TYPE, ROW_ID, UNIQUE_ID}, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+            while (cursor != null && cursor.moveToNext()) {
+                String data = CursorUtil.requireString(cursor, DATA);
+
+                if (data != null && !ids.containsKey(data)) {
+                    contentTypes.put(data, CursorUtil.requireString(cursor, CONTENT_TYPE));
+                    ids.put(data, new AttachmentId(CursorUtil.requireLong(cursor, ROW_ID), CursorUtil.requireLong(cursor, UNIQUE_ID)));
+                }
+            }
+        }
+
+        database.delete(TABLE_NAME, query.getWhere(), query.getWhereArgs());
+
+        database.runPostSuccessfulTransaction(() -> {
+            boolean clearGlideCache = false;
+
+            for (Map.Entry<String, AttachmentId> entry : ids.entrySet()) {
+                String type = contentTypes.get(entry.getKey());
+
+                deleteAttachmentOnDisk(entry.getKey(), null, entry.getValue());
+                clearGlideCache |= MediaUtil.isImageType(type) || MediaUtil.isVideoType(type);
+            }
+
+            if (clearGlideCache) {
+                Glide.get(context).clearDiskCache();
+            }
+        });
+    }
+
     /**
      * Deletes all attachments with an ID of {@link #PREUPLOAD_MESSAGE_ID}. These represent
      * attachments that were pre-uploaded and haven't been assigned to a message. This should only be
@@ -440,13 +486,20 @@ public class AttachmentDatabase extends Database {
         }
     }
 
-    public void trimAllAbandonedAttachments() {
+    /**
+     * Deletes at most {@code limit} attachment rows whose message no longer exists and whose file no
+     * remaining attachment uses. Leaves the files to {@link #deleteAbandonedAttachmentFiles()}.
+     *
+     * @return How many rows were deleted. Fewer than {@code limit} means there are none left.
+     */
+    int trimAbandonedAttachments(int limit) {
         SQLiteDatabase db = databaseHelper.getWritableDatabase();
         String selectAllMmsIds = "SELECT " + MmsDatabase.ID + " FROM " + MmsDatabase.TABLE_NAME;
         String selectDataInUse = "SELECT DISTINCT " + DATA + " FROM " + TABLE_NAME + " WHERE " + QUOTE + " = 0 AND (" + MMS_ID + " IN (" + selectAllMmsIds + ") OR " + MMS_ID + " = " + PREUPLOAD_MESSAGE_ID + ")";
-        String where = MMS_ID + " NOT IN (" + selectAllMmsIds + ") AND " + DATA + " NOT IN (" + selectDataInUse + ")";
+        String abandoned = MMS_ID + " NOT IN (" + selectAllMmsIds + ") AND " + DATA + " NOT IN (" + selectDataInUse + ")";
+        String where = ROW_ID + " IN (SELECT " + ROW_ID + " FROM " + TABLE_NAME + " WHERE " + abandoned + " LIMIT " + limit + ")";
 
-        db.delete(TABLE_NAME, where, null);
+        return db.delete(TABLE_NAME, where, null);
     }
 
     public void deleteAbandonedAttachmentFiles() {
@@ -562,11 +615,42 @@ public class AttachmentDatabase extends Database {
 
     public void insertAttachmentsForPlaceholder(long mmsId, @NonNull AttachmentId attachmentId, @NonNull InputStream inputStream)
             throws MmsException {
+        DataInfo oldInfo = getAttachmentDataFileInfo(attachmentId, DATA);
+        DataInfo dataInfo = setAttachmentData(inputStream, attachmentId);
+
+        completePlaceholder(mmsId, attachmentId, oldInfo, dataInfo, true);
+    }
+
+    /**
+     * Completes a placeholder with the data file of an attachment we already have whose plaintext
+     * has the given hash, without writing anything.
+     *
+     * @param dataHash The hash of the placeholder's plaintext, as produced by {@link #hashData(byte[])}.
+     * @return True if there was a matching file and the placeholder now uses it, otherwise false and
+     * the data must be inserted with {@link #insertAttachmentsForPlaceholder(long, AttachmentId, InputStream)}.
+     */
+    public boolean linkPlaceholderToDuplicate(long mmsId, @NonNull AttachmentId attachmentId, @NonNull String dataHash) {
+        SQLiteDatabase database = databaseHelper.getWritableDatabase();
+        Optional<DataInfo> sharedDataInfo = findDuplicateDataFileInfo(database, dataHash, attachmentId);
+
+        if (!sharedDataInfo.isPresent()) {
+            return false;
+        }
+
+        Log.i(TAG, "[linkPlaceholderToDuplicate] Using existing data file for " + attachmentId + ". " + sharedDataInfo.get().file.getAbsolutePath());
+
+        completePlaceholder(mmsId, attachmentId, getAttachmentDataFileInfo(attachmentId, DATA), sharedDataInfo.get(), false);
+        return true;
+    }
+
+    private void completePlaceholder(long mmsId,
+                                     @NonNull AttachmentId attachmentId,
+                                     @Nullable DataInfo oldInfo,
+                                     @NonNull DataInfo dataInfo,
+                                     boolean deleteDataOnFailure) {
         DatabaseAttachment placeholder = getAttachment(attachmentId);
         SQLiteDatabase database = databaseHelper.getWritableDatabase();
         ContentValues values = new ContentValues();
-        DataInfo oldInfo = getAttachmentDataFileInfo(attachmentId, DATA);
-        DataInfo dataInfo = setAttachmentData(inputStream, attachmentId);
         File transferFile = getTransferFile(databaseHelper.getReadableDatabase(), attachmentId);
 
         if (oldInfo != null) {
@@ -589,9 +673,10 @@ public class AttachmentDatabase extends Database {
         values.put(TRANSFORM_PROPERTIES, TransformProperties.forSkipTransform().serialize());
 
         if (database.update(TABLE_NAME, values, PART_ID_WHERE, attachmentId.toStrings()) == 0) {
-            //noinspection ResultOfMethodCallIgnored
-            dataInfo.file.delete();
-
+            if (deleteDataOnFailure) {
+                //noinspection ResultOfMethodCallIgnored
+                dataInfo.file.delete();
+            }
         } else {
             notifyConversationListeners(DatabaseFactory.getMmsDatabase(context).getThreadIdForMessage(mmsId));
             notifyConversationListListeners();
@@ -1040,6 +1125,18 @@ public class AttachmentDatabase extends Database {
         }
     }
 
+    /**
+     * @return The hash of the plaintext in the same form as {@link #DATA_HASH}.
+     */
+    public static @NonNull
+    String hashData(@NonNull byte[] data) {
+        try {
+            return Base64.encodeBytes(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     public File newFile() throws IOException {
         File partsDirectory = context.getDir(DIRECTORY, Context.MODE_PRIVATE);
         return File.createTempFile("part", ".mms", partsDirectory);
@@ -1075,6 +1172,114 @@ public class AttachmentDatabase extends Database {
         }
     }
 
+    /**
+     * Merges attachments that have identical data but were written to separate files, which happened
+     * whenever two copies of a file were inserted at the same time, and before duplicates were
+     * detected at all. Every row with a given hash is pointed at the file of the oldest row that
+     * still exists, and the files left with no rows are deleted.
+     * <p>
+     * Works through the hashes in order, a batch at a time.
+     *
+     * @param afterHash Where the previous batch left off, or null to start at the beginning.
+     * @return Where this batch left off, or null if there are no more duplicates.
+     */
+    @WorkerThread
+    public @Nullable
+    String deduplicateDataFiles(@Nullable String afterHash, int batchSize) {
+        SQLiteDatabase database = databaseHelper.getWritableDatabase();
+        List<String> hashes = new LinkedList<>();
+        Set<String> replacedFiles = new HashSet<>();
+
+        String query = "SELECT " + DATA_HASH + " FROM " + TABLE_NAME +
+                " WHERE " + DATA_HASH + " > ? AND " + DATA + " NOT NULL" +
+                " GROUP BY " + DATA_HASH +
+                " HAVING COUNT(DISTINCT " + DATA + ") > 1" +
+                " ORDER BY " + DATA_HASH + " ASC" +
+                " LIMIT " + batchSize;
+
+        try (Cursor cursor = database.rawQuery(query, new String[]{afterHash != null ? afterHash : ""})) {
+            while (cursor.moveToNext()) {
+                hashes.add(cursor.getString(0));
+            }
+        }
+
+        if (hashes.isEmpty()) {
+            return null;
+        }
+
+        database.beginTransaction();
+        try {
+            for (String hash : hashes) {
+                replacedFiles.addAll(mergeDataFiles(database, hash));
+            }
+
+            database.runPostSuccessfulTransaction(() -> {
+                int deleted = 0;
+
+                for (String file : replacedFiles) {
+                    if (!isDataFileReferenced(database, file) && new File(file).delete()) {
+                        deleted++;
+                    }
+                }
+
+                Log.i(TAG, "[deduplicateDataFiles] Merged " + hashes.size() + " hash(es), deleted " + deleted + " file(s).");
+            });
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        return hashes.size() < batchSize ? null : hashes.get(hashes.size() - 1);
+    }
+
+    /**
+     * @return The files that rows with this hash no longer use.
+     */
+    private static @NonNull
+    Set<String> mergeDataFiles(@NonNull SQLiteDatabase database, @NonNull String hash) {
+        String query = "SELECT " + DATA + ", " + DATA_RANDOM + ", MIN(" + ROW_ID + ") AS oldest FROM " + TABLE_NAME +
+                " WHERE " + DATA_HASH + " = ? AND " + DATA + " NOT NULL" +
+                " GROUP BY " + DATA +
+                " ORDER BY oldest ASC";
+
+        String canonicalFile = null;
+        byte[] canonicalRandom = null;
+        Set<String> replaced = new HashSet<>();
+
+        try (Cursor cursor = database.rawQuery(query, new String[]{hash})) {
+            while (cursor.moveToNext()) {
+                String file = CursorUtil.requireString(cursor, DATA);
+
+                if (canonicalFile == null && new File(file).exists()) {
+                    canonicalFile = file;
+                    canonicalRandom = CursorUtil.requireBlob(cursor, DATA_RANDOM);
+                } else {
+                    replaced.add(file);
+                }
+            }
+        }
+
+        if (canonicalFile == null) {
+            Log.w(TAG, "[mergeDataFiles] None of the files for a hash exist. Leaving them alone.");
+            return Collections.emptySet();
+        }
+
+        ContentValues values = new ContentValues(2);
+        values.put(DATA, canonicalFile);
+        values.put(DATA_RANDOM, canonicalRandom);
+
+        database.update(TABLE_NAME, values, DATA_HASH + " = ? AND " + DATA + " != ?", new String[]{hash, canonicalFile});
+
+        return replaced;
+    }
+
+    private static boolean isDataFileReferenced(@NonNull SQLiteDatabase database, @NonNull String data) {
+        try (Cursor cursor = database.query(TABLE_NAME, new String[]{ROW_ID}, DATA + " = ?", new String[]{data}, null, null, null, "1")) {
+            return cursor != null && cursor.moveToFirst();
+        }
+    }
+
     private static @NonNull
     Optional<DataInfo> findDuplicateDataFileInfo(@NonNull SQLiteDatabase database,
                                                  @NonNull String hash,
@@ -1087,7 +1292,7 @@ public class AttachmentDatabase extends Database {
                 selectorArgs.second,
                 null,
                 null,
-                null,
+                ROW_ID + " ASC",
                 "1")) {
             if (cursor == null || !cursor.moveToFirst()) return Optional.absent();
 
@@ -1109,10 +1314,10 @@ public class AttachmentDatabase extends Database {
         final String[] selection;
 
         if (attachmentId == null) {
-            selector = DATA_HASH + " = ?";
+            selector = DATA_HASH + " = ? AND " + DATA + " NOT NULL";
             selection = new String[]{newHash};
         } else {
-            selector = PART_ID_WHERE_NOT + " AND " + DATA_HASH + " = ?";
+            selector = PART_ID_WHERE_NOT + " AND " + DATA_HASH + " = ? AND " + DATA + " NOT NULL";
             selection = new String[]{Long.toString(attachmentId.getRowId()),
                     Long.toString(attachmentId.getUniqueId()),
                     newHash};
@@ -1333,6 +1538,53 @@ public class AttachmentDatabase extends Database {
         database.update(TABLE_NAME, values, PART_ID_WHERE, attachmentId.toStrings());
     }
 
+    /**
+     * Writes many wave forms in a single transaction, then notifies attachment listeners so that voice
+     * notes already on screen pick them up. See {@link #writeAudioHash(AttachmentId, AudioWaveFormData)}.
+     */
+    @WorkerThread
+    public void writeAudioHashes(@NonNull Map<AttachmentId, AudioWaveFormData> audioWaveForms) {
+        if (audioWaveForms.isEmpty()) return;
+
+        Log.i(TAG, "updating part audio wave forms for " + audioWaveForms.size() + " attachment(s)");
+
+        SQLiteDatabase database = databaseHelper.getWritableDatabase();
+
+        database.beginTransaction();
+        try {
+            for (Map.Entry<AttachmentId, AudioWaveFormData> entry : audioWaveForms.entrySet()) {
+                ContentValues values = new ContentValues(1);
+                values.put(VISUAL_HASH, new AudioHash(entry.getValue()).getHash());
+
+                database.update(TABLE_NAME, values, PART_ID_WHERE, entry.getKey().toStrings());
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        notifyAttachmentListeners();
+    }
+
+    /**
+     * @return Downloaded voice notes that have never had a wave form generated, newest first.
+     */
+    public @NonNull
+    List<AttachmentId> getVoiceNotesWithoutWaveForm(int limit) {
+        SQLiteDatabase database = databaseHelper.getReadableDatabase();
+        List<AttachmentId> attachmentIds = new LinkedList<>();
+        String selection = VOICE_NOTE + " = 1 AND " + TRANSFER_STATE + " = ? AND " + DATA + " NOT NULL AND " + VISUAL_HASH + " IS NULL";
+        String[] args = SqlUtil.buildArgs(TRANSFER_PROGRESS_DONE);
+
+        try (Cursor cursor = database.query(TABLE_NAME, new String[]{ROW_ID, UNIQUE_ID}, selection, args, null, null, ROW_ID + " DESC", String.valueOf(limit))) {
+            while (cursor != null && cursor.moveToNext()) {
+                attachmentIds.add(new AttachmentId(CursorUtil.requireLong(cursor, ROW_ID), CursorUtil.requireLong(cursor, UNIQUE_ID)));
+            }
+        }
+
+        return attachmentIds;
+    }
+
     @RequiresApi(23)
     public @Nullable
     MediaDataSource mediaDataSourceFor(@NonNull AttachmentId attachmentId) {
@@ -0,0 +1,209 @@
+package su.sres.securesms.database;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * The (date_received, transport, id) key of every message in one conversation, in the order of
+ * {@link MmsSmsDatabase#getConversation(long, long, long)}. Turns a position into a key range that
+ * can be read off the (thread_id, date_received) indexes, and a message into a position, without
+ * scanning or counting the rows in front of it.
+ * <p>
+ * SMS and MMS ids overlap, so the transport is part of the key. Keys are held oldest first, so that
+ * new messages are appended; position 0 is the newest message. Not thread safe.
+ */
+final class ConversationPositionIndex {
+
+    private long[]    dates;
+    private long[]    ids;
+    private boolean[] mms;
+    private int       size;
+
+    private ConversationPositionIndex(int capacity) {
+        this.dates = new long[Math.max(capacity, 16)];
+        this.ids   = new long[dates.length];
+        this.mms   = new boolean[dates.length];
+    }
+
+    /**
+     * @param smsKeys (date_received, id) pairs of the thread's SMS, sorted by date_received then id.
+     * @param mmsKeys (date_received, id) pairs of the thread's MMS, sorted the same way.
+     */
+    static @NonNull ConversationPositionIndex merge(@NonNull long[] smsKeys, int smsCount, @NonNull long[] mmsKeys, int mmsCount) {
+        ConversationPositionIndex index = new ConversationPositionIndex(smsCount + mmsCount);
+
+        int s = 0;
+        int m = 0;
+
+        while (s < smsCount || m < mmsCount) {
+            boolean takeMms = s == smsCount ||
+                              (m < mmsCount && compare(mmsKeys[m * 2], true, mmsKeys[m * 2 + 1], smsKeys[s * 2], false, smsKeys[s * 2 + 1]) < 0);
+
+            if (takeMms) {
+                index.append(mmsKeys[m * 2], true, mmsKeys[m * 2 + 1]);
+                m++;
+            } else {
+                index.append(smsKeys[s * 2], false, smsKeys[s * 2 + 1]);
+                s++;
+            }
+        }
+
+        return index;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getDateReceived(int position) {
+        return dates[toSlot(position)];
+    }
+
+    /**
+     * @return The position of the message, or -1 if it is not in the conversation.
+     */
+    int getPosition(long dateReceived, boolean isMms, long id) {
+        int slot = search(dateReceived, isMms, id);
+        return slot >= 0 ? toPosition(slot) : -1;
+    }
+
+    /**
+     * @return How many messages were received after the timestamp, which is the position of the
+     *         newest message received at or before it.
+     */
+    int countReceivedAfter(long dateReceived) {
+        return size - upperBound(dateReceived);
+    }
+
+    /**
+     * @return How many messages were received at or after the timestamp.
+     */
+    int countReceivedOnOrAfter(long dateReceived) {
+        return size - upperBound(dateReceived - 1);
+    }
+
+    void insert(long dateReceived, boolean isMms, long id) {
+        if (size == 0 || compare(dateReceived, isMms, id, dates[size - 1], mms[size - 1], ids[size - 1]) > 0) {
+            append(dateReceived, isMms, id);
+            return;
+        }
+
+        int slot = search(dateReceived, isMms, id);
+        if (slot >= 0) {
+            return;
+        }
+
+        slot = -(slot + 1);
+        ensureCapacity(size + 1);
+
+        System.arraycopy(dates, slot, dates, slot + 1, size - slot);
+        System.arraycopy(ids, slot, ids, slot + 1, size - slot);
+        System.arraycopy(mms, slot, mms, slot + 1, size - slot);
+
+        dates[slot] = dateReceived;
+        ids[slot]   = id;
+        mms[slot]   = isMms;
+        size++;
+    }
+
+    /**
+     * Removal only knows the message id, so this is a linear scan from the newest end, where most
+     * deletes happen.
+     *
+     * @return True if the message was in the index.
+     */
+    boolean remove(boolean isMms, long id) {
+        for (int slot = size - 1; slot >= 0; slot--) {
+            if (ids[slot] == id && mms[slot] == isMms) {
+                System.arraycopy(dates, slot + 1, dates, slot, size - slot - 1);
+                System.arraycopy(ids, slot + 1, ids, slot, size - slot - 1);
+                System.arraycopy(mms, slot + 1, mms, slot, size - slot - 1);
+                size--;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void append(long dateReceived, boolean isMms, long id) {
+        ensureCapacity(size + 1);
+
+        dates[size] = dateReceived;
+        ids[size]   = id;
+        mms[size]   = isMms;
+        size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > dates.length) {
+            int newLength = Math.max(capacity, dates.length + (dates.length >> 1));
+
+            dates = Arrays.copyOf(dates, newLength);
+            ids   = Arrays.copyOf(ids, newLength);
+            mms   = Arrays.copyOf(mms, newLength);
+        }
+    }
+
+    /**
+     * @return The slot of the key, or (-(insertion slot) - 1) if it is absent.
+     */
+    private int search(long dateReceived, boolean isMms, long id) {
+        int low  = 0;
+        int high = size - 1;
+
+        while (low <= high) {
+            int mid    = (low + high) >>> 1;
+            int result = compare(dates[mid], mms[mid], ids[mid], dateReceived, isMms, id);
+
+            if      (result < 0) low  = mid + 1;
+            else if (result > 0) high = mid - 1;
+            else                 return mid;
+        }
+
+        return -(low + 1);
+    }
+
+    /**
+     * @return The first slot received after the timestamp.
+     */
+    private int upperBound(long dateReceived) {
+        int low  = 0;
+        int high = size;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (dates[mid] <= dateReceived) low  = mid + 1;
+            else                            high = mid;
+        }
+
+        return low;
+    }
+
+    private int toSlot(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+        }
+
+        return size - 1 - position;
+    }
+
+    private int toPosition(int slot) {
+        return size - 1 - slot;
+    }
+
+    /**
+     * Matches "date_received DESC, transport_type DESC, _id DESC" read backwards. 'mms' sorts
+     * before 'sms'.
+     */
+    private static int compare(long lhsDate, boolean lhsMms, long lhsId, long rhsDate, boolean rhsMms, long rhsId) {
+        int result = Long.compare(lhsDate, rhsDate);
+        if (result != 0) return result;
+
+        if (lhsMms != rhsMms) return lhsMms ? -1 : 1;
+
+        return Long.compare(lhsId, rhsId);
+    }
+}
@@ -59,7 +59,14 @@ public abstract class Database {
     context.getContentResolver().notifyChange(DatabaseContentProviders.Conversation.getVerboseUriForThread(threadId), null);
   }
 
+  /**
+   * Also drops the conversation list order held by {@link ThreadDatabase}, once the current
+   * transaction is committed, so that it's read again with whatever changed.
+   */
   protected void notifyConversationListListeners() {
+    ThreadDatabase threadDatabase = DatabaseFactory.getThreadDatabase(context);
+    databaseHelper.getWritableDatabase().runPostSuccessfulTransaction(threadDatabase::resetSummaryIndex);
+
     ApplicationDependencies.getDatabaseObserver().notifyConversationListListeners();
     context.getContentResolver().notifyChange(DatabaseContentProviders.ConversationList.CONTENT_URI, null);
   }
@@ -11,6 +11,7 @@ import org.whispersystems.libsignal.util.Pair;
 
 import su.sres.securesms.database.helpers.SQLCipherOpenHelper;
 import su.sres.securesms.recipients.RecipientId;
+import su.sres.securesms.util.SqlUtil;
 
 import java.util.Collection;
 import java.util.LinkedList;
@@ -116,9 +117,25 @@ public class GroupReceiptDatabase extends Database {
     db.delete(TABLE_NAME, MMS_ID + " = ?", new String[] {String.valueOf(mmsId)});
   }
 
-  void deleteAbandonedRows() {
-    SQLiteDatabase db = databaseHelper.getWritableDatabase();
-    db.delete(TABLE_NAME, MMS_ID + " NOT IN (SELECT " + MmsDatabase.ID + " FROM " + MmsDatabase.TABLE_NAME + ")", null);
+  void deleteRowsForMessages(@NonNull Collection<Long> mmsIds) {
+    if (mmsIds.isEmpty()) {
+      return;
+    }
+
+    SQLiteDatabase db    = databaseHelper.getWritableDatabase();
+    SqlUtil.Query  query = SqlUtil.buildCollectionQuery(MMS_ID, mmsIds);
+
+    db.delete(TABLE_NAME, query.getWhere(), query.getWhereArgs());
+  }
+
+  /**
+   * @return How many rows were deleted, at most {@code limit}.
+   */
+  int deleteAbandonedRows(int limit) {
+    SQLiteDatabase db    = databaseHelper.getWritableDatabase();
+    String         where = ID + " IN (SELECT " + ID + " FROM " + TABLE_NAME + " WHERE " + MMS_ID + " NOT IN (SELECT " + MmsDatabase.ID + " FROM " + MmsDatabase.TABLE_NAME + ") LIMIT " + limit + ")";
+
+    return db.delete(TABLE_NAME, where, null);
   }
 
   void deleteAllRows() {
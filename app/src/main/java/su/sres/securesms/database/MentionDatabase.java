@@ -132,11 +132,31 @@ public class MentionDatabase extends Database {
         db.delete(TABLE_NAME, where, SqlUtil.buildArgs(messageId));
     }
 
-    void deleteAbandonedMentions() {
+    void deleteMentionsForMessages(@NonNull Collection<Long> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+
         SQLiteDatabase db    = databaseHelper.getWritableDatabase();
-        String         where = MESSAGE_ID + " NOT IN (SELECT " + MmsDatabase.ID + " FROM " + MmsDatabase.TABLE_NAME + ") OR " + THREAD_ID + " NOT IN (SELECT " + ThreadDatabase.ID + " FROM " + ThreadDatabase.TABLE_NAME + ")";
+        SqlUtil.Query  query = SqlUtil.buildCollectionQuery(MESSAGE_ID, messageIds);
+
+        db.delete(TABLE_NAME, query.getWhere(), query.getWhereArgs());
+    }
+
+    void deleteAbandonedMentions() {
+        deleteAbandonedMentions(-1);
+    }
+
+    /**
+     * @param limit The most mentions to delete, or -1 for no limit.
+     * @return How many mentions were deleted.
+     */
+    int deleteAbandonedMentions(int limit) {
+        SQLiteDatabase db        = databaseHelper.getWritableDatabase();
+        String         abandoned = MESSAGE_ID + " NOT IN (SELECT " + MmsDatabase.ID + " FROM " + MmsDatabase.TABLE_NAME + ") OR " + THREAD_ID + " NOT IN (SELECT " + ThreadDatabase.ID + " FROM " + ThreadDatabase.TABLE_NAME + ")";
+        String         where     = ID + " IN (SELECT " + ID + " FROM " + TABLE_NAME + " WHERE " + abandoned + " LIMIT " + limit + ")";
 
-        db.delete(TABLE_NAME, where, null);
+        return db.delete(TABLE_NAME, where, null);
     }
 
     void deleteAllMentions() {
@@ -166,11 +166,25 @@ public abstract class MessageDatabase extends Database implements MmsSmsColumns
   public abstract void insertGroupV1MigrationEvents(@NonNull RecipientId recipientId, long threadId, @NonNull GroupMigrationMembershipChange membershipChange);
 
   public abstract boolean deleteMessage(long messageId);
+
+  /**
+   * Deletes the message and everything hanging off it, but leaves bringing its thread up to date
+   * and notifying listeners to the caller, so that a batch of deletes can do so once per thread.
+   *
+   * @return The thread the message was in, or -1 if there was no such message.
+   */
+  abstract long deleteMessageWithoutThreadUpdate(long messageId);
   abstract void deleteThread(long threadId);
-  abstract void deleteMessagesInThreadBeforeDate(long threadId, long date);
+  /**
+   * Deletes at most {@code limit} of the thread's messages received before the given date, and
+   * everything hanging off them, but leaves bringing the thread up to date to the caller.
+   *
+   * @return How many messages were deleted.
+   */
+  abstract int deleteMessagesInThreadBeforeDate(long threadId, long date, int limit);
   abstract void deleteThreads(@NonNull Set<Long> threadIds);
   abstract void deleteAllThreads();
-  abstract void deleteAbandonedMessages();
+  abstract int deleteAbandonedMessages(int limit);
 
   public abstract List<MessageRecord> getMessagesInThreadAfterInclusive(long threadId, long timestamp, long limit);
 
@@ -401,6 +415,39 @@ public abstract class MessageDatabase extends Database implements MmsSmsColumns
     }
   }
 
+  /**
+   * Inserts a message row and adds it to its conversation's position index in
+   * {@link MmsSmsDatabase}. Every message insert should go through here.
+   */
+  protected long insertMessage(@NonNull SQLiteDatabase db, @NonNull ContentValues values) {
+    long messageId = db.insert(getTableName(), null, values);
+
+    if (messageId != -1) {
+      MmsSmsDatabase mmsSmsDatabase = DatabaseFactory.getMmsSmsDatabase(context);
+      Long           threadId       = values.getAsLong(THREAD_ID);
+      Long           dateReceived   = values.getAsLong(getDateReceivedColumnName());
+
+      if (threadId != null && dateReceived != null) {
+        mmsSmsDatabase.onMessageInserted(threadId, isMmsTable(), messageId, dateReceived);
+      } else {
+        mmsSmsDatabase.invalidatePositionIndexes();
+      }
+    }
+
+    return messageId;
+  }
+
+  /**
+   * Removes a deleted message from its conversation's position index in {@link MmsSmsDatabase}.
+   */
+  protected void onMessageDeleted(long threadId, long messageId) {
+    DatabaseFactory.getMmsSmsDatabase(context).onMessageDeleted(threadId, isMmsTable(), messageId);
+  }
+
+  private boolean isMmsTable() {
+    return MmsDatabase.TABLE_NAME.equals(getTableName());
+  }
+
   protected static List<ReactionRecord> parseReactions(@NonNull Cursor cursor) {
     byte[] raw = cursor.getBlob(cursor.getColumnIndexOrThrow(REACTIONS));
 
@@ -1381,7 +1381,7 @@ public class MmsDatabase extends MessageDatabase {
         if (!contentValues.containsKey(DATE_SENT))
             contentValues.put(DATE_SENT, contentValues.getAsLong(DATE_RECEIVED));
 
-        long messageId = db.insert(TABLE_NAME, null, contentValues);
+        long messageId = insertMessage(db, contentValues);
 
         return new Pair<>(messageId, threadId);
     }
@@ -1533,7 +1533,7 @@ public class MmsDatabase extends MessageDatabase {
 
         db.beginTransaction();
         try {
-            long messageId = db.insert(TABLE_NAME, null, contentValues);
+            long messageId = insertMessage(db, contentValues);
 
             mentionDatabase.insert(threadId, messageId, mentions);
 
@@ -1583,6 +1583,16 @@ public class MmsDatabase extends MessageDatabase {
     public boolean deleteMessage(long messageId) {
         Log.d(TAG, "deleteMessage(" + messageId + ")");
 
+        long    threadId      = deleteMessageWithoutThreadUpdate(messageId);
+        boolean threadDeleted = DatabaseFactory.getThreadDatabase(context).update(threadId, false);
+        notifyConversationListeners(threadId);
+        notifyStickerListeners();
+        notifyStickerPackListeners();
+        return threadDeleted;
+    }
+
+    @Override
+    long deleteMessageWithoutThreadUpdate(long messageId) {
         long threadId = getThreadIdForMessage(messageId);
         AttachmentDatabase attachmentDatabase = DatabaseFactory.getAttachmentDatabase(context);
         attachmentDatabase.deleteAttachmentsForMessage(messageId);
@@ -1595,11 +1605,8 @@ public class MmsDatabase extends MessageDatabase {
 
         SQLiteDatabase database = databaseHelper.getWritableDatabase();
         database.delete(TABLE_NAME, ID_WHERE, new String[]{messageId + ""});
-        boolean threadDeleted = DatabaseFactory.getThreadDatabase(context).update(threadId, false);
-        notifyConversationListeners(threadId);
-        notifyStickerListeners();
-        notifyStickerPackListeners();
-        return threadDeleted;
+        onMessageDeleted(threadId, messageId);
+        return threadId;
     }
 
     @Override
@@ -1719,19 +1726,36 @@ public class MmsDatabase extends MessageDatabase {
     }
 
     @Override
-    void deleteMessagesInThreadBeforeDate(long threadId, long date) {
+    int deleteMessagesInThreadBeforeDate(long threadId, long date, int limit) {
         SQLiteDatabase db    = databaseHelper.getWritableDatabase();
         String         where = THREAD_ID + " = ? AND " + DATE_RECEIVED + " < " + date;
+        List<Long>     ids   = new ArrayList<>();
+
+        try (Cursor cursor = db.query(TABLE_NAME, new String[]{ID}, where, SqlUtil.buildArgs(threadId), null, null, null, String.valueOf(limit))) {
+            while (cursor != null && cursor.moveToNext()) {
+                ids.add(CursorUtil.requireLong(cursor, ID));
+            }
+        }
+
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        DatabaseFactory.getAttachmentDatabase(context).deleteAttachmentsForMessages(ids);
+        DatabaseFactory.getGroupReceiptDatabase(context).deleteRowsForMessages(ids);
+        DatabaseFactory.getMentionDatabase(context).deleteMentionsForMessages(ids);
+
+        SqlUtil.Query query = SqlUtil.buildCollectionQuery(ID, ids);
 
-        db.delete(TABLE_NAME, where, SqlUtil.buildArgs(threadId));
+        return db.delete(TABLE_NAME, query.getWhere(), query.getWhereArgs());
     }
 
     @Override
-    void deleteAbandonedMessages() {
+    int deleteAbandonedMessages(int limit) {
         SQLiteDatabase db    = databaseHelper.getWritableDatabase();
-        String         where = THREAD_ID + " NOT IN (SELECT _id FROM " + ThreadDatabase.TABLE_NAME + ")";
+        String         where = ID + " IN (SELECT " + ID + " FROM " + TABLE_NAME + " WHERE " + THREAD_ID + " NOT IN (SELECT _id FROM " + ThreadDatabase.TABLE_NAME + ") LIMIT " + limit + ")";
 
-        db.delete(TABLE_NAME, where, null);
+        return db.delete(TABLE_NAME, where, null);
     }
 
     @Override
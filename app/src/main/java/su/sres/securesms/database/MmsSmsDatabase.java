@@ -34,6 +34,8 @@ import su.sres.core.util.logging.Log;
 import su.sres.securesms.recipients.Recipient;
 import su.sres.securesms.recipients.RecipientId;
 import su.sres.securesms.util.CursorUtil;
+import su.sres.securesms.util.LRUCache;
+import su.sres.securesms.util.SqlUtil;
 
 import org.whispersystems.libsignal.util.Pair;
 
@@ -102,6 +104,17 @@ public class MmsSmsDatabase extends Database {
             MmsSmsColumns.NOTIFIED_TIMESTAMP,
             MmsSmsColumns.VIEWED_RECEIPT_COUNT};
 
+    private static final String CONVERSATION_ORDER = MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC, " + TRANSPORT + " DESC, " + MmsSmsColumns.ID + " DESC";
+
+    private static final int POSITION_INDEX_CACHE_SIZE = 4;
+
+    /** Pages starting before this are read with a plain OFFSET, which is cheap that close to the start. */
+    private static final int UNINDEXED_OFFSET_LIMIT = 500;
+
+    private final LRUCache<Long, ConversationPositionIndex> positionIndexes = new LRUCache<>(POSITION_INDEX_CACHE_SIZE);
+
+    private long positionIndexGeneration;
+
     public MmsSmsDatabase(Context context, SQLCipherOpenHelper databaseHelper) {
         super(context, databaseHelper);
     }
@@ -136,15 +149,11 @@ public class MmsSmsDatabase extends Database {
     }
 
     public int getMessagePositionOnOrAfterTimestamp(long threadId, long timestamp) {
-        String[] projection = new String[] { "COUNT(*)" };
-        String   selection  = MmsSmsColumns.THREAD_ID + " = " + threadId + " AND " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " >= " + timestamp;
+        ConversationPositionIndex index = getPositionIndex(threadId);
 
-        try (Cursor cursor = queryTables(projection, selection, null, null)) {
-            if (cursor != null && cursor.moveToNext()) {
-                return cursor.getInt(0);
-            }
+        synchronized (positionIndexes) {
+            return index.countReceivedOnOrAfter(timestamp);
         }
-        return 0;
     }
 
     public @Nullable
@@ -178,12 +187,34 @@ public class MmsSmsDatabase extends Database {
         return Stream.of(mms).limit(limit).toList();
     }
 
+    /**
+     * A deep page is read as a (date_received) key range taken from the thread's position index, so it
+     * costs the same at any depth. Only the few messages that share the newest timestamp of the page
+     * with messages on the page before it are skipped with an OFFSET. Pages near the start use the
+     * index only if it is already cached, so opening a conversation never waits for it to be built.
+     */
     public Cursor getConversation(long threadId, long offset, long limit) {
-        String order = MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC";
         String selection = MmsSmsColumns.THREAD_ID + " = " + threadId;
-        String limitStr = limit > 0 || offset > 0 ? offset + ", " + limit : null;
+        String limitStr  = limit > 0 || offset > 0 ? offset + ", " + limit : null;
+
+        if (limit > 0) {
+            ConversationPositionIndex index = offset < UNINDEXED_OFFSET_LIMIT ? getCachedPositionIndex(threadId) : getPositionIndex(threadId);
+
+            synchronized (positionIndexes) {
+                if (index != null && offset < index.size()) {
+                    int  first  = (int) offset;
+                    int  last   = (int) Math.min(offset + limit, index.size()) - 1;
+                    long newest = index.getDateReceived(first);
+                    long oldest = index.getDateReceived(last);
+
+                    selection += " AND " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " <= " + newest +
+                                 " AND " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " >= " + oldest;
+                    limitStr   = (first - index.countReceivedAfter(newest)) + ", " + limit;
+                }
+            }
+        }
 
-        Cursor cursor = queryTables(PROJECTION, selection, order, limitStr);
+        Cursor cursor = queryTables(PROJECTION, selection, CONVERSATION_ORDER, limitStr);
         setNotifyConversationListeners(cursor, threadId);
 
         return cursor;
@@ -264,6 +295,15 @@ public class MmsSmsDatabase extends Database {
         int count = DatabaseFactory.getSmsDatabase(context).getMessageCountForThread(threadId);
         count += DatabaseFactory.getMmsDatabase(context).getMessageCountForThread(threadId);
 
+        synchronized (positionIndexes) {
+            ConversationPositionIndex index = positionIndexes.get(threadId);
+
+            if (index != null && index.size() != count) {
+                Log.w(TAG, "Position index for thread " + threadId + " has " + index.size() + " messages, expected " + count + ". Dropping it.");
+                positionIndexes.remove(threadId);
+            }
+        }
+
         return count;
     }
 
@@ -419,44 +459,44 @@ public class MmsSmsDatabase extends Database {
     }
 
     public int getQuotedMessagePosition(long threadId, long quoteId, @NonNull RecipientId recipientId) {
-        String order = MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC";
-        String selection = MmsSmsColumns.THREAD_ID + " = " + threadId;
+        String selection = MmsSmsColumns.THREAD_ID + " = " + threadId + " AND " + MmsSmsColumns.NORMALIZED_DATE_SENT + " = " + quoteId;
 
-        try (Cursor cursor = queryTables(new String[]{ MmsSmsColumns.NORMALIZED_DATE_SENT, MmsSmsColumns.RECIPIENT_ID, MmsSmsColumns.REMOTE_DELETED}, selection, order, null)) {
-            boolean isOwnNumber = Recipient.resolved(recipientId).isSelf();
+        return getMatchingMessagePosition(threadId, selection, recipientId);
+    }
 
-            while (cursor != null && cursor.moveToNext()) {
-                boolean quoteIdMatches = cursor.getLong(0) == quoteId;
-                boolean recipientIdMatches = recipientId.equals(RecipientId.from(cursor.getLong(1)));
+    public int getMessagePositionInConversation(long threadId, long receivedTimestamp, @NonNull RecipientId recipientId) {
+        String selection = MmsSmsColumns.THREAD_ID + " = " + threadId + " AND " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " = " + receivedTimestamp;
 
-                if (quoteIdMatches && (recipientIdMatches || isOwnNumber)) {
-                    if (CursorUtil.requireBoolean(cursor, MmsSmsColumns.REMOTE_DELETED)) {
-                        return -1;
-                    } else {
-                        return cursor.getPosition();
-                    }
-                }
-            }
-        }
-        return -1;
+        return getMatchingMessagePosition(threadId, selection, recipientId);
     }
 
-    public int getMessagePositionInConversation(long threadId, long receivedTimestamp, @NonNull RecipientId recipientId) {
-        String order = MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC";
-        String selection = MmsSmsColumns.THREAD_ID + " = " + threadId;
+    /**
+     * Finds the newest message matching the selection that is from the recipient (or any message, if
+     * the recipient is us) and looks its position up in the thread's position index.
+     *
+     * @return The position, or -1 if there is no match or the match was remotely deleted.
+     */
+    private int getMatchingMessagePosition(long threadId, @NonNull String selection, @NonNull RecipientId recipientId) {
+        String[] projection = new String[]{ MmsSmsColumns.NORMALIZED_DATE_RECEIVED, TRANSPORT, MmsSmsColumns.ID, MmsSmsColumns.RECIPIENT_ID, MmsSmsColumns.REMOTE_DELETED };
 
-        try (Cursor cursor = queryTables(new String[]{ MmsSmsColumns.NORMALIZED_DATE_RECEIVED, MmsSmsColumns.RECIPIENT_ID, MmsSmsColumns.REMOTE_DELETED}, selection, order, null)) {
+        try (Cursor cursor = queryTables(projection, selection, CONVERSATION_ORDER, null)) {
             boolean isOwnNumber = Recipient.resolved(recipientId).isSelf();
 
             while (cursor != null && cursor.moveToNext()) {
-                boolean timestampMatches = cursor.getLong(0) == receivedTimestamp;
-                boolean recipientIdMatches = recipientId.equals(RecipientId.from(cursor.getLong(1)));
+                boolean recipientIdMatches = recipientId.equals(RecipientId.from(CursorUtil.requireLong(cursor, MmsSmsColumns.RECIPIENT_ID)));
 
-                if (timestampMatches && (recipientIdMatches || isOwnNumber)) {
+                if (recipientIdMatches || isOwnNumber) {
                     if (CursorUtil.requireBoolean(cursor, MmsSmsColumns.REMOTE_DELETED)) {
                         return -1;
-                    } else {
-                        return cursor.getPosition();
+                    }
+
+                    long                      dateReceived = CursorUtil.requireLong(cursor, MmsSmsColumns.NORMALIZED_DATE_RECEIVED);
+                    boolean                   isMms        = MMS_TRANSPORT.equals(CursorUtil.requireString(cursor, TRANSPORT));
+                    long                      id           = CursorUtil.requireLong(cursor, MmsSmsColumns.ID);
+                    ConversationPositionIndex index        = getPositionIndex(threadId);
+
+                    synchronized (positionIndexes) {
+                        return index.getPosition(dateReceived, isMms, id);
                     }
                 }
             }
@@ -477,16 +517,11 @@ public class MmsSmsDatabase extends Database {
      * you'll still wind up in about the right spot.
      */
     public int getMessagePositionInConversation(long threadId, long receivedTimestamp) {
-        String order = MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC";
-        String selection = MmsSmsColumns.THREAD_ID + " = " + threadId + " AND " +
-                MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " > " + receivedTimestamp;
+        ConversationPositionIndex index = getPositionIndex(threadId);
 
-        try (Cursor cursor = queryTables(new String[]{"COUNT(*)"}, selection, order, null)) {
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursor.getInt(0);
-            }
+        synchronized (positionIndexes) {
+            return index.countReceivedAfter(receivedTimestamp);
         }
-        return -1;
     }
 
     public long getTimestampForFirstMessageAfterDate(long date) {
@@ -507,18 +542,236 @@ public class MmsSmsDatabase extends Database {
         DatabaseFactory.getMmsDatabase(context).setNotifiedTimestamp(timestamp, mmsIds);
     }
 
-    public void deleteMessagesInThreadBeforeDate(long threadId, long trimBeforeDate) {
-        Log.d(TAG, "deleteMessagesInThreadBeforeData(" + threadId + ", " + trimBeforeDate + ")");
+    /**
+     * Deletes at most {@code limit} of the thread's messages received before the given date, SMS
+     * first. The thread itself is left for the caller to bring up to date.
+     *
+     * @return How many messages were deleted. Fewer than {@code limit} means there are none left.
+     */
+    int deleteMessagesInThreadBeforeDate(long threadId, long trimBeforeDate, int limit) {
+        int deleted = DatabaseFactory.getSmsDatabase(context).deleteMessagesInThreadBeforeDate(threadId, trimBeforeDate, limit);
+
+        if (deleted < limit) {
+            deleted += DatabaseFactory.getMmsDatabase(context).deleteMessagesInThreadBeforeDate(threadId, trimBeforeDate, limit - deleted);
+        }
+
+        if (deleted > 0) {
+            invalidatePositionIndex(threadId);
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Deletes at most {@code limit} messages whose thread no longer exists, SMS first.
+     *
+     * @return How many messages were deleted. Fewer than {@code limit} means there are none left.
+     */
+    int deleteAbandonedMessages(int limit) {
+        int deleted = DatabaseFactory.getSmsDatabase(context).deleteAbandonedMessages(limit);
+
+        if (deleted < limit) {
+            deleted += DatabaseFactory.getMmsDatabase(context).deleteAbandonedMessages(limit - deleted);
+        }
+
+        if (deleted > 0) {
+            Log.d(TAG, "deleteAbandonedMessages(): " + deleted);
+            invalidatePositionIndexes();
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Deletes a batch of messages in one transaction. Each thread they were in is brought up to
+     * date once, rather than once per message as {@link MessageDatabase#deleteMessage(long)} would.
+     */
+    public void deleteMessages(@NonNull Collection<Long> smsIds, @NonNull Collection<Long> mmsIds) {
+        Log.d(TAG, "deleteMessages(" + smsIds.size() + " sms, " + mmsIds.size() + " mms)");
+
+        MessageDatabase smsDatabase    = DatabaseFactory.getSmsDatabase(context);
+        MessageDatabase mmsDatabase    = DatabaseFactory.getMmsDatabase(context);
+        ThreadDatabase  threadDatabase = DatabaseFactory.getThreadDatabase(context);
+        SQLiteDatabase  db             = databaseHelper.getWritableDatabase();
+        Set<Long>       threadIds      = new HashSet<>();
+
+        db.beginTransaction();
+        try {
+            for (long id : smsIds) {
+                threadIds.add(smsDatabase.deleteMessageWithoutThreadUpdate(id));
+            }
+
+            for (long id : mmsIds) {
+                threadIds.add(mmsDatabase.deleteMessageWithoutThreadUpdate(id));
+            }
+
+            threadIds.remove(-1L);
+
+            for (long threadId : threadIds) {
+                threadDatabase.update(threadId, false);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        notifyConversationListeners(threadIds);
+
+        if (!mmsIds.isEmpty()) {
+            notifyStickerListeners();
+            notifyStickerPackListeners();
+        }
+    }
+
+    /**
+     * Called by {@link MessageDatabase} for every message row it inserts, so that a cached position
+     * index stays current without being rebuilt. Like the other changes to the cache, it is applied
+     * once the writer's transaction is committed, and dropped if it is rolled back.
+     */
+    void onMessageInserted(long threadId, boolean isMms, long messageId, long dateReceived) {
+        databaseHelper.getWritableDatabase().runPostSuccessfulTransaction(() -> {
+            synchronized (positionIndexes) {
+                positionIndexGeneration++;
+
+                ConversationPositionIndex index = positionIndexes.get(threadId);
+                if (index != null) {
+                    index.insert(dateReceived, isMms, messageId);
+                }
+            }
+        });
+    }
+
+    void onMessageDeleted(long threadId, boolean isMms, long messageId) {
+        databaseHelper.getWritableDatabase().runPostSuccessfulTransaction(() -> {
+            synchronized (positionIndexes) {
+                positionIndexGeneration++;
 
-        DatabaseFactory.getSmsDatabase(context).deleteMessagesInThreadBeforeDate(threadId, trimBeforeDate);
-        DatabaseFactory.getMmsDatabase(context).deleteMessagesInThreadBeforeDate(threadId, trimBeforeDate);
+                ConversationPositionIndex index = positionIndexes.get(threadId);
+                if (index != null && !index.remove(isMms, messageId)) {
+                    positionIndexes.remove(threadId);
+                }
+            }
+        });
+    }
+
+    /**
+     * For changes to a thread's messages that are not single inserts or deletes, e.g. a trim or a
+     * thread merge.
+     */
+    void invalidatePositionIndex(long threadId) {
+        databaseHelper.getWritableDatabase().runPostSuccessfulTransaction(() -> {
+            synchronized (positionIndexes) {
+                positionIndexGeneration++;
+                positionIndexes.remove(threadId);
+            }
+        });
     }
 
-    public void deleteAbandonedMessages() {
-        Log.d(TAG, "deleteAbandonedMessages()");
+    void invalidatePositionIndexes() {
+        databaseHelper.getWritableDatabase().runPostSuccessfulTransaction(this::clearPositionIndexes);
+    }
+
+    private void clearPositionIndexes() {
+        synchronized (positionIndexes) {
+            positionIndexGeneration++;
+            positionIndexes.clear();
+        }
+    }
+
+    @Override
+    public void reset(SQLCipherOpenHelper databaseHelper) {
+        super.reset(databaseHelper);
+        clearPositionIndexes();
+    }
+
+    private @Nullable ConversationPositionIndex getCachedPositionIndex(long threadId) {
+        synchronized (positionIndexes) {
+            return positionIndexes.get(threadId);
+        }
+    }
+
+    /**
+     * The returned index may be shared with the cache, so read it while synchronized on
+     * {@link #positionIndexes}.
+     * <p>
+     * The index is built without holding that lock. If the cache was changed while it was being
+     * built, it is used for this call but not cached. Nor is one built inside a transaction, as it
+     * may hold that transaction's uncommitted changes.
+     */
+    private @NonNull ConversationPositionIndex getPositionIndex(long threadId) {
+        long generation;
+
+        synchronized (positionIndexes) {
+            ConversationPositionIndex index = positionIndexes.get(threadId);
+            if (index != null) {
+                return index;
+            }
+
+            generation = positionIndexGeneration;
+        }
+
+        ConversationPositionIndex index         = buildPositionIndex(threadId);
+        boolean                   inTransaction = databaseHelper.getWritableDatabase().inTransaction();
+
+        synchronized (positionIndexes) {
+            if (generation == positionIndexGeneration && !inTransaction) {
+                positionIndexes.put(threadId, index);
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Reads the keys straight off the (thread_id, date_received) indexes, without the attachment join
+     * that {@link #queryTables(String[], String, String, String)} does for MMS.
+     */
+    private @NonNull ConversationPositionIndex buildPositionIndex(long threadId) {
+        SQLiteDatabase db        = databaseHelper.getReadableDatabase();
+        String[]       args      = SqlUtil.buildArgs(threadId);
+        long[]         smsKeys;
+        long[]         mmsKeys;
+        int            smsCount;
+        int            mmsCount;
+
+        try (Cursor cursor = db.query(SmsDatabase.TABLE_NAME,
+                                      new String[] { SmsDatabase.DATE_RECEIVED, SmsDatabase.ID },
+                                      SmsDatabase.THREAD_ID + " = ?",
+                                      args,
+                                      null,
+                                      null,
+                                      SmsDatabase.DATE_RECEIVED + " ASC, " + SmsDatabase.ID + " ASC"))
+        {
+            smsCount = cursor.getCount();
+            smsKeys  = readKeys(cursor);
+        }
+
+        try (Cursor cursor = db.query(MmsDatabase.TABLE_NAME,
+                                      new String[] { MmsDatabase.DATE_RECEIVED, MmsDatabase.ID },
+                                      MmsDatabase.THREAD_ID + " = ?",
+                                      args,
+                                      null,
+                                      null,
+                                      MmsDatabase.DATE_RECEIVED + " ASC, " + MmsDatabase.ID + " ASC"))
+        {
+            mmsCount = cursor.getCount();
+            mmsKeys  = readKeys(cursor);
+        }
+
+        return ConversationPositionIndex.merge(smsKeys, smsCount, mmsKeys, mmsCount);
+    }
+
+    private static @NonNull long[] readKeys(@NonNull Cursor cursor) {
+        long[] keys = new long[cursor.getCount() * 2];
+        int    i    = 0;
+
+        while (cursor.moveToNext() && i < keys.length) {
+            keys[i++] = cursor.getLong(0);
+            keys[i++] = cursor.getLong(1);
+        }
 
-        DatabaseFactory.getSmsDatabase(context).deleteAbandonedMessages();
-        DatabaseFactory.getMmsDatabase(context).deleteAbandonedMessages();
+        return keys;
     }
 
     private Cursor queryTables(String[] projection, String selection, String order, String limit) {
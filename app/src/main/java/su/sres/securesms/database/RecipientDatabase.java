@@ -590,6 +590,34 @@ public class RecipientDatabase extends Database {
     return getOrInsertByColumn(PHONE, userLogin).recipientId;
   }
 
+  /**
+   * Bulk version of {@link #getOrInsertFromUserLogin(String)}. Looks up existing recipients a chunk
+   * at a time and inserts the rest in a single transaction.
+   */
+  public @NonNull Map<String, RecipientId> getOrInsertFromUserLogins(@NonNull Collection<String> userLogins) {
+    return getOrInsertByColumn(PHONE, userLogins);
+  }
+
+  /**
+   * Bulk version of {@link #getOrInsertFromUuid(UUID)}.
+   */
+  public @NonNull Map<UUID, RecipientId> getOrInsertFromUuids(@NonNull Collection<UUID> uuids) {
+    Map<String, UUID> byString = new HashMap<>(uuids.size());
+
+    for (UUID uuid : uuids) {
+      byString.put(uuid.toString(), uuid);
+    }
+
+    Map<String, RecipientId> ids     = getOrInsertByColumn(UUID, byString.keySet());
+    Map<UUID, RecipientId>   results = new HashMap<>(ids.size());
+
+    for (Map.Entry<String, RecipientId> entry : ids.entrySet()) {
+      results.put(byString.get(entry.getKey()), entry.getValue());
+    }
+
+    return results;
+  }
+
   public @NonNull RecipientId getOrInsertFromEmail(@NonNull String email) {
     return getOrInsertByColumn(EMAIL, email).recipientId;
   }
@@ -726,6 +754,31 @@ public class RecipientDatabase extends Database {
     }
   }
 
+  /**
+   * Loads many recipients with one query per {@link SqlUtil#MAX_QUERY_ARGS} ids. Ids that have no
+   * row are left out of the result.
+   */
+  public @NonNull Map<RecipientId, RecipientSettings> getRecipientSettings(@NonNull Collection<RecipientId> ids) {
+    Map<RecipientId, RecipientSettings> results = new HashMap<>(ids.size());
+
+    if (ids.isEmpty()) {
+      return results;
+    }
+
+    SQLiteDatabase database = databaseHelper.getReadableDatabase();
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQuery(ID, new LinkedHashSet<>(ids), SqlUtil.MAX_QUERY_ARGS)) {
+      try (Cursor cursor = database.query(TABLE_NAME, RECIPIENT_PROJECTION, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          RecipientSettings settings = getRecipientSettings(context, cursor);
+          results.put(settings.getId(), settings);
+        }
+      }
+    }
+
+    return results;
+  }
+
   public @NonNull DirtyState getDirtyState(@NonNull RecipientId recipientId) {
     SQLiteDatabase db = databaseHelper.getReadableDatabase();
 
@@ -1738,11 +1791,15 @@ public class RecipientDatabase extends Database {
 
     Log.i(TAG, String.format(Locale.US, "Persisting %d Profile keys, %d of which are authoritative", totalKeys, authoritativeProfileKeys.size()));
 
-    HashSet<RecipientId> updated = new HashSet<>(totalKeys);
-    RecipientId          selfId  = Recipient.self().getId();
+    Set<UUID> uuids = new HashSet<>(profileKeys.keySet());
+    uuids.addAll(authoritativeProfileKeys.keySet());
+
+    Map<UUID, RecipientId> recipientIds = getOrInsertFromUuids(uuids);
+    HashSet<RecipientId>   updated      = new HashSet<>(totalKeys);
+    RecipientId            selfId       = Recipient.self().getId();
 
     for (Map.Entry<UUID, ProfileKey> entry : profileKeys.entrySet()) {
-      RecipientId recipientId = getOrInsertFromUuid(entry.getKey());
+      RecipientId recipientId = recipientIds.get(entry.getKey());
 
       if (setProfileKeyIfAbsent(recipientId, entry.getValue())) {
         Log.i(TAG, "Learned new profile key");
@@ -1751,7 +1808,7 @@ public class RecipientDatabase extends Database {
     }
 
     for (Map.Entry<UUID, ProfileKey> entry : authoritativeProfileKeys.entrySet()) {
-      RecipientId recipientId = getOrInsertFromUuid(entry.getKey());
+      RecipientId recipientId = recipientIds.get(entry.getKey());
 
       if (selfId.equals(recipientId)) {
         Log.i(TAG, "Seen authoritative update for self");
@@ -2664,6 +2721,21 @@ public class RecipientDatabase extends Database {
     }
   }
 
+  private @NonNull Map<String, RecipientId> getByColumn(@NonNull String column, @NonNull Collection<String> values) {
+    SQLiteDatabase           db      = databaseHelper.getWritableDatabase();
+    Map<String, RecipientId> results = new HashMap<>(values.size());
+
+    for (SqlUtil.Query query : SqlUtil.buildCollectionQuery(column, values, SqlUtil.MAX_QUERY_ARGS)) {
+      try (Cursor cursor = db.query(TABLE_NAME, new String[] { ID, column }, query.getWhere(), query.getWhereArgs(), null, null, null)) {
+        while (cursor != null && cursor.moveToNext()) {
+          results.put(CursorUtil.requireString(cursor, column), RecipientId.from(CursorUtil.requireLong(cursor, ID)));
+        }
+      }
+    }
+
+    return results;
+  }
+
   // this one is hard removal and should not be used, otherwise there are problems with old chats
   public int removeByUserLogin(String value) {
       SQLiteDatabase db    = databaseHelper.getWritableDatabase();
@@ -2673,6 +2745,59 @@ public class RecipientDatabase extends Database {
       return db.delete(TABLE_NAME, whereClause, args);
   }
 
+  private @NonNull Map<String, RecipientId> getOrInsertByColumn(@NonNull String column, @NonNull Collection<String> values) {
+    if (values.isEmpty()) {
+      return new HashMap<>();
+    }
+
+    for (String value : values) {
+      if (TextUtils.isEmpty(value)) {
+        throw new AssertionError(column + " cannot be empty.");
+      }
+    }
+
+    Set<String>              unique  = new LinkedHashSet<>(values);
+    Map<String, RecipientId> results = getByColumn(column, unique);
+
+    if (results.size() == unique.size()) {
+      return results;
+    }
+
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      for (String value : unique) {
+        if (results.containsKey(value)) {
+          continue;
+        }
+
+        ContentValues contentValues = new ContentValues(1);
+        contentValues.put(column, value);
+
+        long id = db.insert(TABLE_NAME, null, contentValues);
+
+        if (id < 0) {
+          Optional<RecipientId> existing = getByColumn(column, value);
+
+          if (existing.isPresent()) {
+            results.put(value, existing.get());
+          } else {
+            throw new AssertionError("Failed to insert recipient!");
+          }
+        } else {
+          results.put(value, RecipientId.from(id));
+        }
+      }
+
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    return results;
+  }
+
   private @NonNull GetOrInsertResult getOrInsertByColumn(@NonNull String column, String value) {
     if (TextUtils.isEmpty(value)) {
       throw new AssertionError(column + " cannot be empty.");
@@ -2797,6 +2922,11 @@ public class RecipientDatabase extends Database {
     }
     db.update(MmsDatabase.TABLE_NAME, mmsValues, MmsDatabase.RECIPIENT_ID + " = ?", SqlUtil.buildArgs(byE164));
 
+    if (threadMerge.neededMerge) {
+      DatabaseFactory.getMmsSmsDatabase(context).invalidatePositionIndex(threadMerge.threadId);
+      DatabaseFactory.getMmsSmsDatabase(context).invalidatePositionIndex(threadMerge.previousThreadId);
+    }
+
     // Sessions
     boolean hasE164Session = DatabaseFactory.getSessionDatabase(context).getAllFor(byE164).size() > 0;
     boolean hasUuidSession = DatabaseFactory.getSessionDatabase(context).getAllFor(byUuid).size() > 0;
@@ -2,13 +2,18 @@ package su.sres.securesms.database;
 
 import android.content.ContentValues;
 
+import androidx.annotation.NonNull;
+
 import net.sqlcipher.Cursor;
 import net.sqlcipher.SQLException;
 import net.sqlcipher.database.SQLiteQueryStats;
 import net.sqlcipher.database.SQLiteStatement;
 import net.sqlcipher.database.SQLiteTransactionListener;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -33,6 +38,12 @@ public class SQLiteDatabase {
     private static final String KEY_THREAD = "thread";
     private static final String NAME_LOCK  = "LOCK";
 
+    /**
+     * Wrappers are created per call to get a database, so the state of a thread's transaction has
+     * to live outside of them.
+     */
+    private static final ThreadLocal<TransactionState> TRANSACTION_STATE = new ThreadLocal<>();
+
     private final net.sqlcipher.database.SQLiteDatabase wrapped;
     private final Tracer tracer;
 
@@ -105,6 +116,76 @@ public class SQLiteDatabase {
         E run();
     }
 
+    /**
+     * Runs the task once the transaction the current thread is in has been committed, or right away
+     * if it isn't in one. Dropped if the transaction is rolled back. Use it for work that shouldn't
+     * happen while the database is locked, or that only makes sense once the changes are visible to
+     * other threads.
+     */
+    public void runPostSuccessfulTransaction(@NonNull Runnable task) {
+        TransactionState state = TRANSACTION_STATE.get();
+
+        if (state == null) {
+            task.run();
+        } else {
+            state.postSuccessfulTasks.add(task);
+        }
+    }
+
+    private static void onTransactionStarted() {
+        TransactionState state = TRANSACTION_STATE.get();
+
+        if (state == null) {
+            state = new TransactionState();
+            TRANSACTION_STATE.set(state);
+        }
+
+        state.depth++;
+        state.successful.clear(state.depth);
+    }
+
+    private static void onTransactionSuccessful() {
+        TransactionState state = TRANSACTION_STATE.get();
+
+        if (state != null) {
+            state.successful.set(state.depth);
+        }
+    }
+
+    private static void onTransactionEnded(boolean ended) {
+        TransactionState state = TRANSACTION_STATE.get();
+
+        if (state == null) {
+            return;
+        }
+
+        if (!ended || !state.successful.get(state.depth)) {
+            state.failed = true;
+        }
+
+        state.depth--;
+
+        if (state.depth > 0) {
+            return;
+        }
+
+        TRANSACTION_STATE.remove();
+
+        if (!state.failed) {
+            for (Runnable task : state.postSuccessfulTasks) {
+                task.run();
+            }
+        }
+    }
+
+    private static final class TransactionState {
+        private final BitSet         successful          = new BitSet();
+        private final List<Runnable> postSuccessfulTasks = new ArrayList<>();
+
+        private int     depth;
+        private boolean failed;
+    }
+
 
     // =======================================================
     // Traced
@@ -113,15 +194,24 @@ public class SQLiteDatabase {
     public void beginTransaction() {
         traceLockStart();
         trace("beginTransaction()", wrapped::beginTransaction);
+        onTransactionStarted();
     }
 
     public void endTransaction() {
-        trace("endTransaction()", wrapped::endTransaction);
-        traceLockEnd();
+        boolean ended = false;
+
+        try {
+            trace("endTransaction()", wrapped::endTransaction);
+            ended = true;
+        } finally {
+            traceLockEnd();
+            onTransactionEnded(ended);
+        }
     }
 
     public void setTransactionSuccessful() {
         trace("setTransactionSuccessful()", wrapped::setTransactionSuccessful);
+        onTransactionSuccessful();
     }
 
     public Cursor query(boolean distinct, String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
@@ -223,14 +313,17 @@ public class SQLiteDatabase {
 
     public void beginTransactionWithListener(SQLiteTransactionListener transactionListener) {
         wrapped.beginTransactionWithListener(transactionListener);
+        onTransactionStarted();
     }
 
     public void beginTransactionNonExclusive() {
         wrapped.beginTransactionNonExclusive();
+        onTransactionStarted();
     }
 
     public void beginTransactionWithListenerNonExclusive(SQLiteTransactionListener transactionListener) {
         wrapped.beginTransactionWithListenerNonExclusive(transactionListener);
+        onTransactionStarted();
     }
 
     public boolean inTransaction() {
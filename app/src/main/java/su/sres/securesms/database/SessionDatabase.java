@@ -19,6 +19,7 @@ import su.sres.signalservice.api.push.SignalServiceAddress;
 import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 public class SessionDatabase extends Database {
 
@@ -51,6 +52,23 @@ public class SessionDatabase extends Database {
     database.insertWithOnConflict(TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
   }
 
+  /**
+   * Stores the sessions of several of a recipient's devices in one transaction.
+   */
+  public void store(@NonNull RecipientId recipientId, @NonNull Map<Integer, SessionRecord> records) {
+    SQLiteDatabase database = databaseHelper.getWritableDatabase();
+
+    database.beginTransaction();
+    try {
+      for (Map.Entry<Integer, SessionRecord> entry : records.entrySet()) {
+        store(recipientId, entry.getKey(), entry.getValue());
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+  }
+
   public @Nullable SessionRecord load(@NonNull RecipientId recipientId, int deviceId) {
     SQLiteDatabase database = databaseHelper.getReadableDatabase();
 
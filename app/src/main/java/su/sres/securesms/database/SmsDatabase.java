@@ -726,7 +726,7 @@ public class SmsDatabase extends MessageDatabase {
                 values.put(TYPE, Types.GROUP_CALL_TYPE);
                 values.put(THREAD_ID, threadId);
 
-                db.insert(TABLE_NAME, null, values);
+                insertMessage(db, values);
 
                 DatabaseFactory.getThreadDatabase(context).incrementUnread(threadId, 1);
             }
@@ -803,7 +803,7 @@ public class SmsDatabase extends MessageDatabase {
                 values.put(TYPE, Types.GROUP_CALL_TYPE);
                 values.put(THREAD_ID, threadId);
 
-                db.insert(TABLE_NAME, null, values);
+                insertMessage(db, values);
 
                 DatabaseFactory.getThreadDatabase(context).incrementUnread(threadId, 1);
             }
@@ -871,7 +871,7 @@ public class SmsDatabase extends MessageDatabase {
         values.put(THREAD_ID, threadId);
 
         SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        long messageId = db.insert(TABLE_NAME, null, values);
+        long messageId = insertMessage(db, values);
 
         DatabaseFactory.getThreadDatabase(context).update(threadId, true);
 
@@ -939,7 +939,7 @@ public class SmsDatabase extends MessageDatabase {
                         values.put(THREAD_ID, threadId);
                         values.put(BODY, body);
 
-                        db.insert(TABLE_NAME, null, values);
+                        insertMessage(db, values);
                         notifyConversationListeners(threadId);
                     });
 
@@ -989,7 +989,7 @@ public class SmsDatabase extends MessageDatabase {
             values.put(BODY, membershipChange.serialize());
         }
 
-        databaseHelper.getWritableDatabase().insert(TABLE_NAME, null, values);
+        insertMessage(databaseHelper.getWritableDatabase(), values);
     }
 
     @Override
@@ -1066,7 +1066,7 @@ public class SmsDatabase extends MessageDatabase {
             return Optional.absent();
         } else {
             SQLiteDatabase db = databaseHelper.getWritableDatabase();
-            long messageId = db.insert(TABLE_NAME, null, values);
+            long messageId = insertMessage(db, values);
 
             if (unread) {
                 DatabaseFactory.getThreadDatabase(context).incrementUnread(threadId, 1);
@@ -1113,7 +1113,7 @@ public class SmsDatabase extends MessageDatabase {
         values.put(TYPE, type);
         values.put(THREAD_ID, threadId);
 
-        long messageId = db.insert(TABLE_NAME, null, values);
+        long messageId = insertMessage(db, values);
 
         DatabaseFactory.getThreadDatabase(context).incrementUnread(threadId, 1);
         DatabaseFactory.getThreadDatabase(context).update(threadId, true);
@@ -1155,7 +1155,7 @@ public class SmsDatabase extends MessageDatabase {
         contentValues.put(DELIVERY_RECEIPT_COUNT, Stream.of(earlyDeliveryReceipts.values()).mapToLong(Long::longValue).sum());
 
         SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        long messageId = db.insert(TABLE_NAME, null, contentValues);
+        long messageId = insertMessage(db, contentValues);
 
         if (insertListener != null) {
             insertListener.onComplete();
@@ -1214,13 +1214,20 @@ public class SmsDatabase extends MessageDatabase {
     public boolean deleteMessage(long messageId) {
         Log.d(TAG, "deleteMessage(" + messageId + ")");
 
+        long    threadId      = deleteMessageWithoutThreadUpdate(messageId);
+        boolean threadDeleted = DatabaseFactory.getThreadDatabase(context).update(threadId, false, true);
+        notifyConversationListeners(threadId);
+        return threadDeleted;
+    }
+
+    @Override
+    long deleteMessageWithoutThreadUpdate(long messageId) {
         SQLiteDatabase db       = databaseHelper.getWritableDatabase();
         long           threadId = getThreadIdForMessage(messageId);
 
         db.delete(TABLE_NAME, ID_WHERE, new String[]{messageId + ""});
-        boolean threadDeleted = DatabaseFactory.getThreadDatabase(context).update(threadId, false, true);
-        notifyConversationListeners(threadId);
-        return threadDeleted;
+        onMessageDeleted(threadId, messageId);
+        return threadId;
     }
 
     @Override
@@ -1255,19 +1262,19 @@ public class SmsDatabase extends MessageDatabase {
     }
 
     @Override
-    void deleteMessagesInThreadBeforeDate(long threadId, long date) {
+    int deleteMessagesInThreadBeforeDate(long threadId, long date, int limit) {
         SQLiteDatabase db    = databaseHelper.getWritableDatabase();
-        String         where = THREAD_ID + " = ? AND " + DATE_RECEIVED + " < " + date;
+        String         where = ID + " IN (SELECT " + ID + " FROM " + TABLE_NAME + " WHERE " + THREAD_ID + " = ? AND " + DATE_RECEIVED + " < " + date + " LIMIT " + limit + ")";
 
-        db.delete(TABLE_NAME, where, SqlUtil.buildArgs(threadId));
+        return db.delete(TABLE_NAME, where, SqlUtil.buildArgs(threadId));
     }
 
     @Override
-    void deleteAbandonedMessages() {
+    int deleteAbandonedMessages(int limit) {
         SQLiteDatabase db    = databaseHelper.getWritableDatabase();
-        String         where = THREAD_ID + " NOT IN (SELECT _id FROM " + ThreadDatabase.TABLE_NAME + ")";
+        String         where = ID + " IN (SELECT " + ID + " FROM " + TABLE_NAME + " WHERE " + THREAD_ID + " NOT IN (SELECT _id FROM " + ThreadDatabase.TABLE_NAME + ") LIMIT " + limit + ")";
 
-        db.delete(TABLE_NAME, where, null);
+        return db.delete(TABLE_NAME, where, null);
     }
 
     @Override
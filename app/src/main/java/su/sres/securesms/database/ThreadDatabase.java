@@ -25,6 +25,7 @@ import android.net.Uri;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import su.sres.securesms.groups.BadGroupIdException;
 import su.sres.securesms.groups.GroupId;
@@ -43,6 +44,7 @@ import su.sres.securesms.database.model.MediaMmsMessageRecord;
 import su.sres.securesms.database.model.MessageRecord;
 import su.sres.securesms.database.model.MmsMessageRecord;
 import su.sres.securesms.database.model.ThreadRecord;
+import su.sres.securesms.dependencies.ApplicationDependencies;
 import su.sres.securesms.mms.Slide;
 import su.sres.securesms.mms.SlideDeck;
 import su.sres.securesms.mms.StickerSlide;
@@ -64,6 +66,7 @@ import su.sres.signalservice.api.storage.SignalGroupV2Record;
 import org.jsoup.helper.StringUtil;
 import org.signal.zkgroup.InvalidInputException;
 import org.signal.zkgroup.groups.GroupMasterKey;
+import org.whispersystems.libsignal.util.Pair;
 import org.whispersystems.libsignal.util.guava.Optional;
 
 import java.io.Closeable;
@@ -88,6 +91,8 @@ public class ThreadDatabase extends Database {
     public static final long NO_TRIM_BEFORE_DATE_SET = 0;
     public static final int NO_TRIM_MESSAGE_COUNT_SET = Integer.MAX_VALUE;
 
+    private static final int TRIM_BATCH_SIZE = 500;
+
     public static final String TABLE_NAME = "thread";
     public static final String ID = "_id";
     public static final String DATE = "date";
@@ -159,10 +164,30 @@ public class ThreadDatabase extends Database {
 
     private static final String ORDER_BY_DEFAULT = TABLE_NAME + "." + DATE + " DESC";
 
+    private static final String ORDER_BY_DATE   = TABLE_NAME + "." + DATE + " DESC, " + TABLE_NAME + "." + ID + " DESC";
+    private static final String ORDER_BY_PINNED = TABLE_NAME + "." + PINNED + " ASC, " + TABLE_NAME + "." + ID + " DESC";
+
+    private static final String[] SUMMARY_PROJECTION = { ID, DATE, PINNED, ARCHIVED };
+
+    private final ThreadSummaryIndex summaryIndex = new ThreadSummaryIndex();
+
     public ThreadDatabase(Context context, SQLCipherOpenHelper databaseHelper) {
         super(context, databaseHelper);
     }
 
+    /**
+     * Listens for threads moving within the conversation list. A thread's snippet changing, which is
+     * what happens when a message arrives, is reported by position. Any other change to the list is
+     * reported as {@link ThreadSummaryIndex.Listener#onReset()}.
+     */
+    public void addSummaryListener(@NonNull ThreadSummaryIndex.Listener listener) {
+        summaryIndex.addListener(listener);
+    }
+
+    public void removeSummaryListener(@NonNull ThreadSummaryIndex.Listener listener) {
+        summaryIndex.removeListener(listener);
+    }
+
     private long createThreadForRecipient(@NonNull RecipientId recipientId, boolean group, int distributionType) {
         if (recipientId.isUnknown()) {
             throw new AssertionError("Cannot create a thread for an unknown recipient!");
@@ -219,7 +244,7 @@ public class ThreadDatabase extends Database {
 
         SQLiteDatabase db = databaseHelper.getWritableDatabase();
         db.update(TABLE_NAME, contentValues, ID + " = ?", new String[]{threadId + ""});
-        notifyConversationListListeners();
+        updateSummary(threadId);
     }
 
     public void updateSnippet(long threadId, String snippet, @Nullable Uri attachment, long date, long type, boolean unarchive) {
@@ -240,97 +265,185 @@ public class ThreadDatabase extends Database {
 
         SQLiteDatabase db = databaseHelper.getWritableDatabase();
         db.update(TABLE_NAME, contentValues, ID + " = ?", new String[]{threadId + ""});
-        notifyConversationListListeners();
+        updateSummary(threadId);
     }
 
-    public void trimAllThreads(int length, long trimBeforeDate) {
+    /**
+     * Trims every thread with an ID above {@code afterThreadId}, lowest ID first.
+     * <p>
+     * The cutoff for every thread is worked out in a single query up front. Messages are then
+     * deleted at most {@link #TRIM_BATCH_SIZE} at a time, yielding to other writers between batches,
+     * so a large trim never holds up sending or receiving for long. The listener hears about each
+     * thread once it is done, so an interrupted trim can carry on from there. Ends with a single
+     * {@link #deleteAbandonedMessageData()} sweep.
+     */
+    public void trimAllThreads(int length, long trimBeforeDate, long afterThreadId, @Nullable TrimProgressListener listener) {
         if (length == NO_TRIM_MESSAGE_COUNT_SET && trimBeforeDate == NO_TRIM_BEFORE_DATE_SET) {
             return;
         }
 
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        AttachmentDatabase attachmentDatabase = DatabaseFactory.getAttachmentDatabase(context);
-        GroupReceiptDatabase groupReceiptDatabase = DatabaseFactory.getGroupReceiptDatabase(context);
-        MmsSmsDatabase mmsSmsDatabase = DatabaseFactory.getMmsSmsDatabase(context);
-        MentionDatabase mentionDatabase = DatabaseFactory.getMentionDatabase(context);
+        List<Pair<Long, Long>> cutoffs = getTrimCutoffs(length, trimBeforeDate, ID + " > ?", SqlUtil.buildArgs(afterThreadId));
+        int                    deleted = 0;
 
-        try (Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, new String[]{ID}, null, null, null, null, null)) {
+        Log.i(TAG, "Trimming " + cutoffs.size() + " threads after: " + afterThreadId);
 
-            while (cursor != null && cursor.moveToNext()) {
-                trimThreadInternal(CursorUtil.requireLong(cursor, ID), length, trimBeforeDate);
+        for (Pair<Long, Long> cutoff : cutoffs) {
+            deleted += trimThreadBefore(cutoff.first(), cutoff.second());
+
+            if (listener != null) {
+                listener.onThreadTrimmed(cutoff.first());
             }
         }
 
-        db.beginTransaction();
-
-        try {
-            mmsSmsDatabase.deleteAbandonedMessages();
-            attachmentDatabase.trimAllAbandonedAttachments();
-            groupReceiptDatabase.deleteAbandonedRows();
-            mentionDatabase.deleteAbandonedMentions();
-            attachmentDatabase.deleteAbandonedAttachmentFiles();
-            db.setTransactionSuccessful();
-        } finally {
-            db.endTransaction();
-        }
+        Log.i(TAG, "Trimmed " + deleted + " messages");
 
-        notifyAttachmentListeners();
-        notifyStickerListeners();
-        notifyStickerPackListeners();
+        deleteAbandonedMessageData();
     }
 
+    /**
+     * The batches delete the attachments, receipts and mentions of the messages they remove, so
+     * unlike {@link #trimAllThreads(int, long, long, TrimProgressListener)} this leaves out the sweep
+     * for anything orphaned some other way.
+     */
     public void trimThread(long threadId, int length, long trimBeforeDate) {
         if (length == NO_TRIM_MESSAGE_COUNT_SET && trimBeforeDate == NO_TRIM_BEFORE_DATE_SET) {
             return;
         }
 
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        AttachmentDatabase attachmentDatabase = DatabaseFactory.getAttachmentDatabase(context);
+        int deleted = 0;
+
+        for (Pair<Long, Long> cutoff : getTrimCutoffs(length, trimBeforeDate, ID + " = ?", SqlUtil.buildArgs(threadId))) {
+            deleted += trimThreadBefore(cutoff.first(), cutoff.second());
+        }
+
+        if (deleted > 0) {
+            notifyAttachmentListeners();
+            notifyStickerListeners();
+            notifyStickerPackListeners();
+        }
+    }
+
+    /**
+     * Sweeps up anything left pointing at a message or thread that no longer exists, which the trim
+     * batches don't catch if it was orphaned some other way, and then attachment files nothing refers
+     * to. Rows are deleted at most {@link #TRIM_BATCH_SIZE} at a time, yielding to other writers in
+     * between, and the attachment directory is scanned outside of the transaction.
+     */
+    @VisibleForTesting
+    void deleteAbandonedMessageData() {
+        SQLiteDatabase       db                   = databaseHelper.getWritableDatabase();
+        AttachmentDatabase   attachmentDatabase   = DatabaseFactory.getAttachmentDatabase(context);
         GroupReceiptDatabase groupReceiptDatabase = DatabaseFactory.getGroupReceiptDatabase(context);
-        MmsSmsDatabase mmsSmsDatabase = DatabaseFactory.getMmsSmsDatabase(context);
-        MentionDatabase mentionDatabase = DatabaseFactory.getMentionDatabase(context);
+        MmsSmsDatabase       mmsSmsDatabase       = DatabaseFactory.getMmsSmsDatabase(context);
+        MentionDatabase      mentionDatabase      = DatabaseFactory.getMentionDatabase(context);
 
         db.beginTransaction();
 
         try {
-            trimThreadInternal(threadId, length, trimBeforeDate);
-            mmsSmsDatabase.deleteAbandonedMessages();
-            attachmentDatabase.trimAllAbandonedAttachments();
-            groupReceiptDatabase.deleteAbandonedRows();
-            mentionDatabase.deleteAbandonedMentions();
-            attachmentDatabase.deleteAbandonedAttachmentFiles();
+            deleteInBatches(db, mmsSmsDatabase::deleteAbandonedMessages);
+            deleteInBatches(db, attachmentDatabase::trimAbandonedAttachments);
+            deleteInBatches(db, groupReceiptDatabase::deleteAbandonedRows);
+            deleteInBatches(db, mentionDatabase::deleteAbandonedMentions);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
 
+        attachmentDatabase.deleteAbandonedAttachmentFiles();
+
         notifyAttachmentListeners();
         notifyStickerListeners();
         notifyStickerPackListeners();
     }
 
-    private void trimThreadInternal(long threadId, int length, long trimBeforeDate) {
-        if (length == NO_TRIM_MESSAGE_COUNT_SET && trimBeforeDate == NO_TRIM_BEFORE_DATE_SET) {
-            return;
+    private static void deleteInBatches(@NonNull SQLiteDatabase db, @NonNull BatchDelete batchDelete) {
+        int deleted;
+
+        do {
+            deleted = batchDelete.delete(TRIM_BATCH_SIZE);
+            db.yieldIfContendedSafely();
+        } while (deleted == TRIM_BATCH_SIZE);
+    }
+
+    /**
+     * @return Each selected thread paired with the date before which its messages should go, being
+     *         the later of {@code trimBeforeDate} and the date of its {@code length}th newest message.
+     *         Threads with nothing to trim by either rule are left out.
+     */
+    @VisibleForTesting
+    @NonNull List<Pair<Long, Long>> getTrimCutoffs(int length, long trimBeforeDate, @NonNull String selection, @NonNull String[] args) {
+        String lengthCutoff;
+
+        if (length != NO_TRIM_MESSAGE_COUNT_SET && length > 0) {
+            lengthCutoff = "(SELECT " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " FROM (" +
+                             "SELECT " + SmsDatabase.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " FROM " + SmsDatabase.TABLE_NAME + " WHERE " + SmsDatabase.TABLE_NAME + "." + MmsSmsColumns.THREAD_ID + " = " + TABLE_NAME + "." + ID +
+                             " UNION ALL " +
+                             "SELECT " + MmsDatabase.DATE_RECEIVED + " FROM " + MmsDatabase.TABLE_NAME + " WHERE " + MmsDatabase.TABLE_NAME + "." + MmsSmsColumns.THREAD_ID + " = " + TABLE_NAME + "." + ID +
+                           ") ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC LIMIT 1 OFFSET " + (length - 1) + ")";
+        } else {
+            lengthCutoff = "NULL";
         }
 
-        if (length != NO_TRIM_MESSAGE_COUNT_SET) {
-            try (Cursor cursor = DatabaseFactory.getMmsSmsDatabase(context).getConversation(threadId)) {
-                if (cursor != null && length > 0 && cursor.getCount() > length) {
-                    cursor.moveToPosition(length - 1);
-                    trimBeforeDate = Math.max(trimBeforeDate, cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.NORMALIZED_DATE_RECEIVED)));
+        String                 query   = "SELECT " + ID + ", " + lengthCutoff + " FROM " + TABLE_NAME + " WHERE " + selection + " ORDER BY " + ID;
+        List<Pair<Long, Long>> cutoffs = new ArrayList<>();
+
+        try (Cursor cursor = databaseHelper.getReadableDatabase().rawQuery(query, args)) {
+            while (cursor != null && cursor.moveToNext()) {
+                long cutoff = trimBeforeDate;
+
+                if (!cursor.isNull(1)) {
+                    cutoff = Math.max(cutoff, cursor.getLong(1));
+                }
+
+                if (cutoff != NO_TRIM_BEFORE_DATE_SET) {
+                    cutoffs.add(new Pair<>(cursor.getLong(0), cutoff));
                 }
             }
         }
 
-        if (trimBeforeDate != NO_TRIM_BEFORE_DATE_SET) {
-            Log.i(TAG, "Trimming thread: " + threadId + " before: " + trimBeforeDate);
+        return cutoffs;
+    }
+
+    /**
+     * Deletes the thread's messages from before the given date a batch at a time, in one transaction
+     * that is given up between batches to any other thread waiting on the database. The thread is
+     * brought up to date once the last batch is done.
+     *
+     * @return How many messages were deleted.
+     */
+    @VisibleForTesting
+    int trimThreadBefore(long threadId, long trimBeforeDate) {
+        SQLiteDatabase db             = databaseHelper.getWritableDatabase();
+        MmsSmsDatabase mmsSmsDatabase = DatabaseFactory.getMmsSmsDatabase(context);
+        int            total          = 0;
+
+        db.beginTransaction();
+        try {
+            int deleted = mmsSmsDatabase.deleteMessagesInThreadBeforeDate(threadId, trimBeforeDate, TRIM_BATCH_SIZE);
+            total += deleted;
 
-            DatabaseFactory.getMmsSmsDatabase(context).deleteMessagesInThreadBeforeDate(threadId, trimBeforeDate);
+            while (deleted == TRIM_BATCH_SIZE) {
+                db.yieldIfContendedSafely();
+
+                deleted = mmsSmsDatabase.deleteMessagesInThreadBeforeDate(threadId, trimBeforeDate, TRIM_BATCH_SIZE);
+                total  += deleted;
+            }
 
-            update(threadId, false);
+            if (total > 0) {
+                update(threadId, false);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (total > 0) {
+            Log.i(TAG, "Trimmed " + total + " messages from thread: " + threadId + " before: " + trimBeforeDate);
             notifyConversationListeners(threadId);
         }
+
+        return total;
     }
 
     public List<MarkedMessageInfo> setAllThreadsRead() {
@@ -461,6 +574,7 @@ public class ThreadDatabase extends Database {
                         UNREAD_COUNT + " = " + UNREAD_COUNT + " + ? WHERE " + ID + " = ?",
                 new String[]{String.valueOf(amount),
                         String.valueOf(threadId)});
+        updateSummary(threadId);
     }
 
     public void setDistributionType(long threadId, int distributionType) {
@@ -686,7 +800,7 @@ public class ThreadDatabase extends Database {
     }
 
     public Cursor getArchivedConversationList(long offset, long limit) {
-        return getConversationList("1", offset, limit);
+        return getConversationList(ThreadSummaryIndex.Section.ARCHIVED, ORDER_BY_DATE, offset, limit);
     }
 
     private Cursor getConversationList(String archived) {
@@ -694,29 +808,33 @@ public class ThreadDatabase extends Database {
     }
 
     public Cursor getUnarchivedConversationList(boolean pinned, long offset, long limit) {
-        SQLiteDatabase db = databaseHelper.getReadableDatabase();
-        String pinnedWhere = PINNED + (pinned ? " != 0" : " = 0");
-        String where = ARCHIVED + " = 0 AND " + MESSAGE_COUNT + " != 0 AND " + pinnedWhere;
-
-        final String query;
-
         if (pinned) {
-            query = createQuery(where, PINNED + " ASC", offset, limit);
+            return getConversationList(ThreadSummaryIndex.Section.PINNED, ORDER_BY_PINNED, offset, limit);
         } else {
-            query = createQuery(where, offset, limit, false);
+            return getConversationList(ThreadSummaryIndex.Section.UNPINNED, ORDER_BY_DATE, offset, limit);
         }
+    }
 
-        Cursor cursor = db.rawQuery(query, new String[]{});
+    private Cursor getConversationList(@NonNull String archived, long offset, long limit) {
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+        String query = createQuery(ARCHIVED + " = ? AND " + MESSAGE_COUNT + " != 0", offset, limit, false);
+        Cursor cursor = db.rawQuery(query, new String[]{archived});
 
         setNotifyConversationListListeners(cursor);
 
         return cursor;
     }
 
-    private Cursor getConversationList(@NonNull String archived, long offset, long limit) {
-        SQLiteDatabase db = databaseHelper.getReadableDatabase();
-        String query = createQuery(ARCHIVED + " = ? AND " + MESSAGE_COUNT + " != 0", offset, limit, false);
-        Cursor cursor = db.rawQuery(query, new String[]{archived});
+    /**
+     * Pages by thread id, taken from the {@link ThreadSummaryIndex}, rather than by OFFSET. The order
+     * matches the index, so the page comes back in the same order the index has it.
+     */
+    private Cursor getConversationList(@NonNull ThreadSummaryIndex.Section section, @NonNull String orderBy, long offset, long limit) {
+        List<Long> threadIds = requireSummaryIndex().getThreadIds(section, offset, limit);
+
+        SQLiteDatabase db     = databaseHelper.getReadableDatabase();
+        String         query  = createQuery(TABLE_NAME + "." + ID + " IN (" + Util.join(threadIds, ",") + ")", orderBy, 0, 0);
+        Cursor         cursor = db.rawQuery(query, null);
 
         setNotifyConversationListListeners(cursor);
 
@@ -724,47 +842,90 @@ public class ThreadDatabase extends Database {
     }
 
     public int getArchivedConversationListCount() {
-        SQLiteDatabase db = databaseHelper.getReadableDatabase();
-        String[] columns = new String[]{"COUNT(*)"};
-        String query = ARCHIVED + " = ? AND " + MESSAGE_COUNT + " != 0";
-        String[] args = new String[]{"1"};
+        return requireSummaryIndex().getCount(ThreadSummaryIndex.Section.ARCHIVED);
+    }
 
-        try (Cursor cursor = db.query(TABLE_NAME, columns, query, args, null, null, null)) {
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursor.getInt(0);
-            }
-        }
+    public int getPinnedConversationListCount() {
+        return requireSummaryIndex().getCount(ThreadSummaryIndex.Section.PINNED);
+    }
 
-        return 0;
+    public int getUnarchivedConversationListCount() {
+        ThreadSummaryIndex index = requireSummaryIndex();
+
+        synchronized (index) {
+            return index.getCount(ThreadSummaryIndex.Section.PINNED) + index.getCount(ThreadSummaryIndex.Section.UNPINNED);
+        }
     }
 
-    public int getPinnedConversationListCount() {
-        SQLiteDatabase db = databaseHelper.getReadableDatabase();
-        String[] columns = new String[]{"COUNT(*)"};
-        String query = ARCHIVED + " = 0 AND " + PINNED + " != 0 AND " + MESSAGE_COUNT + " != 0";
+    /**
+     * Seeds the index if it needs it. The query runs without the index locked, as the thread may
+     * need to wait on the database while another thread holding the database waits on the index. A
+     * reset while the query runs means it may have missed a change, so it is run again.
+     */
+    private @NonNull ThreadSummaryIndex requireSummaryIndex() {
+        while (!summaryIndex.isSeeded()) {
+            long                                   generation = summaryIndex.getGeneration();
+            List<ThreadSummaryIndex.ThreadSummary> summaries  = new ArrayList<>();
+
+            try (Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, SUMMARY_PROJECTION, MESSAGE_COUNT + " != 0", null, null, null, null)) {
+                while (cursor != null && cursor.moveToNext()) {
+                    summaries.add(readSummary(cursor));
+                }
+            }
 
-        try (Cursor cursor = db.query(TABLE_NAME, columns, query, null, null, null, null)) {
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursor.getInt(0);
+            if (summaryIndex.seed(generation, summaries)) {
+                break;
             }
         }
 
-        return 0;
+        return summaryIndex;
     }
 
-    public int getUnarchivedConversationListCount() {
-        SQLiteDatabase db = databaseHelper.getReadableDatabase();
-        String[] columns = new String[]{"COUNT(*)"};
-        String query = ARCHIVED + " = 0 AND " + MESSAGE_COUNT + " != 0";
-
-        try (Cursor cursor = db.query(TABLE_NAME, columns, query, null, null, null, null)) {
+    /**
+     * Moves the thread within the {@link ThreadSummaryIndex}, which reports it to the conversation
+     * list by position, rather than invalidating the whole list. Waits for the current transaction to
+     * be committed, so the index is never touched while the database is held.
+     */
+    private void updateSummary(long threadId) {
+        databaseHelper.getWritableDatabase().runPostSuccessfulTransaction(() -> {
+            if (summaryIndex.isSeeded()) {
+                long                             generation = summaryIndex.getGeneration();
+                ThreadSummaryIndex.ThreadSummary summary    = null;
+
+                try (Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, SUMMARY_PROJECTION, ID_WHERE + " AND " + MESSAGE_COUNT + " != 0", SqlUtil.buildArgs(threadId), null, null, null)) {
+                    if (cursor != null && cursor.moveToFirst()) {
+                        summary = readSummary(cursor);
+                    }
+                }
 
-            if (cursor != null && cursor.moveToFirst()) {
-                return cursor.getInt(0);
+                summaryIndex.update(generation, threadId, summary);
+                summaryIndex.dispatchPending();
             }
-        }
 
-        return 0;
+            ApplicationDependencies.getDatabaseObserver().notifyConversationListListeners();
+        });
+    }
+
+    private static @NonNull ThreadSummaryIndex.ThreadSummary readSummary(@NonNull Cursor cursor) {
+        return new ThreadSummaryIndex.ThreadSummary(CursorUtil.requireLong(cursor, ID),
+                                                    CursorUtil.requireLong(cursor, DATE),
+                                                    CursorUtil.requireLong(cursor, PINNED),
+                                                    CursorUtil.requireBoolean(cursor, ARCHIVED));
+    }
+
+    /**
+     * Called by every {@link Database} when the conversation list changes in a way the index can't
+     * follow by itself.
+     */
+    void resetSummaryIndex() {
+        summaryIndex.reset();
+        summaryIndex.dispatchPending();
+    }
+
+    @Override
+    public void reset(SQLCipherOpenHelper databaseHelper) {
+        super.reset(databaseHelper);
+        resetSummaryIndex();
     }
 
     /**
@@ -956,6 +1117,7 @@ public class ThreadDatabase extends Database {
         try {
             DatabaseFactory.getSmsDatabase(context).deleteThread(threadId);
             DatabaseFactory.getMmsDatabase(context).deleteThread(threadId);
+            DatabaseFactory.getMmsSmsDatabase(context).invalidatePositionIndex(threadId);
             DatabaseFactory.getDraftDatabase(context).clearDrafts(threadId);
 
             db.delete(TABLE_NAME, ID_WHERE, new String[]{threadId + ""});
@@ -977,6 +1139,7 @@ public class ThreadDatabase extends Database {
         try {
             DatabaseFactory.getSmsDatabase(context).deleteThreads(selectedConversations);
             DatabaseFactory.getMmsDatabase(context).deleteThreads(selectedConversations);
+            DatabaseFactory.getMmsSmsDatabase(context).invalidatePositionIndexes();
             DatabaseFactory.getDraftDatabase(context).clearDrafts(selectedConversations);
 
             StringBuilder where = new StringBuilder();
@@ -1007,6 +1170,7 @@ public class ThreadDatabase extends Database {
         try {
             DatabaseFactory.getSmsDatabase(context).deleteAllThreads();
             DatabaseFactory.getMmsDatabase(context).deleteAllThreads();
+            DatabaseFactory.getMmsSmsDatabase(context).invalidatePositionIndexes();
             DatabaseFactory.getDraftDatabase(context).clearAllDrafts();
 
             db.delete(TABLE_NAME, null, null);
@@ -1272,7 +1436,6 @@ public class ThreadDatabase extends Database {
                         getContentTypeFor(record), getExtrasFor(record),
                         record.getTimestamp(), record.getDeliveryStatus(), record.getDeliveryReceiptCount(),
                         record.getType(), unarchive, record.getExpiresIn(), record.getReadReceiptCount());
-                notifyConversationListListeners();
                 return false;
             } else {
                 deleteConversation(threadId);
@@ -1695,6 +1858,17 @@ public class ThreadDatabase extends Database {
         }
     }
 
+    public interface TrimProgressListener {
+        void onThreadTrimmed(long threadId);
+    }
+
+    private interface BatchDelete {
+        /**
+         * @return How many rows were deleted, at most {@code limit}.
+         */
+        int delete(int limit);
+    }
+
     public static class ConversationMetadata {
         private final long lastSeen;
         private final boolean hasSent;
@@ -0,0 +1,271 @@
+package su.sres.securesms.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An in-memory copy of the order of the conversation list. The list can be counted and paged
+ * without an OFFSET scan of the thread table. A single thread changing is reported as a positional
+ * change, rather than as a change to the whole list.
+ * <p>
+ * Only holds threads that show up in the list, i.e. those with messages. {@link ThreadDatabase}
+ * seeds it lazily, updates it in place when a thread's snippet changes, and resets it on any other
+ * change to the conversation list.
+ * <p>
+ * Changes are queued as they are made to the index, and only passed on to listeners by
+ * {@link #dispatchPending()}, which must be called without holding the index lock. Listeners are
+ * always called in the order the changes were made, one at a time.
+ */
+public final class ThreadSummaryIndex {
+
+    public enum Section {
+        PINNED, UNPINNED, ARCHIVED
+    }
+
+    private static final Comparator<ThreadSummary> PINNED_ORDER = (lhs, rhs) -> {
+        int result = Long.compare(lhs.pinned, rhs.pinned);
+        return result != 0 ? result : Long.compare(rhs.threadId, lhs.threadId);
+    };
+
+    private static final Comparator<ThreadSummary> DATE_ORDER = (lhs, rhs) -> {
+        int result = Long.compare(rhs.date, lhs.date);
+        return result != 0 ? result : Long.compare(rhs.threadId, lhs.threadId);
+    };
+
+    private final Map<Long, ThreadSummary> summaries   = new HashMap<>();
+    private final List<ThreadSummary>      pinned      = new ArrayList<>();
+    private final List<ThreadSummary>      unpinned    = new ArrayList<>();
+    private final List<ThreadSummary>      archived    = new ArrayList<>();
+    private final List<Listener>           listeners   = new CopyOnWriteArrayList<>();
+    private final Queue<Event>             pending     = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean            dispatching = new AtomicBoolean();
+
+    private boolean seeded;
+    private long    generation;
+
+    synchronized boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Bumped on every reset, so that a summary read from the database before a reset is never applied
+     * after it.
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Fills the index, unless it has been reset since {@code generation} was read.
+     *
+     * @return True if the index is seeded once this returns.
+     */
+    synchronized boolean seed(long generation, @NonNull Collection<ThreadSummary> threads) {
+        if (generation != this.generation) {
+            return false;
+        }
+
+        if (seeded) {
+            return true;
+        }
+
+        clear();
+
+        for (ThreadSummary summary : threads) {
+            summaries.put(summary.threadId, summary);
+            getList(summary.getSection()).add(summary);
+        }
+
+        Collections.sort(pinned, PINNED_ORDER);
+        Collections.sort(unpinned, DATE_ORDER);
+        Collections.sort(archived, DATE_ORDER);
+
+        seeded = true;
+        return true;
+    }
+
+    /**
+     * Drops everything, to be seeded again when next needed. Listeners are told even if the index
+     * was never seeded, as the list they show has still changed.
+     */
+    synchronized void reset() {
+        clear();
+        generation++;
+        pending.add(Listener::onReset);
+    }
+
+    /**
+     * Moves a thread to where its new summary belongs and queues where it went for listeners.
+     *
+     * @param generation The generation the summary was read in.
+     * @param summary    The thread's current summary, or null if it should no longer be listed.
+     */
+    synchronized void update(long generation, long threadId, @Nullable ThreadSummary summary) {
+        if (!seeded || generation != this.generation) {
+            return;
+        }
+
+        ThreadSummary previous = summaries.remove(threadId);
+
+        if (previous == null && summary == null) {
+            return;
+        }
+
+        Section fromSection = previous != null ? previous.getSection() : null;
+        int     fromIndex   = previous != null ? indexOf(previous) : -1;
+
+        if (previous != null) {
+            getList(fromSection).remove(fromIndex);
+        }
+
+        if (summary == null) {
+            pending.add(listener -> listener.onThreadRemoved(fromSection, fromIndex));
+            return;
+        }
+
+        Section toSection = summary.getSection();
+        int     toIndex   = -(Collections.binarySearch(getList(toSection), summary, getOrder(toSection)) + 1);
+
+        summaries.put(threadId, summary);
+        getList(toSection).add(toIndex, summary);
+
+        if (fromSection == toSection && fromIndex == toIndex) {
+            pending.add(listener -> listener.onThreadChanged(toSection, toIndex));
+        } else if (fromSection == toSection) {
+            pending.add(listener -> listener.onThreadMoved(toSection, fromIndex, toIndex));
+        } else {
+            if (fromSection != null) {
+                pending.add(listener -> listener.onThreadRemoved(fromSection, fromIndex));
+            }
+            pending.add(listener -> listener.onThreadInserted(toSection, toIndex));
+        }
+    }
+
+    /**
+     * Passes queued changes on to listeners. If another thread is already doing so, it will pick up
+     * this thread's changes as well, so this never waits on a listener.
+     */
+    void dispatchPending() {
+        if (Thread.holdsLock(this)) {
+            throw new IllegalStateException("Listeners must not be called with the index locked!");
+        }
+
+        while (!pending.isEmpty() && dispatching.compareAndSet(false, true)) {
+            try {
+                Event event;
+                while ((event = pending.poll()) != null) {
+                    for (Listener listener : listeners) {
+                        event.dispatch(listener);
+                    }
+                }
+            } finally {
+                dispatching.set(false);
+            }
+        }
+    }
+
+    synchronized int getCount(@NonNull Section section) {
+        return getList(section).size();
+    }
+
+    /**
+     * @param limit The most ids to return, or 0 or less for everything after {@code offset}.
+     */
+    synchronized @NonNull List<Long> getThreadIds(@NonNull Section section, long offset, long limit) {
+        List<ThreadSummary> list  = getList(section);
+        int                 start = (int) Math.min(Math.max(offset, 0), list.size());
+        int                 end   = limit > 0 ? (int) Math.min(start + limit, list.size()) : list.size();
+        List<Long>          ids   = new ArrayList<>(end - start);
+
+        for (int i = start; i < end; i++) {
+            ids.add(list.get(i).threadId);
+        }
+
+        return ids;
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void clear() {
+        summaries.clear();
+        pinned.clear();
+        unpinned.clear();
+        archived.clear();
+        seeded = false;
+    }
+
+    private int indexOf(@NonNull ThreadSummary summary) {
+        return Collections.binarySearch(getList(summary.getSection()), summary, getOrder(summary.getSection()));
+    }
+
+    private @NonNull List<ThreadSummary> getList(@NonNull Section section) {
+        switch (section) {
+            case PINNED:   return pinned;
+            case UNPINNED: return unpinned;
+            case ARCHIVED: return archived;
+            default:       throw new AssertionError();
+        }
+    }
+
+    private static @NonNull Comparator<ThreadSummary> getOrder(@NonNull Section section) {
+        return section == Section.PINNED ? PINNED_ORDER : DATE_ORDER;
+    }
+
+    static final class ThreadSummary {
+        private final long    threadId;
+        private final long    date;
+        private final long    pinned;
+        private final boolean archived;
+
+        ThreadSummary(long threadId, long date, long pinned, boolean archived) {
+            this.threadId = threadId;
+            this.date     = date;
+            this.pinned   = pinned;
+            this.archived = archived;
+        }
+
+        @NonNull Section getSection() {
+            if (archived)    return Section.ARCHIVED;
+            if (pinned != 0) return Section.PINNED;
+            else             return Section.UNPINNED;
+        }
+    }
+
+    private interface Event {
+        void dispatch(@NonNull Listener listener);
+    }
+
+    /**
+     * Positions are within a {@link Section}, as they were right after the change was made.
+     */
+    public interface Listener {
+        void onThreadInserted(@NonNull Section section, int index);
+        void onThreadRemoved(@NonNull Section section, int index);
+        void onThreadMoved(@NonNull Section section, int fromIndex, int toIndex);
+        void onThreadChanged(@NonNull Section section, int index);
+
+        /**
+         * The list has changed in ways that weren't described by position, so anything shown from it
+         * should be loaded again.
+         */
+        void onReset();
+    }
+}
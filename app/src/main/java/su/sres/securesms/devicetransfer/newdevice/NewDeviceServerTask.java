@@ -43,7 +43,7 @@ final class NewDeviceServerTask implements ServerTask {
             String passphrase = "deadbeef";
 
             BackupPassphrase.set(context, passphrase);
-            FullBackupImporter.importFile(context,
+            FullBackupImporter.importTransfer(context,
                     AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret(),
                     database,
                     inputStream,
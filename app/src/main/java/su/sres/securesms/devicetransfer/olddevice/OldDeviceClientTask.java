@@ -11,6 +11,7 @@ import su.sres.core.util.logging.Log;
 import su.sres.devicetransfer.ClientTask;
 import su.sres.securesms.backup.FullBackupBase;
 import su.sres.securesms.backup.FullBackupExporter;
+import su.sres.securesms.crypto.AttachmentSecret;
 import su.sres.securesms.crypto.AttachmentSecretProvider;
 import su.sres.securesms.database.DatabaseFactory;
 import su.sres.securesms.keyvalue.SignalStore;
@@ -33,17 +34,29 @@ final class OldDeviceClientTask implements ClientTask {
 
     @Override
     public void run(@NonNull Context context, @NonNull OutputStream outputStream) throws IOException {
+        run(context, outputStream, SERVER_VERSION_LEGACY);
+    }
+
+    @Override
+    public void run(@NonNull Context context, @NonNull OutputStream outputStream, int serverVersion) throws IOException {
         DeviceTransferBlockingInterceptor.getInstance().blockNetwork();
 
         long start = System.currentTimeMillis();
 
         EventBus.getDefault().register(this);
         try {
-            FullBackupExporter.transfer(context,
-                    AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret(),
-                    DatabaseFactory.getBackupDatabase(context),
-                    outputStream,
-                    "deadbeef");
+            AttachmentSecret attachmentSecret = AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret();
+
+            if (serverVersion >= SERVER_VERSION_MULTI_STREAM) {
+                Log.i(TAG, "Sending without backup encryption");
+                FullBackupExporter.transfer(context, attachmentSecret, DatabaseFactory.getBackupDatabase(context), outputStream);
+            } else {
+                FullBackupExporter.transfer(context,
+                        attachmentSecret,
+                        DatabaseFactory.getBackupDatabase(context),
+                        outputStream,
+                        "deadbeef");
+            }
         } catch (Exception e) {
             DeviceTransferBlockingInterceptor.getInstance().unblockNetwork();
             throw e;
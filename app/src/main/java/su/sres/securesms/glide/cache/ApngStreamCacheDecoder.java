@@ -35,13 +35,20 @@ public class ApngStreamCacheDecoder implements ResourceDecoder<InputStream, APNG
 
     @Override
     public @Nullable Resource<APNGDecoder> decode(@NonNull final InputStream source, int width, int height, @NonNull Options options) throws IOException {
-        byte[] data = StreamUtil.readFully(source);
+        ByteBuffer byteBuffer;
 
-        if (data == null) {
-            return null;
+        if (source instanceof EncryptedCoder.DecryptingInputStream) {
+            byteBuffer = ((EncryptedCoder.DecryptingInputStream) source).readRemaining();
+        } else {
+            byte[] data = StreamUtil.readFully(source);
+
+            if (data == null) {
+                return null;
+            }
+
+            byteBuffer = ByteBuffer.wrap(data);
         }
 
-        ByteBuffer byteBuffer = ByteBuffer.wrap(data);
         return byteBufferDecoder.decode(byteBuffer, width, height, options);
     }
 }
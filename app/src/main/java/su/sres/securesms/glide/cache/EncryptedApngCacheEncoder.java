@@ -34,15 +34,16 @@ public class EncryptedApngCacheEncoder extends EncryptedCoder implements Resourc
 
     @Override
     public boolean encode(@NonNull Resource<APNGDecoder> data, @NonNull File file, @NonNull Options options) {
-        try {
-            Loader       loader = data.get().getLoader();
-            InputStream  input  = loader.obtain().toInputStream();
-            OutputStream output = createEncryptedOutputStream(secret, file);
+        long   startTime = System.nanoTime();
+        Loader loader    = data.get().getLoader();
 
+        try (InputStream input = loader.obtain().toInputStream(); OutputStream output = createEncryptedOutputStream(secret, file)) {
             StreamUtil.copy(input, output);
+            EncryptedCacheMetrics.onMiss(APNGDecoder.class, System.nanoTime() - startTime);
             return true;
         } catch (IOException e) {
             Log.w(TAG, e);
+            EncryptedCacheMetrics.onError(APNGDecoder.class);
         }
 
         return false;
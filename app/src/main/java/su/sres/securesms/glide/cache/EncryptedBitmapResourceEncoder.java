@@ -37,13 +37,16 @@ public class EncryptedBitmapResourceEncoder extends EncryptedCoder implements Re
     Bitmap                bitmap  = data.get();
     Bitmap.CompressFormat format  = getFormat(bitmap, options);
     int                   quality = options.get(BitmapEncoder.COMPRESSION_QUALITY);
+    long                  start   = System.nanoTime();
 
     try (OutputStream os = createEncryptedOutputStream(secret, file)) {
       bitmap.compress(format, quality, os);
       os.close();
+      EncryptedCacheMetrics.onMiss(Bitmap.class, System.nanoTime() - start);
       return true;
     } catch (IOException e) {
       Log.w(TAG, e);
+      EncryptedCacheMetrics.onError(Bitmap.class);
       return false;
     }
   }
@@ -18,11 +18,13 @@ public class EncryptedCacheDecoder<DecodeType> extends EncryptedCoder implements
     private static final String TAG = Log.tag(EncryptedCacheDecoder.class);
 
     private final byte[]                                   secret;
+    private final Class<DecodeType>                        resourceClass;
     private final ResourceDecoder<InputStream, DecodeType> decoder;
 
-    public EncryptedCacheDecoder(byte[] secret, ResourceDecoder<InputStream, DecodeType> decoder) {
-        this.secret  = secret;
-        this.decoder = decoder;
+    public EncryptedCacheDecoder(byte[] secret, Class<DecodeType> resourceClass, ResourceDecoder<InputStream, DecodeType> decoder) {
+        this.secret        = secret;
+        this.resourceClass = resourceClass;
+        this.decoder       = decoder;
     }
 
     @Override
@@ -31,14 +33,28 @@ public class EncryptedCacheDecoder<DecodeType> extends EncryptedCoder implements
             return decoder.handles(inputStream, options);
         } catch (IOException e) {
             Log.w(TAG, e);
+            EncryptedCacheMetrics.onError(resourceClass);
             return false;
         }
     }
 
     @Override
     public @Nullable Resource<DecodeType> decode(@NonNull File source, int width, int height, @NonNull Options options) throws IOException {
+        long startTime = System.nanoTime();
+
         try (InputStream inputStream = createEncryptedInputStream(secret, source)) {
-            return decoder.decode(inputStream, width, height, options);
+            Resource<DecodeType> resource = decoder.decode(inputStream, width, height, options);
+
+            if (resource != null) {
+                EncryptedCacheMetrics.onHit(resourceClass, System.nanoTime() - startTime);
+            } else {
+                EncryptedCacheMetrics.onError(resourceClass);
+            }
+
+            return resource;
+        } catch (IOException e) {
+            EncryptedCacheMetrics.onError(resourceClass);
+            throw e;
         }
     }
 }
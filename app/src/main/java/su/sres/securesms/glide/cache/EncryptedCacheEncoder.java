@@ -30,7 +30,8 @@ public class EncryptedCacheEncoder extends EncryptedCoder implements Encoder<Inp
   @Override
   public boolean encode(@NonNull InputStream data, @NonNull File file, @NonNull Options options) {
 
-    byte[] buffer = byteArrayPool.get(ArrayPool.STANDARD_BUFFER_SIZE_BYTES, byte[].class);
+    byte[] buffer    = byteArrayPool.get(ArrayPool.STANDARD_BUFFER_SIZE_BYTES, byte[].class);
+    long   startTime = System.nanoTime();
 
     try (OutputStream outputStream = createEncryptedOutputStream(secret, file)) {
       int read;
@@ -39,8 +40,10 @@ public class EncryptedCacheEncoder extends EncryptedCoder implements Encoder<Inp
         outputStream.write(buffer, 0, read);
       }
 
+      EncryptedCacheMetrics.onMiss(InputStream.class, System.nanoTime() - startTime);
       return true;
     } catch (IOException e) {
+      EncryptedCacheMetrics.onError(InputStream.class);
       if (e instanceof SocketException) {
         Log.d(TAG, "Socket exception. Likely a cancellation.");
       } else {
@@ -0,0 +1,98 @@
+package su.sres.securesms.glide.cache;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts reads and writes of the encrypted Glide disk cache, per resource type.
+ * <p>
+ * Glide only hands an entry to a decoder when it is on disk, so a decode is a hit. An entry is
+ * written after Glide missed the cache and went to the source, so a write is a miss.
+ */
+public final class EncryptedCacheMetrics {
+
+  private static final Map<String, ResourceMetrics> METRICS = new ConcurrentHashMap<>();
+
+  private EncryptedCacheMetrics() {}
+
+  static void onHit(@NonNull Class<?> resourceClass, long elapsedNanos) {
+    get(resourceClass).hits.record(elapsedNanos);
+  }
+
+  static void onMiss(@NonNull Class<?> resourceClass, long elapsedNanos) {
+    get(resourceClass).misses.record(elapsedNanos);
+  }
+
+  static void onError(@NonNull Class<?> resourceClass) {
+    get(resourceClass).errors.incrementAndGet();
+  }
+
+  /**
+   * @return One line per resource type, suitable for a debug log.
+   */
+  public static @NonNull String describe() {
+    List<String> names = new ArrayList<>(METRICS.keySet());
+    Collections.sort(names);
+
+    StringBuilder builder = new StringBuilder();
+
+    for (String name : names) {
+      ResourceMetrics metrics = METRICS.get(name);
+      if (metrics == null) continue;
+
+      long hits   = metrics.hits.count.get();
+      long misses = metrics.misses.count.get();
+
+      builder.append(String.format(Locale.US, "%-14s hits: %6d (avg %5.1f ms) misses: %6d (avg %5.1f ms) errors: %d hit rate: %.1f%%\n",
+                                   name,
+                                   hits,
+                                   metrics.hits.getAverageMs(),
+                                   misses,
+                                   metrics.misses.getAverageMs(),
+                                   metrics.errors.get(),
+                                   hits + misses > 0 ? (hits * 100d) / (hits + misses) : 0));
+    }
+
+    return builder.toString();
+  }
+
+  private static @NonNull ResourceMetrics get(@NonNull Class<?> resourceClass) {
+    ResourceMetrics metrics = METRICS.get(resourceClass.getSimpleName());
+
+    if (metrics == null) {
+      METRICS.putIfAbsent(resourceClass.getSimpleName(), new ResourceMetrics());
+      metrics = METRICS.get(resourceClass.getSimpleName());
+    }
+
+    return metrics;
+  }
+
+  private static final class ResourceMetrics {
+    private final Timing     hits   = new Timing();
+    private final Timing     misses = new Timing();
+    private final AtomicLong errors = new AtomicLong();
+  }
+
+  private static final class Timing {
+    private final AtomicLong count      = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    void record(long elapsedNanos) {
+      count.incrementAndGet();
+      totalNanos.addAndGet(elapsedNanos);
+    }
+
+    double getAverageMs() {
+      long n = count.get();
+      return n > 0 ? (double) totalNanos.get() / n / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+    }
+  }
+}
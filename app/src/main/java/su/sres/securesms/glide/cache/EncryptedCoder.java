@@ -4,84 +4,96 @@ package su.sres.securesms.glide.cache;
 import androidx.annotation.NonNull;
 
 import su.sres.core.util.StreamUtil;
+import su.sres.securesms.util.LRUCache;
 import su.sres.securesms.util.Util;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+/**
+ * Reads and writes the encrypted Glide disk cache format: magic, 32 random bytes, then AES/CTR of
+ * (magic, data) under HMAC-SHA256(masterKey, random).
+ * <p>
+ * Derived keys are cached, so the same entry being opened for {@code handles} and then {@code decode}
+ * only pays for the HMAC once, and ciphers are pooled rather than looked up for every entry.
+ */
 class EncryptedCoder {
 
-  private static byte[] MAGIC_BYTES = {(byte)0x91, (byte)0x5e, (byte)0x6d, (byte)0xb4,
-                                       (byte)0x09, (byte)0xa6, (byte)0x68, (byte)0xbe,
-                                       (byte)0xe5, (byte)0xb1, (byte)0x1b, (byte)0xd7,
-                                       (byte)0x29, (byte)0xe5, (byte)0x04, (byte)0xcc};
+  private static final byte[] MAGIC_BYTES = {(byte)0x91, (byte)0x5e, (byte)0x6d, (byte)0xb4,
+                                             (byte)0x09, (byte)0xa6, (byte)0x68, (byte)0xbe,
+                                             (byte)0xe5, (byte)0xb1, (byte)0x1b, (byte)0xd7,
+                                             (byte)0x29, (byte)0xe5, (byte)0x04, (byte)0xcc};
+
+  private static final int RANDOM_LENGTH  = 32;
+  private static final int HEADER_LENGTH  = MAGIC_BYTES.length + RANDOM_LENGTH;
+  private static final int BUFFER_SIZE    = 64 * 1024;
+  private static final int KEY_CACHE_SIZE = 256;
+
+  private static final LRUCache<ByteBuffer, byte[]> DERIVED_KEYS = new LRUCache<>(KEY_CACHE_SIZE);
+  private static final Queue<Cipher>                CIPHERS      = new ConcurrentLinkedQueue<>();
+  private static final ThreadLocal<MacHolder>       MACS         = new ThreadLocal<>();
 
   OutputStream createEncryptedOutputStream(@NonNull byte[] masterKey, @NonNull File file)
       throws IOException
   {
-    try {
-      byte[] random = Util.getSecretBytes(32);
-      Mac    mac    = Mac.getInstance("HmacSHA256");
-      mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
-
-      FileOutputStream fileOutputStream = new FileOutputStream(file);
-      byte[]           iv               = new byte[16];
-      byte[]           key              = mac.doFinal(random);
-
-      Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
-      cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+    byte[]           random           = Util.getSecretBytes(RANDOM_LENGTH);
+    FileOutputStream fileOutputStream = new FileOutputStream(file);
 
+    try {
       fileOutputStream.write(MAGIC_BYTES);
       fileOutputStream.write(random);
+    } catch (IOException e) {
+      fileOutputStream.close();
+      throw e;
+    }
 
-      CipherOutputStream outputStream = new CipherOutputStream(fileOutputStream, cipher);
-      outputStream.write(MAGIC_BYTES);
+    EncryptingOutputStream outputStream = new EncryptingOutputStream(fileOutputStream, obtainCipher(Cipher.ENCRYPT_MODE, getDerivedKey(masterKey, random)));
+    outputStream.write(MAGIC_BYTES);
 
-      return outputStream;
-    } catch (NoSuchAlgorithmException | InvalidKeyException | NoSuchPaddingException | InvalidAlgorithmParameterException e) {
-      throw new AssertionError(e);
-    }
+    return outputStream;
   }
 
-  CipherInputStream createEncryptedInputStream(@NonNull byte[] masterKey, @NonNull File file) throws IOException {
-    try {
-      Mac    mac    = Mac.getInstance("HmacSHA256");
-      mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
-
-      FileInputStream fileInputStream     = new FileInputStream(file);
-      byte[]          theirMagic          = new byte[MAGIC_BYTES.length];
-      byte[]          theirRandom         = new byte[32];
-      byte[]          theirEncryptedMagic = new byte[MAGIC_BYTES.length];
+  DecryptingInputStream createEncryptedInputStream(@NonNull byte[] masterKey, @NonNull File file) throws IOException {
+    FileInputStream fileInputStream     = new FileInputStream(file);
+    byte[]          theirMagic          = new byte[MAGIC_BYTES.length];
+    byte[]          theirRandom         = new byte[RANDOM_LENGTH];
+    byte[]          theirEncryptedMagic = new byte[MAGIC_BYTES.length];
 
+    try {
       StreamUtil.readFully(fileInputStream, theirMagic);
       StreamUtil.readFully(fileInputStream, theirRandom);
 
       if (!MessageDigest.isEqual(theirMagic, MAGIC_BYTES)) {
         throw new IOException("Not an encrypted cache file!");
       }
+    } catch (IOException e) {
+      fileInputStream.close();
+      throw e;
+    }
 
-      byte[] iv  = new byte[16];
-      byte[] key = mac.doFinal(theirRandom);
-
-      Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
-      cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+    DecryptingInputStream inputStream = new DecryptingInputStream(fileInputStream, obtainCipher(Cipher.DECRYPT_MODE, getDerivedKey(masterKey, theirRandom)));
 
-      CipherInputStream inputStream = new CipherInputStream(fileInputStream, cipher);
+    try {
       StreamUtil.readFully(inputStream, theirEncryptedMagic);
 
       if (!MessageDigest.isEqual(theirEncryptedMagic, MAGIC_BYTES)) {
@@ -89,10 +101,285 @@ class EncryptedCoder {
       }
 
       return inputStream;
+    } catch (IOException e) {
+      inputStream.close();
+      throw e;
+    }
+  }
+
+  private static @NonNull byte[] getDerivedKey(@NonNull byte[] masterKey, @NonNull byte[] random) {
+    ByteBuffer cacheKey = ByteBuffer.allocate(masterKey.length + random.length).put(masterKey).put(random);
+    cacheKey.flip();
+
+    synchronized (DERIVED_KEYS) {
+      byte[] cached = DERIVED_KEYS.get(cacheKey);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    MacHolder holder = MACS.get();
+    if (holder == null || !MessageDigest.isEqual(holder.masterKey, masterKey)) {
+      holder = new MacHolder(masterKey);
+      MACS.set(holder);
+    }
+
+    byte[] key = holder.mac.doFinal(random);
+
+    synchronized (DERIVED_KEYS) {
+      DERIVED_KEYS.put(cacheKey, key);
+    }
+
+    return key;
+  }
+
+  private static @NonNull Cipher obtainCipher(int mode, @NonNull byte[] key) {
+    try {
+      Cipher cipher = CIPHERS.poll();
+      if (cipher == null) {
+        cipher = Cipher.getInstance("AES/CTR/NoPadding");
+      }
+
+      cipher.init(mode, new SecretKeySpec(key, "AES"), new IvParameterSpec(new byte[16]));
+      return cipher;
     } catch (NoSuchAlgorithmException | InvalidKeyException | NoSuchPaddingException | InvalidAlgorithmParameterException e) {
       throw new AssertionError(e);
     }
   }
 
+  private static void releaseCipher(@NonNull Cipher cipher) {
+    CIPHERS.offer(cipher);
+  }
+
+  private static final class MacHolder {
+    private final byte[] masterKey;
+    private final Mac    mac;
+
+    MacHolder(@NonNull byte[] masterKey) {
+      try {
+        this.masterKey = masterKey.clone();
+        this.mac       = Mac.getInstance("HmacSHA256");
+        this.mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+      } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+  /**
+   * Encrypts in {@link #BUFFER_SIZE} blocks, in place, rather than the small per-write buffers of
+   * {@link javax.crypto.CipherOutputStream}.
+   */
+  private static final class EncryptingOutputStream extends OutputStream {
+
+    private final FileOutputStream out;
+    private final Cipher           cipher;
+    private final byte[]           buffer = new byte[BUFFER_SIZE];
+
+    private int     count;
+    private boolean closed;
+
+    EncryptingOutputStream(@NonNull FileOutputStream out, @NonNull Cipher cipher) {
+      this.out    = out;
+      this.cipher = cipher;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (count == buffer.length) {
+        flushBuffer();
+      }
+      buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (count == buffer.length) {
+          flushBuffer();
+        }
+
+        int copy = Math.min(len, buffer.length - count);
+        System.arraycopy(b, off, buffer, count, copy);
+
+        count += copy;
+        off   += copy;
+        len   -= copy;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      flushBuffer();
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) return;
+      closed = true;
+
+      try {
+        flushBuffer();
+        out.close();
+      } finally {
+        releaseCipher(cipher);
+      }
+    }
+
+    private void flushBuffer() throws IOException {
+      if (count == 0) return;
+
+      try {
+        int encrypted = cipher.update(buffer, 0, count, buffer, 0);
+        out.write(buffer, 0, encrypted);
+        count = 0;
+      } catch (GeneralSecurityException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+
+  /**
+   * Decrypts in {@link #BUFFER_SIZE} blocks, or straight into the caller's array for large reads.
+   */
+  static final class DecryptingInputStream extends InputStream {
+
+    private final FileInputStream in;
+    private final Cipher          cipher;
+    private final byte[]          buffer = new byte[BUFFER_SIZE];
+
+    private int     position;
+    private int     limit;
+    private boolean closed;
+
+    private DecryptingInputStream(@NonNull FileInputStream in, @NonNull Cipher cipher) {
+      this.in     = in;
+      this.cipher = cipher;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (position == limit && !fill()) {
+        return -1;
+      }
+      return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+      if (len == 0) return 0;
+
+      if (position < limit) {
+        int copy = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, copy);
+        position += copy;
+        return copy;
+      }
+
+      if (len >= buffer.length) {
+        int read = in.read(b, off, len);
+        if (read > 0) {
+          decrypt(b, off, read);
+        }
+        return read;
+      }
+
+      if (!fill()) {
+        return -1;
+      }
+
+      return read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = 0;
 
+      while (skipped < n) {
+        if (position == limit && !fill()) {
+          break;
+        }
+
+        int step = (int) Math.min(n - skipped, limit - position);
+        position += step;
+        skipped  += step;
+      }
+
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (limit - position) + in.available();
+    }
+
+    /**
+     * Decrypts everything that has not been read yet into a single buffer. Large entries are
+     * memory-mapped and decrypted in one pass instead of being streamed through a growing array.
+     */
+    @NonNull ByteBuffer readRemaining() throws IOException {
+      FileChannel channel   = in.getChannel();
+      long        remaining = channel.size() - channel.position();
+      int         buffered  = limit - position;
+
+      ByteBuffer output = ByteBuffer.allocate(Util.toIntExact(buffered + remaining));
+      output.put(buffer, position, buffered);
+      position = limit;
+
+      if (remaining > BUFFER_SIZE) {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, channel.position(), remaining);
+
+        try {
+          cipher.update(mapped, output);
+        } catch (GeneralSecurityException e) {
+          throw new IOException(e);
+        }
+
+        channel.position(channel.position() + remaining);
+      } else {
+        int read;
+        while ((read = in.read(output.array(), output.position(), output.remaining())) > 0) {
+          decrypt(output.array(), output.position(), read);
+          output.position(output.position() + read);
+        }
+      }
+
+      output.flip();
+      return output;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) return;
+      closed = true;
+
+      try {
+        in.close();
+      } finally {
+        releaseCipher(cipher);
+      }
+    }
+
+    private boolean fill() throws IOException {
+      int read = in.read(buffer, 0, buffer.length);
+
+      if (read <= 0) {
+        return false;
+      }
+
+      decrypt(buffer, 0, read);
+      position = 0;
+      limit    = read;
+      return true;
+    }
+
+    private void decrypt(@NonNull byte[] data, int offset, int length) throws IOException {
+      try {
+        cipher.update(data, offset, length, data, offset);
+      } catch (GeneralSecurityException e) {
+        throw new IOException(e);
+      }
+    }
+  }
 }
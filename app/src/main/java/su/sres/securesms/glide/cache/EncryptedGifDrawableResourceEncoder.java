@@ -33,12 +33,15 @@ public class EncryptedGifDrawableResourceEncoder extends EncryptedCoder implemen
   @Override
   public boolean encode(@NonNull Resource<GifDrawable> data, @NonNull File file, @NonNull Options options) {
     GifDrawable drawable = data.get();
+    long        start    = System.nanoTime();
 
     try (OutputStream outputStream = createEncryptedOutputStream(secret, file)) {
       ByteBufferUtil.toStream(drawable.getBuffer(), outputStream);
+      EncryptedCacheMetrics.onMiss(GifDrawable.class, System.nanoTime() - start);
       return true;
     } catch (IOException e) {
       Log.w(TAG, e);
+      EncryptedCacheMetrics.onError(GifDrawable.class);
       return false;
     }
   }
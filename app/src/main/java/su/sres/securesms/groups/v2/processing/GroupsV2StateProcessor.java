@@ -36,6 +36,7 @@ import su.sres.securesms.groups.v2.ProfileKeySet;
 import su.sres.securesms.jobmanager.JobManager;
 import su.sres.securesms.jobs.AvatarGroupsV2DownloadJob;
 import su.sres.securesms.jobs.RetrieveProfileJob;
+import su.sres.core.util.concurrent.SignalExecutors;
 import su.sres.core.util.logging.Log;
 import su.sres.securesms.mms.MmsException;
 import su.sres.securesms.mms.OutgoingGroupUpdateMessage;
@@ -43,9 +44,11 @@ import su.sres.securesms.recipients.Recipient;
 import su.sres.securesms.recipients.RecipientId;
 import su.sres.securesms.sms.IncomingGroupUpdateMessage;
 import su.sres.securesms.sms.IncomingTextMessage;
+import org.whispersystems.libsignal.util.Pair;
 import org.whispersystems.libsignal.util.guava.Optional;
 import su.sres.signalservice.api.groupsv2.DecryptedGroupHistoryEntry;
 import su.sres.signalservice.api.groupsv2.DecryptedGroupUtil;
+import su.sres.signalservice.api.groupsv2.GroupHistoryPage;
 import su.sres.signalservice.api.groupsv2.GroupsV2Api;
 import su.sres.signalservice.api.groupsv2.InvalidGroupStateException;
 import su.sres.signalservice.api.util.UuidUtil;
@@ -59,8 +62,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Advances a groups state to a specified revision.
@@ -189,10 +195,13 @@ public final class GroupsV2StateProcessor {
                 }
             }
 
+            ServerHistoryPager serverHistory = null;
+
             if (inputGroupState == null) {
                 try {
                     boolean latestRevisionOnly = revision == LATEST && (localState == null || localState.getRevision() == GroupsV2StateProcessor.RESTORE_PLACEHOLDER_REVISION);
-                    inputGroupState = queryServer(localState, latestRevisionOnly);
+                    serverHistory   = queryServer(localState, latestRevisionOnly);
+                    inputGroupState = new GlobalGroupState(localState, serverHistory.next());
                 } catch (GroupNotAMemberException e) {
                     if (localState != null && signedGroupChange != null) {
                         try {
@@ -219,30 +228,80 @@ public final class GroupsV2StateProcessor {
                 Log.i(TAG, "Saved server query for group change");
             }
 
-            AdvanceGroupStateResult advanceGroupStateResult = GroupStateMapper.partiallyAdvanceGroupState(inputGroupState, revision);
-            DecryptedGroup          newLocalState           = advanceGroupStateResult.getNewGlobalGroupState().getLocalState();
+            try {
+                return applyHistory(localState, inputGroupState, serverHistory, revision, timestamp);
+            } finally {
+                if (serverHistory != null) {
+                    serverHistory.close();
+                }
+            }
+        }
+
+        /**
+         * Applies the server history a page at a time, while the next page is fetched and decrypted.
+         * See {@link PagedHistoryApplier}.
+         */
+        private @NonNull GroupUpdateResult applyHistory(@Nullable DecryptedGroup localState,
+                                                        @NonNull GlobalGroupState inputGroupState,
+                                                        @Nullable ServerHistoryPager serverHistory,
+                                                        int revision,
+                                                        long timestamp)
+                throws IOException
+        {
+            boolean        fromRestorePlaceholder = localState != null && localState.getRevision() == GroupsV2StateProcessor.RESTORE_PLACEHOLDER_REVISION;
+            DecryptedGroup newLocalState          = PagedHistoryApplier.apply(inputGroupState, serverHistory, revision, fromRestorePlaceholder, new DatabaseHistoryStore(timestamp));
 
-            if (newLocalState == null || newLocalState == inputGroupState.getLocalState()) {
+            if (newLocalState == null) {
                 return new GroupUpdateResult(GroupState.GROUP_CONSISTENT_OR_AHEAD, null);
             }
 
-            updateLocalDatabaseGroupState(inputGroupState, newLocalState);
-            determineProfileSharing(inputGroupState, newLocalState);
-            if (localState != null && localState.getRevision() == GroupsV2StateProcessor.RESTORE_PLACEHOLDER_REVISION) {
-                Log.i(TAG, "Inserting single update message for restore placeholder");
-                insertUpdateMessages(timestamp, null, Collections.singleton(new LocalGroupLogEntry(newLocalState, null)));
-            } else {
-                insertUpdateMessages(timestamp, localState, advanceGroupStateResult.getProcessedLogEntries());
+            return new GroupUpdateResult(GroupState.GROUP_UPDATED, newLocalState);
+        }
+
+        private final class DatabaseHistoryStore implements PagedHistoryApplier.Store {
+
+            private long timestamp;
+
+            private DatabaseHistoryStore(long timestamp) {
+                this.timestamp = timestamp;
+            }
+
+            @Override
+            public @NonNull Set<RecipientId> applyPage(@NonNull GlobalGroupState pageState,
+                                                       @NonNull DecryptedGroup pageLocalState,
+                                                       @NonNull Collection<LocalGroupLogEntry> processedLogEntries,
+                                                       @Nullable DecryptedGroup previousState,
+                                                       boolean fromRestorePlaceholder)
+            {
+                MessageDatabase mmsDatabase = DatabaseFactory.getMmsDatabase(context);
+
+                mmsDatabase.beginTransaction();
+                try {
+                    updateLocalDatabaseGroupState(pageState, pageLocalState);
+                    determineProfileSharing(pageState, pageLocalState);
+                    if (fromRestorePlaceholder) {
+                        Log.i(TAG, "Inserting single update message for restore placeholder");
+                        timestamp = insertUpdateMessages(timestamp, null, Collections.singleton(new LocalGroupLogEntry(pageLocalState, null)));
+                    } else {
+                        timestamp = insertUpdateMessages(timestamp, previousState, processedLogEntries);
+                    }
+                    Set<RecipientId> learnedProfileKeys = persistLearnedProfileKeys(pageState);
+                    mmsDatabase.setTransactionSuccessful();
+                    return learnedProfileKeys;
+                } finally {
+                    mmsDatabase.endTransaction();
+                }
             }
-            persistLearnedProfileKeys(inputGroupState);
 
-            GlobalGroupState remainingWork = advanceGroupStateResult.getNewGlobalGroupState();
-            if (remainingWork.getServerHistory().size() > 0) {
-                Log.i(TAG, String.format(Locale.US, "There are more revisions on the server for this group, scheduling for later, V[%d..%d]", newLocalState.getRevision() + 1, remainingWork.getLatestRevisionNumber()));
-                ApplicationDependencies.getJobManager().add(new RequestGroupV2InfoJob(groupId, remainingWork.getLatestRevisionNumber()));
+            @Override
+            public void scheduleRemaining(int latestRevision) {
+                ApplicationDependencies.getJobManager().add(new RequestGroupV2InfoJob(groupId, latestRevision));
             }
 
-            return new GroupUpdateResult(GroupState.GROUP_UPDATED, newLocalState);
+            @Override
+            public void fetchProfiles(@NonNull Set<RecipientId> recipients) {
+                StateProcessorForGroup.this.fetchProfiles(recipients);
+            }
         }
 
         @WorkerThread
@@ -400,7 +459,10 @@ public final class GroupsV2StateProcessor {
             }
         }
 
-        private void insertUpdateMessages(long timestamp,
+        /**
+         * @return The timestamp to give the next update message.
+         */
+        private long insertUpdateMessages(long timestamp,
                                           @Nullable DecryptedGroup previousGroupState,
                                           Collection<LocalGroupLogEntry> processedLogEntries)
         {
@@ -424,9 +486,11 @@ public final class GroupsV2StateProcessor {
                 }
                 previousGroupState = entry.getGroup();
             }
+
+            return timestamp;
         }
 
-        private void persistLearnedProfileKeys(@NonNull GlobalGroupState globalGroupState) {
+        private @NonNull Set<RecipientId> persistLearnedProfileKeys(@NonNull GlobalGroupState globalGroupState) {
             final ProfileKeySet profileKeys = new ProfileKeySet();
 
             for (ServerGroupLogEntry entry : globalGroupState.getServerHistory()) {
@@ -438,8 +502,10 @@ public final class GroupsV2StateProcessor {
                 }
             }
 
-            Set<RecipientId> updated = recipientDatabase.persistProfileKeySet(profileKeys);
+            return recipientDatabase.persistProfileKeySet(profileKeys);
+        }
 
+        private void fetchProfiles(@NonNull Set<RecipientId> updated) {
             if (!updated.isEmpty()) {
                 Log.i(TAG, String.format(Locale.US, "Learned %d new profile keys, fetching profiles", updated.size()));
 
@@ -449,12 +515,11 @@ public final class GroupsV2StateProcessor {
             }
         }
 
-        private @NonNull GlobalGroupState queryServer(@Nullable DecryptedGroup localState, boolean latestOnly)
+        private @NonNull ServerHistoryPager queryServer(@Nullable DecryptedGroup localState, boolean latestOnly)
                 throws IOException, GroupNotAMemberException
         {
-            UUID                      selfUuid          = Recipient.self().getUuid().get();
-            DecryptedGroup            latestServerGroup;
-            List<ServerGroupLogEntry> history;
+            UUID           selfUuid = Recipient.self().getUuid().get();
+            DecryptedGroup latestServerGroup;
 
             try {
                 latestServerGroup = groupsV2Api.getGroup(groupSecretParams, groupsV2Authorization.getAuthorizationForToday(selfUuid, groupSecretParams));
@@ -465,39 +530,124 @@ public final class GroupsV2StateProcessor {
             }
 
             if (latestOnly || !GroupProtoUtil.isMember(selfUuid, latestServerGroup.getMembersList())) {
-                history = Collections.singletonList(new ServerGroupLogEntry(latestServerGroup, null));
+                return new ServerHistoryPager(latestServerGroup, Collections.singletonList(new ServerGroupLogEntry(latestServerGroup, null)));
             } else {
                 int revisionWeWereAdded = GroupProtoUtil.findRevisionWeWereAdded(latestServerGroup, selfUuid);
                 int logsNeededFrom      = localState != null ? Math.max(localState.getRevision(), revisionWeWereAdded) : revisionWeWereAdded;
 
-                history = getFullMemberHistory(selfUuid, logsNeededFrom);
+                return new ServerHistoryPager(latestServerGroup, selfUuid, logsNeededFrom);
             }
-
-            return new GlobalGroupState(localState, history);
         }
 
-        private List<ServerGroupLogEntry> getFullMemberHistory(@NonNull UUID selfUuid, int logsNeededFromRevision) throws IOException {
-            try {
-                Collection<DecryptedGroupHistoryEntry> groupStatesFromRevision = groupsV2Api.getGroupHistory(groupSecretParams, logsNeededFromRevision, groupsV2Authorization.getAuthorizationForToday(selfUuid, groupSecretParams));
-                ArrayList<ServerGroupLogEntry>         history                 = new ArrayList<>(groupStatesFromRevision.size());
-                boolean                                ignoreServerChanges     = SignalStore.internalValues().gv2IgnoreServerChanges();
+        /**
+         * Hands out the server history a page at a time. While one page is being applied, the next is
+         * downloaded and decrypted in the background.
+         */
+        private final class ServerHistoryPager implements PagedHistoryApplier.HistorySource {
+
+            private final int     latestRevision;
+            private final UUID    selfUuid;
+            private final boolean ignoreServerChanges;
+
+            private List<ServerGroupLogEntry>                        currentPage;
+            private Future<Pair<List<ServerGroupLogEntry>, Integer>> nextPage;
+
+            private ServerHistoryPager(@NonNull DecryptedGroup latestServerGroup, @NonNull List<ServerGroupLogEntry> history) {
+                this.latestRevision      = latestServerGroup.getRevision();
+                this.selfUuid            = null;
+                this.ignoreServerChanges = false;
+                this.currentPage         = history;
+            }
+
+            private ServerHistoryPager(@NonNull DecryptedGroup latestServerGroup, @NonNull UUID selfUuid, int fromRevision) throws IOException {
+                this.latestRevision      = latestServerGroup.getRevision();
+                this.selfUuid            = selfUuid;
+                this.ignoreServerChanges = SignalStore.internalValues().gv2IgnoreServerChanges();
 
                 if (ignoreServerChanges) {
                     Log.w(TAG, "Server change logs are ignored by setting");
                 }
 
-                for (DecryptedGroupHistoryEntry entry : groupStatesFromRevision) {
-                    DecryptedGroup       group  = entry.getGroup().orNull();
-                    DecryptedGroupChange change = ignoreServerChanges ? null : entry.getChange().orNull();
+                Pair<List<ServerGroupLogEntry>, Integer> firstPage = fetchPage(fromRevision);
+
+                this.currentPage = firstPage.first();
+                prefetch(firstPage.second());
+            }
 
-                    if (group != null || change != null) {
-                        history.add(new ServerGroupLogEntry(group, change));
+            @Override
+            public int getLatestRevision() {
+                return latestRevision;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return currentPage != null || nextPage != null;
+            }
+
+            @Override
+            public @NonNull List<ServerGroupLogEntry> next() throws IOException {
+                if (currentPage != null) {
+                    List<ServerGroupLogEntry> page = currentPage;
+                    currentPage = null;
+                    return page;
+                }
+
+                if (nextPage == null) {
+                    throw new NoSuchElementException();
+                }
+
+                Pair<List<ServerGroupLogEntry>, Integer> page;
+                try {
+                    page = nextPage.get();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
                     }
+                    throw new IOException(e.getCause());
+                } finally {
+                    nextPage = null;
                 }
 
-                return history;
-            } catch (InvalidGroupStateException | VerificationFailedException e) {
-                throw new IOException(e);
+                prefetch(page.second());
+                return page.first();
+            }
+
+            void close() {
+                if (nextPage != null) {
+                    nextPage.cancel(true);
+                    nextPage = null;
+                }
+            }
+
+            private void prefetch(@Nullable Integer fromRevision) {
+                if (fromRevision != null) {
+                    nextPage = SignalExecutors.UNBOUNDED.submit(() -> fetchPage(fromRevision));
+                }
+            }
+
+            /**
+             * @return The page, and the revision the following page starts at, or null if it was the last.
+             */
+            private @NonNull Pair<List<ServerGroupLogEntry>, Integer> fetchPage(int fromRevision) throws IOException {
+                try {
+                    GroupHistoryPage               page    = groupsV2Api.getGroupHistoryPage(groupSecretParams, fromRevision, groupsV2Authorization.getAuthorizationForToday(selfUuid, groupSecretParams));
+                    ArrayList<ServerGroupLogEntry> history = new ArrayList<>(page.getResults().size());
+
+                    for (DecryptedGroupHistoryEntry entry : page.getResults()) {
+                        DecryptedGroup       group  = entry.getGroup().orNull();
+                        DecryptedGroupChange change = ignoreServerChanges ? null : entry.getChange().orNull();
+
+                        if (group != null || change != null) {
+                            history.add(new ServerGroupLogEntry(group, change));
+                        }
+                    }
+
+                    return new Pair<>(history, page.hasMore() ? page.getNextPageRevision() : null);
+                } catch (InvalidGroupStateException | VerificationFailedException e) {
+                    throw new IOException(e);
+                }
             }
         }
 
@@ -0,0 +1,132 @@
+package su.sres.securesms.groups.v2.processing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import su.sres.core.util.logging.Log;
+import su.sres.securesms.recipients.RecipientId;
+import su.sres.storageservice.protos.groups.local.DecryptedGroup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Applies a group's server history a page at a time.
+ * <p>
+ * Each page is handed to the {@link Store} to be applied in a single transaction, and the group
+ * row it leaves behind is the checkpoint: if catch-up is interrupted, the next attempt asks the
+ * server for history from that revision on. Profiles for the keys learned along the way are
+ * fetched once, when catch-up ends, whether or not it got to the end of the history.
+ */
+final class PagedHistoryApplier {
+
+    private static final String TAG = Log.tag(PagedHistoryApplier.class);
+
+    private PagedHistoryApplier() {
+    }
+
+    /**
+     * @param inputGroupState The local state and the first page of history.
+     * @param serverHistory   The pages after the first, if there may be any.
+     * @return The new local state, or null if nothing was applied.
+     */
+    static @Nullable DecryptedGroup apply(@NonNull GlobalGroupState inputGroupState,
+                                          @Nullable HistorySource serverHistory,
+                                          int revision,
+                                          boolean fromRestorePlaceholder,
+                                          @NonNull Store store)
+            throws IOException
+    {
+        Set<RecipientId> learnedProfileKeys = new HashSet<>();
+        DecryptedGroup   localState         = inputGroupState.getLocalState();
+        DecryptedGroup   newLocalState      = null;
+        GlobalGroupState pageState          = inputGroupState;
+        int              pages              = 0;
+
+        try {
+            while (true) {
+                AdvanceGroupStateResult advanceGroupStateResult = GroupStateMapper.partiallyAdvanceGroupState(pageState, revision);
+                GlobalGroupState        remainingWork           = advanceGroupStateResult.getNewGlobalGroupState();
+                DecryptedGroup          pageLocalState          = remainingWork.getLocalState();
+
+                if (pageLocalState != null && pageLocalState != pageState.getLocalState()) {
+                    DecryptedGroup previousState = newLocalState != null ? newLocalState : localState;
+
+                    learnedProfileKeys.addAll(store.applyPage(pageState, pageLocalState, advanceGroupStateResult.getProcessedLogEntries(), previousState, fromRestorePlaceholder));
+
+                    newLocalState          = pageLocalState;
+                    fromRestorePlaceholder = false;
+                    pages++;
+                }
+
+                DecryptedGroup current = newLocalState != null ? newLocalState : pageState.getLocalState();
+
+                if (remainingWork.getServerHistory().size() > 0 || (serverHistory != null && serverHistory.hasNext() && current != null && current.getRevision() >= revision)) {
+                    int latestRevision = serverHistory != null ? serverHistory.getLatestRevision() : remainingWork.getLatestRevisionNumber();
+
+                    Log.i(TAG, String.format(Locale.US, "There are more revisions on the server for this group, scheduling for later, V[%d..%d]", current != null ? current.getRevision() + 1 : 0, latestRevision));
+                    store.scheduleRemaining(latestRevision);
+                    break;
+                }
+
+                if (serverHistory == null || !serverHistory.hasNext()) {
+                    break;
+                }
+
+                ServerGroupLogEntry lastSeen = null;
+                for (ServerGroupLogEntry entry : pageState.getServerHistory()) {
+                    lastSeen = entry;
+                }
+
+                List<ServerGroupLogEntry> nextPage = new ArrayList<>();
+                if (lastSeen != null) {
+                    nextPage.add(lastSeen);
+                }
+                nextPage.addAll(serverHistory.next());
+
+                pageState = new GlobalGroupState(current, nextPage);
+            }
+        } finally {
+            if (pages > 1) {
+                Log.i(TAG, String.format(Locale.US, "Applied %d pages, up to V%d", pages, newLocalState.getRevision()));
+            }
+
+            store.fetchProfiles(learnedProfileKeys);
+        }
+
+        return newLocalState;
+    }
+
+    interface HistorySource {
+        boolean hasNext();
+
+        @NonNull List<ServerGroupLogEntry> next() throws IOException;
+
+        int getLatestRevision();
+    }
+
+    interface Store {
+        /**
+         * Applies one page of history in a single transaction, together with its update messages.
+         *
+         * @return The recipients whose profile keys were learned from the page.
+         */
+        @NonNull Set<RecipientId> applyPage(@NonNull GlobalGroupState pageState,
+                                            @NonNull DecryptedGroup pageLocalState,
+                                            @NonNull Collection<LocalGroupLogEntry> processedLogEntries,
+                                            @Nullable DecryptedGroup previousState,
+                                            boolean fromRestorePlaceholder);
+
+        /**
+         * Called when the history goes beyond the requested revision, or could not all be applied.
+         */
+        void scheduleRemaining(int latestRevision);
+
+        void fetchProfiles(@NonNull Set<RecipientId> recipients);
+    }
+}
@@ -122,6 +122,14 @@ public class JobManager implements ConstraintObserver.Notifier {
     });
   }
 
+  /**
+   * @return The number of threads that will run any job, not counting those reserved for particular
+   * jobs.
+   */
+  public int getJobThreadCount() {
+    return configuration.getJobThreadCount();
+  }
+
   /**
    * Convenience method for {@link #addListener(JobTracker.JobFilter, JobTracker.JobListener)} that
    * takes in an ID to filter on.
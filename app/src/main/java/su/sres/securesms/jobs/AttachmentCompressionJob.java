@@ -5,6 +5,7 @@ import android.media.MediaDataSource;
 import android.net.Uri;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import com.google.android.exoplayer2.util.MimeTypes;
@@ -15,12 +16,14 @@ import su.sres.securesms.R;
 import su.sres.securesms.attachments.Attachment;
 import su.sres.securesms.attachments.AttachmentId;
 import su.sres.securesms.attachments.DatabaseAttachment;
+import su.sres.securesms.attachments.PointerAttachment;
 import su.sres.securesms.crypto.AttachmentSecret;
 import su.sres.securesms.crypto.AttachmentSecretProvider;
 import su.sres.securesms.crypto.ModernDecryptingPartInputStream;
 import su.sres.securesms.crypto.ModernEncryptingPartOutputStream;
 import su.sres.securesms.database.AttachmentDatabase;
 import su.sres.securesms.database.DatabaseFactory;
+import su.sres.securesms.dependencies.ApplicationDependencies;
 import su.sres.securesms.events.PartProgressEvent;
 import su.sres.securesms.jobmanager.Data;
 import su.sres.securesms.jobmanager.Job;
@@ -33,6 +36,7 @@ import su.sres.securesms.mms.MmsException;
 import su.sres.securesms.service.GenericForegroundService;
 import su.sres.securesms.service.NotificationController;
 import su.sres.securesms.transport.UndeliverableMessageException;
+import su.sres.securesms.util.BitmapCompressor;
 import su.sres.securesms.util.BitmapDecodingException;
 import su.sres.securesms.util.BitmapUtil;
 import su.sres.securesms.util.FeatureFlags;
@@ -48,10 +52,16 @@ import su.sres.securesms.video.VideoSizeException;
 import su.sres.securesms.video.VideoSourceException;
 import su.sres.securesms.video.videoconverter.EncodingException;
 
+import org.whispersystems.libsignal.util.guava.Optional;
+
+import su.sres.signalservice.api.messages.SignalServiceAttachmentPointer;
+import su.sres.signalservice.internal.push.http.ResumableUploadSpec;
+
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
@@ -90,7 +100,7 @@ public final class AttachmentCompressionJob extends BaseJob {
                         .addConstraint(NetworkConstraint.KEY)
                         .setLifespan(TimeUnit.DAYS.toMillis(1))
                         .setMaxAttempts(Parameters.UNLIMITED)
-                        .setQueue(isVideoTranscode ? "VIDEO_TRANSCODE" : "GENERIC_TRANSCODE")
+                        .setQueue(isVideoTranscode ? "VIDEO_TRANSCODE" : ImageCompressionQueues.next())
                         .build(),
                 attachmentId,
                 mms,
@@ -167,7 +177,7 @@ public final class AttachmentCompressionJob extends BaseJob {
                 Log.d(TAG, "Sticker, not compressing.");
             } else if (MediaUtil.isVideo(attachment)) {
                 Log.i(TAG, "Compressing video.");
-                attachment = transcodeVideoIfNeededToDatabase(context, attachmentDatabase, attachment, constraints, EventBus.getDefault(), this::isCanceled);
+                attachment = transcodeVideoIfNeededToDatabase(context, attachmentDatabase, attachment, constraints, EventBus.getDefault(), this::isCanceled, canStreamUpload());
                 if (!constraints.isSatisfied(context, attachment)) {
                     throw new UndeliverableMessageException("Size constraints could not be met on video!");
                 }
@@ -187,12 +197,20 @@ public final class AttachmentCompressionJob extends BaseJob {
         }
     }
 
+    /**
+     * Videos sent over push with attachments V3 can be uploaded while they are transcoded, see {@link StreamingVideoUploader}.
+     */
+    private boolean canStreamUpload() {
+        return !mms && FeatureFlags.attachmentsV3() && FeatureFlags.streamingVideoUpload();
+    }
+
     private static @NonNull DatabaseAttachment transcodeVideoIfNeededToDatabase(@NonNull Context context,
                                                                                 @NonNull AttachmentDatabase attachmentDatabase,
                                                                                 @NonNull DatabaseAttachment attachment,
                                                                                 @NonNull MediaConstraints constraints,
                                                                                 @NonNull EventBus eventBus,
-                                                                                @NonNull TranscoderCancelationSignal cancelationSignal)
+                                                                                @NonNull TranscoderCancelationSignal cancelationSignal,
+                                                                                boolean streamUpload)
             throws UndeliverableMessageException
     {
         AttachmentDatabase.TransformProperties transformProperties = attachment.getTransformProperties();
@@ -233,6 +251,9 @@ public final class AttachmentCompressionJob extends BaseJob {
                                 .newFile();
                         file.deleteOnExit();
 
+                        StreamingVideoUploader         uploader = streamUpload ? createStreamingUploader(context, attachment, transcoder, cancelationSignal) : null;
+                        SignalServiceAttachmentPointer uploaded = null;
+
                         try {
                             try (OutputStream outputStream = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, true).second) {
                                 transcoder.transcode(percent -> {
@@ -241,17 +262,31 @@ public final class AttachmentCompressionJob extends BaseJob {
                                             PartProgressEvent.Type.COMPRESSION,
                                             100,
                                             percent));
-                                }, outputStream, cancelationSignal);
+                                }, uploader != null ? new TeeOutputStream(outputStream, uploader.getOutputStream()) : outputStream, uploader != null, cancelationSignal);
+                            }
+
+                            if (uploader != null) {
+                                uploaded = uploader.await();
                             }
 
                             MediaStream mediaStream = new MediaStream(ModernDecryptingPartInputStream.createFor(attachmentSecret, file, 0), MimeTypes.VIDEO_MP4, 0, 0);
                             attachmentDatabase.updateAttachmentData(attachment, mediaStream, transformProperties.isVideoEdited());
                         } finally {
+                            if (uploader != null) {
+                                uploader.close();
+                            }
                             if (!file.delete()) {
                                 Log.w(TAG, "Failed to delete temp file");
                             }
                         }
                         attachmentDatabase.markAttachmentAsTransformed(attachment.getAttachmentId());
+
+                        if (uploaded != null) {
+                            Log.i(TAG, "Video was uploaded while transcoding.");
+                            Attachment uploadedAttachment = PointerAttachment.forPointer(Optional.of(uploaded), null, attachment.getFastPreflightId()).get();
+                            attachmentDatabase.updateAttachmentAfterUpload(attachment.getAttachmentId(), uploadedAttachment, uploaded.getUploadTimestamp());
+                        }
+
                         return Objects.requireNonNull(attachmentDatabase.getAttachment(attachment.getAttachmentId()));
                     } else {
                         Log.i(TAG, "Transcode was not required");
@@ -296,6 +331,23 @@ public final class AttachmentCompressionJob extends BaseJob {
         return attachment;
     }
 
+    private static @Nullable StreamingVideoUploader createStreamingUploader(@NonNull Context context,
+                                                                          @NonNull DatabaseAttachment attachment,
+                                                                          @NonNull StreamingTranscoder transcoder,
+                                                                          @NonNull TranscoderCancelationSignal cancelationSignal)
+    {
+        try {
+            ResumableUploadSpec resumableUploadSpec = ApplicationDependencies.getSignalServiceMessageSender().getResumableUploadSpec();
+            String              blurHash            = AttachmentUploadJob.getVideoBlurHash(context, attachment);
+
+            Log.i(TAG, "Uploading while transcoding");
+            return new StreamingVideoUploader(attachment, resumableUploadSpec, transcoder.getFileSizeEstimate(), blurHash, cancelationSignal);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to start a streaming upload, the video will be uploaded after transcoding.", e);
+            return null;
+        }
+    }
+
     /**
      * Compresses the images. Given that we compress every image, this has the fun side effect of
      * stripping all EXIF data.
@@ -312,20 +364,15 @@ public final class AttachmentCompressionJob extends BaseJob {
             throw new UndeliverableMessageException("No attachment URI!");
         }
 
-        ImageCompressionUtil.Result result = null;
+        ImageCompressionUtil.Result result;
 
         try {
-            for (int size : mediaConstraints.getImageDimensionTargets(context)) {
-                result = ImageCompressionUtil.compressWithinConstraints(context,
-                        attachment.getContentType(),
-                        new DecryptableStreamUriLoader.DecryptableUri(uri),
-                        size,
-                        mediaConstraints.getImageMaxSize(context),
-                        70);
-                if (result != null) {
-                    break;
-                }
-            }
+            result = ImageCompressionUtil.compressWithinConstraints(context,
+                    attachment.getContentType(),
+                    new DecryptableStreamUriLoader.DecryptableUri(uri),
+                    mediaConstraints.getImageDimensionTargets(context),
+                    mediaConstraints.getImageMaxSize(context),
+                    70);
         } catch (BitmapDecodingException e) {
             throw new UndeliverableMessageException(e);
         }
@@ -334,12 +381,47 @@ public final class AttachmentCompressionJob extends BaseJob {
             throw new UndeliverableMessageException("Somehow couldn't meet the constraints!");
         }
 
+        if (result.getStats() != null) {
+            BitmapCompressor.Stats stats = result.getStats();
+
+            Log.i(TAG, String.format(Locale.US, "Compressed image to %dx%d at quality %d, %d bytes. %s", result.getWidth(), result.getHeight(), stats.getQuality(), result.getData().length, stats));
+        }
+
         return new MediaStream(new ByteArrayInputStream(result.getData()),
                 result.getMimeType(),
                 result.getWidth(),
                 result.getHeight());
     }
 
+    private static final class TeeOutputStream extends OutputStream {
+
+        private final OutputStream first;
+        private final OutputStream second;
+
+        TeeOutputStream(@NonNull OutputStream first, @NonNull OutputStream second) {
+            this.first  = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+    }
+
     public static final class Factory implements Job.Factory<AttachmentCompressionJob> {
         @Override
         public @NonNull AttachmentCompressionJob create(@NonNull Parameters parameters, @NonNull Data data) {
@@ -0,0 +1,82 @@
+package su.sres.securesms.jobs;
+
+import androidx.annotation.NonNull;
+
+import su.sres.core.util.logging.Log;
+import su.sres.securesms.database.AttachmentDatabase;
+import su.sres.securesms.database.DatabaseFactory;
+import su.sres.securesms.jobmanager.Data;
+import su.sres.securesms.jobmanager.Job;
+
+/**
+ * Merges attachments that have the same data but are stored in separate files, so that each piece
+ * of data is on disk only once. See {@link AttachmentDatabase#deduplicateDataFiles(String, int)}.
+ * <p>
+ * Merged hashes no longer show up as duplicates, so if the job is interrupted it simply picks up
+ * the remaining ones the next time it runs.
+ */
+public final class AttachmentDeduplicationJob extends BaseJob {
+
+  public static final String KEY = "AttachmentDeduplicationJob";
+
+  private static final String TAG = Log.tag(AttachmentDeduplicationJob.class);
+
+  private static final int BATCH_SIZE = 100;
+
+  public AttachmentDeduplicationJob() {
+    this(new Job.Parameters.Builder()
+                           .setQueue(KEY)
+                           .setMaxInstancesForFactory(1)
+                           .setMaxAttempts(3)
+                           .build());
+  }
+
+  private AttachmentDeduplicationJob(@NonNull Job.Parameters parameters) {
+    super(parameters);
+  }
+
+  @Override
+  public @NonNull Data serialize() {
+    return Data.EMPTY;
+  }
+
+  @Override
+  public @NonNull String getFactoryKey() {
+    return KEY;
+  }
+
+  @Override
+  protected void onRun() {
+    AttachmentDatabase database = DatabaseFactory.getAttachmentDatabase(context);
+    String             position = null;
+    int                batches  = 0;
+
+    do {
+      if (isCanceled()) {
+        Log.w(TAG, "Canceled after " + batches + " batch(es).");
+        return;
+      }
+
+      position = database.deduplicateDataFiles(position, BATCH_SIZE);
+      batches++;
+    } while (position != null);
+
+    Log.i(TAG, "Finished in " + batches + " batch(es).");
+  }
+
+  @Override
+  protected boolean onShouldRetry(@NonNull Exception e) {
+    return false;
+  }
+
+  @Override
+  public void onFailure() {
+  }
+
+  public static final class Factory implements Job.Factory<AttachmentDeduplicationJob> {
+    @Override
+    public @NonNull AttachmentDeduplicationJob create(@NonNull Parameters parameters, @NonNull Data data) {
+      return new AttachmentDeduplicationJob(parameters);
+    }
+  }
+}
@@ -7,6 +7,7 @@ import su.sres.securesms.jobmanager.Data;
 import su.sres.securesms.jobmanager.Job;
 import su.sres.securesms.jobmanager.JobLogger;
 import su.sres.securesms.jobmanager.impl.NetworkConstraint;
+import su.sres.core.util.StreamUtil;
 import su.sres.core.util.logging.Log;
 
 import org.greenrobot.eventbus.EventBus;
@@ -34,6 +35,7 @@ import su.sres.signalservice.api.push.exceptions.NonSuccessfulResponseCodeExcept
 import su.sres.signalservice.api.push.exceptions.PushNetworkException;
 import su.sres.signalservice.api.push.exceptions.RangeException;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -44,6 +46,7 @@ public final class AttachmentDownloadJob extends BaseJob {
   public static final String KEY = "AttachmentDownloadJob";
 
   private static final int    MAX_ATTACHMENT_SIZE = 150 * 1024  * 1024;
+  private static final int    MAX_HASH_FIRST_SIZE = 4 * 1024 * 1024;
   private static final String TAG                  = AttachmentDownloadJob.class.getSimpleName();
 
   private static final String KEY_MESSAGE_ID    = "message_id";
@@ -141,6 +144,10 @@ public final class AttachmentDownloadJob extends BaseJob {
     database.setTransferState(messageId, attachmentId, AttachmentDatabase.TRANSFER_PROGRESS_STARTED);
 
     retrieveAttachment(messageId, attachmentId, attachment);
+
+    if (attachment.isVoiceNote()) {
+      ApplicationDependencies.getJobManager().add(new VoiceNoteWaveFormJob());
+    }
   }
 
   @Override
@@ -172,6 +179,18 @@ public final class AttachmentDownloadJob extends BaseJob {
       SignalServiceAttachmentPointer pointer         = createAttachmentPointer(attachment);
       InputStream                    stream          = messageReceiver.retrieveAttachment(pointer, attachmentFile, MAX_ATTACHMENT_SIZE, (total, progress) -> EventBus.getDefault().postSticky(new PartProgressEvent(attachment, PartProgressEvent.Type.NETWORK, total, progress)));
 
+      if (attachmentFile.length() <= MAX_HASH_FIRST_SIZE) {
+        // Small enough to hold in memory while we look for a copy we already have, so that a
+        // duplicate is never written and the download is only decrypted once.
+        byte[] data = StreamUtil.readFully(stream);
+
+        if (database.linkPlaceholderToDuplicate(messageId, attachmentId, AttachmentDatabase.hashData(data))) {
+          return;
+        }
+
+        stream = new ByteArrayInputStream(data);
+      }
+
       database.insertAttachmentsForPlaceholder(messageId, attachmentId, stream);
     } catch (RangeException e) {
       Log.w(TAG, "Range exception, file size " + attachmentFile.length(), e);
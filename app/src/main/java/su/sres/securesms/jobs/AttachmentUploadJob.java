@@ -1,5 +1,6 @@
 package su.sres.securesms.jobs;
 
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.os.Build;
 import android.text.TextUtils;
@@ -192,7 +193,7 @@ public final class AttachmentUploadJob extends BaseJob {
             if (MediaUtil.isImageType(attachment.getContentType())) {
                 return builder.withBlurHash(getImageBlurHash(attachment)).build();
             } else if (MediaUtil.isVideoType(attachment.getContentType())) {
-                return builder.withBlurHash(getVideoBlurHash(attachment)).build();
+                return builder.withBlurHash(getVideoBlurHash(context, attachment)).build();
             } else {
                 return builder.build();
             }
@@ -210,8 +211,8 @@ public final class AttachmentUploadJob extends BaseJob {
         return BlurHashEncoder.encode(PartAuthority.getAttachmentStream(context, attachment.getUri()));
     }
 
-    private @Nullable
-    String getVideoBlurHash(@NonNull Attachment attachment) throws IOException {
+    static @Nullable
+    String getVideoBlurHash(@NonNull Context context, @NonNull Attachment attachment) throws IOException {
         if (attachment.getBlurHash() != null) {
             return attachment.getBlurHash().getHash();
         }
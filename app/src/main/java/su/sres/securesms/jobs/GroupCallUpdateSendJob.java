@@ -110,7 +110,7 @@ public class GroupCallUpdateSendJob extends BaseJob {
             throw new AssertionError("We have a recipient, but it's not a V2 Group");
         }
 
-        List<Recipient> destinations = Stream.of(recipients).map(Recipient::resolved).toList();
+        List<Recipient> destinations = Recipient.resolvedList(recipients);
         List<Recipient> completions  = deliver(conversationRecipient, destinations);
 
         for (Recipient completion : completions) {
@@ -0,0 +1,70 @@
+package su.sres.securesms.jobs;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import su.sres.core.util.logging.Log;
+import su.sres.securesms.dependencies.ApplicationDependencies;
+import su.sres.securesms.mms.MediaConstraints;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads image compression across a small number of job queues so that the attachments of a
+ * message are compressed in parallel, each going on to upload as soon as it is done.
+ * <p>
+ * The number of queues is bounded by the CPU, and by how many full-size decodes fit in the heap at
+ * once. It is also kept below the job manager's thread count, so that a large batch of compression
+ * always leaves at least one thread for uploads and other jobs.
+ */
+final class ImageCompressionQueues {
+
+  private static final String TAG = Log.tag(ImageCompressionQueues.class);
+
+  /** The original single queue, kept as the first so jobs persisted before this still run. */
+  private static final String QUEUE = "GENERIC_TRANSCODE";
+
+  private static final int MAX_PARALLELISM = 3;
+
+  /** A decode, its scaled copy and the compression buffers, as a multiple of the decoded size. */
+  private static final int HEAP_COPIES_PER_DECODE = 3;
+
+  private static final AtomicInteger next = new AtomicInteger();
+
+  private static volatile int parallelism;
+
+  private ImageCompressionQueues() {}
+
+  static @NonNull String next() {
+    int index = (next.getAndIncrement() & Integer.MAX_VALUE) % getParallelism();
+
+    return index == 0 ? QUEUE : QUEUE + "_" + index;
+  }
+
+  private static int getParallelism() {
+    if (parallelism == 0) {
+      Context context      = ApplicationDependencies.getApplication();
+      int     maxDimension = MediaConstraints.getPushMediaConstraints().getImageMaxWidth(context);
+
+      int     jobThreads   = ApplicationDependencies.getJobManager().getJobThreadCount();
+
+      parallelism = getParallelism(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory(), maxDimension, jobThreads);
+
+      Log.i(TAG, "Compressing up to " + parallelism + " image(s) at once");
+    }
+
+    return parallelism;
+  }
+
+  @VisibleForTesting
+  static int getParallelism(int processors, long maxHeapBytes, int maxImageDimension, int jobThreads) {
+    long bytesPerDecode = 4L * maxImageDimension * maxImageDimension * HEAP_COPIES_PER_DECODE;
+    long byMemory       = maxHeapBytes / Math.max(1, bytesPerDecode);
+    int  byCpu          = processors / 2;
+    int  byJobThreads   = jobThreads - 1;
+
+    return (int) Math.max(1, Math.min(Math.min(MAX_PARALLELISM, byJobThreads), Math.min(byCpu, byMemory)));
+  }
+}
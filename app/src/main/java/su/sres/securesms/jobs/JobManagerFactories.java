@@ -26,6 +26,7 @@ import su.sres.securesms.jobmanager.migrations.RecipientIdFollowUpJobMigration2;
 import su.sres.securesms.jobmanager.migrations.RecipientIdJobMigration;
 import su.sres.securesms.jobmanager.migrations.RetrieveProfileJobMigration;
 import su.sres.securesms.jobmanager.migrations.SendReadReceiptsJobMigration;
+import su.sres.securesms.migrations.AttachmentDeduplicationMigrationJob;
 import su.sres.securesms.migrations.AttributesMigrationJob;
 import su.sres.securesms.migrations.AvatarIdRemovalMigrationJob;
 import su.sres.securesms.migrations.BackupNotificationMigrationJob;
@@ -60,6 +61,7 @@ public final class JobManagerFactories {
             put(AttachmentUploadJob.KEY,                   new AttachmentUploadJob.Factory());
             put(AttachmentMarkUploadedJob.KEY,             new AttachmentMarkUploadedJob.Factory());
             put(AttachmentCompressionJob.KEY,              new AttachmentCompressionJob.Factory());
+            put(AttachmentDeduplicationJob.KEY,            new AttachmentDeduplicationJob.Factory());
             put(AutomaticSessionResetJob.KEY,              new AutomaticSessionResetJob.Factory());
             put(AvatarGroupsV1DownloadJob.KEY,             new AvatarGroupsV1DownloadJob.Factory());
             put(AvatarGroupsV2DownloadJob.KEY,             new AvatarGroupsV2DownloadJob.Factory());
@@ -137,10 +139,12 @@ public final class JobManagerFactories {
             put(TrimThreadJob.KEY,                         new TrimThreadJob.Factory());
             put(TypingSendJob.KEY,                         new TypingSendJob.Factory());
             put(UpdateApkJob.KEY,                          new UpdateApkJob.Factory());
+            put(VoiceNoteWaveFormJob.KEY,                  new VoiceNoteWaveFormJob.Factory());
             put(MarkerJob.KEY,                             new MarkerJob.Factory());
             put(ProfileUploadJob.KEY,                      new ProfileUploadJob.Factory());
 
             // Migrations
+            put(AttachmentDeduplicationMigrationJob.KEY,   new AttachmentDeduplicationMigrationJob.Factory());
             put(AttributesMigrationJob.KEY,                new AttributesMigrationJob.Factory());
             put(AvatarIdRemovalMigrationJob.KEY,           new AvatarIdRemovalMigrationJob.Factory());
             put(BackupNotificationMigrationJob.KEY,        new BackupNotificationMigrationJob.Factory());
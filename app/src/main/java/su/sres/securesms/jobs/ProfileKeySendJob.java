@@ -84,7 +84,7 @@ public class ProfileKeySendJob extends BaseJob {
             return;
         }
 
-        List<Recipient> destinations = Stream.of(recipients).map(Recipient::resolved).toList();
+        List<Recipient> destinations = Recipient.resolvedList(recipients);
         List<Recipient> completions  = deliver(conversationRecipient, destinations);
 
         for (Recipient completion : completions) {
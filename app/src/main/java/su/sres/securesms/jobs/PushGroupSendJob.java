@@ -377,10 +377,9 @@ public final class PushGroupSendJob extends PushSendJob {
   private @NonNull List<Recipient> getGroupMessageRecipients(@NonNull GroupId groupId, long messageId) {
     List<GroupReceiptInfo> destinations = DatabaseFactory.getGroupReceiptDatabase(context).getGroupReceiptInfo(messageId);
     if (!destinations.isEmpty()) {
-      return RecipientUtil.getEligibleForSending(Stream.of(destinations)
+      return RecipientUtil.getEligibleForSending(Recipient.resolvedList(Stream.of(destinations)
               .map(GroupReceiptInfo::getRecipientId)
-              .map(Recipient::resolved)
-              .toList());
+              .toList()));
     }
 
     List<Recipient> members = Stream.of(DatabaseFactory.getGroupDatabase(context)
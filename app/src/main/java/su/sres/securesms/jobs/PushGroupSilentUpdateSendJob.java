@@ -128,7 +128,7 @@ public final class PushGroupSilentUpdateSendJob extends BaseJob {
 
     @Override
     protected void onRun() throws Exception {
-        List<Recipient> destinations = Stream.of(recipients).map(Recipient::resolved).toList();
+        List<Recipient> destinations = Recipient.resolvedList(recipients);
         List<Recipient> completions  = deliver(destinations);
 
         for (Recipient completion : completions) {
@@ -164,7 +164,7 @@ public class ReactionSendJob extends BaseJob {
             throw new AssertionError("We have a message, but couldn't find the thread!");
         }
 
-        List<Recipient> destinations = Stream.of(recipients).map(Recipient::resolved).toList();
+        List<Recipient> destinations = Recipient.resolvedList(recipients);
         List<Recipient> completions  = deliver(conversationRecipient, destinations, targetAuthor, targetSentTimestamp);
 
         for (Recipient completion : completions) {
@@ -135,7 +135,7 @@ public class RemoteDeleteSendJob extends BaseJob {
             throw new IllegalStateException("Cannot delete a message that isn't yours!");
         }
 
-        List<Recipient> destinations = Stream.of(recipients).map(Recipient::resolved).toList();
+        List<Recipient> destinations = Recipient.resolvedList(recipients);
         List<Recipient> completions  = deliver(conversationRecipient, destinations, targetSentTimestamp);
 
         for (Recipient completion : completions) {
@@ -16,6 +16,7 @@ import org.signal.zkgroup.profiles.ProfileKeyCredential;
 import su.sres.securesms.crypto.ProfileKeyUtil;
 import su.sres.securesms.database.DatabaseFactory;
 import su.sres.securesms.database.GroupDatabase;
+import su.sres.securesms.database.IdentityDatabase;
 import su.sres.securesms.database.RecipientDatabase;
 import su.sres.securesms.database.RecipientDatabase.UnidentifiedAccessMode;
 import su.sres.securesms.dependencies.ApplicationDependencies;
@@ -25,6 +26,7 @@ import su.sres.securesms.jobmanager.JobManager;
 import su.sres.securesms.jobmanager.impl.NetworkConstraint;
 import su.sres.securesms.keyvalue.SignalStore;
 import su.sres.core.util.logging.Log;
+import su.sres.securesms.profiles.ProfileFetchCache;
 import su.sres.securesms.profiles.ProfileName;
 import su.sres.securesms.recipients.Recipient;
 import su.sres.securesms.recipients.RecipientId;
@@ -66,6 +68,10 @@ import java.util.concurrent.TimeoutException;
 
 /**
  * Retrieves a users profile and sets the appropriate local fields.
+ *
+ * Recipients whose profile was fetched in the last few minutes with their current profile key, or
+ * that another job is fetching right now, are skipped. A fetched profile that is identical to the
+ * last one is not processed again, and otherwise only the fields that changed are written.
  */
 public class RetrieveProfileJob extends BaseJob  {
 
@@ -75,6 +81,8 @@ public class RetrieveProfileJob extends BaseJob  {
 
   private static final String KEY_RECIPIENTS = "recipients";
 
+  private static final ProfileFetchCache FETCH_CACHE = new ProfileFetchCache();
+
   private final Set<RecipientId> recipientIds;
 
   /**
@@ -138,16 +146,14 @@ public class RetrieveProfileJob extends BaseJob  {
     Set<RecipientId> combined    = new HashSet<>(recipientIds.size());
     boolean          includeSelf = false;
 
-    for (RecipientId recipientId : recipientIds) {
-      Recipient recipient = Recipient.resolved(recipientId);
-
+    for (Recipient recipient : Recipient.resolvedList(recipientIds)) {
       if (recipient.isSelf()) {
         includeSelf = true;
       } else if (recipient.isGroup()) {
         List<Recipient> recipients = DatabaseFactory.getGroupDatabase(context).getGroupMembers(recipient.requireGroupId(), GroupDatabase.MemberSet.FULL_MEMBERS_EXCLUDING_SELF);
         combined.addAll(Stream.of(recipients).map(Recipient::getId).toList());
       } else {
-        combined.add(recipientId);
+        combined.add(recipient.getId());
       }
     }
 
@@ -248,48 +254,76 @@ public class RetrieveProfileJob extends BaseJob  {
             .filter(r -> r.getRegistered() != RecipientDatabase.RegisteredState.NOT_REGISTERED)
             .toList());
 
-    List<Recipient> recipients = Recipient.resolvedList(recipientIds);
+    List<Recipient>   recipients = Recipient.resolvedList(recipientIds);
+    List<Recipient>   claimed    = new ArrayList<>(recipients.size());
+    List<RecipientId> claimedIds = new ArrayList<>(recipients.size());
+    long              now        = System.currentTimeMillis();
+
+    for (Recipient recipient : recipients) {
+      if (recipient.hasServiceIdentifier() && FETCH_CACHE.claim(recipient.getId(), recipient.getProfileKey(), now, !needsProfileKeyCredential(recipient))) {
+        claimed.add(recipient);
+        claimedIds.add(recipient.getId());
+      }
+    }
     stopwatch.split("resolve-ensure");
 
-    List<Pair<Recipient, ListenableFuture<ProfileAndCredential>>> futures = Stream.of(recipients)
-            .filter(Recipient::hasServiceIdentifier)
-            .map(r -> new Pair<>(r, ProfileUtil.retrieveProfile(context, r, getRequestType(r))))
-            .toList();
-    stopwatch.split("futures");
-
-    List<Pair<Recipient, ProfileAndCredential>> profiles = Stream.of(futures)
-            .map(pair -> {
-              Recipient recipient = pair.first();
-
-              try {
-                ProfileAndCredential profile = pair.second().get(10, TimeUnit.SECONDS);
-                return new Pair<>(recipient, profile);
-              } catch (InterruptedException | TimeoutException e) {
-                retries.add(recipient.getId());
-              } catch (ExecutionException e) {
-                if (e.getCause() instanceof PushNetworkException) {
+    List<Pair<Recipient, ProfileAndCredential>> profiles;
+    int                                         unchanged = 0;
+
+    try {
+      List<Pair<Recipient, ListenableFuture<ProfileAndCredential>>> futures = Stream.of(claimed)
+              .map(r -> new Pair<>(r, ProfileUtil.retrieveProfile(context, r, getRequestType(r))))
+              .toList();
+      stopwatch.split("futures");
+
+      profiles = Stream.of(futures)
+              .map(pair -> {
+                Recipient recipient = pair.first();
+
+                try {
+                  ProfileAndCredential profile = pair.second().get(10, TimeUnit.SECONDS);
+                  return new Pair<>(recipient, profile);
+                } catch (InterruptedException | TimeoutException e) {
                   retries.add(recipient.getId());
-                } else if (e.getCause() instanceof NotFoundException) {
-                  Log.w(TAG, "Failed to find a profile for " + recipient.getId());
-                  if (recipient.isRegistered()) {
-                    unregistered.add(recipient.getId());
+                } catch (ExecutionException e) {
+                  if (e.getCause() instanceof PushNetworkException) {
+                    retries.add(recipient.getId());
+                  } else if (e.getCause() instanceof NotFoundException) {
+                    Log.w(TAG, "Failed to find a profile for " + recipient.getId());
+                    if (recipient.isRegistered()) {
+                      unregistered.add(recipient.getId());
+                    }
+                  } else {
+                    Log.w(TAG, "Failed to retrieve profile for " + recipient.getId());
                   }
-                } else {
-                  Log.w(TAG, "Failed to retrieve profile for " + recipient.getId());
                 }
-              }
-              return null;
-            })
-            .withoutNulls()
-            .toList();
-    stopwatch.split("network");
-
-    for (Pair<Recipient, ProfileAndCredential> profile : profiles) {
-      process(profile.first(), profile.second());
-    }
+                return null;
+              })
+              .withoutNulls()
+              .toList();
+      stopwatch.split("network");
+
+      for (Pair<Recipient, ProfileAndCredential> profile : profiles) {
+        Recipient recipient   = profile.first();
+        byte[]    fingerprint = ProfileFetchCache.fingerprint(recipient.getProfileKey(), profile.second().getProfile());
+
+        if (FETCH_CACHE.isUnchanged(recipient.getId(), recipient.getProfileKey(), fingerprint)) {
+          unchanged++;
+        } else {
+          process(recipient, profile.second());
+        }
 
-    Set<RecipientId> success = SetUtil.difference(recipientIds, retries);
-    recipientDatabase.markProfilesFetched(success, System.currentTimeMillis());
+        // Send jobs change the mode on their own, so it may be out of step even if the profile isn't.
+        setUnidentifiedAccessMode(recipient, profile.second().getProfile().getUnidentifiedAccess(), profile.second().getProfile().isUnrestrictedUnidentifiedAccess());
+        setProfileKeyCredential(recipient, profile.second());
+        FETCH_CACHE.markFetched(recipient.getId(), recipient.getProfileKey(), fingerprint, now);
+      }
+
+      Set<RecipientId> success = SetUtil.difference(claimedIds, retries);
+      recipientDatabase.markProfilesFetched(success, now);
+    } finally {
+      FETCH_CACHE.release(claimedIds);
+    }
 
     Map<RecipientId, String> newlyRegistered = Stream.of(profiles)
             .map(Pair::first)
@@ -305,7 +339,8 @@ public class RetrieveProfileJob extends BaseJob  {
     stopwatch.split("process");
 
     long keyCount = Stream.of(profiles).map(Pair::first).map(Recipient::getProfileKey).withoutNulls().count();
-    Log.d(TAG, String.format(Locale.US, "Started with %d recipient(s). Found %d profile(s), and had keys for %d of them. Will retry %d.", recipients.size(), profiles.size(), keyCount, retries.size()));
+    Log.d(TAG, String.format(Locale.US, "Started with %d recipient(s), skipped %d fresh or in flight. Found %d profile(s), %d unchanged, and had keys for %d of them. Will retry %d.",
+                             recipients.size(), recipients.size() - claimed.size(), profiles.size(), unchanged, keyCount, retries.size()));
 
     stopwatch.stop(TAG);
     recipientIds.clear();
@@ -325,8 +360,7 @@ public class RetrieveProfileJob extends BaseJob  {
   public void onFailure() {}
 
   private void process(Recipient recipient, ProfileAndCredential profileAndCredential) {
-    SignalServiceProfile profile              = profileAndCredential.getProfile();
-    ProfileKey           recipientProfileKey  = ProfileKeyUtil.profileKeyOrNull(recipient.getProfileKey());
+    SignalServiceProfile profile = profileAndCredential.getProfile();
 
     setProfileName(recipient, profile.getName());
     setProfileAbout(recipient, profile.getAbout(), profile.getAboutEmoji());
@@ -334,22 +368,16 @@ public class RetrieveProfileJob extends BaseJob  {
     clearUsername(recipient);
     setProfileCapabilities(recipient, profile.getCapabilities());
     setIdentityKey(recipient, profile.getIdentityKey());
-    setUnidentifiedAccessMode(recipient, profile.getUnidentifiedAccess(), profile.isUnrestrictedUnidentifiedAccess());
-
-    if (recipientProfileKey != null) {
-      Optional<ProfileKeyCredential> profileKeyCredential = profileAndCredential.getProfileKeyCredential();
-      if (profileKeyCredential.isPresent()) {
-        setProfileKeyCredential(recipient, recipientProfileKey, profileKeyCredential.get());
-      }
-    }
   }
 
-  private void setProfileKeyCredential(@NonNull Recipient recipient,
-                                       @NonNull ProfileKey recipientProfileKey,
-                                       @NonNull ProfileKeyCredential credential)
-  {
-    RecipientDatabase recipientDatabase = DatabaseFactory.getRecipientDatabase(context);
-    recipientDatabase.setProfileKeyCredential(recipient.getId(), recipientProfileKey, credential);
+  private void setProfileKeyCredential(@NonNull Recipient recipient, @NonNull ProfileAndCredential profileAndCredential) {
+    ProfileKey                     recipientProfileKey  = ProfileKeyUtil.profileKeyOrNull(recipient.getProfileKey());
+    Optional<ProfileKeyCredential> profileKeyCredential = profileAndCredential.getProfileKeyCredential();
+
+    if (recipientProfileKey != null && profileKeyCredential.isPresent()) {
+      RecipientDatabase recipientDatabase = DatabaseFactory.getRecipientDatabase(context);
+      recipientDatabase.setProfileKeyCredential(recipient.getId(), recipientProfileKey, profileKeyCredential.get());
+    }
   }
 
   private static SignalServiceProfile.RequestType getRequestType(@NonNull Recipient recipient) {
@@ -358,6 +386,13 @@ public class RetrieveProfileJob extends BaseJob  {
             : SignalServiceProfile.RequestType.PROFILE;
   }
 
+  /**
+   * A fresh profile is still fetched if we could get a credential for it that we do not have yet.
+   */
+  private static boolean needsProfileKeyCredential(@NonNull Recipient recipient) {
+    return recipient.getProfileKey() != null && !recipient.hasProfileKeyCredential();
+  }
+
   private void setIdentityKey(Recipient recipient, String identityKeyValue) {
     try {
       if (TextUtils.isEmpty(identityKeyValue)) {
@@ -367,14 +402,17 @@ public class RetrieveProfileJob extends BaseJob  {
 
       IdentityKey identityKey = new IdentityKey(Base64.decode(identityKeyValue), 0);
 
-      if (!DatabaseFactory.getIdentityDatabase(context)
-              .getIdentity(recipient.getId())
-                          .isPresent())
-      {
+      Optional<IdentityDatabase.IdentityRecord> identityRecord = DatabaseFactory.getIdentityDatabase(context).getIdentity(recipient.getId());
+
+      if (!identityRecord.isPresent()) {
         Log.w(TAG, "Still first use...");
         return;
       }
 
+      if (identityRecord.get().getIdentityKey().equals(identityKey)) {
+        return;
+      }
+
       IdentityUtil.saveIdentity(context, recipient.requireServiceId(), identityKey);
     } catch (InvalidKeyException | IOException e) {
       Log.w(TAG, e);
@@ -465,6 +503,10 @@ public class RetrieveProfileJob extends BaseJob  {
       String plaintextAbout = ProfileUtil.decryptName(profileKey, encryptedAbout);
       String plaintextEmoji = ProfileUtil.decryptName(profileKey, encryptedEmoji);
 
+      if (Util.equals(plaintextAbout, recipient.getAbout()) && Util.equals(plaintextEmoji, recipient.getAboutEmoji())) {
+        return;
+      }
+
       DatabaseFactory.getRecipientDatabase(context).setAbout(recipient.getId(), plaintextAbout, plaintextEmoji);
     } catch (InvalidCiphertextException | IOException e) {
       Log.w(TAG, e);
@@ -480,6 +522,8 @@ public class RetrieveProfileJob extends BaseJob  {
   }
 
   private void clearUsername(Recipient recipient) {
+    if (!recipient.getUsername().isPresent()) return;
+
     DatabaseFactory.getRecipientDatabase(context).setUsername(recipient.getId(), null);
   }
 
@@ -505,6 +549,12 @@ public class RetrieveProfileJob extends BaseJob  {
       return;
     }
 
+    if (recipient.getGroupsV2Capability()          == Recipient.Capability.fromBoolean(capabilities.isGv2()) &&
+        recipient.getGroupsV1MigrationCapability() == Recipient.Capability.fromBoolean(capabilities.isGv1Migration()))
+    {
+      return;
+    }
+
     DatabaseFactory.getRecipientDatabase(context).setCapabilities(recipient.getId(), capabilities);
   }
 
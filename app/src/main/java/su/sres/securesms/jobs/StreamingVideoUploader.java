@@ -0,0 +1,160 @@
+package su.sres.securesms.jobs;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.greenrobot.eventbus.EventBus;
+
+import su.sres.core.util.concurrent.SignalExecutors;
+import su.sres.core.util.logging.Log;
+import su.sres.securesms.attachments.Attachment;
+import su.sres.securesms.dependencies.ApplicationDependencies;
+import su.sres.securesms.events.PartProgressEvent;
+import su.sres.securesms.video.TranscoderCancelationSignal;
+import su.sres.signalservice.api.messages.SignalServiceAttachment;
+import su.sres.signalservice.api.messages.SignalServiceAttachmentPointer;
+import su.sres.signalservice.internal.push.http.ResumableUploadSpec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Uploads a video while it is still being transcoded.
+ * <p>
+ * The transcoder output is written to {@link #getOutputStream()}, which feeds a pipe that a resumable CDN upload
+ * reads from on a background thread. The upload is best effort: if it fails, writes are dropped so the transcode can
+ * still complete, and {@link #await()} returns null so the normal {@link AttachmentUploadJob} path takes over.
+ */
+final class StreamingVideoUploader implements Closeable {
+
+    private static final String TAG = Log.tag(StreamingVideoUploader.class);
+
+    /**
+     * Large enough to hold one upload chunk, so encoding can continue while the previous chunk is being sent.
+     */
+    private static final int PIPE_SIZE = 2 * 1024 * 1024;
+
+    private final PipedOutputStream                      pipeOutputStream;
+    private final PipedInputStream                       pipeInputStream;
+    private final OutputStream                           outputStream;
+    private final Future<SignalServiceAttachmentPointer> upload;
+
+    private volatile boolean failed;
+
+    StreamingVideoUploader(@NonNull Attachment attachment,
+                           @NonNull ResumableUploadSpec resumableUploadSpec,
+                           long sizeEstimate,
+                           @Nullable String blurHash,
+                           @NonNull TranscoderCancelationSignal cancelationSignal)
+            throws IOException
+    {
+        this.pipeInputStream  = new PipedInputStream(PIPE_SIZE);
+        this.pipeOutputStream = new PipedOutputStream(pipeInputStream);
+        this.outputStream     = new FailSafeOutputStream();
+
+        SignalServiceAttachment localAttachment = SignalServiceAttachment.newStreamBuilder()
+                .withStream(pipeInputStream)
+                .withContentType(attachment.getContentType())
+                .withLength(sizeEstimate)
+                .withFileName(attachment.getFileName())
+                .withVoiceNote(attachment.isVoiceNote())
+                .withBorderless(attachment.isBorderless())
+                .withWidth(attachment.getWidth())
+                .withHeight(attachment.getHeight())
+                .withUploadTimestamp(System.currentTimeMillis())
+                .withCaption(attachment.getCaption())
+                .withBlurHash(blurHash)
+                .withCancelationSignal(cancelationSignal::isCanceled)
+                .withResumableUploadSpec(resumableUploadSpec)
+                .withListener((total, progress) -> EventBus.getDefault().postSticky(new PartProgressEvent(attachment, PartProgressEvent.Type.NETWORK, total, progress)))
+                .build();
+
+        this.upload = SignalExecutors.UNBOUNDED.submit(() -> {
+            try {
+                return ApplicationDependencies.getSignalServiceMessageSender().uploadStreamingAttachment(localAttachment.asStream());
+            } finally {
+                pipeInputStream.close();
+            }
+        });
+    }
+
+    /**
+     * The stream the transcoder output should be copied to. It never throws due to a failed upload.
+     */
+    @NonNull OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Marks the end of the video and waits for the upload to finish.
+     *
+     * @return The uploaded attachment, or null if the upload failed.
+     */
+    @Nullable SignalServiceAttachmentPointer await() {
+        try {
+            outputStream.close();
+            return upload.get();
+        } catch (IOException | ExecutionException e) {
+            Log.w(TAG, "Streaming upload failed, falling back to a regular upload.", e);
+            return null;
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted while waiting for the streaming upload.", e);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Abandons the upload if it has not completed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!upload.isDone()) {
+            failed = true;
+            upload.cancel(true);
+            pipeInputStream.close();
+        }
+    }
+
+    private final class FailSafeOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+            if (failed) return;
+
+            try {
+                pipeOutputStream.write(b);
+            } catch (IOException e) {
+                onPipeFailed(e);
+            }
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) {
+            if (failed) return;
+
+            try {
+                pipeOutputStream.write(b, off, len);
+            } catch (IOException e) {
+                onPipeFailed(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!failed) {
+                pipeOutputStream.close();
+            }
+        }
+
+        private void onPipeFailed(@NonNull IOException e) {
+            Log.w(TAG, "Upload stopped reading, continuing the transcode without it.", e);
+            failed = true;
+        }
+    }
+}
@@ -16,7 +16,10 @@
  */
 package su.sres.securesms.jobs;
 
+import android.content.Context;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 
 import su.sres.securesms.database.DatabaseFactory;
 import su.sres.securesms.database.ThreadDatabase;
@@ -34,12 +37,22 @@ public class TrimThreadJob extends BaseJob {
 
   private static final String KEY_THREAD_ID = "thread_id";
 
+  private static final long ALL_THREADS = -1;
+
   private long threadId;
 
   public TrimThreadJob(long threadId) {
     this(new Job.Parameters.Builder().setQueue("TrimThreadJob").build(), threadId);
   }
 
+  /**
+   * Trims every thread. If the app is killed part way through, the job carries on from the last
+   * thread it finished when it is run again.
+   */
+  public static @NonNull TrimThreadJob forAllThreads() {
+    return new TrimThreadJob(ALL_THREADS);
+  }
+
   private TrimThreadJob(@NonNull Job.Parameters parameters, long threadId) {
     super(parameters);
     this.threadId = threadId;
@@ -57,15 +70,45 @@ public class TrimThreadJob extends BaseJob {
 
   @Override
   public void onRun() {
-    KeepMessagesDuration keepMessagesDuration = SignalStore.settings().getKeepMessagesDuration();
+    if (threadId == ALL_THREADS) {
+      trimAllThreads(context);
+      return;
+    }
 
-    int trimLength = SignalStore.settings().isTrimByLengthEnabled() ? SignalStore.settings().getThreadTrimLength()
-            : ThreadDatabase.NO_TRIM_MESSAGE_COUNT_SET;
+    DatabaseFactory.getThreadDatabase(context).trimThread(threadId, getTrimLength(), getTrimBeforeDate());
+  }
 
-    long trimBeforeDate = keepMessagesDuration != KeepMessagesDuration.FOREVER ? System.currentTimeMillis() - keepMessagesDuration.getDuration()
-            : ThreadDatabase.NO_TRIM_BEFORE_DATE_SET;
+  /**
+   * Trims every thread to the current settings, skipping those an interrupted run with the same
+   * settings already got through. Progress is saved after each thread.
+   */
+  @WorkerThread
+  public static void trimAllThreads(@NonNull Context context) {
+    synchronized (TrimThreadJob.class) {
+      int    trimLength     = getTrimLength();
+      long   trimBeforeDate = getTrimBeforeDate();
+      String policy         = trimLength + ":" + SignalStore.settings().getKeepMessagesDuration().getId();
+      long   afterThreadId  = SignalStore.misc().getTrimProgressThreadId(policy);
+
+      if (afterThreadId > 0) {
+        Log.i(TAG, "Resuming trim after thread: " + afterThreadId);
+      }
+
+      DatabaseFactory.getThreadDatabase(context).trimAllThreads(trimLength, trimBeforeDate, afterThreadId, id -> SignalStore.misc().setTrimProgress(policy, id));
+      SignalStore.misc().clearTrimProgress();
+    }
+  }
+
+  private static int getTrimLength() {
+    return SignalStore.settings().isTrimByLengthEnabled() ? SignalStore.settings().getThreadTrimLength()
+                                                          : ThreadDatabase.NO_TRIM_MESSAGE_COUNT_SET;
+  }
+
+  private static long getTrimBeforeDate() {
+    KeepMessagesDuration keepMessagesDuration = SignalStore.settings().getKeepMessagesDuration();
 
-    DatabaseFactory.getThreadDatabase(context).trimThread(threadId, trimLength, trimBeforeDate);
+    return keepMessagesDuration != KeepMessagesDuration.FOREVER ? System.currentTimeMillis() - keepMessagesDuration.getDuration()
+                                                                : ThreadDatabase.NO_TRIM_BEFORE_DATE_SET;
   }
 
   @Override
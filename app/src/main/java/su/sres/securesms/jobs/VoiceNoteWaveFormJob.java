@@ -0,0 +1,129 @@
+package su.sres.securesms.jobs;
+
+import android.net.Uri;
+import android.os.Build;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import su.sres.core.util.concurrent.SignalExecutors;
+import su.sres.core.util.logging.Log;
+import su.sres.securesms.attachments.AttachmentId;
+import su.sres.securesms.audio.AudioWaveForm;
+import su.sres.securesms.database.AttachmentDatabase;
+import su.sres.securesms.database.DatabaseFactory;
+import su.sres.securesms.database.model.databaseprotos.AudioWaveFormData;
+import su.sres.securesms.jobmanager.Data;
+import su.sres.securesms.jobmanager.Job;
+import su.sres.securesms.mms.PartAuthority;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Generates the wave forms of downloaded voice notes ahead of them being shown, so that scrolling
+ * through a conversation finds them in the database instead of waiting on a decode.
+ * <p>
+ * Rather than being told which attachments to process, the job picks up every downloaded voice
+ * note that has no wave form yet, so one run covers any number of downloads. Files are decoded a
+ * few at a time on low priority threads, and the results of each batch are written together.
+ */
+public final class VoiceNoteWaveFormJob extends BaseJob {
+
+  public static final String KEY = "VoiceNoteWaveFormJob";
+
+  private static final String TAG = Log.tag(VoiceNoteWaveFormJob.class);
+
+  private static final int PARALLELISM = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() / 2));
+  private static final int BATCH_SIZE  = PARALLELISM * 4;
+
+  private static final ExecutorService DECODE_EXECUTOR = SignalExecutors.newCachedBoundedExecutor("signal-wave-form", 1, PARALLELISM);
+
+  public VoiceNoteWaveFormJob() {
+    this(new Job.Parameters.Builder()
+                           .setQueue(KEY)
+                           .setMaxInstancesForQueue(2)
+                           .setMaxAttempts(1)
+                           .build());
+  }
+
+  private VoiceNoteWaveFormJob(@NonNull Job.Parameters parameters) {
+    super(parameters);
+  }
+
+  @Override
+  public @NonNull Data serialize() {
+    return Data.EMPTY;
+  }
+
+  @Override
+  public @NonNull String getFactoryKey() {
+    return KEY;
+  }
+
+  @Override
+  protected void onRun() throws InterruptedException {
+    if (Build.VERSION.SDK_INT < 23) {
+      Log.i(TAG, "Wave forms are not supported on this device.");
+      return;
+    }
+
+    AttachmentDatabase database = DatabaseFactory.getAttachmentDatabase(context);
+    int                total    = 0;
+
+    List<AttachmentId> batch;
+
+    while (!isCanceled() && !(batch = database.getVoiceNotesWithoutWaveForm(BATCH_SIZE)).isEmpty()) {
+      Map<AttachmentId, Future<AudioWaveFormData>> decodes = new LinkedHashMap<>();
+
+      for (AttachmentId attachmentId : batch) {
+        Uri uri = PartAuthority.getAttachmentDataUri(attachmentId);
+
+        decodes.put(attachmentId, DECODE_EXECUTOR.submit(() -> {
+          Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+          // As when a wave form is generated on display, mark it just before decoding so that a file
+          // which crashes the decoder is not tried again. Until then it still reads as not generated.
+          database.writeAudioHash(attachmentId, AudioWaveFormData.getDefaultInstance());
+
+          return AudioWaveForm.precompute(context, uri);
+        }));
+      }
+
+      Map<AttachmentId, AudioWaveFormData> waveForms = new LinkedHashMap<>();
+
+      for (Map.Entry<AttachmentId, Future<AudioWaveFormData>> decode : decodes.entrySet()) {
+        try {
+          waveForms.put(decode.getKey(), decode.getValue().get());
+        } catch (ExecutionException e) {
+          Log.w(TAG, "Failed to generate wave form for " + decode.getKey(), e.getCause());
+        }
+      }
+
+      database.writeAudioHashes(waveForms);
+      total += waveForms.size();
+    }
+
+    Log.i(TAG, "Generated " + total + " wave form(s).");
+  }
+
+  @Override
+  protected boolean onShouldRetry(@NonNull Exception e) {
+    return false;
+  }
+
+  @Override
+  public void onFailure() {
+  }
+
+  public static final class Factory implements Job.Factory<VoiceNoteWaveFormJob> {
+    @Override
+    public @NonNull VoiceNoteWaveFormJob create(@NonNull Parameters parameters, @NonNull Data data) {
+      return new VoiceNoteWaveFormJob(parameters);
+    }
+  }
+}
@@ -19,6 +19,8 @@ public final class MiscellaneousValues extends SignalStoreValues {
     private static final String LAST_SERVCONF_REFRESH_TIME    = "last_service_config_refresh_time";
     private static final String MESSAGE_REQUEST_ENABLE_TIME = "message_request_enable_time";
     private static final String OLD_DEVICE_TRANSFER_LOCKED      = "misc.old_device.transfer.locked";
+    private static final String TRIM_PROGRESS_THREAD_ID     = "misc.trim_progress.thread_id";
+    private static final String TRIM_PROGRESS_POLICY        = "misc.trim_progress.policy";
 
     MiscellaneousValues(@NonNull KeyValueStore store) {
         super(store);
@@ -126,4 +128,22 @@ public final class MiscellaneousValues extends SignalStoreValues {
     public void clearOldDeviceTransferLocked() {
         putBoolean(OLD_DEVICE_TRANSFER_LOCKED, false);
     }
-}
\ No newline at end of file
+
+    /**
+     * @return The last thread an interrupted trim of all threads got through, or 0 if there is none
+     *         or it was trimming to a different policy.
+     */
+    public long getTrimProgressThreadId(@NonNull String policy) {
+        return policy.equals(getString(TRIM_PROGRESS_POLICY, null)) ? getLong(TRIM_PROGRESS_THREAD_ID, 0) : 0;
+    }
+
+    public void setTrimProgress(@NonNull String policy, long threadId) {
+        putString(TRIM_PROGRESS_POLICY, policy);
+        putLong(TRIM_PROGRESS_THREAD_ID, threadId);
+    }
+
+    public void clearTrimProgress() {
+        putString(TRIM_PROGRESS_POLICY, null);
+        putLong(TRIM_PROGRESS_THREAD_ID, 0);
+    }
+}
@@ -0,0 +1,21 @@
+package su.sres.securesms.logsubmit;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import su.sres.securesms.glide.cache.EncryptedCacheMetrics;
+
+public final class LogSectionGlideCache implements LogSection {
+
+    @Override
+    public @NonNull String getTitle() {
+        return "GLIDE CACHE";
+    }
+
+    @Override
+    public @NonNull CharSequence getContent(@NonNull Context context) {
+        String metrics = EncryptedCacheMetrics.describe();
+        return metrics.isEmpty() ? "No cache activity yet." : metrics;
+    }
+}
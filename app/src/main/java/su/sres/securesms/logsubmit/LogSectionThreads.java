@@ -4,6 +4,10 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 
+import su.sres.core.util.concurrent.ExecutorMonitor;
+import su.sres.core.util.concurrent.InstrumentedExecutor;
+import su.sres.securesms.crypto.DatabaseSessionLock;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -27,6 +31,25 @@ public class LogSectionThreads implements LogSection {
             builder.append("[").append(thread.getId()).append("] ").append(thread.getName()).append("\n");
         }
 
+        builder.append("\n-- Executors\n");
+        for (InstrumentedExecutor.Metrics metrics : ExecutorMonitor.getMetrics()) {
+            builder.append(metrics).append("\n");
+        }
+
+        List<String> stalls = ExecutorMonitor.getRecentStalls();
+
+        builder.append("\n-- Recent Stalls\n");
+        if (stalls.isEmpty()) {
+            builder.append("None\n");
+        } else {
+            for (String stall : stalls) {
+                builder.append(stall).append("\n");
+            }
+        }
+
+        builder.append("\n-- Session Lock\n");
+        builder.append(DatabaseSessionLock.INSTANCE.getMetrics()).append("\n");
+
         return builder;
     }
 }
\ No newline at end of file
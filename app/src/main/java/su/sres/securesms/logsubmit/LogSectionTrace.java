@@ -3,9 +3,23 @@ package su.sres.securesms.logsubmit;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import su.sres.core.util.tracing.Tracer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
 
 public class LogSectionTrace implements LogSection {
 
+    /** How much of the trace to attach by default, which keeps the upload small however long tracing has been on. */
+    public static final long DEFAULT_WINDOW_MS = TimeUnit.MINUTES.toMillis(2);
+    public static final long WHOLE_TRACE       = Long.MAX_VALUE;
+
     @Override
     public @NonNull String getTitle() {
         return "TRACE";
@@ -15,4 +29,21 @@ public class LogSectionTrace implements LogSection {
     public @NonNull CharSequence getContent(@NonNull Context context) {
         return LogStyleParser.TRACE_PLACEHOLDER;
     }
+
+    /**
+     * Streams the last windowMs of the trace to a file in the cache directory, which the caller deletes.
+     */
+    @WorkerThread
+    static @NonNull File writeTrace(@NonNull Context context, long windowMs) throws IOException {
+        File file = File.createTempFile("trace", ".perfetto-trace", context.getCacheDir());
+
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file))) {
+            Tracer.getInstance().serialize(outputStream, windowMs);
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+
+        return file;
+    }
 }
@@ -4,7 +4,6 @@ import android.content.Context;
 import android.os.Build;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import com.annimon.stream.Stream;
@@ -22,6 +21,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.whispersystems.libsignal.util.guava.Optional;
 
+import java.io.File;
 import java.io.IOException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
@@ -78,6 +78,7 @@ public class SubmitDebugLogRepository {
         add(new LogSectionKeyPreferences());
         add(new LogSectionPermissions());
         add(new LogSectionTrace());
+        add(new LogSectionGlideCache());
         add(new LogSectionThreads());
         add(new LogSectionBlockedThreads());
         add(new LogSectionLogcat());
@@ -97,23 +98,32 @@ public class SubmitDebugLogRepository {
         executor.execute(() -> callback.onResult(getLogLinesInternal()));
     }
 
+    /**
+     * Submits the log with the last {@link LogSectionTrace#DEFAULT_WINDOW_MS} of the trace.
+     */
     public void submitLog(@NonNull List<LogLine> lines, Callback<Optional<String>> callback) {
-        SignalExecutors.UNBOUNDED.execute(() -> callback.onResult(submitLogInternal(lines, null)));
+        submitLog(lines, LogSectionTrace.DEFAULT_WINDOW_MS, callback);
     }
 
-    public void submitLog(@NonNull List<LogLine> lines, @Nullable byte[] trace, Callback<Optional<String>> callback) {
-        SignalExecutors.UNBOUNDED.execute(() -> callback.onResult(submitLogInternal(lines, trace)));
+    public void submitLog(@NonNull List<LogLine> lines, long traceWindowMs, Callback<Optional<String>> callback) {
+        SignalExecutors.UNBOUNDED.execute(() -> callback.onResult(submitLogInternal(lines, traceWindowMs)));
     }
 
     @WorkerThread
-    private @NonNull Optional<String> submitLogInternal(@NonNull List<LogLine> lines, @Nullable byte[] trace) {
+    private @NonNull Optional<String> submitLogInternal(@NonNull List<LogLine> lines, long traceWindowMs) {
         String traceUrl = null;
-        if (trace != null) {
+        if (Stream.of(lines).anyMatch(line -> line.getPlaceholderType() == LogLine.Placeholder.TRACE)) {
+            File trace = null;
             try {
-                traceUrl = uploadContent("application/octet-stream", trace);
+                trace    = LogSectionTrace.writeTrace(context, traceWindowMs);
+                traceUrl = uploadContent("application/octet-stream", RequestBody.create(MediaType.parse("application/octet-stream"), trace));
             } catch (IOException e) {
                 Log.w(TAG, "Error during trace upload.", e);
                 return Optional.absent();
+            } finally {
+                if (trace != null && !trace.delete()) {
+                    Log.w(TAG, "Failed to delete trace.");
+                }
             }
         }
 
@@ -130,7 +140,7 @@ public class SubmitDebugLogRepository {
         }
 
         try {
-            String logUrl = uploadContent("text/plain", bodyBuilder.toString().getBytes());
+            String logUrl = uploadContent("text/plain", RequestBody.create(MediaType.parse("text/plain"), bodyBuilder.toString().getBytes()));
             return Optional.of(logUrl);
         } catch (IOException e) {
             Log.w(TAG, "Error during log upload.", e);
@@ -139,7 +149,7 @@ public class SubmitDebugLogRepository {
     }
 
     @WorkerThread
-    private @NonNull String uploadContent(@NonNull String contentType, @NonNull byte[] content) throws IOException {
+    private @NonNull String uploadContent(@NonNull String contentType, @NonNull RequestBody content) throws IOException {
         try {
             String cloudUrl = accountManager.getConfigurationInfo().getCloudUri() + DEBUG_LOGS_PATH;
 
@@ -165,7 +175,7 @@ public class SubmitDebugLogRepository {
                     .addFormDataPart("x-amz-date", debugLogUploadAttributes.getDate())
                     .addFormDataPart("x-amz-signature", debugLogUploadAttributes.getSignature())
                     .addFormDataPart("Content-Type", contentType)
-                    .addFormDataPart("file", "file", RequestBody.create(MediaType.parse(contentType), content))
+                    .addFormDataPart("file", "file", content)
                     .build();
 
             Response postResponse = client.newCall(new Request.Builder().url(cloudUrl).post(requestBody).build()).execute();
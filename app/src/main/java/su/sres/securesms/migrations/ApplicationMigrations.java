@@ -38,9 +38,9 @@ public class ApplicationMigrations {
 
     private static final MutableLiveData<Boolean> UI_BLOCKING_MIGRATION_RUNNING = new MutableLiveData<>();
 
-    public static final int CURRENT_VERSION = 25;
+    public static final int CURRENT_VERSION = 26;
 
-    // public static final int CURRENT_VERSION = 26;
+    // public static final int CURRENT_VERSION = 27;
 
     private static final class Version {
         static final int VERSIONED_PROFILE = 15;
@@ -54,7 +54,8 @@ public class ApplicationMigrations {
         static final int GV1_MIGRATION = 23;
         static final int BLOB_LOCATION = 24;
         static final int SYSTEM_NAME_SPLIT = 25;
-//        static final int DAY_BY_DAY_STICKERS = 26;
+        static final int ATTACHMENT_DEDUPLICATION = 26;
+//        static final int DAY_BY_DAY_STICKERS = 27;
     }
 
     /**
@@ -211,6 +212,10 @@ public class ApplicationMigrations {
             jobs.put(Version.SYSTEM_NAME_SPLIT, new DirectoryRefreshMigrationJob());
         }
 
+        if (lastSeenVersion < Version.ATTACHMENT_DEDUPLICATION) {
+            jobs.put(Version.ATTACHMENT_DEDUPLICATION, new AttachmentDeduplicationMigrationJob());
+        }
+
       /*  if (lastSeenVersion < Version.DAY_BY_DAY_STICKERS) {
             jobs.put(Version.DAY_BY_DAY_STICKERS, new StickerDayByDayMigrationJob());
         } */
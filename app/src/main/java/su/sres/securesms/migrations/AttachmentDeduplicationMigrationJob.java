@@ -0,0 +1,52 @@
+package su.sres.securesms.migrations;
+
+import androidx.annotation.NonNull;
+
+import su.sres.securesms.dependencies.ApplicationDependencies;
+import su.sres.securesms.jobmanager.Data;
+import su.sres.securesms.jobmanager.Job;
+import su.sres.securesms.jobs.AttachmentDeduplicationJob;
+
+/**
+ * Schedules a one-time pass over existing attachments to merge any copies of the same data that
+ * were stored in separate files.
+ */
+public final class AttachmentDeduplicationMigrationJob extends MigrationJob {
+
+    public static final String KEY = "AttachmentDeduplicationMigrationJob";
+
+    AttachmentDeduplicationMigrationJob() {
+        this(new Parameters.Builder().build());
+    }
+
+    private AttachmentDeduplicationMigrationJob(@NonNull Parameters parameters) {
+        super(parameters);
+    }
+
+    @Override
+    public boolean isUiBlocking() {
+        return false;
+    }
+
+    @Override
+    public @NonNull String getFactoryKey() {
+        return KEY;
+    }
+
+    @Override
+    public void performMigration() {
+        ApplicationDependencies.getJobManager().add(new AttachmentDeduplicationJob());
+    }
+
+    @Override
+    boolean shouldRetry(@NonNull Exception e) {
+        return false;
+    }
+
+    public static class Factory implements Job.Factory<AttachmentDeduplicationMigrationJob> {
+        @Override
+        public @NonNull AttachmentDeduplicationMigrationJob create(@NonNull Parameters parameters, @NonNull Data data) {
+            return new AttachmentDeduplicationMigrationJob(parameters);
+        }
+    }
+}
@@ -26,8 +26,8 @@ import su.sres.securesms.components.settings.BaseSettingsFragment;
 import su.sres.securesms.components.settings.CustomizableSingleSelectSetting;
 import su.sres.securesms.components.settings.SingleSelectSetting;
 import su.sres.securesms.database.DatabaseFactory;
-import su.sres.securesms.database.ThreadDatabase;
 import su.sres.securesms.dependencies.ApplicationDependencies;
+import su.sres.securesms.jobs.TrimThreadJob;
 import su.sres.securesms.keyvalue.KeepMessagesDuration;
 import su.sres.securesms.keyvalue.SettingsValues;
 import su.sres.securesms.keyvalue.SignalStore;
@@ -284,12 +284,7 @@ public class StoragePreferenceFragment extends ListSummaryPreferenceFragment {
             updateSettingsList();
 
             if (SignalStore.settings().isTrimByLengthEnabled() && restrictingChange) {
-                KeepMessagesDuration keepMessagesDuration = SignalStore.settings().getKeepMessagesDuration();
-
-                long trimBeforeDate = keepMessagesDuration != KeepMessagesDuration.FOREVER ? System.currentTimeMillis() - keepMessagesDuration.getDuration()
-                        : ThreadDatabase.NO_TRIM_BEFORE_DATE_SET;
-
-                SignalExecutors.BOUNDED.execute(() -> DatabaseFactory.getThreadDatabase(ApplicationDependencies.getApplication()).trimAllThreads(length, trimBeforeDate));
+                ApplicationDependencies.getJobManager().add(TrimThreadJob.forAllThreads());
             }
         }
     }
@@ -0,0 +1,161 @@
+package su.sres.securesms.profiles;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import su.sres.securesms.recipients.RecipientId;
+import su.sres.signalservice.api.profiles.SignalServiceProfile;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which profiles were fetched recently and what they looked like, so that profile jobs
+ * can skip recipients whose profile is fresh or already being fetched by another job, and skip
+ * processing a fetched profile that is identical to the last one.
+ *
+ * A profile is only considered fresh for the profile key it was fetched with, since a new key can
+ * reveal a name and avatar that the old one could not. Entries live in memory only, and the least
+ * recently used are dropped once there are too many.
+ */
+public final class ProfileFetchCache {
+
+    public static final long DEFAULT_FRESHNESS_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int DEFAULT_MAX_ENTRIES = 2000;
+
+    private final long                    freshnessMs;
+    private final Map<RecipientId, Entry> entries;
+    private final Set<RecipientId>        inFlight;
+
+    public ProfileFetchCache() {
+        this(DEFAULT_FRESHNESS_MS, DEFAULT_MAX_ENTRIES);
+    }
+
+    public ProfileFetchCache(long freshnessMs, int maxEntries) {
+        this.freshnessMs = freshnessMs;
+        this.inFlight    = new HashSet<>();
+        this.entries     = new LinkedHashMap<RecipientId, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RecipientId, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Claims a recipient for fetching, unless another fetch of it is in flight or, when
+     * {@code skipIfFresh} is set, it was fetched recently with the same profile key. Every successful
+     * claim must be followed by a {@link #release(Collection)}.
+     *
+     * @return True if the caller should fetch the profile.
+     */
+    public synchronized boolean claim(@NonNull RecipientId id, @Nullable byte[] profileKey, long now, boolean skipIfFresh) {
+        if (inFlight.contains(id)) {
+            return false;
+        }
+
+        Entry entry = entries.get(id);
+
+        if (skipIfFresh                         &&
+            entry != null                       &&
+            now >= entry.fetchedAt              &&
+            now - entry.fetchedAt < freshnessMs &&
+            Arrays.equals(entry.profileKey, profileKey))
+        {
+            return false;
+        }
+
+        inFlight.add(id);
+        return true;
+    }
+
+    public synchronized void release(@NonNull Collection<RecipientId> ids) {
+        inFlight.removeAll(ids);
+    }
+
+    /**
+     * @return True if the profile is identical to the one last fetched with the same key, and so does
+     *         not need to be processed again.
+     */
+    public synchronized boolean isUnchanged(@NonNull RecipientId id, @Nullable byte[] profileKey, @NonNull byte[] fingerprint) {
+        Entry entry = entries.get(id);
+
+        return entry != null                                &&
+               Arrays.equals(entry.profileKey, profileKey) &&
+               MessageDigest.isEqual(entry.fingerprint, fingerprint);
+    }
+
+    /**
+     * Records a profile once it has been processed.
+     */
+    public synchronized void markFetched(@NonNull RecipientId id, @Nullable byte[] profileKey, @NonNull byte[] fingerprint, long now) {
+        entries.put(id, new Entry(profileKey, fingerprint, now));
+    }
+
+    /**
+     * @return A digest of every field of the profile that is written locally, along with the key used
+     *         to decrypt them.
+     */
+    public static @NonNull byte[] fingerprint(@Nullable byte[] profileKey, @NonNull SignalServiceProfile profile) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            update(digest, profileKey);
+            update(digest, profile.getIdentityKey());
+            update(digest, profile.getName());
+            update(digest, profile.getAbout());
+            update(digest, profile.getAboutEmoji());
+            update(digest, profile.getAvatar());
+            update(digest, profile.getUnidentifiedAccess());
+
+            SignalServiceProfile.Capabilities capabilities = profile.getCapabilities();
+
+            digest.update((byte) (profile.isUnrestrictedUnidentifiedAccess() ? 1 : 0));
+            digest.update((byte) (capabilities == null ? 0 : 1));
+
+            if (capabilities != null) {
+                digest.update((byte) (capabilities.isGv2() ? 1 : 0));
+                digest.update((byte) (capabilities.isGv1Migration() ? 1 : 0));
+            }
+
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void update(@NonNull MessageDigest digest, @Nullable String value) {
+        update(digest, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private static void update(@NonNull MessageDigest digest, @Nullable byte[] value) {
+        if (value == null) {
+            digest.update((byte) 0);
+        } else {
+            digest.update((byte) 1);
+            digest.update(new byte[] { (byte) (value.length >>> 24), (byte) (value.length >>> 16), (byte) (value.length >>> 8), (byte) value.length });
+            digest.update(value);
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] profileKey;
+        private final byte[] fingerprint;
+        private final long   fetchedAt;
+
+        private Entry(@Nullable byte[] profileKey, @NonNull byte[] fingerprint, long fetchedAt) {
+            this.profileKey  = profileKey;
+            this.fingerprint = fingerprint;
+            this.fetchedAt   = fetchedAt;
+        }
+    }
+}
@@ -149,6 +149,26 @@ public final class LiveRecipient {
         return updated;
     }
 
+    /**
+     * Resolves the recipient from settings that were already loaded, such as by a bulk read. Groups
+     * still need their members, so they are resolved as usual.
+     */
+    @WorkerThread
+    @NonNull Recipient resolve(@NonNull RecipientSettings settings) {
+        Recipient current = recipient.get();
+
+        if (!current.isResolving() || settings.getGroupId() != null) {
+            return resolve();
+        }
+
+        Recipient updated = new Recipient(settings.getId(), RecipientDetails.forIndividual(context, settings), true);
+        RecipientIdCache.INSTANCE.put(updated);
+
+        set(updated);
+
+        return updated;
+    }
+
     @WorkerThread
     public void refresh() {
         refresh(getId());
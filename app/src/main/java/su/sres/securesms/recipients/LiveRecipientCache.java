@@ -6,11 +6,13 @@ import android.content.Context;
 import androidx.annotation.AnyThread;
 import androidx.annotation.GuardedBy;
 import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 
 import su.sres.securesms.crypto.DatabaseSessionLock;
 import su.sres.securesms.database.DatabaseFactory;
 import su.sres.securesms.database.RecipientDatabase;
 import su.sres.securesms.database.RecipientDatabase.MissingRecipientException;
+import su.sres.securesms.database.RecipientDatabase.RecipientSettings;
 import su.sres.securesms.database.ThreadDatabase;
 import su.sres.securesms.database.model.ThreadRecord;
 import su.sres.core.util.logging.Log;
@@ -21,8 +23,11 @@ import su.sres.signalservice.api.SignalSessionLock;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 public final class LiveRecipientCache {
@@ -51,11 +56,18 @@ public final class LiveRecipientCache {
 
     @AnyThread
     synchronized @NonNull LiveRecipient getLive(@NonNull RecipientId id) {
+        return getLive(id, true);
+    }
+
+    private synchronized @NonNull LiveRecipient getLive(@NonNull RecipientId id, boolean resolveInBackground) {
         if (id.isUnknown()) return unknown;
 
         LiveRecipient live = recipients.get(id);
 
-        if (live == null) {
+        if (live == null && !resolveInBackground) {
+            live = new LiveRecipient(context, new Recipient(id));
+            recipients.put(id, live);
+        } else if (live == null) {
             final LiveRecipient newLive = new LiveRecipient(context, new Recipient(id));
 
             recipients.put(id, newLive);
@@ -76,6 +88,47 @@ public final class LiveRecipientCache {
         return live;
     }
 
+    /**
+     * Resolves many recipients at once, reading the ones that aren't already resolved with a single
+     * query per chunk rather than one query each, and caching them all.
+     *
+     * @return The resolved recipients, in the order of the ids given.
+     */
+    @WorkerThread
+    @NonNull List<Recipient> getResolved(@NonNull Collection<RecipientId> ids) {
+        List<LiveRecipient> lives      = new ArrayList<>(ids.size());
+        Set<RecipientId>    unresolved = new HashSet<>();
+
+        synchronized (this) {
+            for (RecipientId id : ids) {
+                LiveRecipient live = getLive(id, false);
+
+                lives.add(live);
+
+                if (live.get().isResolving() && !id.isUnknown()) {
+                    unresolved.add(id);
+                }
+            }
+        }
+
+        Map<RecipientId, RecipientSettings> settings = unresolved.isEmpty() ? Collections.emptyMap()
+                                                                            : recipientDatabase.getRecipientSettings(unresolved);
+
+        if (unresolved.size() > 1) {
+            Log.d(TAG, "Resolved " + settings.size() + " of " + unresolved.size() + " recipient(s) in bulk.");
+        }
+
+        List<Recipient> resolved = new ArrayList<>(lives.size());
+
+        for (LiveRecipient live : lives) {
+            RecipientSettings recipientSettings = settings.get(live.getId());
+
+            resolved.add(recipientSettings != null ? live.resolve(recipientSettings) : live.resolve());
+        }
+
+        return resolved;
+    }
+
     /**
      * Adds a recipient to the cache if we don't have an entry. This will also update a cache entry
      * if the provided recipient is resolved, or if the existing cache entry is unresolved.
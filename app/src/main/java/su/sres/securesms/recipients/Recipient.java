@@ -134,15 +134,13 @@ public class Recipient {
     return live(id).resolve();
   }
 
+  /**
+   * Returns fully-populated {@link Recipient}s, reading any that aren't cached in bulk. Prefer this
+   * to resolving one at a time when there are many, such as the members of a group.
+   */
   @WorkerThread
   public static @NonNull List<Recipient> resolvedList(@NonNull Collection<RecipientId> ids) {
-    List<Recipient> recipients = new ArrayList<>(ids.size());
-
-    for (RecipientId recipientId : ids) {
-      recipients.add(resolved(recipientId));
-    }
-
-    return recipients;
+    return ApplicationDependencies.getRecipientCache().getResolved(ids);
   }
 
   /**
@@ -2,34 +2,54 @@ package su.sres.securesms.service;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
+
 import su.sres.securesms.database.MessageDatabase;
+import su.sres.securesms.database.MmsSmsDatabase;
+import su.sres.core.util.concurrent.SignalExecutors;
+import su.sres.core.util.concurrent.TaskPriority;
 import su.sres.core.util.logging.Log;
 
 import su.sres.securesms.database.DatabaseFactory;
 import su.sres.securesms.database.MmsDatabase;
 import su.sres.securesms.database.SmsDatabase;
 import su.sres.securesms.database.model.MessageRecord;
+import su.sres.securesms.util.TimerWheel;
+import su.sres.securesms.util.Util;
 
-import java.util.Comparator;
-import java.util.TreeSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 public class ExpiringMessageManager {
 
   private static final String TAG = ExpiringMessageManager.class.getSimpleName();
 
-  private final TreeSet<ExpiringMessageReference> expiringMessageReferences = new TreeSet<>(new ExpiringMessageComparator());
-  private final Executor                          executor                  = Executors.newSingleThreadExecutor();
+  /**
+   * Messages due within the same tick are deleted together.
+   */
+  private static final long TICK_MILLIS    = 250;
+  private static final int  MAX_BATCH_SIZE = 500;
+
+  private final TimerWheel<ExpiringMessageReference> expiringMessageReferences = new TimerWheel<>(TICK_MILLIS, System.currentTimeMillis());
+  /**
+   * Background, as the process task waits on the wheel for as long as the app runs, and would
+   * otherwise be reported as stalled.
+   */
+  private final Executor                             executor                  = SignalExecutors.newCachedSingleThreadExecutor("signal-ExpiringMessageManager", TaskPriority.BACKGROUND);
 
   private final MessageDatabase smsDatabase;
   private final MessageDatabase mmsDatabase;
+  private final MmsSmsDatabase  mmsSmsDatabase;
   private final Context         context;
 
   public ExpiringMessageManager(Context context) {
-    this.context     = context.getApplicationContext();
-    this.smsDatabase = DatabaseFactory.getSmsDatabase(context);
-    this.mmsDatabase = DatabaseFactory.getMmsDatabase(context);
+    this.context        = context.getApplicationContext();
+    this.smsDatabase    = DatabaseFactory.getSmsDatabase(context);
+    this.mmsDatabase    = DatabaseFactory.getMmsDatabase(context);
+    this.mmsSmsDatabase = DatabaseFactory.getMmsSmsDatabase(context);
 
     executor.execute(new LoadTask());
     executor.execute(new ProcessTask());
@@ -43,7 +63,7 @@ public class ExpiringMessageManager {
     long expiresAtMillis = startedAtTimestamp + expiresInMillis;
 
     synchronized (expiringMessageReferences) {
-      expiringMessageReferences.add(new ExpiringMessageReference(id, mms, expiresAtMillis));
+      expiringMessageReferences.add(new ExpiringMessageReference(id, mms), expiresAtMillis);
       expiringMessageReferences.notifyAll();
     }
   }
@@ -61,16 +81,16 @@ public class ExpiringMessageManager {
 
       MessageRecord messageRecord;
 
-      while ((messageRecord = smsReader.getNext()) != null) {
-        expiringMessageReferences.add(new ExpiringMessageReference(messageRecord.getId(),
-                                                                   messageRecord.isMms(),
-                                                                   messageRecord.getExpireStarted() + messageRecord.getExpiresIn()));
-      }
+      synchronized (expiringMessageReferences) {
+        while ((messageRecord = smsReader.getNext()) != null) {
+          expiringMessageReferences.add(new ExpiringMessageReference(messageRecord.getId(), messageRecord.isMms()),
+                                        messageRecord.getExpireStarted() + messageRecord.getExpiresIn());
+        }
 
-      while ((messageRecord = mmsReader.getNext()) != null) {
-        expiringMessageReferences.add(new ExpiringMessageReference(messageRecord.getId(),
-                                                                   messageRecord.isMms(),
-                                                                   messageRecord.getExpireStarted() + messageRecord.getExpiresIn()));
+        while ((messageRecord = mmsReader.getNext()) != null) {
+          expiringMessageReferences.add(new ExpiringMessageReference(messageRecord.getId(), messageRecord.isMms()),
+                                        messageRecord.getExpireStarted() + messageRecord.getExpiresIn());
+        }
       }
 
       smsReader.close();
@@ -82,72 +102,59 @@ public class ExpiringMessageManager {
   private class ProcessTask implements Runnable {
     public void run() {
       while (true) {
-        ExpiringMessageReference expiredMessage = null;
+        List<ExpiringMessageReference> expiredMessages = Collections.emptyList();
 
         synchronized (expiringMessageReferences) {
           try {
             while (expiringMessageReferences.isEmpty()) expiringMessageReferences.wait();
 
-            ExpiringMessageReference nextReference = expiringMessageReferences.first();
-            long                     waitTime      = nextReference.expiresAtMillis - System.currentTimeMillis();
+            long now = System.currentTimeMillis();
 
-            if (waitTime > 0) {
-              ExpirationListener.setAlarm(context, waitTime);
-              expiringMessageReferences.wait(waitTime);
-            } else {
-              expiredMessage = nextReference;
-              expiringMessageReferences.remove(nextReference);
-            }
+            expiredMessages = expiringMessageReferences.advance(now);
 
+            if (expiredMessages.isEmpty()) {
+              long waitTime = expiringMessageReferences.getNextWakeMillis() - now;
+
+              if (waitTime > 0) {
+                ExpirationListener.setAlarm(context, waitTime);
+                expiringMessageReferences.wait(waitTime);
+              }
+            }
           } catch (InterruptedException e) {
             Log.w(TAG, e);
           }
         }
 
-        if (expiredMessage != null) {
-          if (expiredMessage.mms) mmsDatabase.deleteMessage(expiredMessage.id);
-          else                    smsDatabase.deleteMessage(expiredMessage.id);
+        if (!expiredMessages.isEmpty()) {
+          deleteExpiredMessages(expiredMessages);
         }
       }
     }
-  }
 
-  private static class ExpiringMessageReference {
-    private final long    id;
-    private final boolean mms;
-    private final long    expiresAtMillis;
+    private void deleteExpiredMessages(@NonNull List<ExpiringMessageReference> expiredMessages) {
+      Log.i(TAG, "Deleting " + expiredMessages.size() + " expired messages");
 
-    private ExpiringMessageReference(long id, boolean mms, long expiresAtMillis) {
-      this.id = id;
-      this.mms = mms;
-      this.expiresAtMillis = expiresAtMillis;
-    }
-
-    @Override
-    public boolean equals(Object other) {
-      if (other == null) return false;
-      if (!(other instanceof ExpiringMessageReference)) return false;
+      for (List<ExpiringMessageReference> batch : Util.partition(expiredMessages, MAX_BATCH_SIZE)) {
+        Set<Long> smsIds = new LinkedHashSet<>();
+        Set<Long> mmsIds = new LinkedHashSet<>();
 
-      ExpiringMessageReference that = (ExpiringMessageReference)other;
-      return this.id == that.id && this.mms == that.mms && this.expiresAtMillis == that.expiresAtMillis;
-    }
+        for (ExpiringMessageReference expiredMessage : batch) {
+          if (expiredMessage.mms) mmsIds.add(expiredMessage.id);
+          else                    smsIds.add(expiredMessage.id);
+        }
 
-    @Override
-    public int hashCode() {
-      return (int)this.id ^ (mms ? 1 : 0) ^ (int)expiresAtMillis;
+        mmsSmsDatabase.deleteMessages(smsIds, mmsIds);
+      }
     }
   }
 
-  private static class ExpiringMessageComparator implements Comparator<ExpiringMessageReference> {
-    @Override
-    public int compare(ExpiringMessageReference lhs, ExpiringMessageReference rhs) {
-      if      (lhs.expiresAtMillis < rhs.expiresAtMillis) return -1;
-      else if (lhs.expiresAtMillis > rhs.expiresAtMillis) return 1;
-      else if (lhs.id < rhs.id)                           return -1;
-      else if (lhs.id > rhs.id)                           return 1;
-      else if (!lhs.mms && rhs.mms)                       return -1;
-      else if (lhs.mms && !rhs.mms)                       return 1;
-      else                                                return 0;
+  private static class ExpiringMessageReference {
+    private final long    id;
+    private final boolean mms;
+
+    private ExpiringMessageReference(long id, boolean mms) {
+      this.id  = id;
+      this.mms = mms;
     }
   }
 
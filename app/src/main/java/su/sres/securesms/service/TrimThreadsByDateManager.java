@@ -10,8 +10,8 @@ import androidx.annotation.Nullable;
 
 import su.sres.securesms.database.DatabaseFactory;
 import su.sres.securesms.database.MmsSmsDatabase;
-import su.sres.securesms.database.ThreadDatabase;
 import su.sres.securesms.dependencies.ApplicationDependencies;
+import su.sres.securesms.jobs.TrimThreadJob;
 import su.sres.securesms.keyvalue.KeepMessagesDuration;
 import su.sres.securesms.keyvalue.SignalStore;
 import su.sres.core.util.logging.Log;
@@ -20,13 +20,13 @@ public class TrimThreadsByDateManager extends TimedEventManager<TrimThreadsByDat
 
     private static final String TAG = Log.tag(TrimThreadsByDateManager.class);
 
-    private final ThreadDatabase threadDatabase;
+    private final Application    application;
     private final MmsSmsDatabase mmsSmsDatabase;
 
     public TrimThreadsByDateManager(@NonNull Application application) {
         super(application, "TrimThreadsByDateManager");
 
-        threadDatabase = DatabaseFactory.getThreadDatabase(application);
+        this.application = application;
         mmsSmsDatabase = DatabaseFactory.getMmsSmsDatabase(application);
 
         scheduleIfNecessary();
@@ -57,16 +57,8 @@ public class TrimThreadsByDateManager extends TimedEventManager<TrimThreadsByDat
 
     @Override
     protected void executeEvent(@NonNull TrimEvent event) {
-        KeepMessagesDuration keepMessagesDuration = SignalStore.settings().getKeepMessagesDuration();
-
-        int trimLength = SignalStore.settings().isTrimByLengthEnabled() ? SignalStore.settings().getThreadTrimLength()
-                : ThreadDatabase.NO_TRIM_MESSAGE_COUNT_SET;
-
-        long trimBeforeDate = keepMessagesDuration != KeepMessagesDuration.FOREVER ? System.currentTimeMillis() - keepMessagesDuration.getDuration()
-                : ThreadDatabase.NO_TRIM_BEFORE_DATE_SET;
-
-        Log.i(TAG, "Trimming all threads with length: " + trimLength + " before: " + trimBeforeDate);
-        threadDatabase.trimAllThreads(trimLength, trimBeforeDate);
+        Log.i(TAG, "Trimming all threads");
+        TrimThreadJob.trimAllThreads(application);
     }
 
     @Override
@@ -11,10 +11,10 @@ import androidx.appcompat.app.AlertDialog;
 import su.sres.core.util.ShakeDetector;
 import su.sres.core.util.ThreadUtil;
 import su.sres.core.util.logging.Log;
-import su.sres.core.util.tracing.Tracer;
 import su.sres.securesms.ApplicationContext;
 import su.sres.securesms.R;
 import su.sres.securesms.dependencies.ApplicationDependencies;
+import su.sres.securesms.logsubmit.LogSectionTrace;
 import su.sres.securesms.logsubmit.SubmitDebugLogRepository;
 import su.sres.securesms.sharing.ShareIntents;
 import su.sres.securesms.util.FeatureFlags;
@@ -94,7 +94,7 @@ public final class ShakeToReport implements ShakeDetector.Listener {
         repo.getLogLines(lines -> {
             Log.i(TAG, "Retrieved log lines...");
 
-            repo.submitLog(lines, Tracer.getInstance().serialize(), url -> {
+            repo.submitLog(lines, LogSectionTrace.WHOLE_TRACE, url -> {
                 Log.i(TAG, "Logs uploaded!");
 
                 ThreadUtil.runOnMain(() -> {
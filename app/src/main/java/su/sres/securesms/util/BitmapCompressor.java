@@ -0,0 +1,218 @@
+package su.sres.securesms.util;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.CompressFormat;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+
+/**
+ * Compresses an already decoded bitmap to fit a byte budget.
+ * <p>
+ * The bitmap is tried at each of a list of sizes, largest first, each scaled down in memory from
+ * the one before rather than decoded again. At each size the quality is found with a
+ * {@link QualitySearch}, and the first size at which any allowed quality fits wins. Lossless formats
+ * get one attempt per size. Two output buffers are reused across every attempt.
+ */
+public final class BitmapCompressor {
+
+  private static final int MAX_ATTEMPTS_PER_SIZE = 6;
+
+  private BitmapCompressor() {}
+
+  /**
+   * @param source           Not recycled, that is left to the caller.
+   * @param dimensionTargets The longest side to try at each step, largest first. A target larger
+   *                         than the bitmap is tried at the bitmap's own size.
+   */
+  @WorkerThread
+  public static @NonNull Result compress(@NonNull Bitmap source,
+                                         @NonNull CompressFormat format,
+                                         @NonNull int[] dimensionTargets,
+                                         long maxBytes,
+                                         int minQuality,
+                                         int maxQuality)
+  {
+    boolean               lossless     = format == CompressFormat.PNG;
+    int                   initialSize  = (int) Math.min(maxBytes, source.getByteCount());
+    ByteArrayOutputStream best         = new ByteArrayOutputStream(initialSize);
+    ByteArrayOutputStream scratch      = new ByteArrayOutputStream(initialSize);
+    Bitmap                current      = source;
+    Stats                 stats        = new Stats();
+
+    try {
+      for (int target : dimensionTargets) {
+        long   scaleStart = SystemClock.elapsedRealtime();
+        Bitmap scaled     = scaleDown(current, target);
+
+        stats.scaleMillis += SystemClock.elapsedRealtime() - scaleStart;
+        stats.sizes++;
+
+        if (scaled != current && current != source) {
+          current.recycle();
+        }
+        current = scaled;
+
+        int bestQuality;
+
+        if (lossless) {
+          bestQuality = attempt(current, format, 100, scratch, stats) <= maxBytes ? 100 : -1;
+        } else {
+          QualitySearch search = new QualitySearch(minQuality, maxQuality, QualitySearch.estimateQuality(maxBytes, current.getWidth(), current.getHeight()), MAX_ATTEMPTS_PER_SIZE);
+
+          bestQuality = -1;
+
+          while (search.hasNext()) {
+            int  quality = search.next();
+            long size    = attempt(current, format, quality, scratch, stats);
+
+            search.onResult(quality, size <= maxBytes);
+
+            if (size <= maxBytes && quality > bestQuality) {
+              ByteArrayOutputStream swap = best;
+
+              best        = scratch;
+              scratch     = swap;
+              bestQuality = quality;
+            }
+          }
+        }
+
+        if (bestQuality >= 0) {
+          if (lossless) {
+            best = scratch;
+          }
+
+          stats.quality = bestQuality;
+          return new Result(best.toByteArray(), current.getWidth(), current.getHeight(), stats);
+        }
+      }
+
+      return new Result(null, current.getWidth(), current.getHeight(), stats);
+    } finally {
+      if (current != source) {
+        current.recycle();
+      }
+    }
+  }
+
+  private static long attempt(@NonNull Bitmap bitmap, @NonNull CompressFormat format, int quality, @NonNull ByteArrayOutputStream output, @NonNull Stats stats) {
+    long start = SystemClock.elapsedRealtime();
+
+    output.reset();
+    bitmap.compress(format, quality, output);
+
+    stats.compressMillis += SystemClock.elapsedRealtime() - start;
+    stats.attempts++;
+
+    return output.size();
+  }
+
+  private static @NonNull Bitmap scaleDown(@NonNull Bitmap bitmap, int maxDimension) {
+    int longestSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+
+    if (longestSide <= maxDimension || maxDimension <= 0) {
+      return bitmap;
+    }
+
+    float scale = maxDimension / (float) longestSide;
+
+    return Bitmap.createScaledBitmap(bitmap,
+                                     Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                                     Math.max(1, Math.round(bitmap.getHeight() * scale)),
+                                     true);
+  }
+
+  public static final class Result {
+    private final byte[] data;
+    private final int    width;
+    private final int    height;
+    private final Stats  stats;
+
+    private Result(@Nullable byte[] data, int width, int height, @NonNull Stats stats) {
+      this.data   = data;
+      this.width  = width;
+      this.height = height;
+      this.stats  = stats;
+    }
+
+    /**
+     * @return The compressed image, or null if it could not be brought within the budget.
+     */
+    public @Nullable byte[] getData() {
+      return data;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    public @NonNull Stats getStats() {
+      return stats;
+    }
+  }
+
+  public static final class Stats {
+    private int  attempts;
+    private int  sizes;
+    private int  quality = -1;
+    private long decodeMillis;
+    private long scaleMillis;
+    private long compressMillis;
+
+    /**
+     * @return How many times the image was encoded.
+     */
+    public int getAttempts() {
+      return attempts;
+    }
+
+    /**
+     * @return How many sizes the image was tried at.
+     */
+    public int getSizes() {
+      return sizes;
+    }
+
+    /**
+     * @return The quality the result was encoded at, or -1 if there is no result.
+     */
+    public int getQuality() {
+      return quality;
+    }
+
+    public long getDecodeMillis() {
+      return decodeMillis;
+    }
+
+    /**
+     * Decoding happens before the compressor gets the bitmap, so is recorded by whoever did it.
+     */
+    public void setDecodeMillis(long decodeMillis) {
+      this.decodeMillis = decodeMillis;
+    }
+
+    public long getScaleMillis() {
+      return scaleMillis;
+    }
+
+    public long getCompressMillis() {
+      return compressMillis;
+    }
+
+    @Override
+    public @NonNull String toString() {
+      return String.format(Locale.US, "%d attempt(s) over %d size(s), decode %d ms, scale %d ms, compress %d ms",
+                           attempts, sizes, decodeMillis, scaleMillis, compressMillis);
+    }
+  }
+}
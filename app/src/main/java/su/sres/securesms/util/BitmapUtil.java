@@ -16,6 +16,7 @@ import androidx.annotation.WorkerThread;
 import androidx.exifinterface.media.ExifInterface;
 
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Pair;
 
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
@@ -43,11 +44,9 @@ public class BitmapUtil {
 
   private static final String TAG = BitmapUtil.class.getSimpleName();
 
-  private static final int MAX_COMPRESSION_QUALITY          = 90;
-  private static final int MIN_COMPRESSION_QUALITY          = 45;
-  private static final int MAX_COMPRESSION_ATTEMPTS         = 5;
-  private static final int MIN_COMPRESSION_QUALITY_DECREASE = 5;
-  private static final int MAX_IMAGE_HALF_SCALES            = 3;
+  private static final int MAX_COMPRESSION_QUALITY = 90;
+  private static final int MIN_COMPRESSION_QUALITY = 45;
+  private static final int MAX_IMAGE_HALF_SCALES   = 3;
 
   /**
    * @deprecated You probably want to use {@link ImageCompressionUtil} instead, which has a clearer
@@ -91,34 +90,18 @@ public class BitmapUtil {
                                                   long maxImageSize,
                                                   @NonNull CompressFormat format)
           throws BitmapDecodingException
-  {
-    return createScaledBytes(context, model, maxImageWidth, maxImageHeight, maxImageSize, format, 1, 0);
-  }
-
-  @WorkerThread
-  private static <T> ScaleResult createScaledBytes(@NonNull Context context,
-                                                   @NonNull T model,
-                                                   final int maxImageWidth,
-                                                   final int maxImageHeight,
-                                                   final long maxImageSize,
-                                                   @NonNull CompressFormat format,
-                                                   final int sizeAttempt,
-                                                   int totalAttempts)
-      throws BitmapDecodingException
   {
     try {
-      int    quality  = MAX_COMPRESSION_QUALITY;
-      int    attempts = 0;
-      byte[] bytes;
-
+      long   decodeStart  = SystemClock.elapsedRealtime();
       Bitmap scaledBitmap = GlideApp.with(context.getApplicationContext())
                                     .asBitmap()
                                     .load(model)
                                     .skipMemoryCache(true)
                                     .diskCacheStrategy(DiskCacheStrategy.NONE)
-              .centerInside()
+                                    .centerInside()
                                     .submit(maxImageWidth, maxImageHeight)
                                     .get();
+      long   decodeTime   = SystemClock.elapsedRealtime() - decodeStart;
 
       if (scaledBitmap == null) {
         throw new BitmapDecodingException("Unable to decode image");
@@ -128,44 +111,32 @@ public class BitmapUtil {
       Log.i(TAG, String.format(Locale.US, "Max dimensions %d x %d, %d bytes", maxImageWidth, maxImageHeight, maxImageSize));
 
       try {
-        do {
-          totalAttempts++;
-          ByteArrayOutputStream baos = new ByteArrayOutputStream();
-          scaledBitmap.compress(format, quality, baos);
-          bytes = baos.toByteArray();
-
-          Log.d(TAG, "iteration with quality " + quality + " size " + bytes.length + " bytes.");
-          if (quality == MIN_COMPRESSION_QUALITY) break;
-
-          int nextQuality = (int)Math.floor(quality * Math.sqrt((double)maxImageSize / bytes.length));
-          if (quality - nextQuality < MIN_COMPRESSION_QUALITY_DECREASE) {
-            nextQuality = quality - MIN_COMPRESSION_QUALITY_DECREASE;
-          }
-          quality = Math.max(nextQuality, MIN_COMPRESSION_QUALITY);
+        int[] dimensionTargets = new int[MAX_IMAGE_HALF_SCALES + 1];
+
+        dimensionTargets[0] = Math.max(scaledBitmap.getWidth(), scaledBitmap.getHeight());
+
+        for (int i = 1; i < dimensionTargets.length; i++) {
+          dimensionTargets[i] = dimensionTargets[i - 1] / 2;
         }
-        while (bytes.length > maxImageSize && attempts++ < MAX_COMPRESSION_ATTEMPTS);
 
-        if (bytes.length > maxImageSize) {
-          if (sizeAttempt <= MAX_IMAGE_HALF_SCALES) {
-            scaledBitmap.recycle();
-            scaledBitmap = null;
+        BitmapCompressor.Result result = BitmapCompressor.compress(scaledBitmap, format, dimensionTargets, maxImageSize, MIN_COMPRESSION_QUALITY, MAX_COMPRESSION_QUALITY);
+        byte[]                  bytes  = result.getData();
 
-            Log.i(TAG, "Halving dimensions and retrying.");
-            return createScaledBytes(context, model, maxImageWidth / 2, maxImageHeight / 2, maxImageSize, format, sizeAttempt + 1, totalAttempts);
-          } else {
-            throw new BitmapDecodingException("Unable to scale image below " + bytes.length + " bytes.");
-          }
+        result.getStats().setDecodeMillis(decodeTime);
+
+        if (bytes == null) {
+          throw new BitmapDecodingException("Unable to scale image below " + maxImageSize + " bytes. " + result.getStats());
         }
 
         if (bytes.length <= 0) {
           throw new BitmapDecodingException("Decoding failed. Bitmap has a length of " + bytes.length + " bytes.");
         }
 
-        Log.i(TAG, String.format(Locale.US, "createScaledBytes(%s) -> quality %d, %d attempt(s) over %d sizes.", model.getClass().getName(), quality, totalAttempts, sizeAttempt));
+        Log.i(TAG, String.format(Locale.US, "createScaledBytes(%s) -> quality %d, %s", model.getClass().getName(), result.getStats().getQuality(), result.getStats()));
 
-        return new ScaleResult(bytes, scaledBitmap.getWidth(), scaledBitmap.getHeight());
+        return new ScaleResult(bytes, result.getWidth(), result.getHeight());
       } finally {
-        if (scaledBitmap != null) scaledBitmap.recycle();
+        scaledBitmap.recycle();
       }
     } catch (InterruptedException | ExecutionException e) {
       throw new BitmapDecodingException(e);
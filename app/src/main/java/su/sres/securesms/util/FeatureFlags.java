@@ -65,6 +65,7 @@ public final class FeatureFlags {
     private static final String GV1_FORCED_MIGRATE           = "android.groupsV1Migration.forced";
     private static final String SEND_VIEWED_RECEIPTS         = "android.sendViewedReceipts";
     private static final String CUSTOM_VIDEO_MUXER           = "android.customVideoMuxer";
+    private static final String STREAMING_VIDEO_UPLOAD       = "android.streamingVideoUpload";
     private static final String AUTOMATIC_SESSION_RESET      = "android.automaticSessionReset.2";
     private static final String DEFAULT_MAX_BACKOFF          = "android.defaultMaxBackoff";
     private static final String SERVER_ERROR_MAX_BACKOFF          = "android.serverErrorMaxBackoff";
@@ -95,6 +96,7 @@ public final class FeatureFlags {
             GROUP_CALLING,
             SEND_VIEWED_RECEIPTS,
             CUSTOM_VIDEO_MUXER,
+            STREAMING_VIDEO_UPLOAD,
             GROUP_NAME_MAX_LENGTH,
             AUTOMATIC_SESSION_RESET,
             DEFAULT_MAX_BACKOFF,
@@ -138,6 +140,7 @@ public final class FeatureFlags {
             CLIENT_EXPIRATION,
             GROUP_CALLING,
             CUSTOM_VIDEO_MUXER,
+            STREAMING_VIDEO_UPLOAD,
             GROUP_NAME_MAX_LENGTH,
             AUTOMATIC_SESSION_RESET,
             DEFAULT_MAX_BACKOFF,
@@ -283,6 +286,11 @@ public final class FeatureFlags {
         return getBoolean(CUSTOM_VIDEO_MUXER, false);
     }
 
+    /** Whether to upload videos while they are being transcoded by the streaming muxer. */
+    public static boolean streamingVideoUpload() {
+        return getBoolean(STREAMING_VIDEO_UPLOAD, false);
+    }
+
     public static @NonNull SelectionLimits shareSelectionLimit() {
         int limit = getInteger(SHARE_SELECTION_LIMIT, 5);
         return new SelectionLimits(limit, limit);
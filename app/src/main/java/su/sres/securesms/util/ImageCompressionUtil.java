@@ -2,6 +2,7 @@ package su.sres.securesms.util;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.SystemClock;
 
 import androidx.annotation.IntRange;
 import androidx.annotation.NonNull;
@@ -17,8 +18,46 @@ import java.util.concurrent.ExecutionException;
 
 public final class ImageCompressionUtil {
 
+  private static final int MIN_QUALITY = 45;
+
   private ImageCompressionUtil () {}
 
+  /**
+   * Decodes the image once, at the first of the dimension targets, then compresses it to fit within
+   * {@code maxBytes}. Qualities from {@link #MIN_QUALITY} up to {@code maxQuality} are tried at each
+   * target before moving down to the next.
+   *
+   * @return A result satisfying the provided constraints, or null if they could not be met.
+   */
+  @WorkerThread
+  public static @Nullable Result compressWithinConstraints(@NonNull Context context,
+                                                           @NonNull String mimeType,
+                                                           @NonNull Object glideModel,
+                                                           @NonNull int[] dimensionTargets,
+                                                           long maxBytes,
+                                                           @IntRange(from = 0, to = 100) int maxQuality)
+      throws BitmapDecodingException
+  {
+    long   decodeStart = SystemClock.elapsedRealtime();
+    Bitmap bitmap      = decode(context, glideModel, dimensionTargets[0]);
+    long   decodeTime  = SystemClock.elapsedRealtime() - decodeStart;
+
+    try {
+      Bitmap.CompressFormat   format = mimeTypeToCompressFormat(mimeType);
+      BitmapCompressor.Result result = BitmapCompressor.compress(bitmap, format, dimensionTargets, maxBytes, Math.min(MIN_QUALITY, maxQuality), maxQuality);
+
+      result.getStats().setDecodeMillis(decodeTime);
+
+      if (result.getData() == null) {
+        return null;
+      }
+
+      return new Result(result.getData(), compressFormatToMimeType(format), result.getWidth(), result.getHeight(), result.getStats());
+    } finally {
+      bitmap.recycle();
+    }
+  }
+
   /**
    * A result satisfying the provided constraints, or null if they could not be met.
    */
@@ -50,6 +89,20 @@ public final class ImageCompressionUtil {
                                           int maxDimension,
                                           @IntRange(from = 0, to = 100) int quality)
       throws BitmapDecodingException
+  {
+    Bitmap scaledBitmap = decode(context, glideModel, maxDimension);
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    Bitmap.CompressFormat format = mimeTypeToCompressFormat(mimeType);
+    scaledBitmap.compress(format, quality, output);
+
+    byte[] data = output.toByteArray();
+
+    return new Result(data, compressFormatToMimeType(format), scaledBitmap.getWidth(), scaledBitmap.getHeight());
+  }
+
+  private static @NonNull Bitmap decode(@NonNull Context context, @NonNull Object glideModel, int maxDimension)
+      throws BitmapDecodingException
   {
     Bitmap scaledBitmap;
 
@@ -70,13 +123,7 @@ public final class ImageCompressionUtil {
       throw new BitmapDecodingException("Unable to decode image");
     }
 
-    ByteArrayOutputStream output = new ByteArrayOutputStream();
-    Bitmap.CompressFormat format = mimeTypeToCompressFormat(mimeType);
-    scaledBitmap.compress(format, quality, output);
-
-    byte[] data = output.toByteArray();
-
-    return new Result(data, compressFormatToMimeType(format), scaledBitmap.getWidth(), scaledBitmap.getHeight());
+    return scaledBitmap;
   }
 
   private static @NonNull Bitmap.CompressFormat mimeTypeToCompressFormat(@NonNull String mimeType) {
@@ -99,16 +146,22 @@ public final class ImageCompressionUtil {
   }
 
   public static final class Result {
-    private final byte[] data;
-    private final String mimeType;
-    private final int    height;
-    private final int    width;
+    private final byte[]                 data;
+    private final String                 mimeType;
+    private final int                    height;
+    private final int                    width;
+    private final BitmapCompressor.Stats stats;
 
     public Result(@NonNull byte[] data, @NonNull String mimeType, int width, int height) {
+      this(data, mimeType, width, height, null);
+    }
+
+    public Result(@NonNull byte[] data, @NonNull String mimeType, int width, int height, @Nullable BitmapCompressor.Stats stats) {
       this.data     = data;
       this.mimeType = mimeType;
       this.width    = width;
       this.height   = height;
+      this.stats    = stats;
     }
 
     public byte[] getData() {
@@ -126,5 +179,12 @@ public final class ImageCompressionUtil {
     public int getHeight() {
       return height;
     }
+
+    /**
+     * @return How the compression went, if it was done by {@link BitmapCompressor}.
+     */
+    public @Nullable BitmapCompressor.Stats getStats() {
+      return stats;
+    }
   }
 }
\ No newline at end of file
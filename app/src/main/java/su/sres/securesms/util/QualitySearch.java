@@ -0,0 +1,118 @@
+package su.sres.securesms.util;
+
+/**
+ * Bisects for the highest compression quality whose output fits a byte budget, on the assumption
+ * that output size grows with quality.
+ * <p>
+ * The first guess comes from how many bytes per pixel the budget allows, which for photos usually
+ * lands close to the answer. Until the answer is bracketed the search steps away from the guess in
+ * doubling strides, so a good guess is confirmed in two attempts, and it bisects from there. It stops
+ * as soon as the best fitting quality is known to within {@link #RESOLUTION}, or when it runs out of
+ * attempts.
+ */
+final class QualitySearch {
+
+  private static final int RESOLUTION = 3;
+
+  /**
+   * Rough bytes per pixel of a JPEG-encoded photo against the quality that produces it.
+   */
+  private static final double[] BYTES_PER_PIXEL = { 0.08, 0.13, 0.18, 0.22, 0.30, 0.45, 0.60 };
+  private static final int[]    QUALITY         = { 30,   50,   65,   75,   85,   90,   95   };
+
+  private final int minQuality;
+  private final int maxQuality;
+  private final int maxAttempts;
+
+  /** The highest quality known to fit, or one below the minimum if none is yet. */
+  private int low;
+
+  /** The lowest quality known not to fit, or one above the maximum if none is yet. */
+  private int high;
+
+  private int guess;
+  private int stride;
+  private int attempts;
+
+  QualitySearch(int minQuality, int maxQuality, int initialGuess, int maxAttempts) {
+    this.minQuality  = minQuality;
+    this.maxQuality  = maxQuality;
+    this.maxAttempts = maxAttempts;
+    this.low         = minQuality - 1;
+    this.high        = maxQuality + 1;
+    this.guess       = clamp(initialGuess);
+    this.stride      = RESOLUTION;
+  }
+
+  boolean hasNext() {
+    if (attempts >= maxAttempts) {
+      return false;
+    }
+
+    if (low < minQuality) {
+      return high > minQuality;
+    }
+
+    return high - low > RESOLUTION;
+  }
+
+  int next() {
+    return guess;
+  }
+
+  void onResult(int quality, boolean fits) {
+    attempts++;
+
+    if (fits) {
+      low = Math.max(low, quality);
+    } else {
+      high = Math.min(high, quality);
+    }
+
+    if (high > maxQuality) {
+      guess  = clamp(low + stride);
+      stride *= 2;
+    } else if (low < minQuality) {
+      guess  = clamp(high - stride);
+      stride *= 2;
+    } else {
+      guess = (low + high) / 2;
+    }
+  }
+
+  /**
+   * @return The highest quality found to fit, or -1 if none did.
+   */
+  int getBestQuality() {
+    return low >= minQuality ? low : -1;
+  }
+
+  int getAttempts() {
+    return attempts;
+  }
+
+  private int clamp(int quality) {
+    return Math.max(minQuality, Math.min(maxQuality, quality));
+  }
+
+  /**
+   * @return A first guess at the quality that will bring a {@code width} by {@code height} photo
+   *         in at {@code maxBytes}.
+   */
+  static int estimateQuality(long maxBytes, int width, int height) {
+    double bytesPerPixel = maxBytes / (double) Math.max(1L, (long) width * height);
+
+    if (bytesPerPixel <= BYTES_PER_PIXEL[0]) {
+      return QUALITY[0];
+    }
+
+    for (int i = 1; i < BYTES_PER_PIXEL.length; i++) {
+      if (bytesPerPixel <= BYTES_PER_PIXEL[i]) {
+        double fraction = (bytesPerPixel - BYTES_PER_PIXEL[i - 1]) / (BYTES_PER_PIXEL[i] - BYTES_PER_PIXEL[i - 1]);
+        return (int) (QUALITY[i - 1] + fraction * (QUALITY[i] - QUALITY[i - 1]));
+      }
+    }
+
+    return 100;
+  }
+}
@@ -22,6 +22,10 @@ import java.util.Set;
 import su.sres.securesms.recipients.RecipientId;
 
 public final class SqlUtil {
+
+    /** A safe number of arguments for one query, below SQLite's default limit of 999 bound variables. */
+    public static final int MAX_QUERY_ARGS = 900;
+
     private SqlUtil() {}
 
 
@@ -152,6 +156,33 @@ public final class SqlUtil {
         return new Query(column + " IN (" + query.toString() + ")", buildArgs(args));
     }
 
+    /**
+     * Splits a collection query into several, none of which has more than {@code maxSize} arguments,
+     * so that a large collection doesn't exceed SQLite's limit on bound variables.
+     */
+    public static @NonNull List<Query> buildCollectionQuery(@NonNull String column, @NonNull Collection<? extends Object> values, int maxSize) {
+        Preconditions.checkArgument(values.size() > 0);
+        Preconditions.checkArgument(maxSize > 0);
+
+        List<Query>  queries = new ArrayList<>(values.size() / maxSize + 1);
+        List<Object> chunk   = new ArrayList<>(Math.min(maxSize, values.size()));
+
+        for (Object value : values) {
+            chunk.add(value);
+
+            if (chunk.size() == maxSize) {
+                queries.add(buildCollectionQuery(column, chunk));
+                chunk.clear();
+            }
+        }
+
+        if (chunk.size() > 0) {
+            queries.add(buildCollectionQuery(column, chunk));
+        }
+
+        return queries;
+    }
+
     public static String[] appendArg(@NonNull String[] args, String addition) {
         String[] output = new String[args.length + 1];
 
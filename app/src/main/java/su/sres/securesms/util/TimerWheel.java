@@ -0,0 +1,219 @@
+package su.sres.securesms.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timer wheel. Deadlines are rounded up to a whole tick, so everything due in the
+ * same tick comes out together, and adding or collecting an entry takes amortized constant time
+ * however many are scheduled.
+ * <p>
+ * Four levels of 64 slots each are kept. An entry sits in the coarsest level that can hold it and
+ * moves down a level each time the level below wraps around, and entries beyond the last level wait
+ * in an overflow list. Entries come out no earlier than their deadline, and at most a tick late.
+ * <p>
+ * Not thread safe.
+ */
+public final class TimerWheel<T> {
+
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS     = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+  private static final int LEVELS    = 4;
+
+  /** Beyond this many idle ticks it is quicker to re-add everything than to step through them. */
+  private static final long MAX_TICKS_TO_STEP = SLOTS * SLOTS;
+
+  private final long             tickMillis;
+  private final List<Entry<T>>[] slots;
+  private final List<Entry<T>>   overflow = new ArrayList<>();
+  private final List<T>          due      = new ArrayList<>();
+
+  /** The next tick to be processed. Every tick before it has been. */
+  private long currentTick;
+  private int  size;
+
+  @SuppressWarnings("unchecked")
+  public TimerWheel(long tickMillis, long nowMillis) {
+    this.tickMillis  = tickMillis;
+    this.slots       = new List[LEVELS * SLOTS];
+    this.currentTick = nowMillis / tickMillis + 1;
+
+    for (int i = 0; i < slots.length; i++) {
+      slots[i] = new ArrayList<>();
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void add(@NonNull T value, long deadlineMillis) {
+    long deadlineTick = (deadlineMillis + tickMillis - 1) / tickMillis;
+
+    add(new Entry<>(value, deadlineTick));
+    size++;
+  }
+
+  /**
+   * Moves the wheel on to the given time.
+   *
+   * @return Everything whose deadline has passed, oldest tick first.
+   */
+  public @NonNull List<T> advance(long nowMillis) {
+    long nowTick = nowMillis / tickMillis;
+
+    if (nowTick - currentTick > MAX_TICKS_TO_STEP) {
+      rebuild(nowTick + 1);
+    } else {
+      while (currentTick <= nowTick) {
+        processTick(currentTick);
+        currentTick++;
+      }
+    }
+
+    List<T> result = new ArrayList<>(due);
+
+    size -= due.size();
+    due.clear();
+
+    return result;
+  }
+
+  /**
+   * @return The earliest time at which {@link #advance(long)} may have something to return, which
+   *         is either an entry's deadline or the time a slot is due to move down a level.
+   *         {@link Long#MAX_VALUE} if the wheel is empty.
+   */
+  public long getNextWakeMillis() {
+    if (!due.isEmpty()) {
+      return (currentTick - 1) * tickMillis;
+    }
+
+    long next = Long.MAX_VALUE;
+
+    for (int level = 0; level < LEVELS; level++) {
+      int  shift = SLOT_BITS * level;
+      long base  = currentTick >> shift;
+
+      for (int i = 0; i <= SLOTS; i++) {
+        long tick = (base + i) << shift;
+
+        if (tick < currentTick) continue;
+        if (tick >= next)       break;
+
+        if (!slots[level * SLOTS + (int) ((base + i) & SLOT_MASK)].isEmpty()) {
+          next = tick;
+          break;
+        }
+      }
+    }
+
+    if (!overflow.isEmpty()) {
+      int  shift = SLOT_BITS * (LEVELS - 1);
+      long tick  = ((currentTick >> shift) + 1) << shift;
+
+      next = Math.min(next, tick);
+    }
+
+    return next == Long.MAX_VALUE ? Long.MAX_VALUE : next * tickMillis;
+  }
+
+  private void add(@NonNull Entry<T> entry) {
+    long delta = entry.deadlineTick - currentTick;
+
+    if (delta < 0) {
+      due.add(entry.value);
+      return;
+    }
+
+    for (int level = 0; level < LEVELS; level++) {
+      if ((delta >> (SLOT_BITS * (level + 1))) == 0) {
+        int slot = (int) ((entry.deadlineTick >> (SLOT_BITS * level)) & SLOT_MASK);
+
+        slots[level * SLOTS + slot].add(entry);
+        return;
+      }
+    }
+
+    overflow.add(entry);
+  }
+
+  private void processTick(long tick) {
+    for (int level = LEVELS - 1; level > 0; level--) {
+      int shift = SLOT_BITS * level;
+
+      if ((tick & ((1L << shift) - 1)) == 0) {
+        if (level == LEVELS - 1) {
+          cascade(overflow);
+        }
+        cascade(slots[level * SLOTS + (int) ((tick >> shift) & SLOT_MASK)]);
+      }
+    }
+
+    List<Entry<T>> slot = slots[(int) (tick & SLOT_MASK)];
+
+    if (slot.isEmpty()) {
+      return;
+    }
+
+    List<Entry<T>> entries = new ArrayList<>(slot);
+    slot.clear();
+
+    for (Entry<T> entry : entries) {
+      if (entry.deadlineTick <= tick) {
+        due.add(entry.value);
+      } else {
+        add(entry);
+      }
+    }
+  }
+
+  /**
+   * Re-adds a slot's entries relative to the current tick, which moves them to a lower level.
+   */
+  private void cascade(@NonNull List<Entry<T>> slot) {
+    if (slot.isEmpty()) {
+      return;
+    }
+
+    List<Entry<T>> entries = new ArrayList<>(slot);
+    slot.clear();
+
+    for (Entry<T> entry : entries) {
+      add(entry);
+    }
+  }
+
+  private void rebuild(long newCurrentTick) {
+    List<Entry<T>> entries = new ArrayList<>(overflow);
+    overflow.clear();
+
+    for (List<Entry<T>> slot : slots) {
+      entries.addAll(slot);
+      slot.clear();
+    }
+
+    currentTick = newCurrentTick;
+
+    for (Entry<T> entry : entries) {
+      add(entry);
+    }
+  }
+
+  private static final class Entry<T> {
+    private final T    value;
+    private final long deadlineTick;
+
+    private Entry(@NonNull T value, long deadlineTick) {
+      this.value        = value;
+      this.deadlineTick = deadlineTick;
+    }
+  }
+}
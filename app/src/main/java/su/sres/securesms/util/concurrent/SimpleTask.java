@@ -8,6 +8,7 @@ import java.util.concurrent.Executor;
 
 import su.sres.core.util.ThreadUtil;
 import su.sres.core.util.concurrent.SignalExecutors;
+import su.sres.core.util.concurrent.TaskPriority;
 import su.sres.securesms.util.Util;
 
 public class SimpleTask {
@@ -17,14 +18,14 @@ public class SimpleTask {
      * on the main thread. Will only invoke the {@code foregroundTask} if the provided {@link Lifecycle}
      * is in a valid (i.e. visible) state at that time. In this way, it is very similar to
      * {@link AsyncTask}, but is safe in that you can guarantee your task won't be called when your
-     * view is in an invalid state.
+     * view is in an invalid state. The task is run ahead of other queued background work.
      */
     public static <E> void run(@NonNull Lifecycle lifecycle, @NonNull BackgroundTask<E> backgroundTask, @NonNull ForegroundTask<E> foregroundTask) {
         if (!isValid(lifecycle)) {
             return;
         }
 
-        SignalExecutors.BOUNDED.execute(() -> {
+        SignalExecutors.BOUNDED.execute(TaskPriority.UI_BLOCKING, () -> {
             final E result = backgroundTask.run();
 
             if (isValid(lifecycle)) {
@@ -39,10 +40,14 @@ public class SimpleTask {
 
     /**
      * Runs a task in the background and passes the result of the computation to a task that is run on
-     * the main thread. Essentially {@link AsyncTask}, but lambda-compatible.
+     * the main thread. Essentially {@link AsyncTask}, but lambda-compatible. The task is run ahead of
+     * other queued background work.
      */
     public static <E> void run(@NonNull BackgroundTask<E> backgroundTask, @NonNull ForegroundTask<E> foregroundTask) {
-        run(SignalExecutors.BOUNDED, backgroundTask, foregroundTask);
+        SignalExecutors.BOUNDED.execute(TaskPriority.UI_BLOCKING, () -> {
+            final E result = backgroundTask.run();
+            ThreadUtil.runOnMain(() -> foregroundTask.run(result));
+        });
     }
 
     /**
@@ -72,6 +72,19 @@ public final class StreamingTranscoder {
                           @NonNull OutputStream stream,
                           @Nullable TranscoderCancelationSignal cancelationSignal)
             throws IOException, EncodingException
+    {
+        transcode(progress, stream, false, cancelationSignal);
+    }
+
+    /**
+     * @param fragmented If true, the output is a fragmented MP4, and every byte written to {@code stream} is final as
+     *                   soon as it is written. This allows the output to be uploaded while transcoding continues.
+     */
+    public void transcode(@NonNull Progress progress,
+                          @NonNull OutputStream stream,
+                          boolean fragmented,
+                          @Nullable TranscoderCancelationSignal cancelationSignal)
+            throws IOException, EncodingException
     {
         float durationSec = duration / 1000f;
 
@@ -82,6 +95,7 @@ public final class StreamingTranscoder {
                         "Target bitrate : %s + %s = %s\n" +
                         "Target format  : %dp\n" +
                         "Video duration : %.1fs\n" +
+                        "Fragmented     : %s\n" +
                         "Size limit     : %s kB\n" +
                         "Estimate       : %s kB\n" +
                         "Input size     : %s kB\n" +
@@ -91,6 +105,7 @@ public final class StreamingTranscoder {
                 numberFormat.format(targetQuality.getTargetTotalBitRate()),
                 targetQuality.getOutputResolution(),
                 durationSec,
+                fragmented,
                 numberFormat.format(upperSizeLimit / 1024),
                 numberFormat.format(fileSizeEstimate / 1024),
                 numberFormat.format(inSize / 1024),
@@ -106,7 +121,11 @@ public final class StreamingTranscoder {
         final LimitedSizeOutputStream limitedSizeOutputStream = new LimitedSizeOutputStream(stream, upperSizeLimit);
 
         converter.setInput(new MediaInput.MediaDataSourceMediaInput(dataSource));
-        converter.setOutput(limitedSizeOutputStream);
+        if (fragmented) {
+            converter.setFragmentedOutput(limitedSizeOutputStream);
+        } else {
+            converter.setOutput(limitedSizeOutputStream);
+        }
         converter.setVideoResolution(targetQuality.getOutputResolution());
         converter.setVideoBitrate(targetQuality.getTargetVideoBitRate());
         converter.setAudioBitrate(targetQuality.getTargetAudioBitRate());
@@ -157,6 +176,10 @@ public final class StreamingTranscoder {
         return transcodeRequired;
     }
 
+    public long getFileSizeEstimate() {
+        return fileSizeEstimate;
+    }
+
     private static long getDuration(MediaMetadataRetriever mediaMetadataRetriever) throws VideoSourceException {
         String durationString = mediaMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
         if (durationString == null) {
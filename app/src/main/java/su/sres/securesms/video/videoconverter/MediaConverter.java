@@ -88,7 +88,15 @@ public final class MediaConverter {
     }
 
     public void setOutput(final @NonNull OutputStream stream) {
-        mOutput = new StreamOutput(stream);
+        mOutput = new StreamOutput(stream, false);
+    }
+
+    /**
+     * Writes a fragmented MP4 to the stream. Everything written is final, so the stream can be consumed while the
+     * conversion is still running.
+     */
+    public void setFragmentedOutput(final @NonNull OutputStream stream) {
+        mOutput = new StreamOutput(stream, true);
     }
 
     @SuppressWarnings("unused")
@@ -342,14 +350,16 @@ public final class MediaConverter {
     private static class StreamOutput implements Output {
 
         final OutputStream outputStream;
+        final boolean      fragmented;
 
-        StreamOutput(final @NonNull OutputStream outputStream) {
+        StreamOutput(final @NonNull OutputStream outputStream, boolean fragmented) {
             this.outputStream = outputStream;
+            this.fragmented   = fragmented;
         }
 
         @Override
         public @NonNull Muxer createMuxer() {
-            return new StreamingMuxer(outputStream);
+            return new StreamingMuxer(outputStream, fragmented);
         }
     }
 }
\ No newline at end of file
@@ -16,10 +16,12 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
+import su.sres.paging.PagingController;
 import su.sres.securesms.conversationlist.model.ConversationReader;
 import su.sres.securesms.database.DatabaseFactory;
 import su.sres.securesms.database.DatabaseObserver;
 import su.sres.securesms.database.ThreadDatabase;
+import su.sres.securesms.database.ThreadSummaryIndex;
 import su.sres.securesms.dependencies.ApplicationDependencies;
 import su.sres.securesms.util.paging.Invalidator;
 
@@ -30,6 +32,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
@@ -261,8 +264,74 @@ public class UnarchivedConversationListDataSourceTest {
         assertEquals(0, cursor.getColumnIndex(ConversationReader.HEADER_COLUMN[0]));
     }
 
+    @Test
+    public void givenPinnedAndUnpinned_whenUnpinnedThreadMoves_thenIExpectMoveAfterHeaders() {
+        // GIVEN
+        PagingController controller = mock(PagingController.class);
+        when(threadDatabase.getPinnedConversationListCount()).thenReturn(1);
+        when(threadDatabase.getUnarchivedConversationListCount()).thenReturn(3);
+        testSubject.getTotalCount();
+        testSubject.startListening(controller, () -> {}, () -> {});
+
+        // WHEN
+        testSubject.onThreadMoved(ThreadSummaryIndex.Section.UNPINNED, 1, 0);
+
+        // THEN
+        verify(controller).onDataItemMoved(4, 3);
+        verifyNoMoreInteractions(controller);
+    }
+
+    @Test
+    public void givenUnpinnedAndArchived_whenThreadIsArchived_thenIExpectRemoveAndFooterChange() {
+        // GIVEN
+        PagingController controller = mock(PagingController.class);
+        when(threadDatabase.getUnarchivedConversationListCount()).thenReturn(2);
+        when(threadDatabase.getArchivedConversationListCount()).thenReturn(12);
+        testSubject.getTotalCount();
+        testSubject.startListening(controller, () -> {}, () -> {});
+
+        // WHEN
+        testSubject.onThreadRemoved(ThreadSummaryIndex.Section.UNPINNED, 0);
+        testSubject.onThreadInserted(ThreadSummaryIndex.Section.ARCHIVED, 0);
+
+        // THEN
+        verify(controller).onDataItemRemoved(0);
+        verify(controller).onDataItemChanged(1);
+        verifyNoMoreInteractions(controller);
+    }
+
+    @Test
+    public void givenNoPinned_whenThreadIsPinned_thenIExpectInvalidation() {
+        // GIVEN
+        PagingController controller = mock(PagingController.class);
+        when(threadDatabase.getUnarchivedConversationListCount()).thenReturn(2);
+        testSubject.getTotalCount();
+        testSubject.startListening(controller, () -> {}, () -> {});
+
+        // WHEN
+        testSubject.onThreadInserted(ThreadSummaryIndex.Section.PINNED, 0);
+
+        // THEN
+        verify(controller).onDataInvalidated();
+        verifyNoMoreInteractions(controller);
+    }
+
+    @Test
+    public void givenListening_whenIndexIsReset_thenIExpectResetCallbackInsteadOfInvalidation() {
+        // GIVEN
+        PagingController controller = mock(PagingController.class);
+        Runnable         onReset    = mock(Runnable.class);
+        testSubject.startListening(controller, () -> {}, onReset);
+
+        // WHEN
+        testSubject.onReset();
+
+        // THEN
+        verify(onReset).run();
+        verifyNoMoreInteractions(controller);
+    }
 
-    private void setupThreadDatabaseCursors(int pinned, int unpinned) {
+        private void setupThreadDatabaseCursors(int pinned, int unpinned) {
         Cursor pinnedCursor = mock(Cursor.class);
         when(pinnedCursor.getCount()).thenReturn(pinned);
 
@@ -0,0 +1,197 @@
+package su.sres.securesms.crypto;
+
+import org.junit.Test;
+import org.whispersystems.libsignal.SignalProtocolAddress;
+
+import su.sres.signalservice.api.SignalSessionLock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class StripedSessionLockTest {
+
+    private static final SignalProtocolAddress ALICE_1    = new SignalProtocolAddress("alice", 1);
+    private static final SignalProtocolAddress ALICE_2    = new SignalProtocolAddress("alice", 2);
+    private static final SignalProtocolAddress ALICE_E164 = new SignalProtocolAddress("+alice", 1);
+    private static final SignalProtocolAddress BOB_1      = new SignalProtocolAddress("bob", 1);
+    private static final SignalProtocolAddress CAROL_1    = new SignalProtocolAddress("carol", 1);
+    private static final SignalProtocolAddress DAVE_1     = new SignalProtocolAddress("dave", 1);
+    private static final SignalProtocolAddress ERIN_1     = new SignalProtocolAddress("erin", 1);
+
+    private final StripedSessionLock<String> lock = new StripedSessionLock<>(name -> name.startsWith("+") ? name.substring(1) : name);
+
+    @Test
+    public void acquire_whenDifferentRecipients_thenIExpectBothHeldAtOnce() throws Exception {
+        try (SignalSessionLock.Lock unused = lock.acquire(ALICE_1)) {
+            assertTrue(attempt(() -> lock.acquire(BOB_1)).acquiredWithin(1000));
+        }
+
+        assertEquals(0, lock.getMetrics().getAddress().getContended());
+    }
+
+    @Test
+    public void acquire_whenSameRecipient_thenIExpectOtherThreadsToWait() throws Exception {
+        Attempt otherDevice;
+        Attempt otherName;
+
+        try (SignalSessionLock.Lock unused = lock.acquire(ALICE_1)) {
+            otherDevice = attempt(() -> lock.acquire(ALICE_2));
+            otherName   = attempt(() -> lock.acquire(ALICE_E164));
+
+            assertFalse(otherDevice.acquiredWithin(100));
+            assertFalse(otherName.acquiredWithin(100));
+        }
+
+        assertTrue(otherDevice.acquiredWithin(1000));
+        assertTrue(otherName.acquiredWithin(1000));
+        assertEquals(2, lock.getMetrics().getAddress().getContended());
+    }
+
+    @Test
+    public void acquire_whenAddressHeld_thenIExpectGlobalToWait() throws Exception {
+        Attempt global;
+
+        try (SignalSessionLock.Lock unused = lock.acquire(ALICE_1)) {
+            global = attempt(lock::acquire);
+            assertFalse(global.acquiredWithin(100));
+        }
+
+        assertTrue(global.acquiredWithin(1000));
+        assertEquals(1, lock.getMetrics().getGlobal().getContended());
+    }
+
+    @Test
+    public void acquire_whenGlobalQueuedBehindOverlappingAddresses_thenIExpectGlobalToGetIn() throws Exception {
+        AtomicBoolean stop    = new AtomicBoolean();
+        List<Thread>  senders = new ArrayList<>();
+        Attempt       global;
+
+        try (SignalSessionLock.Lock unused = lock.acquire(ALICE_1)) {
+            for (SignalProtocolAddress address : new SignalProtocolAddress[] { BOB_1, CAROL_1, DAVE_1, ERIN_1 }) {
+                Thread sender = new Thread(() -> {
+                    while (!stop.get()) {
+                        try (SignalSessionLock.Lock held = lock.acquire(address)) {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                });
+                sender.start();
+                senders.add(sender);
+            }
+
+            global = attempt(lock::acquire);
+            assertFalse(global.acquiredWithin(100));
+        }
+
+        try {
+            assertTrue(global.acquiredWithin(1000));
+        } finally {
+            stop.set(true);
+            for (Thread sender : senders) {
+                sender.join();
+            }
+        }
+    }
+
+    @Test
+    public void acquire_whenGlobalHeld_thenIExpectAddressToWait() throws Exception {
+        Attempt address;
+
+        try (SignalSessionLock.Lock unused = lock.acquire()) {
+            address = attempt(() -> lock.acquire(BOB_1));
+            assertFalse(address.acquiredWithin(100));
+        }
+
+        assertTrue(address.acquiredWithin(1000));
+    }
+
+    @Test
+    public void acquire_whenReentrant_thenIExpectNoDeadlock() {
+        try (SignalSessionLock.Lock all = lock.acquire();
+             SignalSessionLock.Lock again = lock.acquire();
+             SignalSessionLock.Lock alice = lock.acquire(ALICE_1);
+             SignalSessionLock.Lock bob = lock.acquire(BOB_1))
+        {
+            // Addresses are already covered while all sessions are held.
+        }
+
+        try (SignalSessionLock.Lock first = lock.acquire(ALICE_1);
+             SignalSessionLock.Lock second = lock.acquire(ALICE_2);
+             SignalSessionLock.Lock third = lock.acquire(ALICE_1))
+        {
+            // A recipient's addresses may be locked together.
+        }
+
+        try (SignalSessionLock.Lock unused = lock.acquire(BOB_1)) {
+            // Released locks leave nothing behind.
+        }
+    }
+
+    @Test
+    public void acquire_whenGlobalRequestedWhileHoldingAddress_thenIExpectException() {
+        try (SignalSessionLock.Lock unused = lock.acquire(ALICE_1)) {
+            lock.acquire();
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void acquire_whenOtherRecipientRequestedWhileHoldingAddress_thenIExpectException() {
+        try (SignalSessionLock.Lock unused = lock.acquire(ALICE_1)) {
+            lock.acquire(BOB_1);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        try (SignalSessionLock.Lock unused = lock.acquire(BOB_1)) {
+            // The failed attempt did not leave the other recipient locked.
+        }
+    }
+
+    @Test
+    public void getMetrics_countsAcquisitions() {
+        lock.acquire().close();
+        lock.acquire(ALICE_1).close();
+        lock.acquire(BOB_1).close();
+
+        assertEquals(1, lock.getMetrics().getGlobal().getAcquired());
+        assertEquals(2, lock.getMetrics().getAddress().getAcquired());
+    }
+
+    /**
+     * Takes a lock on another thread, and releases it again right away.
+     */
+    private static Attempt attempt(LockSupplier supplier) {
+        Attempt attempt = new Attempt(new Thread(() -> supplier.acquire().close()));
+        attempt.thread.start();
+        return attempt;
+    }
+
+    private interface LockSupplier {
+        SignalSessionLock.Lock acquire();
+    }
+
+    private static final class Attempt {
+        private final Thread thread;
+
+        private Attempt(Thread thread) {
+            this.thread = thread;
+        }
+
+        boolean acquiredWithin(long timeoutMs) throws InterruptedException {
+            thread.join(timeoutMs);
+            return !thread.isAlive();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package su.sres.securesms.crypto;
+
+import org.junit.Test;
+import org.whispersystems.libsignal.SignalProtocolAddress;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import su.sres.signalservice.api.SignalSessionLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class TransactionSessionLockTest {
+
+    private static final SignalProtocolAddress ALICE_1 = new SignalProtocolAddress("alice", 1);
+    private static final SignalProtocolAddress BOB_1   = new SignalProtocolAddress("bob", 1);
+
+    private final FakeDatabase           database = new FakeDatabase();
+    private final TransactionSessionLock lock     = new TransactionSessionLock(database);
+
+    @Test
+    public void acquire_whenInTransaction_thenIExpectStoreCallsToProceed() throws Exception {
+        int[] holdCount = new int[1];
+
+        Attempt merge = attempt(() -> {
+            database.begin();
+            try (SignalSessionLock.Lock unused = lock.acquire(ALICE_1)) {
+                holdCount[0] = database.lock.getHoldCount();
+                database.begin();
+                database.end();
+            } finally {
+                database.end();
+            }
+        });
+
+        assertTrue(merge.finishedWithin(1000));
+        assertEquals(1, holdCount[0]);
+        assertFalse(database.lock.isLocked());
+    }
+
+    @Test
+    public void acquire_whenInTransaction_thenIExpectOtherThreadsToWait() throws Exception {
+        Attempt address;
+        Attempt all;
+
+        database.begin();
+        try (SignalSessionLock.Lock unused = lock.acquire(BOB_1)) {
+            address = attempt(() -> lock.acquire(ALICE_1).close());
+            all     = attempt(() -> lock.acquire().close());
+
+            assertFalse(address.finishedWithin(100));
+            assertFalse(all.finishedWithin(100));
+        } finally {
+            database.end();
+        }
+
+        assertTrue(address.finishedWithin(1000));
+        assertTrue(all.finishedWithin(1000));
+    }
+
+    @Test
+    public void acquire_whenSessionHeldByOtherThread_thenIExpectTransactionToWaitWithoutDeadlock() throws Exception {
+        CountDownLatch held    = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Attempt sender = attempt(() -> {
+            try (SignalSessionLock.Lock unused = lock.acquire(ALICE_1)) {
+                held.countDown();
+                await(release);
+                database.begin();
+                database.end();
+            }
+        });
+
+        assertTrue(held.await(1, TimeUnit.SECONDS));
+
+        Attempt merge = attempt(() -> {
+            database.begin();
+            try (SignalSessionLock.Lock unused = lock.acquire(ALICE_1)) {
+                // Would be reading or rewriting sessions as part of a larger transaction.
+            } finally {
+                database.end();
+            }
+        });
+
+        assertFalse(merge.finishedWithin(100));
+
+        release.countDown();
+
+        assertTrue(sender.finishedWithin(1000));
+        assertTrue(merge.finishedWithin(1000));
+    }
+
+    @Test
+    public void acquire_tracksOwner() {
+        assertEquals(TransactionSessionLock.NO_OWNER, lock.getOwnerThreadId());
+
+        try (SignalSessionLock.Lock unused = lock.acquire()) {
+            assertEquals(Thread.currentThread().getId(), lock.getOwnerThreadId());
+        }
+
+        assertEquals(TransactionSessionLock.NO_OWNER, lock.getOwnerThreadId());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static Attempt attempt(Runnable runnable) {
+        Attempt attempt = new Attempt(new Thread(runnable));
+        attempt.thread.start();
+        return attempt;
+    }
+
+    /**
+     * Stands in for the database lock, which is reentrant and held for the length of a transaction.
+     */
+    private static final class FakeDatabase implements TransactionSessionLock.Transactor {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        @Override
+        public boolean isHeldByCurrentThread() {
+            return lock.isHeldByCurrentThread();
+        }
+
+        @Override
+        public void begin() {
+            lock.lock();
+        }
+
+        @Override
+        public void end() {
+            lock.unlock();
+        }
+    }
+
+    private static final class Attempt {
+        private final Thread thread;
+
+        private Attempt(Thread thread) {
+            this.thread = thread;
+        }
+
+        boolean finishedWithin(long timeoutMs) throws InterruptedException {
+            thread.join(timeoutMs);
+            return !thread.isAlive();
+        }
+    }
+}
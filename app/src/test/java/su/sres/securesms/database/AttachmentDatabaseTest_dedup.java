@@ -0,0 +1,236 @@
+package su.sres.securesms.database;
+
+import android.app.Application;
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import su.sres.securesms.attachments.AttachmentId;
+import su.sres.securesms.crypto.AttachmentSecret;
+import su.sres.securesms.database.helpers.SQLCipherOpenHelper;
+import su.sres.securesms.dependencies.ApplicationDependencies;
+import su.sres.securesms.util.Base64;
+
+import java.io.File;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+@PowerMockIgnore({ "org.mockito.*", "org.robolectric.*", "android.*", "androidx.*" })
+@PrepareForTest({ ApplicationDependencies.class, DatabaseFactory.class, DatabaseObserver.class })
+public class AttachmentDatabaseTest_dedup {
+
+    private static final String HASH = "hash";
+
+    @Rule
+    public PowerMockRule rule = new PowerMockRule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SQLiteDatabase     db;
+    private AttachmentDatabase testSubject;
+
+    @Before
+    public void setUp() {
+        mockStatic(ApplicationDependencies.class);
+        mockStatic(DatabaseFactory.class);
+
+        SQLCipherOpenHelper databaseHelper = mock(SQLCipherOpenHelper.class);
+
+        db = mock(SQLiteDatabase.class);
+
+        when(databaseHelper.getWritableDatabase()).thenReturn(db);
+        when(databaseHelper.getReadableDatabase()).thenReturn(db);
+        when(DatabaseFactory.getMmsDatabase(any())).thenReturn(mock(MessageDatabase.class));
+        when(DatabaseFactory.getThreadDatabase(any())).thenReturn(mock(ThreadDatabase.class));
+        when(ApplicationDependencies.getDatabaseObserver()).thenReturn(mock(DatabaseObserver.class));
+
+        testSubject = new AttachmentDatabase(ApplicationProvider.getApplicationContext(), databaseHelper, mock(AttachmentSecret.class));
+    }
+
+    @Test
+    public void givenData_whenIHashIt_thenIExpectTheHashStoredOnInsert() throws Exception {
+        // GIVEN
+        byte[] data = "voice note".getBytes();
+
+        // WHEN
+        String result = AttachmentDatabase.hashData(data);
+
+        // THEN
+        assertEquals(Base64.encodeBytes(MessageDigest.getInstance("SHA-256").digest(data)), result);
+    }
+
+    @Test
+    public void givenNoDuplicate_whenILinkPlaceholder_thenIExpectNothingWritten() {
+        // WHEN
+        boolean result = testSubject.linkPlaceholderToDuplicate(1, new AttachmentId(2, 3), HASH);
+
+        // THEN
+        assertFalse(result);
+        verify(db, never()).update(anyString(), any(ContentValues.class), anyString(), any());
+    }
+
+    @Test
+    public void givenDuplicate_whenILinkPlaceholder_thenIExpectItToShareTheExistingFile() throws Exception {
+        // GIVEN
+        File   existing = folder.newFile();
+        byte[] random   = new byte[] { 1, 2, 3 };
+
+        MatrixCursor duplicate = new MatrixCursor(new String[] { AttachmentDatabase.DATA, AttachmentDatabase.DATA_RANDOM, AttachmentDatabase.SIZE });
+        duplicate.addRow(new Object[] { existing.getAbsolutePath(), random, 10L });
+
+        when(db.query(eq(AttachmentDatabase.TABLE_NAME), any(), anyString(), any(), isNull(), isNull(), eq(AttachmentDatabase.ROW_ID + " ASC"), eq("1"))).thenReturn(duplicate);
+        when(db.update(eq(AttachmentDatabase.TABLE_NAME), any(ContentValues.class), anyString(), any())).thenReturn(1);
+
+        // WHEN
+        boolean result = testSubject.linkPlaceholderToDuplicate(1, new AttachmentId(2, 3), HASH);
+
+        // THEN
+        assertTrue(result);
+        assertTrue(existing.exists());
+
+        ArgumentCaptor<ContentValues> values = ArgumentCaptor.forClass(ContentValues.class);
+        verify(db).update(eq(AttachmentDatabase.TABLE_NAME), values.capture(), anyString(), any());
+
+        assertEquals(existing.getAbsolutePath(), values.getValue().getAsString(AttachmentDatabase.DATA));
+        assertArrayEquals(random, values.getValue().getAsByteArray(AttachmentDatabase.DATA_RANDOM));
+        assertEquals(HASH, values.getValue().getAsString(AttachmentDatabase.DATA_HASH));
+        assertEquals(AttachmentDatabase.TRANSFER_PROGRESS_DONE, (int) values.getValue().getAsInteger(AttachmentDatabase.TRANSFER_STATE));
+    }
+
+    @Test
+    public void givenDuplicateFiles_whenIDeduplicate_thenIExpectRowsMergedAndFilesDeletedOnlyAfterCommit() throws Exception {
+        // GIVEN
+        File oldest = folder.newFile();
+        File newer  = folder.newFile();
+
+        givenDuplicates(oldest, newer);
+
+        ArgumentCaptor<Runnable> postCommit = ArgumentCaptor.forClass(Runnable.class);
+        doNothing().when(db).runPostSuccessfulTransaction(postCommit.capture());
+
+        // WHEN
+        String result = testSubject.deduplicateDataFiles(null, 10);
+
+        // THEN
+        assertNull(result);
+
+        ArgumentCaptor<ContentValues> values = ArgumentCaptor.forClass(ContentValues.class);
+        verify(db).update(eq(AttachmentDatabase.TABLE_NAME), values.capture(), eq(AttachmentDatabase.DATA_HASH + " = ? AND " + AttachmentDatabase.DATA + " != ?"), eq(new String[] { HASH, oldest.getAbsolutePath() }));
+        assertEquals(oldest.getAbsolutePath(), values.getValue().getAsString(AttachmentDatabase.DATA));
+
+        verify(db).setTransactionSuccessful();
+        assertTrue(newer.exists());
+
+        // WHEN
+        postCommit.getValue().run();
+
+        // THEN
+        assertTrue(oldest.exists());
+        assertFalse(newer.exists());
+    }
+
+    @Test
+    public void givenReplacedFileStillInUse_whenCommitted_thenIExpectItKept() throws Exception {
+        // GIVEN
+        File oldest = folder.newFile();
+        File newer  = folder.newFile();
+
+        givenDuplicates(oldest, newer);
+
+        MatrixCursor inUse = new MatrixCursor(new String[] { AttachmentDatabase.ROW_ID });
+        inUse.addRow(new Object[] { 5L });
+        when(db.query(eq(AttachmentDatabase.TABLE_NAME), any(), eq(AttachmentDatabase.DATA + " = ?"), eq(new String[] { newer.getAbsolutePath() }), isNull(), isNull(), isNull(), eq("1"))).thenReturn(inUse);
+
+        ArgumentCaptor<Runnable> postCommit = ArgumentCaptor.forClass(Runnable.class);
+        doNothing().when(db).runPostSuccessfulTransaction(postCommit.capture());
+
+        // WHEN
+        testSubject.deduplicateDataFiles(null, 10);
+        postCommit.getValue().run();
+
+        // THEN
+        assertTrue(newer.exists());
+    }
+
+    @Test
+    public void givenOldestFileMissing_whenIDeduplicate_thenIExpectNextFileKept() throws Exception {
+        // GIVEN
+        File missing = new File(folder.getRoot(), "missing");
+        File newer   = folder.newFile();
+
+        givenDuplicates(missing, newer);
+
+        // WHEN
+        testSubject.deduplicateDataFiles(null, 10);
+
+        // THEN
+        verify(db).update(eq(AttachmentDatabase.TABLE_NAME), any(ContentValues.class), anyString(), eq(new String[] { HASH, newer.getAbsolutePath() }));
+    }
+
+    @Test
+    public void givenFullBatch_whenIDeduplicate_thenIExpectToContinueFromLastHash() throws Exception {
+        // GIVEN
+        givenDuplicates(folder.newFile(), folder.newFile());
+
+        // WHEN
+        String result = testSubject.deduplicateDataFiles(null, 1);
+
+        // THEN
+        assertEquals(HASH, result);
+    }
+
+    @Test
+    public void givenNoDuplicates_whenIDeduplicate_thenIExpectNoTransaction() {
+        // GIVEN
+        when(db.rawQuery(anyString(), any(String[].class))).thenReturn(new MatrixCursor(new String[] { AttachmentDatabase.DATA_HASH }));
+
+        // WHEN
+        String result = testSubject.deduplicateDataFiles(null, 10);
+
+        // THEN
+        assertNull(result);
+        verify(db, never()).beginTransaction();
+    }
+
+    private void givenDuplicates(File oldest, File newer) {
+        MatrixCursor hashes = new MatrixCursor(new String[] { AttachmentDatabase.DATA_HASH });
+        hashes.addRow(new Object[] { HASH });
+
+        MatrixCursor files = new MatrixCursor(new String[] { AttachmentDatabase.DATA, AttachmentDatabase.DATA_RANDOM, "oldest" });
+        files.addRow(new Object[] { oldest.getAbsolutePath(), new byte[] { 1 }, 1L });
+        files.addRow(new Object[] { newer.getAbsolutePath(), new byte[] { 2 }, 5L });
+
+        when(db.rawQuery(anyString(), any(String[].class))).thenReturn(hashes, files);
+    }
+}
@@ -0,0 +1,115 @@
+package su.sres.securesms.database;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class ConversationPositionIndexTest {
+
+    private ConversationPositionIndex index;
+
+    /**
+     * Newest first: mms 7 @ 400, sms 3 @ 300, sms 2 @ 300, mms 2 @ 300, sms 1 @ 100.
+     */
+    @Before
+    public void setUp() {
+        long[] sms = { 100, 1,
+                       300, 2,
+                       300, 3 };
+        long[] mms = { 300, 2,
+                       400, 7 };
+
+        index = ConversationPositionIndex.merge(sms, 3, mms, 2);
+    }
+
+    @Test
+    public void merge_ordersByDateThenTransportThenId() {
+        assertEquals(5, index.size());
+        assertEquals(0, index.getPosition(400, true, 7));
+        assertEquals(1, index.getPosition(300, false, 3));
+        assertEquals(2, index.getPosition(300, false, 2));
+        assertEquals(3, index.getPosition(300, true, 2));
+        assertEquals(4, index.getPosition(100, false, 1));
+    }
+
+    @Test
+    public void getPosition_unknownMessage() {
+        assertEquals(-1, index.getPosition(300, true, 3));
+        assertEquals(-1, index.getPosition(200, false, 2));
+    }
+
+    @Test
+    public void getDateReceived_byPosition() {
+        assertEquals(400, index.getDateReceived(0));
+        assertEquals(300, index.getDateReceived(3));
+        assertEquals(100, index.getDateReceived(4));
+    }
+
+    @Test
+    public void countReceived_aroundTimestamp() {
+        assertEquals(1, index.countReceivedAfter(300));
+        assertEquals(4, index.countReceivedOnOrAfter(300));
+        assertEquals(4, index.countReceivedAfter(200));
+        assertEquals(0, index.countReceivedAfter(400));
+        assertEquals(5, index.countReceivedOnOrAfter(0));
+    }
+
+    @Test
+    public void insert_newestMessage_isPositionZero() {
+        index.insert(500, false, 4);
+
+        assertEquals(6, index.size());
+        assertEquals(0, index.getPosition(500, false, 4));
+        assertEquals(1, index.getPosition(400, true, 7));
+    }
+
+    @Test
+    public void insert_olderMessage_shiftsOnlyOlderPositions() {
+        index.insert(200, true, 8);
+
+        assertEquals(3, index.getPosition(300, true, 2));
+        assertEquals(4, index.getPosition(200, true, 8));
+        assertEquals(5, index.getPosition(100, false, 1));
+    }
+
+    @Test
+    public void insert_existingMessage_isIgnored() {
+        index.insert(300, false, 2);
+
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void remove_shiftsOlderPositions() {
+        assertTrue(index.remove(false, 3));
+
+        assertEquals(4, index.size());
+        assertEquals(0, index.getPosition(400, true, 7));
+        assertEquals(1, index.getPosition(300, false, 2));
+        assertEquals(-1, index.getPosition(300, false, 3));
+    }
+
+    @Test
+    public void remove_matchesTransport() {
+        assertFalse(index.remove(true, 1));
+        assertTrue(index.remove(true, 2));
+
+        assertEquals(2, index.getPosition(300, false, 2));
+    }
+
+    @Test
+    public void insert_beyondCapacity_grows() {
+        ConversationPositionIndex empty = ConversationPositionIndex.merge(new long[0], 0, new long[0], 0);
+
+        for (int i = 0; i < 100; i++) {
+            empty.insert(i % 2 == 0 ? i : 1000 - i, false, i);
+        }
+
+        assertEquals(100, empty.size());
+        assertEquals(0, empty.getPosition(999, false, 1));
+        assertEquals(99, empty.getPosition(0, false, 0));
+    }
+}
@@ -0,0 +1,245 @@
+package su.sres.securesms.database;
+
+import android.app.Application;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.whispersystems.libsignal.util.Pair;
+
+import su.sres.securesms.database.helpers.SQLCipherOpenHelper;
+import su.sres.securesms.dependencies.ApplicationDependencies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+@PowerMockIgnore({ "org.mockito.*", "org.robolectric.*", "android.*", "androidx.*" })
+@PrepareForTest({ ApplicationDependencies.class, DatabaseFactory.class, DatabaseObserver.class })
+public class ThreadDatabaseTest_trim {
+
+    private static final int BATCH = 500;
+
+    @Rule
+    public PowerMockRule rule = new PowerMockRule();
+
+    private SQLiteDatabase       db;
+    private MmsSmsDatabase       mmsSmsDatabase;
+    private AttachmentDatabase   attachmentDatabase;
+    private GroupReceiptDatabase groupReceiptDatabase;
+    private MentionDatabase      mentionDatabase;
+    private ThreadDatabase       testSubject;
+
+    @Before
+    public void setUp() {
+        mockStatic(ApplicationDependencies.class);
+        mockStatic(DatabaseFactory.class);
+
+        SQLCipherOpenHelper databaseHelper = mock(SQLCipherOpenHelper.class);
+
+        db                   = mock(SQLiteDatabase.class);
+        mmsSmsDatabase       = mock(MmsSmsDatabase.class);
+        attachmentDatabase   = mock(AttachmentDatabase.class);
+        groupReceiptDatabase = mock(GroupReceiptDatabase.class);
+        mentionDatabase      = mock(MentionDatabase.class);
+
+        when(databaseHelper.getWritableDatabase()).thenReturn(db);
+        when(databaseHelper.getReadableDatabase()).thenReturn(db);
+        when(DatabaseFactory.getMmsSmsDatabase(any())).thenReturn(mmsSmsDatabase);
+        when(DatabaseFactory.getAttachmentDatabase(any())).thenReturn(attachmentDatabase);
+        when(DatabaseFactory.getGroupReceiptDatabase(any())).thenReturn(groupReceiptDatabase);
+        when(DatabaseFactory.getMentionDatabase(any())).thenReturn(mentionDatabase);
+        when(ApplicationDependencies.getDatabaseObserver()).thenReturn(mock(DatabaseObserver.class));
+
+        testSubject = spy(new ThreadDatabase(ApplicationProvider.getApplicationContext(), databaseHelper));
+
+        doReturn(true).when(testSubject).update(anyLong(), anyBoolean());
+    }
+
+    @Test
+    public void givenMoreThanOneBatch_whenITrimThread_thenIExpectEveryBatchInOneYieldingTransaction() {
+        // GIVEN
+        when(mmsSmsDatabase.deleteMessagesInThreadBeforeDate(1L, 100L, BATCH)).thenReturn(BATCH, BATCH, 20);
+
+        // WHEN
+        int result = testSubject.trimThreadBefore(1L, 100L);
+
+        // THEN
+        assertEquals(2 * BATCH + 20, result);
+        verify(mmsSmsDatabase, times(3)).deleteMessagesInThreadBeforeDate(1L, 100L, BATCH);
+
+        InOrder inOrder = inOrder(db, mmsSmsDatabase, testSubject);
+        inOrder.verify(db).beginTransaction();
+        inOrder.verify(mmsSmsDatabase).deleteMessagesInThreadBeforeDate(1L, 100L, BATCH);
+        inOrder.verify(db).yieldIfContendedSafely();
+        inOrder.verify(mmsSmsDatabase).deleteMessagesInThreadBeforeDate(1L, 100L, BATCH);
+        inOrder.verify(db).yieldIfContendedSafely();
+        inOrder.verify(mmsSmsDatabase).deleteMessagesInThreadBeforeDate(1L, 100L, BATCH);
+        inOrder.verify(testSubject).update(1L, false);
+        inOrder.verify(db).setTransactionSuccessful();
+        inOrder.verify(db).endTransaction();
+    }
+
+    @Test
+    public void givenExactlyOneBatch_whenITrimThread_thenIExpectOneMoreEmptyBatch() {
+        // GIVEN
+        when(mmsSmsDatabase.deleteMessagesInThreadBeforeDate(1L, 100L, BATCH)).thenReturn(BATCH, 0);
+
+        // WHEN
+        int result = testSubject.trimThreadBefore(1L, 100L);
+
+        // THEN
+        assertEquals(BATCH, result);
+        verify(mmsSmsDatabase, times(2)).deleteMessagesInThreadBeforeDate(1L, 100L, BATCH);
+        verify(db, times(1)).yieldIfContendedSafely();
+        verify(testSubject).update(1L, false);
+    }
+
+    @Test
+    public void givenNothingToDelete_whenITrimThread_thenIExpectThreadLeftAlone() {
+        // GIVEN
+        when(mmsSmsDatabase.deleteMessagesInThreadBeforeDate(1L, 100L, BATCH)).thenReturn(0);
+
+        // WHEN
+        int result = testSubject.trimThreadBefore(1L, 100L);
+
+        // THEN
+        assertEquals(0, result);
+        verify(db, never()).yieldIfContendedSafely();
+        verify(testSubject, never()).update(anyLong(), anyBoolean());
+        verify(db).setTransactionSuccessful();
+        verify(db).endTransaction();
+    }
+
+    @Test
+    public void givenThreads_whenITrimAllThreads_thenIExpectProgressAfterEachThreadAndSweepAtEnd() {
+        // GIVEN
+        List<Long> trimmed = new ArrayList<>();
+
+        doReturn(Arrays.asList(new Pair<>(3L, 10L), new Pair<>(7L, 20L))).when(testSubject).getTrimCutoffs(anyInt(), anyLong(), anyString(), any());
+        doReturn(BATCH + 1).when(testSubject).trimThreadBefore(anyLong(), anyLong());
+        doNothing().when(testSubject).deleteAbandonedMessageData();
+
+        ThreadDatabase.TrimProgressListener listener = spy(new ThreadDatabase.TrimProgressListener() {
+            @Override
+            public void onThreadTrimmed(long threadId) {
+                trimmed.add(threadId);
+            }
+        });
+
+        // WHEN
+        testSubject.trimAllThreads(10, 0, 2, listener);
+
+        // THEN
+        assertEquals(Arrays.asList(3L, 7L), trimmed);
+
+        InOrder inOrder = inOrder(testSubject, listener);
+        inOrder.verify(testSubject).trimThreadBefore(3L, 10L);
+        inOrder.verify(listener).onThreadTrimmed(3L);
+        inOrder.verify(testSubject).trimThreadBefore(7L, 20L);
+        inOrder.verify(listener).onThreadTrimmed(7L);
+        inOrder.verify(testSubject).deleteAbandonedMessageData();
+    }
+
+    @Test
+    public void givenNoThreadsLeft_whenITrimAllThreads_thenIExpectSweepAnyway() {
+        // GIVEN
+        List<Long> trimmed = new ArrayList<>();
+
+        doReturn(new ArrayList<>()).when(testSubject).getTrimCutoffs(anyInt(), anyLong(), anyString(), any());
+        doNothing().when(testSubject).deleteAbandonedMessageData();
+
+        // WHEN
+        testSubject.trimAllThreads(10, 0, 2, trimmed::add);
+
+        // THEN
+        assertTrue(trimmed.isEmpty());
+        verify(testSubject, never()).trimThreadBefore(anyLong(), anyLong());
+        verify(testSubject).deleteAbandonedMessageData();
+    }
+
+    @Test
+    public void givenTrimmedThread_whenITrimThread_thenIExpectNoSweep() {
+        // GIVEN
+        doReturn(Arrays.asList(new Pair<>(1L, 100L))).when(testSubject).getTrimCutoffs(anyInt(), anyLong(), anyString(), any());
+        doReturn(BATCH + 1).when(testSubject).trimThreadBefore(anyLong(), anyLong());
+
+        // WHEN
+        testSubject.trimThread(1L, 10, 0);
+
+        // THEN
+        verify(testSubject).trimThreadBefore(1L, 100L);
+        verify(testSubject, never()).deleteAbandonedMessageData();
+        verify(mmsSmsDatabase, never()).deleteAbandonedMessages(anyInt());
+        verify(attachmentDatabase, never()).deleteAbandonedAttachmentFiles();
+    }
+
+    @Test
+    public void givenManyOrphans_whenISweep_thenIExpectYieldingBatchesAndFilesScannedAfterCommit() {
+        // GIVEN
+        when(mmsSmsDatabase.deleteAbandonedMessages(BATCH)).thenReturn(BATCH, 3);
+
+        // WHEN
+        testSubject.deleteAbandonedMessageData();
+
+        // THEN
+        verify(mmsSmsDatabase, times(2)).deleteAbandonedMessages(BATCH);
+
+        InOrder inOrder = inOrder(db, mmsSmsDatabase, attachmentDatabase, groupReceiptDatabase, mentionDatabase);
+        inOrder.verify(db).beginTransaction();
+        inOrder.verify(mmsSmsDatabase).deleteAbandonedMessages(BATCH);
+        inOrder.verify(db).yieldIfContendedSafely();
+        inOrder.verify(mmsSmsDatabase).deleteAbandonedMessages(BATCH);
+        inOrder.verify(db).yieldIfContendedSafely();
+        inOrder.verify(attachmentDatabase).trimAbandonedAttachments(BATCH);
+        inOrder.verify(db).yieldIfContendedSafely();
+        inOrder.verify(groupReceiptDatabase).deleteAbandonedRows(BATCH);
+        inOrder.verify(db).yieldIfContendedSafely();
+        inOrder.verify(mentionDatabase).deleteAbandonedMentions(BATCH);
+        inOrder.verify(db).yieldIfContendedSafely();
+        inOrder.verify(db).setTransactionSuccessful();
+        inOrder.verify(db).endTransaction();
+        inOrder.verify(attachmentDatabase).deleteAbandonedAttachmentFiles();
+    }
+
+    @Test
+    public void givenNoTrimPolicy_whenITrimAllThreads_thenIExpectNothing() {
+        // WHEN
+        testSubject.trimAllThreads(ThreadDatabase.NO_TRIM_MESSAGE_COUNT_SET, ThreadDatabase.NO_TRIM_BEFORE_DATE_SET, 0, null);
+
+        // THEN
+        verify(testSubject, never()).getTrimCutoffs(anyInt(), anyLong(), anyString(), any());
+        verify(testSubject, never()).deleteAbandonedMessageData();
+        verify(mmsSmsDatabase, never()).deleteMessagesInThreadBeforeDate(anyLong(), anyLong(), eq(BATCH));
+    }
+}
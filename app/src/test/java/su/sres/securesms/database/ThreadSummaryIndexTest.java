@@ -0,0 +1,191 @@
+package su.sres.securesms.database;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static su.sres.securesms.database.ThreadSummaryIndex.Section.ARCHIVED;
+import static su.sres.securesms.database.ThreadSummaryIndex.Section.PINNED;
+import static su.sres.securesms.database.ThreadSummaryIndex.Section.UNPINNED;
+
+public final class ThreadSummaryIndexTest {
+
+    private ThreadSummaryIndex index;
+    private RecordingListener  listener;
+
+    @Before
+    public void setUp() {
+        index    = new ThreadSummaryIndex();
+        listener = new RecordingListener();
+
+        index.seed(index.getGeneration(),
+                   Arrays.asList(unpinned(1, 100),
+                                 unpinned(2, 300),
+                                 unpinned(3, 200),
+                                 pinned(4, 2),
+                                 pinned(5, 1),
+                                 archived(6, 50)));
+        index.addListener(listener);
+    }
+
+    @Test
+    public void seed_sortsEachSection() {
+        assertEquals(Arrays.asList(5L, 4L), index.getThreadIds(PINNED, 0, 0));
+        assertEquals(Arrays.asList(2L, 3L, 1L), index.getThreadIds(UNPINNED, 0, 0));
+        assertEquals(Collections.singletonList(6L), index.getThreadIds(ARCHIVED, 0, 0));
+        assertEquals(3, index.getCount(UNPINNED));
+    }
+
+    @Test
+    public void getThreadIds_pagesWithinSection() {
+        assertEquals(Arrays.asList(3L, 1L), index.getThreadIds(UNPINNED, 1, 5));
+        assertEquals(Collections.singletonList(2L), index.getThreadIds(UNPINNED, 0, 1));
+        assertTrue(index.getThreadIds(UNPINNED, 10, 5).isEmpty());
+    }
+
+    @Test
+    public void update_newerMessage_movesThreadToTop() {
+        update(1, unpinned(1, 400));
+
+        assertEquals(Arrays.asList(1L, 2L, 3L), index.getThreadIds(UNPINNED, 0, 0));
+        assertEquals(Collections.singletonList("moved UNPINNED 2 -> 0"), listener.events);
+    }
+
+    @Test
+    public void update_sameOrder_reportsChange() {
+        update(2, unpinned(2, 350));
+
+        assertEquals(Collections.singletonList("changed UNPINNED 0"), listener.events);
+    }
+
+    @Test
+    public void update_unarchive_removesAndInserts() {
+        update(6, unpinned(6, 250));
+
+        assertEquals(Arrays.asList(2L, 6L, 3L, 1L), index.getThreadIds(UNPINNED, 0, 0));
+        assertEquals(0, index.getCount(ARCHIVED));
+        assertEquals(Arrays.asList("removed ARCHIVED 0", "inserted UNPINNED 1"), listener.events);
+    }
+
+    @Test
+    public void update_firstMessage_insertsThread() {
+        update(7, unpinned(7, 150));
+
+        assertEquals(Arrays.asList(2L, 3L, 7L, 1L), index.getThreadIds(UNPINNED, 0, 0));
+        assertEquals(Collections.singletonList("inserted UNPINNED 2"), listener.events);
+    }
+
+    @Test
+    public void update_noLongerListed_removesThread() {
+        update(3, null);
+
+        assertEquals(Arrays.asList(2L, 1L), index.getThreadIds(UNPINNED, 0, 0));
+        assertEquals(Collections.singletonList("removed UNPINNED 1"), listener.events);
+    }
+
+    @Test
+    public void update_whenNotSeeded_doesNothing() {
+        index.reset();
+        update(1, unpinned(1, 400));
+
+        assertEquals(0, index.getCount(UNPINNED));
+        assertEquals(Collections.singletonList("reset"), listener.events);
+    }
+
+    @Test
+    public void update_whenReadBeforeReset_isDropped() {
+        long generation = index.getGeneration();
+
+        index.reset();
+        index.seed(index.getGeneration(), Collections.singletonList(unpinned(1, 100)));
+        index.update(generation, 1, unpinned(1, 400));
+        index.dispatchPending();
+
+        assertEquals(Collections.singletonList(1L), index.getThreadIds(UNPINNED, 0, 0));
+        assertEquals(Collections.singletonList("reset"), listener.events);
+    }
+
+    @Test
+    public void seed_whenReadBeforeReset_isDropped() {
+        long generation = index.getGeneration();
+
+        index.reset();
+
+        assertFalse(index.seed(generation, Collections.singletonList(unpinned(1, 100))));
+        assertFalse(index.isSeeded());
+    }
+
+    @Test
+    public void update_isOnlyReportedOnDispatch() {
+        index.update(index.getGeneration(), 1, unpinned(1, 400));
+        index.update(index.getGeneration(), 3, null);
+
+        assertTrue(listener.events.isEmpty());
+
+        index.dispatchPending();
+
+        assertEquals(Arrays.asList("moved UNPINNED 2 -> 0", "removed UNPINNED 2"), listener.events);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void dispatchPending_whenIndexLocked_throws() {
+        synchronized (index) {
+            index.dispatchPending();
+        }
+    }
+
+    private void update(long threadId, ThreadSummaryIndex.ThreadSummary summary) {
+        index.update(index.getGeneration(), threadId, summary);
+        index.dispatchPending();
+    }
+
+    private static @NonNull ThreadSummaryIndex.ThreadSummary unpinned(long threadId, long date) {
+        return new ThreadSummaryIndex.ThreadSummary(threadId, date, 0, false);
+    }
+
+    private static @NonNull ThreadSummaryIndex.ThreadSummary pinned(long threadId, long pinned) {
+        return new ThreadSummaryIndex.ThreadSummary(threadId, 0, pinned, false);
+    }
+
+    private static @NonNull ThreadSummaryIndex.ThreadSummary archived(long threadId, long date) {
+        return new ThreadSummaryIndex.ThreadSummary(threadId, date, 0, true);
+    }
+
+    private static final class RecordingListener implements ThreadSummaryIndex.Listener {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onThreadInserted(@NonNull ThreadSummaryIndex.Section section, int index) {
+            events.add("inserted " + section + " " + index);
+        }
+
+        @Override
+        public void onThreadRemoved(@NonNull ThreadSummaryIndex.Section section, int index) {
+            events.add("removed " + section + " " + index);
+        }
+
+        @Override
+        public void onThreadMoved(@NonNull ThreadSummaryIndex.Section section, int fromIndex, int toIndex) {
+            events.add("moved " + section + " " + fromIndex + " -> " + toIndex);
+        }
+
+        @Override
+        public void onThreadChanged(@NonNull ThreadSummaryIndex.Section section, int index) {
+            events.add("changed " + section + " " + index);
+        }
+
+        @Override
+        public void onReset() {
+            events.add("reset");
+        }
+    }
+}
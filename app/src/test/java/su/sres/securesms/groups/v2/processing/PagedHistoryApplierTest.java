@@ -0,0 +1,240 @@
+package su.sres.securesms.groups.v2.processing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+import su.sres.storageservice.protos.groups.local.DecryptedGroup;
+import su.sres.storageservice.protos.groups.local.DecryptedGroupChange;
+import su.sres.storageservice.protos.groups.local.DecryptedString;
+import su.sres.core.util.logging.Log;
+import su.sres.securesms.recipients.RecipientId;
+import su.sres.securesms.testutil.LogRecorder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static su.sres.securesms.groups.v2.processing.GroupStateMapper.LATEST;
+
+public final class PagedHistoryApplierTest {
+
+    private final FakeStore store = new FakeStore();
+
+    @Before
+    public void setup() {
+        Log.initialize(new LogRecorder());
+    }
+
+    @Test
+    public void single_page_is_applied_and_profiles_fetched() throws IOException {
+        GlobalGroupState input = new GlobalGroupState(state(0), asList(serverLogEntry(1), serverLogEntry(2)));
+
+        DecryptedGroup result = PagedHistoryApplier.apply(input, null, LATEST, false, store);
+
+        assertEquals(state(2), result);
+        assertEquals(singletonList(2), store.appliedRevisions);
+        assertEquals(singletonList(keys(1, 2)), store.fetchedProfiles);
+        assertTrue(store.scheduled.isEmpty());
+    }
+
+    @Test
+    public void multiple_pages_are_applied_one_at_a_time_and_profiles_fetched_once() throws IOException {
+        FakeHistory history = new FakeHistory(5, asList(serverLogEntry(3), serverLogEntry(4)),
+                                                 singletonList(serverLogEntry(5)));
+        GlobalGroupState input = new GlobalGroupState(state(0), asList(serverLogEntry(1), serverLogEntry(2)));
+
+        DecryptedGroup result = PagedHistoryApplier.apply(input, history, LATEST, false, store);
+
+        assertEquals(state(5), result);
+        assertEquals(asList(2, 4, 5), store.appliedRevisions);
+        assertEquals(asList(state(0), state(2), state(4)), store.previousStates);
+        assertEquals(asList(asList(1, 2), asList(3, 4), singletonList(5)), store.processedRevisions);
+        assertEquals(singletonList(keys(1, 2, 3, 4, 5)), store.fetchedProfiles);
+        assertTrue(store.scheduled.isEmpty());
+    }
+
+    @Test
+    public void failure_fetching_a_later_page_keeps_earlier_pages_and_still_fetches_their_profiles() {
+        FakeHistory history = new FakeHistory(5, asList(serverLogEntry(3), serverLogEntry(4)),
+                                                 null);
+        GlobalGroupState input = new GlobalGroupState(state(0), asList(serverLogEntry(1), serverLogEntry(2)));
+
+        try {
+            PagedHistoryApplier.apply(input, history, LATEST, false, store);
+            fail();
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertEquals(asList(2, 4), store.appliedRevisions);
+        assertEquals(singletonList(keys(1, 2, 3, 4)), store.fetchedProfiles);
+    }
+
+    @Test
+    public void failure_applying_a_later_page_still_fetches_profiles_of_committed_pages() {
+        FakeHistory history = new FakeHistory(4, asList(serverLogEntry(3), serverLogEntry(4)));
+        GlobalGroupState input = new GlobalGroupState(state(0), asList(serverLogEntry(1), serverLogEntry(2)));
+
+        store.failAtRevision = 4;
+
+        try {
+            PagedHistoryApplier.apply(input, history, LATEST, false, store);
+            fail();
+        } catch (IllegalStateException e) {
+            // Expected
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+
+        assertEquals(singletonList(2), store.appliedRevisions);
+        assertEquals(singletonList(keys(1, 2)), store.fetchedProfiles);
+    }
+
+    @Test
+    public void pages_beyond_requested_revision_are_scheduled_for_later() throws IOException {
+        FakeHistory history = new FakeHistory(5, asList(serverLogEntry(3), serverLogEntry(4)),
+                                                 singletonList(serverLogEntry(5)));
+        GlobalGroupState input = new GlobalGroupState(state(0), asList(serverLogEntry(1), serverLogEntry(2)));
+
+        DecryptedGroup result = PagedHistoryApplier.apply(input, history, 2, false, store);
+
+        assertEquals(state(2), result);
+        assertEquals(singletonList(2), store.appliedRevisions);
+        assertEquals(singletonList(5), store.scheduled);
+        assertEquals(singletonList(keys(1, 2)), store.fetchedProfiles);
+    }
+
+    @Test
+    public void nothing_new_applies_nothing() throws IOException {
+        GlobalGroupState input = new GlobalGroupState(state(2), singletonList(serverLogEntry(2)));
+
+        DecryptedGroup result = PagedHistoryApplier.apply(input, null, LATEST, false, store);
+
+        assertNull(result);
+        assertTrue(store.appliedRevisions.isEmpty());
+        assertEquals(singletonList(Collections.<RecipientId>emptySet()), store.fetchedProfiles);
+    }
+
+    private static Set<RecipientId> keys(int... revisions) {
+        Set<RecipientId> keys = new HashSet<>();
+        for (int revision : revisions) {
+            keys.add(RecipientId.from(revision));
+        }
+        return keys;
+    }
+
+    private static ServerGroupLogEntry serverLogEntry(int revision) {
+        return new ServerGroupLogEntry(state(revision), change(revision));
+    }
+
+    private static DecryptedGroup state(int revision) {
+        return DecryptedGroup.newBuilder()
+                             .setRevision(revision)
+                             .setTitle("Group Revision " + revision)
+                             .build();
+    }
+
+    private static DecryptedGroupChange change(int revision) {
+        return DecryptedGroupChange.newBuilder()
+                                   .setRevision(revision)
+                                   .setNewTitle(DecryptedString.newBuilder().setValue("Group Revision " + revision))
+                                   .build();
+    }
+
+    /**
+     * Pages after the first. A null page fails to download.
+     */
+    private static final class FakeHistory implements PagedHistoryApplier.HistorySource {
+
+        private final int                             latestRevision;
+        private final List<List<ServerGroupLogEntry>> pages;
+
+        @SafeVarargs
+        private FakeHistory(int latestRevision, List<ServerGroupLogEntry>... pages) {
+            this.latestRevision = latestRevision;
+            this.pages          = new LinkedList<>(asList(pages));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !pages.isEmpty();
+        }
+
+        @Override
+        public @NonNull List<ServerGroupLogEntry> next() throws IOException {
+            List<ServerGroupLogEntry> page = pages.remove(0);
+            if (page == null) {
+                throw new IOException("Page failed");
+            }
+            return page;
+        }
+
+        @Override
+        public int getLatestRevision() {
+            return latestRevision;
+        }
+    }
+
+    /**
+     * Learns a profile key per applied revision, with the revision as the recipient id.
+     */
+    private static final class FakeStore implements PagedHistoryApplier.Store {
+
+        private final List<Integer>                 appliedRevisions   = new ArrayList<>();
+        private final List<DecryptedGroup>          previousStates     = new ArrayList<>();
+        private final List<List<Integer>>           processedRevisions = new ArrayList<>();
+        private final List<Integer>                 scheduled          = new ArrayList<>();
+        private final List<Set<RecipientId>>        fetchedProfiles    = new ArrayList<>();
+
+        private int failAtRevision = -1;
+
+        @Override
+        public @NonNull Set<RecipientId> applyPage(@NonNull GlobalGroupState pageState,
+                                                   @NonNull DecryptedGroup pageLocalState,
+                                                   @NonNull Collection<LocalGroupLogEntry> processedLogEntries,
+                                                   @Nullable DecryptedGroup previousState,
+                                                   boolean fromRestorePlaceholder)
+        {
+            if (pageLocalState.getRevision() == failAtRevision) {
+                throw new IllegalStateException("Transaction failed");
+            }
+
+            List<Integer>    revisions = new ArrayList<>();
+            Set<RecipientId> learned   = new HashSet<>();
+
+            for (LocalGroupLogEntry entry : processedLogEntries) {
+                revisions.add(entry.getGroup().getRevision());
+                learned.add(RecipientId.from(entry.getGroup().getRevision()));
+            }
+
+            appliedRevisions.add(pageLocalState.getRevision());
+            previousStates.add(previousState);
+            processedRevisions.add(revisions);
+
+            return learned;
+        }
+
+        @Override
+        public void scheduleRemaining(int latestRevision) {
+            scheduled.add(latestRevision);
+        }
+
+        @Override
+        public void fetchProfiles(@NonNull Set<RecipientId> recipients) {
+            fetchedProfiles.add(new HashSet<>(recipients));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package su.sres.securesms.jobs;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public final class ImageCompressionQueuesTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void getParallelism_boundedByCpu() {
+        assertEquals(1, ImageCompressionQueues.getParallelism(2, 512 * MB, 1600, 4));
+        assertEquals(2, ImageCompressionQueues.getParallelism(4, 512 * MB, 1600, 4));
+        assertEquals(3, ImageCompressionQueues.getParallelism(8, 512 * MB, 1600, 4));
+    }
+
+    @Test
+    public void getParallelism_boundedByHeap() {
+        assertEquals(1, ImageCompressionQueues.getParallelism(8, 128 * MB, 4096, 4));
+        assertEquals(2, ImageCompressionQueues.getParallelism(8, 512 * MB, 4096, 4));
+    }
+
+    @Test
+    public void getParallelism_leavesAJobThreadFree() {
+        assertEquals(1, ImageCompressionQueues.getParallelism(8, 512 * MB, 1600, 2));
+        assertEquals(2, ImageCompressionQueues.getParallelism(8, 512 * MB, 1600, 3));
+        assertEquals(3, ImageCompressionQueues.getParallelism(8, 512 * MB, 1600, 8));
+    }
+
+    @Test
+    public void getParallelism_neverBelowOne() {
+        assertEquals(1, ImageCompressionQueues.getParallelism(1, 16 * MB, 4096, 4));
+        assertEquals(1, ImageCompressionQueues.getParallelism(8, 512 * MB, 1600, 1));
+    }
+}
@@ -0,0 +1,91 @@
+package su.sres.securesms.profiles;
+
+import org.junit.Test;
+
+import su.sres.securesms.recipients.RecipientId;
+import su.sres.signalservice.api.profiles.SignalServiceProfile;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class ProfileFetchCacheTest {
+
+    private static final RecipientId RECIPIENT   = RecipientId.from(1);
+    private static final byte[]      KEY         = new byte[] { 1, 2, 3 };
+    private static final byte[]      OTHER_KEY   = new byte[] { 4, 5, 6 };
+    private static final byte[]      FINGERPRINT = new byte[] { 7 };
+
+    private final ProfileFetchCache cache = new ProfileFetchCache(1000, 10);
+
+    @Test
+    public void claim_whenInFlight_thenIExpectFalseUntilReleased() {
+        assertTrue(cache.claim(RECIPIENT, KEY, 0, true));
+        assertFalse(cache.claim(RECIPIENT, KEY, 0, false));
+
+        cache.release(Collections.singleton(RECIPIENT));
+
+        assertTrue(cache.claim(RECIPIENT, KEY, 0, false));
+    }
+
+    @Test
+    public void claim_whenFresh_thenIExpectFalse() {
+        cache.markFetched(RECIPIENT, KEY, FINGERPRINT, 0);
+
+        assertFalse(cache.claim(RECIPIENT, KEY, 999, true));
+    }
+
+    @Test
+    public void claim_whenFreshButNotSkipping_thenIExpectTrue() {
+        cache.markFetched(RECIPIENT, KEY, FINGERPRINT, 0);
+
+        assertTrue(cache.claim(RECIPIENT, KEY, 999, false));
+    }
+
+    @Test
+    public void claim_whenStale_thenIExpectTrue() {
+        cache.markFetched(RECIPIENT, KEY, FINGERPRINT, 0);
+
+        assertTrue(cache.claim(RECIPIENT, KEY, 1000, true));
+    }
+
+    @Test
+    public void claim_whenProfileKeyChanged_thenIExpectTrue() {
+        cache.markFetched(RECIPIENT, KEY, FINGERPRINT, 0);
+
+        assertTrue(cache.claim(RECIPIENT, OTHER_KEY, 1, true));
+    }
+
+    @Test
+    public void isUnchanged_onlyForSameKeyAndFingerprint() {
+        assertFalse(cache.isUnchanged(RECIPIENT, KEY, FINGERPRINT));
+
+        cache.markFetched(RECIPIENT, KEY, FINGERPRINT, 0);
+
+        assertTrue(cache.isUnchanged(RECIPIENT, KEY, FINGERPRINT));
+        assertFalse(cache.isUnchanged(RECIPIENT, OTHER_KEY, FINGERPRINT));
+        assertFalse(cache.isUnchanged(RECIPIENT, KEY, new byte[] { 8 }));
+    }
+
+    @Test
+    public void markFetched_whenFull_thenIExpectEldestDropped() {
+        for (int i = 0; i < 11; i++) {
+            cache.markFetched(RecipientId.from(i + 1), KEY, FINGERPRINT, 0);
+        }
+
+        assertFalse(cache.isUnchanged(RecipientId.from(1), KEY, FINGERPRINT));
+        assertTrue(cache.isUnchanged(RecipientId.from(11), KEY, FINGERPRINT));
+    }
+
+    @Test
+    public void fingerprint_dependsOnProfileKey() {
+        SignalServiceProfile profile = new SignalServiceProfile();
+
+        assertArrayEquals(ProfileFetchCache.fingerprint(KEY, profile), ProfileFetchCache.fingerprint(KEY, profile));
+        assertFalse(Arrays.equals(ProfileFetchCache.fingerprint(KEY, profile), ProfileFetchCache.fingerprint(OTHER_KEY, profile)));
+        assertFalse(Arrays.equals(ProfileFetchCache.fingerprint(KEY, profile), ProfileFetchCache.fingerprint(null, profile)));
+    }
+}
@@ -0,0 +1,82 @@
+package su.sres.securesms.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class QualitySearchTest {
+
+  @Test
+  public void findsHighestFittingQuality_toWithinResolution() {
+    for (int threshold = 45; threshold <= 90; threshold++) {
+      QualitySearch search = run(new QualitySearch(45, 90, 70, 10), threshold);
+
+      assertTrue(search.getBestQuality() <= threshold);
+      assertTrue("threshold " + threshold + " best " + search.getBestQuality(), search.getBestQuality() >= threshold - 3);
+      assertTrue(search.getAttempts() <= 6);
+    }
+  }
+
+  @Test
+  public void maxQualityFits_oneAttempt() {
+    QualitySearch search = run(new QualitySearch(45, 90, 100, 10), 100);
+
+    assertEquals(90, search.getBestQuality());
+    assertEquals(1, search.getAttempts());
+  }
+
+  @Test
+  public void nothingFits_triesMinimumThenGivesUp() {
+    QualitySearch search = new QualitySearch(45, 90, 70, 10);
+    int           last   = -1;
+
+    while (search.hasNext()) {
+      last = search.next();
+      search.onResult(last, false);
+    }
+
+    assertEquals(45, last);
+    assertEquals(-1, search.getBestQuality());
+  }
+
+  @Test
+  public void stopsAtMaxAttempts() {
+    QualitySearch search = run(new QualitySearch(0, 100, 0, 2), 100);
+
+    assertEquals(2, search.getAttempts());
+    assertFalse(search.hasNext());
+  }
+
+  @Test
+  public void goodInitialGuess_needsFewAttempts() {
+    QualitySearch search = run(new QualitySearch(45, 90, 74, 10), 75);
+
+    assertTrue(search.getBestQuality() >= 72);
+    assertTrue(search.getAttempts() <= 3);
+  }
+
+  @Test
+  public void estimateQuality_growsWithBudget() {
+    int previous = 0;
+
+    for (long maxBytes = 50_000; maxBytes <= 5_000_000; maxBytes += 50_000) {
+      int quality = QualitySearch.estimateQuality(maxBytes, 2048, 1536);
+
+      assertTrue(quality >= previous);
+      previous = quality;
+    }
+
+    assertEquals(100, previous);
+  }
+
+  private static QualitySearch run(QualitySearch search, int threshold) {
+    while (search.hasNext()) {
+      int quality = search.next();
+      search.onResult(quality, quality <= threshold);
+    }
+
+    return search;
+  }
+}
@@ -117,6 +117,26 @@ public final class SqlUtilTest {
         SqlUtil.buildCollectionQuery("a", Collections.emptyList());
     }
 
+    @Test
+    public void buildCollectionQuery_chunked() {
+        List<SqlUtil.Query> queries = SqlUtil.buildCollectionQuery("a", Arrays.asList(1, 2, 3, 4, 5), 2);
+
+        assertEquals(3, queries.size());
+        assertEquals("a IN (?, ?)", queries.get(0).getWhere());
+        assertArrayEquals(new String[] { "1", "2" }, queries.get(0).getWhereArgs());
+        assertArrayEquals(new String[] { "3", "4" }, queries.get(1).getWhereArgs());
+        assertEquals("a IN (?)", queries.get(2).getWhere());
+        assertArrayEquals(new String[] { "5" }, queries.get(2).getWhereArgs());
+    }
+
+    @Test
+    public void buildCollectionQuery_chunked_exactMultiple() {
+        List<SqlUtil.Query> queries = SqlUtil.buildCollectionQuery("a", Arrays.asList(1, 2, 3, 4), 2);
+
+        assertEquals(2, queries.size());
+        assertArrayEquals(new String[] { "3", "4" }, queries.get(1).getWhereArgs());
+    }
+
     @Test
     public void splitStatements_singleStatement() {
         List<String> result = SqlUtil.splitStatements("SELECT * FROM foo;\n");
@@ -0,0 +1,154 @@
+package su.sres.securesms.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class TimerWheelTest {
+
+  private static final long TICK = 100;
+
+  @Test
+  public void advance_returnsOnlyDueEntries() {
+    TimerWheel<String> wheel = new TimerWheel<>(TICK, 0);
+
+    wheel.add("a", 250);
+    wheel.add("b", 1000);
+
+    assertTrue(wheel.advance(200).isEmpty());
+    assertEquals(Collections.singletonList("a"), wheel.advance(300));
+    assertEquals(1, wheel.size());
+    assertEquals(Collections.singletonList("b"), wheel.advance(1000));
+    assertTrue(wheel.isEmpty());
+  }
+
+  @Test
+  public void advance_neverReturnsEarly() {
+    TimerWheel<Long> wheel = new TimerWheel<>(TICK, 0);
+
+    wheel.add(150L, 150);
+
+    assertTrue(wheel.advance(150 - 1).isEmpty());
+    assertEquals(Collections.singletonList(150L), wheel.advance(200));
+  }
+
+  @Test
+  public void add_inThePast_isDueImmediately() {
+    TimerWheel<String> wheel = new TimerWheel<>(TICK, 5000);
+
+    wheel.add("late", 10);
+
+    assertTrue(wheel.getNextWakeMillis() <= 5000);
+    assertEquals(Collections.singletonList("late"), wheel.advance(5000));
+  }
+
+  @Test
+  public void sameTick_comesOutTogether() {
+    TimerWheel<String> wheel = new TimerWheel<>(TICK, 0);
+
+    wheel.add("a", 1_000_001);
+    wheel.add("b", 1_000_050);
+    wheel.add("c", 1_000_100);
+
+    assertEquals(Arrays.asList("a", "b", "c"), wheel.advance(1_000_100));
+  }
+
+  @Test
+  public void getNextWakeMillis_neverPassesEarliestDeadline() {
+    TimerWheel<Long> wheel    = new TimerWheel<>(TICK, 0);
+    long             deadline = 3_600_000;
+
+    wheel.add(deadline, deadline);
+
+    long now     = 0;
+    int  wakeUps = 0;
+
+    while (true) {
+      long wake = wheel.getNextWakeMillis();
+
+      assertTrue(wake <= deadline + TICK);
+
+      now = Math.max(now, wake);
+
+      List<Long> due = wheel.advance(now);
+      wakeUps++;
+
+      if (!due.isEmpty()) {
+        assertEquals(Collections.singletonList(deadline), due);
+        break;
+      }
+    }
+
+    assertTrue(now >= deadline);
+    assertTrue("Woke " + wakeUps + " times", wakeUps <= 8);
+    assertEquals(Long.MAX_VALUE, wheel.getNextWakeMillis());
+  }
+
+  @Test
+  public void longGap_rebuildsAndKeepsFutureEntries() {
+    TimerWheel<String> wheel = new TimerWheel<>(TICK, 0);
+
+    wheel.add("soon", 1_000);
+    wheel.add("later", 10_000_000);
+
+    assertEquals(Collections.singletonList("soon"), wheel.advance(5_000_000));
+    assertTrue(wheel.advance(9_999_999).isEmpty());
+    assertEquals(Collections.singletonList("later"), wheel.advance(10_000_000));
+  }
+
+  @Test
+  public void beyondLastLevel_waitsInOverflow() {
+    TimerWheel<String> wheel    = new TimerWheel<>(1, 0);
+    long               deadline = 1L << 25;
+
+    wheel.add("far", deadline);
+
+    List<String> due = new ArrayList<>();
+    long         now = 0;
+
+    while (due.isEmpty()) {
+      now = wheel.getNextWakeMillis();
+      due = wheel.advance(now);
+    }
+
+    assertEquals(deadline, now);
+  }
+
+  @Test
+  public void randomDeadlines_allComeOutInTickOrder() {
+    Random           random = new Random(42);
+    TimerWheel<Long> wheel  = new TimerWheel<>(TICK, 0);
+    List<Long>       added  = new ArrayList<>();
+
+    for (int i = 0; i < 10_000; i++) {
+      long deadline = random.nextInt(50_000_000);
+
+      added.add(deadline);
+      wheel.add(deadline, deadline);
+    }
+
+    List<Long> removed = new ArrayList<>();
+    long       now     = 0;
+
+    while (!wheel.isEmpty()) {
+      now += random.nextInt(20_000);
+
+      for (long deadline : wheel.advance(now)) {
+        assertTrue(deadline <= now);
+        assertTrue(deadline > now - 20_000 - TICK);
+        removed.add(deadline);
+      }
+    }
+
+    Collections.sort(added);
+    Collections.sort(removed);
+    assertEquals(added, removed);
+  }
+}
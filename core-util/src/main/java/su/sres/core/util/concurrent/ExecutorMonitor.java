@@ -0,0 +1,157 @@
+package su.sres.core.util.concurrent;
+
+import androidx.annotation.NonNull;
+
+import su.sres.core.util.logging.Log;
+
+import java.lang.ref.WeakReference;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of every {@link InstrumentedExecutor}, and watches them from a daemon thread for tasks
+ * that have waited or run longer than their {@link TaskPriority} allows. Each stalled task is logged
+ * once, with the stack of its thread if it is running, and the most recent are kept for debug logs.
+ *
+ * The thread only runs while a task that can stall is queued or running somewhere, so an idle app
+ * isn't woken up every second to look.
+ */
+public final class ExecutorMonitor {
+
+    private static final String TAG = Log.tag(ExecutorMonitor.class);
+
+    private static final long CHECK_INTERVAL_MS = 1000;
+    private static final int  MAX_RECENT_STALLS = 20;
+
+    private static final List<WeakReference<InstrumentedExecutor>> EXECUTORS     = new CopyOnWriteArrayList<>();
+    private static final Deque<String>                              RECENT_STALLS = new ArrayDeque<>();
+
+    private static volatile Thread detector;
+
+    private ExecutorMonitor() {}
+
+    static void register(@NonNull InstrumentedExecutor executor) {
+        EXECUTORS.add(new WeakReference<>(executor));
+    }
+
+    /**
+     * Called by executors before queueing a task that can stall, so that something is watching it.
+     */
+    static void onStallableTaskQueued() {
+        if (detector == null) {
+            startDetector();
+        }
+    }
+
+    /**
+     * @return The metrics of every executor that is still around.
+     */
+    public static @NonNull List<InstrumentedExecutor.Metrics> getMetrics() {
+        List<InstrumentedExecutor.Metrics> metrics = new ArrayList<>();
+
+        for (InstrumentedExecutor executor : getExecutors()) {
+            metrics.add(executor.getMetrics());
+        }
+
+        return metrics;
+    }
+
+    /**
+     * @return The most recently reported stalls, oldest first.
+     */
+    public static @NonNull List<String> getRecentStalls() {
+        synchronized (RECENT_STALLS) {
+            return new ArrayList<>(RECENT_STALLS);
+        }
+    }
+
+    private static @NonNull List<InstrumentedExecutor> getExecutors() {
+        List<InstrumentedExecutor> executors = new ArrayList<>(EXECUTORS.size());
+
+        for (WeakReference<InstrumentedExecutor> reference : EXECUTORS) {
+            InstrumentedExecutor executor = reference.get();
+
+            if (executor != null && !executor.isTerminated()) {
+                executors.add(executor);
+            } else {
+                EXECUTORS.remove(reference);
+            }
+        }
+
+        return executors;
+    }
+
+    private static synchronized void startDetector() {
+        if (detector != null) {
+            return;
+        }
+
+        Thread thread = new Thread(ExecutorMonitor::detectStalls, "signal-stall-detector");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+
+        detector = thread;
+        thread.start();
+    }
+
+    /**
+     * Lets the detector go if nothing it watches is queued or running. It is cleared before looking,
+     * so a task queued meanwhile is either seen here or sees it gone and starts another.
+     *
+     * @return True if the detector should stop.
+     */
+    private static synchronized boolean stopDetectorIfIdle() {
+        detector = null;
+
+        for (InstrumentedExecutor executor : getExecutors()) {
+            if (executor.hasStallableTasks()) {
+                detector = Thread.currentThread();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void detectStalls() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+
+        while (true) {
+            try {
+                Thread.sleep(CHECK_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                synchronized (ExecutorMonitor.class) {
+                    detector = null;
+                }
+                return;
+            }
+
+            long now = System.nanoTime();
+
+            for (InstrumentedExecutor executor : getExecutors()) {
+                for (String stall : executor.findStalls(now)) {
+                    Log.w(TAG, "Stall on " + stall);
+
+                    synchronized (RECENT_STALLS) {
+                        RECENT_STALLS.addLast(dateFormat.format(new Date()) + " " + stall);
+
+                        while (RECENT_STALLS.size() > MAX_RECENT_STALLS) {
+                            RECENT_STALLS.removeFirst();
+                        }
+                    }
+                }
+            }
+
+            if (stopDetectorIfIdle()) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package su.sres.core.util.concurrent;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ThreadPoolExecutor} that knows its name and tracks how long tasks wait in its queue and
+ * how long they run, so that {@link ExecutorMonitor} can report on it and spot stalls.
+ *
+ * Every task is given a {@link TaskPriority}, the executor's own unless one is passed to
+ * {@link #execute(TaskPriority, Runnable)}. Executors built on a priority queue run queued tasks in
+ * that order, and otherwise in submission order; others use the queue's own order and the priority
+ * only decides what counts as a stall.
+ */
+public final class InstrumentedExecutor extends ThreadPoolExecutor {
+
+    private final String       name;
+    private final TaskPriority priority;
+    private final AtomicLong   sequence;
+
+    private final Map<Thread, Task> running;
+
+    private final AtomicLong submitted      = new AtomicLong();
+    private final AtomicLong completed      = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos   = new AtomicLong();
+    private final AtomicLong totalRunNanos  = new AtomicLong();
+    private final AtomicLong maxRunNanos    = new AtomicLong();
+
+    private final AtomicInteger stallableTasks = new AtomicInteger();
+
+    InstrumentedExecutor(@NonNull String name,
+                         @NonNull TaskPriority priority,
+                         int corePoolSize,
+                         int maximumPoolSize,
+                         long keepAliveTime,
+                         @NonNull TimeUnit unit,
+                         @NonNull BlockingQueue<Runnable> workQueue,
+                         @NonNull ThreadFactory threadFactory)
+    {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+        this.name     = name;
+        this.priority = priority;
+        this.sequence = new AtomicLong();
+        this.running  = new ConcurrentHashMap<>();
+    }
+
+    public @NonNull String getName() {
+        return name;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        execute(priority, command);
+    }
+
+    public void execute(@NonNull TaskPriority priority, @NonNull Runnable command) {
+        Task task = command instanceof Task ? (Task) command
+                                            : new Task(command, priority, sequence.getAndIncrement(), System.nanoTime());
+
+        submitted.incrementAndGet();
+
+        if (task.priority.canStall()) {
+            stallableTasks.incrementAndGet();
+            ExecutorMonitor.onStallableTaskQueued();
+        }
+
+        try {
+            super.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (task.priority.canStall()) {
+                stallableTasks.decrementAndGet();
+            }
+            throw e;
+        }
+    }
+
+    public <T> @NonNull Future<T> submit(@NonNull TaskPriority priority, @NonNull Callable<T> callable) {
+        FutureTask<T> future = new FutureTask<>(callable);
+        execute(priority, future);
+        return future;
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        Task task = (Task) runnable;
+
+        task.startNanos = System.nanoTime();
+        record(totalWaitNanos, maxWaitNanos, task.startNanos - task.queuedNanos);
+
+        running.put(thread, task);
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        Task task = (Task) runnable;
+
+        running.remove(Thread.currentThread());
+        record(totalRunNanos, maxRunNanos, System.nanoTime() - task.startNanos);
+        completed.incrementAndGet();
+
+        if (task.priority.canStall()) {
+            stallableTasks.decrementAndGet();
+        }
+    }
+
+    private static void record(@NonNull AtomicLong total, @NonNull AtomicLong max, long value) {
+        total.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Retry
+        }
+    }
+
+    /**
+     * @return True if a task that could be reported as stalled is queued or running.
+     */
+    boolean hasStallableTasks() {
+        return stallableTasks.get() > 0;
+    }
+
+    /**
+     * @return Tasks that have waited or run longer than their priority allows, and have not been
+     *         reported before.
+     */
+    @NonNull List<String> findStalls(long now) {
+        List<String> stalls = new ArrayList<>();
+
+        for (Map.Entry<Thread, Task> entry : running.entrySet()) {
+            Task task = entry.getValue();
+
+            if (!task.reported && now - task.startNanos > task.priority.getRunStallNanos()) {
+                task.reported = true;
+                stalls.add(String.format(Locale.US, "%s: %s task has been running for %d ms on %s\n%s",
+                                         name, task.priority, TimeUnit.NANOSECONDS.toMillis(now - task.startNanos),
+                                         entry.getKey().getName(), formatStackTrace(entry.getKey())));
+            }
+        }
+
+        for (Runnable runnable : getQueue()) {
+            Task task = (Task) runnable;
+
+            if (!task.reported && now - task.queuedNanos > task.priority.getWaitStallNanos()) {
+                task.reported = true;
+                stalls.add(String.format(Locale.US, "%s: %s task has been queued for %d ms (queue depth %d, %d/%d threads busy)",
+                                         name, task.priority, TimeUnit.NANOSECONDS.toMillis(now - task.queuedNanos),
+                                         getQueue().size(), getActiveCount(), getMaximumPoolSize()));
+            }
+        }
+
+        return stalls;
+    }
+
+    private static @NonNull String formatStackTrace(@NonNull Thread thread) {
+        StringBuilder builder = new StringBuilder();
+
+        for (StackTraceElement element : thread.getStackTrace()) {
+            builder.append("  at ").append(element).append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    public @NonNull Metrics getMetrics() {
+        return new Metrics(name,
+                           getQueue().size(),
+                           getActiveCount(),
+                           getPoolSize(),
+                           submitted.get(),
+                           completed.get(),
+                           totalWaitNanos.get(),
+                           maxWaitNanos.get(),
+                           totalRunNanos.get(),
+                           maxRunNanos.get());
+    }
+
+    public static final class Metrics {
+        private final String name;
+        private final int    queued;
+        private final int    active;
+        private final int    threads;
+        private final long   submitted;
+        private final long   completed;
+        private final long   totalWaitNanos;
+        private final long   maxWaitNanos;
+        private final long   totalRunNanos;
+        private final long   maxRunNanos;
+
+        private Metrics(@NonNull String name, int queued, int active, int threads, long submitted, long completed,
+                        long totalWaitNanos, long maxWaitNanos, long totalRunNanos, long maxRunNanos)
+        {
+            this.name           = name;
+            this.queued         = queued;
+            this.active         = active;
+            this.threads        = threads;
+            this.submitted      = submitted;
+            this.completed      = completed;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos   = maxWaitNanos;
+            this.totalRunNanos  = totalRunNanos;
+            this.maxRunNanos    = maxRunNanos;
+        }
+
+        public @NonNull String getName() {
+            return name;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getAverageWaitMs() {
+            return completed > 0 ? TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / completed) : 0;
+        }
+
+        public long getMaxWaitMs() {
+            return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+        }
+
+        public long getAverageRunMs() {
+            return completed > 0 ? TimeUnit.NANOSECONDS.toMillis(totalRunNanos / completed) : 0;
+        }
+
+        public long getMaxRunMs() {
+            return TimeUnit.NANOSECONDS.toMillis(maxRunNanos);
+        }
+
+        @Override
+        public @NonNull String toString() {
+            return String.format(Locale.US, "%s: queued %d, active %d/%d, submitted %d, completed %d, wait avg %d ms max %d ms, run avg %d ms max %d ms",
+                                 name, queued, active, threads, submitted, completed, getAverageWaitMs(), getMaxWaitMs(), getAverageRunMs(), getMaxRunMs());
+        }
+    }
+
+    /**
+     * Wraps every task so it carries its priority and when it was queued. Ordered by priority, then
+     * by submission, for executors with a priority queue.
+     */
+    static final class Task implements Runnable, Comparable<Task> {
+        private final Runnable     runnable;
+        private final TaskPriority priority;
+        private final long         sequence;
+        private final long         queuedNanos;
+
+        private volatile long    startNanos;
+        private volatile boolean reported;
+
+        private Task(@NonNull Runnable runnable, @NonNull TaskPriority priority, long sequence, long queuedNanos) {
+            this.runnable    = runnable;
+            this.priority    = priority;
+            this.sequence    = sequence;
+            this.queuedNanos = queuedNanos;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        @Override
+        public int compareTo(@NonNull Task other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -4,30 +4,102 @@ import android.os.HandlerThread;
 
 import androidx.annotation.NonNull;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import su.sres.core.util.LinkedBlockingLifoQueue;
-
+import su.sres.core.util.logging.Log;
+
+/**
+ * The app's shared thread pools, and factories for the executors of individual subsystems.
+ *
+ * Every pool made here is an {@link InstrumentedExecutor}, so its queueing delay and run times show
+ * up in debug logs and stalls are reported by {@link ExecutorMonitor}. Work can be given a
+ * {@link TaskPriority}, and the prioritized pools run UI-blocking work ahead of anything queued.
+ */
 public final class SignalExecutors {
 
-    public static final ExecutorService UNBOUNDED = Executors.newCachedThreadPool(new NumberedThreadFactory("signal-unbounded"));
-    public static final ExecutorService BOUNDED   = Executors.newFixedThreadPool(getIdealThreadCount(), new NumberedThreadFactory("signal-bounded"));
-    public static final ExecutorService SERIAL    = Executors.newSingleThreadExecutor(new NumberedThreadFactory("signal-serial"));
+    private static final String TAG = Log.tag(SignalExecutors.class);
+
+    public static final ExecutorService      UNBOUNDED = newThreadPerTaskExecutor("signal-unbounded");
+    public static final InstrumentedExecutor BOUNDED   = newPrioritizedExecutor("signal-bounded", getIdealThreadCount());
+    public static final InstrumentedExecutor SERIAL    = newPrioritizedExecutor("signal-serial", 1);
 
     private SignalExecutors() {}
 
-    public static ExecutorService newCachedSingleThreadExecutor(final String name) {
-        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 15, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> new Thread(r, name));
+    public static InstrumentedExecutor newCachedSingleThreadExecutor(final String name) {
+        return newCachedSingleThreadExecutor(name, TaskPriority.USER_VISIBLE);
+    }
+
+    /**
+     * @param priority The priority of the executor's tasks. {@link TaskPriority#BACKGROUND} executors
+     *                 run on low priority threads and are never reported as stalled.
+     */
+    public static InstrumentedExecutor newCachedSingleThreadExecutor(final String name, @NonNull TaskPriority priority) {
+        InstrumentedExecutor executor = newInstrumentedExecutor(name, priority, 1, 1, 15, new LinkedBlockingQueue<>(), new NamedThreadFactory(name, priority));
         executor.allowCoreThreadTimeOut(true);
         return executor;
     }
 
+    /**
+     * Returns a fixed size executor that runs queued tasks in {@link TaskPriority} order, and in
+     * submission order within each priority.
+     */
+    public static InstrumentedExecutor newPrioritizedExecutor(@NonNull String name, int threads) {
+        return newInstrumentedExecutor(name, TaskPriority.USER_VISIBLE, threads, threads, 0, new PriorityBlockingQueue<>(), new NumberedThreadFactory(name, TaskPriority.USER_VISIBLE));
+    }
+
+    /**
+     * Returns an executor that runs every task on its own thread straight away, for work that mostly
+     * blocks. Uses virtual threads where the runtime has them. Android's does not, so there it is a
+     * cached pool of platform threads.
+     *
+     * Tasks here may block for as long as an upload or a backup takes, so they are
+     * {@link TaskPriority#BACKGROUND} and never reported as stalls, but keep normal thread priority.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(@NonNull String name) {
+        ExecutorService virtualThreadExecutor = newVirtualThreadPerTaskExecutor();
+
+        if (virtualThreadExecutor != null) {
+            return virtualThreadExecutor;
+        }
+
+        return newInstrumentedExecutor(name, TaskPriority.BACKGROUND, 0, Integer.MAX_VALUE, 60, new SynchronousQueue<>(), new NumberedThreadFactory(name, TaskPriority.USER_VISIBLE));
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Log.w(TAG, "Virtual threads are present but unusable.", e);
+            return null;
+        }
+    }
+
+    private static InstrumentedExecutor newInstrumentedExecutor(@NonNull String name,
+                                                                @NonNull TaskPriority priority,
+                                                                int minThreads,
+                                                                int maxThreads,
+                                                                long keepAliveSeconds,
+                                                                @NonNull BlockingQueue<Runnable> queue,
+                                                                @NonNull ThreadFactory threadFactory)
+    {
+        InstrumentedExecutor executor = new InstrumentedExecutor(name, priority, minThreads, maxThreads, keepAliveSeconds, TimeUnit.SECONDS, queue, threadFactory);
+        ExecutorMonitor.register(executor);
+        return executor;
+    }
+
     /**
      * ThreadPoolExecutor will only create a new thread if the provided queue returns false from
      * offer(). That means if you give it an unbounded queue, it'll only ever create 1 thread, no
@@ -39,11 +111,12 @@ public final class SignalExecutors {
      * So we make a queue that will always return false if it's non-empty to ensure new threads get
      * created. Then, if a task gets rejected, we simply add it to the queue.
      */
-    public static ExecutorService newCachedBoundedExecutor(final String name, int minThreads, int maxThreads) {
-        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(minThreads,
+    public static InstrumentedExecutor newCachedBoundedExecutor(final String name, int minThreads, int maxThreads) {
+        InstrumentedExecutor threadPool = newInstrumentedExecutor(name,
+                TaskPriority.USER_VISIBLE,
+                minThreads,
                 maxThreads,
                 30,
-                TimeUnit.SECONDS,
                 new LinkedBlockingQueue<Runnable>() {
                     @Override
                     public boolean offer(Runnable runnable) {
@@ -53,7 +126,7 @@ public final class SignalExecutors {
                             return false;
                         }
                     }
-                }, new NumberedThreadFactory(name));
+                }, new NumberedThreadFactory(name, TaskPriority.USER_VISIBLE));
 
         threadPool.setRejectedExecutionHandler((runnable, executor) -> {
             try {
@@ -70,8 +143,8 @@ public final class SignalExecutors {
      * Returns an executor that prioritizes newer work. This is the opposite of a traditional executor,
      * which processor work in FIFO order.
      */
-    public static ExecutorService newFixedLifoThreadExecutor(String name, int minThreads, int maxThreads) {
-        return new ThreadPoolExecutor(minThreads, maxThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingLifoQueue<>(), new NumberedThreadFactory(name));
+    public static InstrumentedExecutor newFixedLifoThreadExecutor(String name, int minThreads, int maxThreads) {
+        return newInstrumentedExecutor(name, TaskPriority.USER_VISIBLE, minThreads, maxThreads, 0, new LinkedBlockingLifoQueue<>(), new NumberedThreadFactory(name, TaskPriority.USER_VISIBLE));
     }
 
     public static HandlerThread getAndStartHandlerThread(@NonNull String name) {
@@ -90,16 +163,41 @@ public final class SignalExecutors {
     private static class NumberedThreadFactory implements ThreadFactory {
 
         private final String        baseName;
+        private final TaskPriority  priority;
         private final AtomicInteger counter;
 
-        NumberedThreadFactory(@NonNull String baseName) {
+        NumberedThreadFactory(@NonNull String baseName, @NonNull TaskPriority priority) {
             this.baseName = baseName;
+            this.priority = priority;
             this.counter  = new AtomicInteger();
         }
 
         @Override
         public Thread newThread(@NonNull Runnable r) {
-            return new Thread(r, baseName + "-" + counter.getAndIncrement());
+            return withPriority(new Thread(r, baseName + "-" + counter.getAndIncrement()), priority);
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String       name;
+        private final TaskPriority priority;
+
+        NamedThreadFactory(@NonNull String name, @NonNull TaskPriority priority) {
+            this.name     = name;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            return withPriority(new Thread(r, name), priority);
+        }
+    }
+
+    private static @NonNull Thread withPriority(@NonNull Thread thread, @NonNull TaskPriority priority) {
+        if (priority == TaskPriority.BACKGROUND) {
+            thread.setPriority(Thread.MIN_PRIORITY);
         }
+        return thread;
     }
 }
\ No newline at end of file
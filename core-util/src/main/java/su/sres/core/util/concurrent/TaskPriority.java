@@ -0,0 +1,39 @@
+package su.sres.core.util.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How urgently a task submitted to a {@link SignalExecutors} executor is needed. Queued tasks run in
+ * this order, and each class has its own idea of how long waiting or running is a stall.
+ */
+public enum TaskPriority {
+
+    /** Something on screen is waiting on the result, such as a screen's first load. */
+    UI_BLOCKING(TimeUnit.MILLISECONDS.toNanos(250), TimeUnit.SECONDS.toNanos(2)),
+
+    /** The user will see the result, but nothing is blocked on it. The default. */
+    USER_VISIBLE(TimeUnit.SECONDS.toNanos(2), TimeUnit.SECONDS.toNanos(10)),
+
+    /** Nobody is waiting. Never reported as a stall, and run on low priority threads by executors of this class. */
+    BACKGROUND(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long waitStallNanos;
+    private final long runStallNanos;
+
+    TaskPriority(long waitStallNanos, long runStallNanos) {
+        this.waitStallNanos = waitStallNanos;
+        this.runStallNanos  = runStallNanos;
+    }
+
+    long getWaitStallNanos() {
+        return waitStallNanos;
+    }
+
+    long getRunStallNanos() {
+        return runStallNanos;
+    }
+
+    boolean canStall() {
+        return this != BACKGROUND;
+    }
+}
@@ -9,6 +9,9 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
+import su.sres.core.util.concurrent.SignalExecutors;
+import su.sres.core.util.concurrent.TaskPriority;
+
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -21,7 +24,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
 
 @SuppressLint("LogNotShadow")
@@ -56,11 +58,7 @@ public final class PersistentLogger extends Log.Logger {
     this.secret             = secret;
     this.logTag             = logTag;
     this.cachedThreadString = new ThreadLocal<>();
-    this.executor           = Executors.newSingleThreadExecutor(r -> {
-      Thread thread = new Thread(r, "shadow-PersistentLogger");
-      thread.setPriority(Thread.MIN_PRIORITY);
-      return thread;
-    });
+    this.executor           = SignalExecutors.newCachedSingleThreadExecutor("shadow-PersistentLogger", TaskPriority.BACKGROUND);
 
     executor.execute(this::initializeWriter);
   }
@@ -0,0 +1,244 @@
+package su.sres.core.util.tracing;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The events recorded by a single thread, kept in preallocated primitive arrays that are used as a
+ * ring buffer once they can grow no further. They start small and double as needed, drawing the
+ * extra room from a {@link Budget} shared by every thread, so that threads which rarely trace never
+ * hold a large buffer and the total stays bounded however many threads there are.
+ *
+ * Only the owning thread writes. Other threads may take a {@link Snapshot} at any time without
+ * locking: the owner bumps {@link #claimed} before filling a slot and {@link #written} after, and a
+ * snapshot drops any event whose slot was claimed again while it was being copied.
+ */
+final class TraceBuffer {
+
+    static final byte TYPE_BEGIN = 1;
+    static final byte TYPE_END   = 2;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final WeakReference<Thread> thread;
+    private final long                  threadId;
+    private final String                threadName;
+
+    private volatile Storage storage;
+    private volatile long    claimed;
+    private volatile long    written;
+
+    /** Sampling state, only touched by the owning thread. */
+    int     depth;
+    int     roots;
+    boolean sampled;
+    int     generation;
+
+    /**
+     * Every buffer starts with a little room even when the budget is spent, so that a thread started
+     * late still shows up in the trace.
+     */
+    TraceBuffer(@NonNull Thread thread, @NonNull Budget budget) {
+        this.thread     = new WeakReference<>(thread);
+        this.threadId   = thread.getId();
+        this.threadName = thread.getName();
+        this.storage    = new Storage(budget.claim(Math.max(1, Math.min(INITIAL_CAPACITY, budget.getMax()))));
+    }
+
+    long getThreadId() {
+        return threadId;
+    }
+
+    @NonNull String getThreadName() {
+        Thread current = thread.get();
+        return current != null ? current.getName() : threadName;
+    }
+
+    boolean isAlive() {
+        Thread current = thread.get();
+        return current != null && current.isAlive();
+    }
+
+    int getCapacity() {
+        return storage.capacity;
+    }
+
+    /**
+     * Records an event. Must only be called from the owning thread.
+     *
+     * @param argKey Either the key of a single annotation, with its value in argValue, or a map of them.
+     */
+    void add(long time, long trackId, int nameId, byte type, @Nullable Object argKey, @Nullable String argValue, @NonNull Budget budget) {
+        long    index   = written;
+        Storage current = storage;
+
+        if (index == current.capacity) {
+            int extra = budget.reserve(current.capacity);
+
+            if (extra > 0) {
+                current = current.grow(current.capacity + extra);
+                storage = current;
+            }
+        }
+
+        int slot = (int) (index % current.capacity);
+
+        claimed = index + 1;
+
+        current.times[slot]     = time;
+        current.tracks[slot]    = trackId;
+        current.names[slot]     = nameId;
+        current.types[slot]     = type;
+        current.argKeys[slot]   = argKey;
+        current.argValues[slot] = argValue;
+
+        written = index + 1;
+    }
+
+    /**
+     * @return A copy of the events recorded at or after the given time, oldest first.
+     */
+    @NonNull Snapshot snapshot(long since) {
+        long    end     = written;
+        Storage current = storage;
+        long    start   = Math.max(0, end - current.capacity);
+        int     count   = (int) (end - start);
+
+        Snapshot snapshot = new Snapshot(count);
+
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((start + i) % current.capacity);
+
+            snapshot.times[i]     = current.times[slot];
+            snapshot.tracks[i]    = current.tracks[slot];
+            snapshot.names[i]     = current.names[slot];
+            snapshot.types[i]     = current.types[slot];
+            snapshot.argKeys[i]   = current.argKeys[slot];
+            snapshot.argValues[i] = current.argValues[slot];
+        }
+
+        // The owner may have lapped us while we copied. If it grew instead, it stopped writing to the
+        // storage we copied from.
+        long firstValid = storage == current ? Math.max(start, claimed - current.capacity) : start;
+
+        snapshot.offset = (int) Math.min(count, Math.max(0, firstValid - start));
+
+        while (snapshot.offset < count && snapshot.times[snapshot.offset] < since) {
+            snapshot.offset++;
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * The most events kept by all buffers together. Buffers that have already grown keep their room
+     * when the maximum is lowered, and give it back when they are dropped.
+     */
+    static final class Budget {
+        private final AtomicInteger reserved = new AtomicInteger();
+
+        private volatile int max;
+
+        Budget(int max) {
+            this.max = max;
+        }
+
+        int getMax() {
+            return max;
+        }
+
+        void setMax(int max) {
+            this.max = max;
+        }
+
+        /**
+         * @return As many of the requested events as there is still room for, which may be none.
+         */
+        int reserve(int count) {
+            while (true) {
+                int current = reserved.get();
+                int granted = Math.max(0, Math.min(count, max - current));
+
+                if (granted == 0 || reserved.compareAndSet(current, current + granted)) {
+                    return granted;
+                }
+            }
+        }
+
+        /**
+         * Takes the room whether or not there is any left.
+         */
+        int claim(int count) {
+            reserved.addAndGet(count);
+            return count;
+        }
+
+        void release(int count) {
+            reserved.addAndGet(-count);
+        }
+    }
+
+    static final class Snapshot {
+        final long[]   times;
+        final long[]   tracks;
+        final int[]    names;
+        final byte[]   types;
+        final Object[] argKeys;
+        final String[] argValues;
+
+        /** The index of the first valid event. */
+        int offset;
+
+        private Snapshot(int count) {
+            this.times     = new long[count];
+            this.tracks    = new long[count];
+            this.names     = new int[count];
+            this.types     = new byte[count];
+            this.argKeys   = new Object[count];
+            this.argValues = new String[count];
+        }
+
+        int size() {
+            return times.length;
+        }
+    }
+
+    private static final class Storage {
+        final int      capacity;
+        final long[]   times;
+        final long[]   tracks;
+        final int[]    names;
+        final byte[]   types;
+        final Object[] argKeys;
+        final String[] argValues;
+
+        Storage(int capacity) {
+            this.capacity  = capacity;
+            this.times     = new long[capacity];
+            this.tracks    = new long[capacity];
+            this.names     = new int[capacity];
+            this.types     = new byte[capacity];
+            this.argKeys   = new Object[capacity];
+            this.argValues = new String[capacity];
+        }
+
+        /**
+         * Only called before the buffer first wraps, so every slot is still at its own index.
+         */
+        @NonNull Storage grow(int newCapacity) {
+            Storage grown = new Storage(newCapacity);
+
+            System.arraycopy(times, 0, grown.times, 0, capacity);
+            System.arraycopy(tracks, 0, grown.tracks, 0, capacity);
+            System.arraycopy(names, 0, grown.names, 0, capacity);
+            System.arraycopy(types, 0, grown.types, 0, capacity);
+            System.arraycopy(argKeys, 0, grown.argKeys, 0, capacity);
+            System.arraycopy(argValues, 0, grown.argValues, 0, capacity);
+
+            return grown;
+        }
+    }
+}
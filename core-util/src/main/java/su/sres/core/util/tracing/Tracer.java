@@ -3,27 +3,30 @@ package su.sres.core.util.tracing;
 import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 
-import su.sres.core.util.tracing.TraceProtos.Trace;
 import su.sres.core.util.tracing.TraceProtos.TracePacket;
 import su.sres.core.util.tracing.TraceProtos.TrackDescriptor;
 import su.sres.core.util.tracing.TraceProtos.TrackEvent;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * A class to create Perfetto-compatible traces. Currently keeps the entire trace in memory to
- * avoid weirdness with synchronizing to disk.
+ * A class to create Perfetto-compatible traces, cheap enough to leave on in production.
  *
  * Some general info on how the Perfetto format works:
  * - The file format is just a Trace proto (see Trace.proto)
@@ -34,17 +37,17 @@ import java.util.concurrent.atomic.AtomicInteger;
  *   - End of a method
  *   - (And a bunch of other stuff that's not relevant to use at this point)
  *
- * We keep a circular buffer of TracePackets for method calls, and we keep a separate list of
- * TracePackets for threads so we don't lose any of those.
+ * Recording an event allocates nothing. Each thread writes into its own {@link TraceBuffer} of
+ * primitive arrays, which is a ring buffer once the buffers of all threads together hold
+ * {@link #setMaxBufferSize(long)} events, and method names are interned to ints. No protos exist until the trace is serialized, at which
+ * point the packets are built one at a time and streamed out, so a whole trace is never in memory.
  *
- * Serializing is just a matter of throwing all the TracePackets we have into a proto.
+ * Each thread's events are written as their own packet sequence, as they are already in order.
  *
- * Note: This class aims to be largely-thread-safe, but prioritizes speed and memory efficiency
- * above all else. These methods are going to be called very quickly from every thread imaginable,
- * and we want to create as little overhead as possible. The idea being that it's ok if we don't,
- * for example, keep a perfect circular buffer size if it allows us to reduce overhead. The only
- * cost of screwing up would be dropping a trace packet or something, which, while sad, won't affect
- * how the app functions.
+ * Note: These methods are going to be called very quickly from every thread imaginable, and we want
+ * to create as little overhead as possible. Serializing reads the buffers without locking, and drops
+ * any event that might have been overwritten while it did so, which is the only cost of racing a
+ * busy thread.
  */
 public final class Tracer {
 
@@ -54,42 +57,77 @@ public final class Tracer {
         private static final String DB_LOCK_NAME = "Database Lock";
     }
 
-    private static final Tracer INSTANCE = new Tracer();
+    private static final Tracer INSTANCE = new Tracer(SystemClock::elapsedRealtimeNanos);
 
-    private static final int    TRUSTED_SEQUENCE_ID      = 1;
-    private static final byte[] SYNCHRONIZATION_MARKER   = toByteArray(UUID.fromString("82477a76-b28d-42ba-81dc-33326d57a079"));
-    private static final long   SYNCHRONIZATION_INTERVAL = TimeUnit.SECONDS.toNanos(3);
+    private static final byte[] SYNCHRONIZATION_MARKER = toByteArray(UUID.fromString("82477a76-b28d-42ba-81dc-33326d57a079"));
 
-    private final Clock                  clock;
-    private final Map<Long, TracePacket> threadPackets;
-    private final Queue<TracePacket> eventPackets;
-    private final AtomicInteger          eventCount;
+    private static final int TRACE_PACKET_FIELD = 1;
 
-    private long lastSyncTime;
-    private long maxBufferSize;
+    /** Names beyond this many share one, so that a caller building names dynamically can't grow the table forever. */
+    private static final int    MAX_NAMES      = 2048;
+    private static final int    OVERFLOW_NAME  = 0;
+    private static final String OVERFLOW_LABEL = "(other)";
 
-    private Tracer() {
-        this.clock         = SystemClock::elapsedRealtimeNanos;
-        this.threadPackets = new ConcurrentHashMap<>();
-        this.eventPackets  = new ConcurrentLinkedQueue<>();
-        this.eventCount    = new AtomicInteger(0);
-        this.maxBufferSize = 3_500;
+    /** Buffers of threads that have died are kept for their history, up to this many. */
+    private static final int MAX_DEAD_BUFFERS = 16;
+
+    private final Clock                    clock;
+    private final ThreadLocal<TraceBuffer> threadBuffer;
+    private final List<TraceBuffer>        buffers;
+    private final Map<String, Integer>     nameIds;
+    private final TraceBuffer.Budget       budget;
+
+    private volatile int     sampleRate;
+    private volatile boolean enabled;
+    private volatile int     generation;
+
+    @VisibleForTesting
+    Tracer(@NonNull Clock clock) {
+        this.clock         = clock;
+        this.threadBuffer  = new ThreadLocal<>();
+        this.buffers       = new ArrayList<>();
+        this.nameIds       = new ConcurrentHashMap<>();
+        this.budget        = new TraceBuffer.Budget(3_500);
+        this.sampleRate    = 1;
+        this.enabled       = true;
+
+        nameIds.put(OVERFLOW_LABEL, OVERFLOW_NAME);
     }
 
     public static @NonNull Tracer getInstance() {
         return INSTANCE;
     }
 
+    /**
+     * @param maxBufferSize The most events kept across all threads. Buffers only grow into this as
+     *                      they fill, though each thread gets a small buffer even once it is used up.
+     */
     public void setMaxBufferSize(long maxBufferSize) {
-        this.maxBufferSize = maxBufferSize;
+        budget.setMax((int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBufferSize)));
+    }
+
+    /**
+     * Only records one in every so many outermost slices on each thread, along with everything nested
+     * inside of them, so that sampled traces still have complete call stacks.
+     *
+     * @param sampleRate 1 to record everything.
+     */
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = Math.max(1, sampleRate);
+        this.generation++;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        this.generation++;
     }
 
     public void start(@NonNull String methodName) {
-        start(methodName, Thread.currentThread().getId(), null);
+        start(methodName, Thread.currentThread().getId(), null, null);
     }
 
     public void start(@NonNull String methodName, long trackId) {
-        start(methodName, trackId, null);
+        start(methodName, trackId, null, null);
     }
 
     public void start(@NonNull String methodName, @NonNull String key, @Nullable String value) {
@@ -97,7 +135,7 @@ public final class Tracer {
     }
 
     public void start(@NonNull String methodName, long trackId, @NonNull String key, @Nullable String value) {
-        start(methodName, trackId, Collections.singletonMap(key, value));
+        record(methodName, trackId, TraceBuffer.TYPE_BEGIN, key, value);
     }
 
     public void start(@NonNull String methodName, @Nullable Map<String, String> values) {
@@ -105,98 +143,212 @@ public final class Tracer {
     }
 
     public void start(@NonNull String methodName, long trackId, @Nullable Map<String, String> values) {
-        long time = clock.getTimeNanos();
+        record(methodName, trackId, TraceBuffer.TYPE_BEGIN, values, null);
+    }
+
+    public void end(@NonNull String methodName) {
+        record(methodName, Thread.currentThread().getId(), TraceBuffer.TYPE_END, null, null);
+    }
+
+    public void end(@NonNull String methodName, long trackId) {
+        record(methodName, trackId, TraceBuffer.TYPE_END, null, null);
+    }
 
-        if (time - lastSyncTime > SYNCHRONIZATION_INTERVAL) {
-            addPacket(forSynchronization(time));
-            lastSyncTime = time;
+    private void record(@NonNull String methodName, long trackId, byte type, @Nullable Object argKey, @Nullable String argValue) {
+        if (!enabled) {
+            return;
         }
 
-        if (!threadPackets.containsKey(trackId)) {
-            threadPackets.put(trackId, forTrackId(trackId));
+        long        time   = clock.getTimeNanos();
+        TraceBuffer buffer = getThreadBuffer();
+
+        if (buffer.generation != generation) {
+            buffer.generation = generation;
+            buffer.depth      = 0;
+            buffer.roots      = 0;
+        }
+
+        if (type == TraceBuffer.TYPE_BEGIN) {
+            if (buffer.depth == 0) {
+                buffer.sampled = buffer.roots++ % sampleRate == 0;
+            }
+            buffer.depth++;
+        } else if (buffer.depth > 0) {
+            buffer.depth--;
         }
 
-        addPacket(forMethodStart(methodName, time, trackId, values));
+        if (buffer.sampled) {
+            buffer.add(time, trackId, intern(methodName), type, argKey, argValue, budget);
+        }
     }
 
-    public void end(@NonNull String methodName) {
-        addPacket(forMethodEnd(methodName, clock.getTimeNanos(), Thread.currentThread().getId()));
+    private @NonNull TraceBuffer getThreadBuffer() {
+        TraceBuffer buffer = threadBuffer.get();
+
+        if (buffer == null) {
+            buffer = new TraceBuffer(Thread.currentThread(), budget);
+            buffer.generation = generation;
+            buffer.sampled    = true;
+
+            threadBuffer.set(buffer);
+
+            synchronized (buffers) {
+                pruneDeadBuffers();
+                buffers.add(buffer);
+            }
+        }
+
+        return buffer;
     }
 
-    public void end(@NonNull String methodName, long trackId) {
-        addPacket(forMethodEnd(methodName, clock.getTimeNanos(), trackId));
+    private void pruneDeadBuffers() {
+        int dead = 0;
+
+        for (TraceBuffer buffer : buffers) {
+            if (!buffer.isAlive()) dead++;
+        }
+
+        Iterator<TraceBuffer> iterator = buffers.iterator();
+
+        while (dead > MAX_DEAD_BUFFERS && iterator.hasNext()) {
+            TraceBuffer buffer = iterator.next();
+
+            if (!buffer.isAlive()) {
+                iterator.remove();
+                budget.release(buffer.getCapacity());
+                dead--;
+            }
+        }
     }
 
-    public @NonNull byte[] serialize() {
-        Trace.Builder trace = Trace.newBuilder();
+    private int intern(@NonNull String name) {
+        Integer id = nameIds.get(name);
 
-        for (TracePacket thread : threadPackets.values()) {
-            trace.addPacket(thread);
+        if (id != null) {
+            return id;
         }
 
-        for (TracePacket event : eventPackets) {
-            trace.addPacket(event);
+        synchronized (nameIds) {
+            id = nameIds.get(name);
+
+            if (id == null) {
+                id = nameIds.size() < MAX_NAMES ? nameIds.size() : OVERFLOW_NAME;
+
+                if (id != OVERFLOW_NAME) {
+                    nameIds.put(name, id);
+                }
+            }
+
+            return id;
         }
+    }
 
-        trace.addPacket(forSynchronization(clock.getTimeNanos()));
+    /**
+     * @return The whole trace. Prefer {@link #serialize(OutputStream, long)}, which doesn't hold it in memory.
+     */
+    public @NonNull byte[] serialize() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        try {
+            serialize(outputStream, Long.MAX_VALUE);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
 
-        return trace.build().toByteArray();
+        return outputStream.toByteArray();
     }
 
     /**
-     * Attempts to add a packet to our list while keeping the size of our circular buffer in-check.
-     * The tracking of the event count is not perfectly thread-safe, but doing it in a thread-safe
-     * way would likely involve adding a lock, which we really don't want to do, since it'll add
-     * unnecessary overhead.
-     *
-     * Note that we keep track of the event count separately because
-     * {@link ConcurrentLinkedQueue#size()} is NOT a constant-time operation.
+     * Writes a Perfetto trace of the events from the last windowMs to the stream, one packet at a time.
      */
-    private void addPacket(@NonNull TracePacket packet) {
-        eventPackets.add(packet);
+    public void serialize(@NonNull OutputStream outputStream, long windowMs) throws IOException {
+        long              now        = clock.getTimeNanos();
+        long              since      = now - TimeUnit.MILLISECONDS.toNanos(windowMs);
+        String[]          names      = getNames();
+        Map<Long, String> trackNames = new HashMap<>();
+        CodedOutputStream output     = CodedOutputStream.newInstance(outputStream);
+        List<TraceBuffer> threads;
+
+        synchronized (buffers) {
+            threads = new ArrayList<>(buffers);
+        }
+
+        List<TraceBuffer.Snapshot> snapshots = new ArrayList<>(threads.size());
+
+        for (TraceBuffer thread : threads) {
+            TraceBuffer.Snapshot snapshot = thread.snapshot(since);
+            snapshots.add(snapshot);
+
+            trackNames.put(thread.getThreadId(), thread.getThreadName());
+
+            for (int i = snapshot.offset; i < snapshot.size(); i++) {
+                long track = snapshot.tracks[i];
 
-        int size = eventCount.incrementAndGet();
+                if (!trackNames.containsKey(track)) {
+                    trackNames.put(track, track == TrackId.DB_LOCK ? TrackId.DB_LOCK_NAME : "Track " + track);
+                }
+            }
+        }
+
+        output.writeMessage(TRACE_PACKET_FIELD, forSynchronization(1, now));
+
+        for (Map.Entry<Long, String> track : trackNames.entrySet()) {
+            output.writeMessage(TRACE_PACKET_FIELD, forTrack(track.getKey(), track.getValue()));
+        }
 
-        for (int i = size; i > maxBufferSize; i--) {
-            eventPackets.poll();
-            eventCount.decrementAndGet();
+        for (int sequence = 0; sequence < snapshots.size(); sequence++) {
+            TraceBuffer.Snapshot snapshot = snapshots.get(sequence);
+
+            for (int i = snapshot.offset; i < snapshot.size(); i++) {
+                output.writeMessage(TRACE_PACKET_FIELD, forEvent(sequence + 1, snapshot, i, names));
+            }
         }
+
+        output.writeMessage(TRACE_PACKET_FIELD, forSynchronization(1, clock.getTimeNanos()));
+        output.flush();
     }
 
-    private TracePacket forTrackId(long id) {
-        if (id == TrackId.DB_LOCK) {
-            return forTrack(id, TrackId.DB_LOCK_NAME);
-        } else {
-            Thread currentThread = Thread.currentThread();
-            return forTrack(currentThread.getId(), currentThread.getName());
+    private @NonNull String[] getNames() {
+        String[] names = new String[MAX_NAMES];
+
+        for (Map.Entry<String, Integer> entry : nameIds.entrySet()) {
+            names[entry.getValue()] = entry.getKey();
         }
+
+        return names;
     }
 
     private static TracePacket forTrack(long id, String name) {
         return TracePacket.newBuilder()
-                .setTrustedPacketSequenceId(TRUSTED_SEQUENCE_ID)
+                .setTrustedPacketSequenceId(1)
                 .setTrackDescriptor(TrackDescriptor.newBuilder()
                         .setUuid(id)
                         .setName(name))
                 .build();
-
     }
 
-    private static TracePacket forMethodStart(@NonNull String name, long time, long threadId, @Nullable Map<String, String> values) {
+    @SuppressWarnings("unchecked")
+    private static TracePacket forEvent(int sequenceId, @NonNull TraceBuffer.Snapshot snapshot, int index, @NonNull String[] names) {
+        String name = names[snapshot.names[index]];
+
         TrackEvent.Builder event = TrackEvent.newBuilder()
-                .setTrackUuid(threadId)
-                .setName(name)
-                .setType(TrackEvent.Type.TYPE_SLICE_BEGIN);
+                .setTrackUuid(snapshot.tracks[index])
+                .setName(name != null ? name : OVERFLOW_LABEL)
+                .setType(snapshot.types[index] == TraceBuffer.TYPE_BEGIN ? TrackEvent.Type.TYPE_SLICE_BEGIN : TrackEvent.Type.TYPE_SLICE_END);
+
+        Object argKey = snapshot.argKeys[index];
 
-        if (values != null) {
-            for (Map.Entry<String, String> entry : values.entrySet()) {
+        if (argKey instanceof String) {
+            event.addDebugAnnotations(debugAnnotation((String) argKey, snapshot.argValues[index]));
+        } else if (argKey instanceof Map) {
+            for (Map.Entry<String, String> entry : ((Map<String, String>) argKey).entrySet()) {
                 event.addDebugAnnotations(debugAnnotation(entry.getKey(), entry.getValue()));
             }
         }
 
         return TracePacket.newBuilder()
-                .setTrustedPacketSequenceId(TRUSTED_SEQUENCE_ID)
-                .setTimestamp(time)
+                .setTrustedPacketSequenceId(sequenceId)
+                .setTimestamp(snapshot.times[index])
                 .setTrackEvent(event)
                 .build();
     }
@@ -208,20 +360,9 @@ public final class Tracer {
                 .build();
     }
 
-    private static TracePacket forMethodEnd(@NonNull String name, long time, long threadId) {
-        return TracePacket.newBuilder()
-                .setTrustedPacketSequenceId(TRUSTED_SEQUENCE_ID)
-                .setTimestamp(time)
-                .setTrackEvent(TrackEvent.newBuilder()
-                        .setTrackUuid(threadId)
-                        .setName(name)
-                        .setType(TrackEvent.Type.TYPE_SLICE_END))
-                .build();
-    }
-
-    private static TracePacket forSynchronization(long time) {
+    private static TracePacket forSynchronization(int sequenceId, long time) {
         return TracePacket.newBuilder()
-                .setTrustedPacketSequenceId(TRUSTED_SEQUENCE_ID)
+                .setTrustedPacketSequenceId(sequenceId)
                 .setTimestamp(time)
                 .setSynchronizationMarker(ByteString.copyFrom(SYNCHRONIZATION_MARKER))
                 .build();
@@ -235,7 +376,8 @@ public final class Tracer {
         return buffer.array();
     }
 
-    private interface Clock {
+    @VisibleForTesting
+    interface Clock {
         long getTimeNanos();
     }
 }
@@ -0,0 +1,144 @@
+package su.sres.core.util.concurrent;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class InstrumentedExecutorTest {
+
+    private final InstrumentedExecutor executor = new InstrumentedExecutor("test",
+                                                                           TaskPriority.USER_VISIBLE,
+                                                                           1,
+                                                                           1,
+                                                                           0,
+                                                                           TimeUnit.SECONDS,
+                                                                           new PriorityBlockingQueue<>(),
+                                                                           r -> new Thread(r, "test-thread"));
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void execute_runsQueuedTasksByPriorityThenInOrder() throws Exception {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done    = new CountDownLatch(5);
+        List<String>   order   = Collections.synchronizedList(new ArrayList<>());
+
+        executor.execute(() -> await(blocker));
+
+        executor.execute(TaskPriority.BACKGROUND, () -> { order.add("background"); done.countDown(); });
+        executor.execute(() -> { order.add("visible-1"); done.countDown(); });
+        executor.execute(TaskPriority.UI_BLOCKING, () -> { order.add("blocking-1"); done.countDown(); });
+        executor.execute(() -> { order.add("visible-2"); done.countDown(); });
+        executor.execute(TaskPriority.UI_BLOCKING, () -> { order.add("blocking-2"); done.countDown(); });
+
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("blocking-1", "blocking-2", "visible-1", "visible-2", "background"), order);
+    }
+
+    @Test
+    public void submit_returnsResultAndCountsCompletion() throws Exception {
+        assertEquals(Integer.valueOf(42), executor.submit(() -> 42).get(5, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(7), executor.submit(TaskPriority.UI_BLOCKING, () -> 7).get(5, TimeUnit.SECONDS));
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(2, executor.getMetrics().getCompleted());
+    }
+
+    @Test
+    public void findStalls_reportsLongRunningTaskOnce() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        executor.execute(TaskPriority.UI_BLOCKING, () -> {
+            started.countDown();
+            await(blocker);
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        long now = System.nanoTime();
+
+        assertTrue(executor.findStalls(now).isEmpty());
+
+        long later = now + TimeUnit.SECONDS.toNanos(5);
+
+        List<String> stalls = executor.findStalls(later);
+        assertEquals(1, stalls.size());
+        assertTrue(stalls.get(0).contains("running"));
+
+        assertTrue(executor.findStalls(later).isEmpty());
+
+        blocker.countDown();
+    }
+
+    @Test
+    public void findStalls_reportsQueuedTask_butNeverBackground() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        executor.execute(TaskPriority.BACKGROUND, () -> {
+            started.countDown();
+            await(blocker);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        executor.execute(TaskPriority.BACKGROUND, () -> {});
+        executor.execute(() -> {});
+
+        List<String> stalls = executor.findStalls(System.nanoTime() + TimeUnit.MINUTES.toNanos(10));
+
+        assertEquals(1, stalls.size());
+        assertTrue(stalls.get(0).contains("USER_VISIBLE task has been queued"));
+
+        blocker.countDown();
+    }
+
+    @Test
+    public void hasStallableTasks_tracksQueuedAndRunning_butNeverBackground() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        executor.execute(TaskPriority.BACKGROUND, () -> {
+            started.countDown();
+            await(blocker);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertFalse(executor.hasStallableTasks());
+
+        executor.execute(() -> {});
+        assertTrue(executor.hasStallableTasks());
+
+        blocker.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertFalse(executor.hasStallableTasks());
+    }
+
+        private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package su.sres.core.util.tracing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class TraceBufferTest {
+
+    @Test
+    public void snapshot_keepsEventsInOrder() {
+        TraceBuffer.Budget budget = new TraceBuffer.Budget(100);
+        TraceBuffer        buffer = new TraceBuffer(Thread.currentThread(), budget);
+
+        for (int i = 0; i < 10; i++) {
+            buffer.add(i, 1, i, TraceBuffer.TYPE_BEGIN, null, null, budget);
+        }
+
+        TraceBuffer.Snapshot snapshot = buffer.snapshot(0);
+
+        assertEquals(0, snapshot.offset);
+        assertEquals(10, snapshot.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, snapshot.times[i]);
+            assertEquals(i, snapshot.names[i]);
+        }
+    }
+
+    @Test
+    public void snapshot_afterGrowing_keepsEarlierEvents() {
+        TraceBuffer.Budget budget = new TraceBuffer.Budget(1000);
+        TraceBuffer        buffer = new TraceBuffer(Thread.currentThread(), budget);
+
+        for (int i = 0; i < 500; i++) {
+            buffer.add(i, 1, i, TraceBuffer.TYPE_BEGIN, "key", "value" + i, budget);
+        }
+
+        TraceBuffer.Snapshot snapshot = buffer.snapshot(0);
+
+        assertEquals(500, snapshot.size() - snapshot.offset);
+        assertEquals(0, snapshot.times[snapshot.offset]);
+        assertEquals("value499", snapshot.argValues[snapshot.size() - 1]);
+    }
+
+    @Test
+    public void snapshot_whenFull_keepsMostRecentEvents() {
+        TraceBuffer.Budget budget = new TraceBuffer.Budget(100);
+        TraceBuffer        buffer = new TraceBuffer(Thread.currentThread(), budget);
+
+        for (int i = 0; i < 250; i++) {
+            buffer.add(i, 1, i, i % 2 == 0 ? TraceBuffer.TYPE_BEGIN : TraceBuffer.TYPE_END, null, null, budget);
+        }
+
+        TraceBuffer.Snapshot snapshot = buffer.snapshot(0);
+
+        assertEquals(100, snapshot.size() - snapshot.offset);
+        assertEquals(150, snapshot.times[snapshot.offset]);
+        assertEquals(249, snapshot.times[snapshot.size() - 1]);
+        assertEquals(TraceBuffer.TYPE_END, snapshot.types[snapshot.size() - 1]);
+        assertNull(snapshot.argKeys[snapshot.size() - 1]);
+    }
+
+    @Test
+    public void add_whenBudgetSpentByAnotherBuffer_keepsMostRecentEvents() {
+        TraceBuffer.Budget budget = new TraceBuffer.Budget(200);
+        TraceBuffer        first  = new TraceBuffer(Thread.currentThread(), budget);
+        TraceBuffer        second = new TraceBuffer(Thread.currentThread(), budget);
+
+        for (int i = 0; i < 500; i++) {
+            first.add(i, 1, i, TraceBuffer.TYPE_BEGIN, null, null, budget);
+        }
+
+        for (int i = 0; i < 500; i++) {
+            second.add(i, 1, i, TraceBuffer.TYPE_BEGIN, null, null, budget);
+        }
+
+        assertEquals(136, first.getCapacity());
+        assertEquals(64, second.getCapacity());
+
+        TraceBuffer.Snapshot snapshot = second.snapshot(0);
+
+        assertEquals(64, snapshot.size() - snapshot.offset);
+        assertEquals(436, snapshot.times[snapshot.offset]);
+    }
+
+    @Test
+    public void budget_afterRelease_letsBuffersGrowAgain() {
+        TraceBuffer.Budget budget = new TraceBuffer.Budget(100);
+        TraceBuffer        buffer = new TraceBuffer(Thread.currentThread(), budget);
+
+        assertEquals(36, budget.reserve(1000));
+        assertEquals(0, budget.reserve(1));
+
+        budget.release(buffer.getCapacity());
+
+        assertEquals(64, budget.reserve(1000));
+    }
+
+    @Test
+    public void snapshot_since_skipsOlderEvents() {
+        TraceBuffer.Budget budget = new TraceBuffer.Budget(100);
+        TraceBuffer        buffer = new TraceBuffer(Thread.currentThread(), budget);
+
+        for (int i = 0; i < 50; i++) {
+            buffer.add(i * 10, 1, 0, TraceBuffer.TYPE_BEGIN, null, null, budget);
+        }
+
+        TraceBuffer.Snapshot snapshot = buffer.snapshot(205);
+
+        assertEquals(29, snapshot.size() - snapshot.offset);
+        assertEquals(210, snapshot.times[snapshot.offset]);
+    }
+
+    @Test
+    public void snapshot_whileWriting_neverReturnsOverwrittenEvents() throws InterruptedException {
+        TraceBuffer.Budget budget = new TraceBuffer.Budget(64);
+
+        TraceBuffer[] holder = new TraceBuffer[1];
+        Thread writer = new Thread(() -> {
+            holder[0] = new TraceBuffer(Thread.currentThread(), budget);
+            synchronized (holder) {
+                holder.notifyAll();
+            }
+            for (int i = 0; i < 2_000_000; i++) {
+                holder[0].add(i, 1, i, TraceBuffer.TYPE_BEGIN, null, null, budget);
+            }
+        });
+
+        synchronized (holder) {
+            writer.start();
+            while (holder[0] == null) {
+                holder.wait();
+            }
+        }
+
+        while (writer.isAlive()) {
+            TraceBuffer.Snapshot snapshot = holder[0].snapshot(0);
+
+            for (int i = snapshot.offset; i < snapshot.size(); i++) {
+                assertEquals(snapshot.times[i], snapshot.names[i]);
+                if (i > snapshot.offset) {
+                    assertEquals(snapshot.times[i - 1] + 1, snapshot.times[i]);
+                }
+            }
+        }
+    }
+}
@@ -14,12 +14,28 @@ import java.io.Serializable;
  */
 public interface ClientTask extends Serializable {
 
+    /** The server only confirmed verification, as versions before multiple streams do. */
+    int SERVER_VERSION_LEGACY       = 1;
+
+    /** The server can receive over multiple streams, and is at least as new as this version. */
+    int SERVER_VERSION_MULTI_STREAM = 2;
+
     /**
      * @param context      Android context, mostly like the foreground transfer service
      * @param outputStream Output stream associated with socket connected to remote server.
      */
     void run(@NonNull Context context, @NonNull OutputStream outputStream) throws IOException;
 
+    /**
+     * Same as {@link #run(Context, OutputStream)}, for tasks that can send a format older servers
+     * would not understand.
+     *
+     * @param serverVersion Either {@link #SERVER_VERSION_LEGACY} or {@link #SERVER_VERSION_MULTI_STREAM}
+     */
+    default void run(@NonNull Context context, @NonNull OutputStream outputStream, int serverVersion) throws IOException {
+        run(context, outputStream);
+    }
+
     /**
      * Called after the output stream has been successfully flushed and closed.
      */
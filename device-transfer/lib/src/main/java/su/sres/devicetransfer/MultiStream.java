@@ -0,0 +1,56 @@
+package su.sres.devicetransfer;
+
+import androidx.annotation.NonNull;
+
+import java.security.SecureRandom;
+
+/**
+ * Constants and helpers for carrying one transfer over several TLS connections.
+ * <p>
+ * A single TLS connection is bound by one core encrypting and decrypting its records, which on
+ * older devices is slower than a Wi-Fi Direct link. Once the first connection has been verified,
+ * the server hands the client a random token over it, and the client opens further connections
+ * to the same server, checking that each presents the verified certificate and proving with the
+ * token that it is the verified client. The stream is then split into chunks sent round-robin
+ * across the connections by {@link MultiStreamOutputStream}, and put back in order by
+ * {@link MultiStreamInputStream}.
+ * <p>
+ * Both sides say whether they support this with the byte they send to confirm verification, which
+ * older versions send but never check, so an older device on either end gets a single connection.
+ */
+final class MultiStream {
+
+    /** Sent to confirm verification by versions that only use one connection. */
+    static final int VERIFIED_SINGLE = 0x43;
+
+    /** Sent to confirm verification by versions that can use several connections. */
+    static final int VERIFIED_MULTI = 0x4D;
+
+    static final int TOKEN_LENGTH = 32;
+
+    /** The most bytes sent in one chunk. Several TLS records' worth, so framing costs little. */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /** Chunks buffered per connection, which bounds memory while letting connections run unevenly. */
+    static final int QUEUE_DEPTH = 4;
+
+    /** How long the server waits for each additional connection. */
+    static final int CONNECT_TIMEOUT_MS = 10_000;
+
+    private static final int MAX_STREAMS = 4;
+
+    private MultiStream() { }
+
+    /**
+     * @return How many connections to use, so that each can have a core to itself.
+     */
+    static int getStreamCount() {
+        return Math.max(1, Math.min(MAX_STREAMS, Runtime.getRuntime().availableProcessors()));
+    }
+
+    static @NonNull byte[] generateToken() {
+        byte[] token = new byte[TOKEN_LENGTH];
+        new SecureRandom().nextBytes(token);
+        return token;
+    }
+}
@@ -0,0 +1,147 @@
+package su.sres.devicetransfer;
+
+import androidx.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads what a {@link MultiStreamOutputStream} sent, taking chunks from each stream in the same
+ * round-robin order they were sent in. Each stream is read by its own thread, a few chunks ahead,
+ * so that the connections decrypt in parallel.
+ */
+final class MultiStreamInputStream extends InputStream {
+
+    private final List<Reader> readers;
+
+    private byte[]  chunk;
+    private int     position;
+    private long    chunks;
+    private boolean ended;
+
+    MultiStreamInputStream(@NonNull List<InputStream> inputs) {
+        this.readers = new ArrayList<>(inputs.size());
+
+        for (int i = 0; i < inputs.size(); i++) {
+            Reader reader = new Reader(inputs.get(i), i);
+            reader.start();
+            readers.add(reader);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int    read   = read(single, 0, 1);
+
+        return read == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (chunk == null || position == chunk.length) {
+            if (ended) {
+                return -1;
+            }
+
+            chunk    = readers.get((int) (chunks % readers.size())).take();
+            position = 0;
+            chunks++;
+
+            if (chunk == Reader.END) {
+                ended = true;
+                return -1;
+            }
+        }
+
+        int count = Math.min(len, chunk.length - position);
+
+        System.arraycopy(chunk, position, b, off, count);
+        position += count;
+
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return chunk != null ? chunk.length - position : 0;
+    }
+
+    @Override
+    public void close() {
+        for (Reader reader : readers) {
+            reader.interrupt();
+        }
+    }
+
+    private static final class Reader extends Thread {
+
+        private static final byte[] END    = new byte[0];
+        private static final byte[] FAILED = new byte[0];
+
+        private final DataInputStream       input;
+        private final BlockingQueue<byte[]> queue;
+
+        private volatile IOException failure;
+
+        Reader(@NonNull InputStream input, int index) {
+            super("multi-stream-reader-" + index);
+            this.input = new DataInputStream(input);
+            this.queue = new ArrayBlockingQueue<>(MultiStream.QUEUE_DEPTH);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    int length = input.readInt();
+
+                    if (length < 0) {
+                        queue.put(END);
+                        return;
+                    }
+
+                    if (length == 0 || length > MultiStream.CHUNK_SIZE) {
+                        throw new IOException("Bad chunk length: " + length);
+                    }
+
+                    byte[] chunk = new byte[length];
+                    input.readFully(chunk);
+                    queue.put(chunk);
+                }
+            } catch (IOException e) {
+                failure = e;
+                try {
+                    queue.put(FAILED);
+                } catch (InterruptedException ignored) {
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        @NonNull byte[] take() throws IOException {
+            try {
+                byte[] next = queue.take();
+
+                if (next == FAILED) {
+                    throw new IOException("Stream " + getName() + " failed", failure);
+                }
+
+                return next;
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
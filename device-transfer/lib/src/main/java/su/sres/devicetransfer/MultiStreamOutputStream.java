@@ -0,0 +1,176 @@
+package su.sres.devicetransfer;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits what is written to it into chunks and sends them round-robin across several streams,
+ * each written by its own thread so that the connections encrypt in parallel. Each chunk is sent
+ * as its length followed by its bytes, and each stream ends with a length of -1.
+ * <p>
+ * Data is only sent in whole chunks, or on {@link #close()}, which must be called to finish the
+ * transfer. {@link #flush()} does nothing, as the transfer never waits on a reply part way. A
+ * transfer that fails part way must instead be ended with {@link #abort()}.
+ */
+final class MultiStreamOutputStream extends OutputStream {
+
+    private final List<Writer> writers;
+
+    private byte[]  buffer = new byte[MultiStream.CHUNK_SIZE];
+    private int     position;
+    private long    chunks;
+    private boolean closed;
+
+    MultiStreamOutputStream(@NonNull List<OutputStream> outputs) {
+        this.writers = new ArrayList<>(outputs.size());
+
+        for (int i = 0; i < outputs.size(); i++) {
+            Writer writer = new Writer(outputs.get(i), i);
+            writer.start();
+            writers.add(writer);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(@NonNull byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        while (len > 0) {
+            int count = Math.min(len, buffer.length - position);
+
+            System.arraycopy(b, off, buffer, position, count);
+            position += count;
+            off      += count;
+            len      -= count;
+
+            if (position == buffer.length) {
+                sendChunk();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (position > 0) {
+            sendChunk();
+        }
+
+        for (Writer writer : writers) {
+            writer.put(Writer.END);
+        }
+
+        for (Writer writer : writers) {
+            writer.finish();
+        }
+    }
+
+    /**
+     * Stops the writers without ending the streams, so that the other side sees the transfer fail
+     * rather than end early. The connections must be closed after, to stop any writer that is still
+     * blocked writing to one.
+     */
+    void abort() {
+        closed = true;
+
+        for (Writer writer : writers) {
+            writer.interrupt();
+        }
+    }
+
+    private void sendChunk() throws IOException {
+        byte[] chunk = position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+
+        writers.get((int) (chunks % writers.size())).put(chunk);
+
+        chunks++;
+        buffer   = new byte[MultiStream.CHUNK_SIZE];
+        position = 0;
+    }
+
+    private static final class Writer extends Thread {
+
+        private static final byte[] END = new byte[0];
+
+        private final DataOutputStream      output;
+        private final BlockingQueue<byte[]> queue;
+
+        private volatile IOException failure;
+
+        Writer(@NonNull OutputStream output, int index) {
+            super("multi-stream-writer-" + index);
+            this.output = new DataOutputStream(new BufferedOutputStream(output, MultiStream.CHUNK_SIZE + 4));
+            this.queue  = new ArrayBlockingQueue<>(MultiStream.QUEUE_DEPTH);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte[] chunk = queue.take();
+
+                    if (chunk == END) {
+                        output.writeInt(-1);
+                        output.flush();
+                        return;
+                    }
+
+                    output.writeInt(chunk.length);
+                    output.write(chunk);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException();
+            }
+        }
+
+        void put(@NonNull byte[] chunk) throws IOException {
+            try {
+                while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                    if (!isAlive()) {
+                        throw new IOException("Stream " + getName() + " stopped", failure);
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        void finish() throws IOException {
+            try {
+                join();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+
+            if (failure != null) {
+                throw new IOException("Stream " + getName() + " failed", failure);
+            }
+        }
+    }
+}
@@ -10,11 +10,18 @@ import su.sres.core.util.StreamUtil;
 import su.sres.core.util.ThreadUtil;
 import su.sres.core.util.logging.Log;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLHandshakeException;
@@ -38,6 +45,8 @@ final class NetworkClientThread extends Thread {
     private volatile boolean   isRunning;
     private volatile Boolean   isVerified;
 
+    private final List<SSLSocket> additionalClients = new CopyOnWriteArrayList<>();
+
     private final Context    context;
     private final ClientTask clientTask;
     private final String     serverHostAddress;
@@ -92,10 +101,11 @@ final class NetworkClientThread extends Thread {
                     Log.i(TAG, "Waiting for user to verify sas");
                     awaitAuthenticationCodeVerification();
                     Log.d(TAG, "Waiting for server to tell us they also verified");
-                    outputStream.write(0x43);
+                    outputStream.write(MultiStream.VERIFIED_MULTI);
                     outputStream.flush();
+                    int result;
                     try {
-                        int result = inputStream.read();
+                        result = inputStream.read();
                         if (result == -1) {
                             Log.w(TAG, "Something happened waiting for server to verify");
                             throw new DeviceTransferAuthentication.DeviceTransferAuthenticationException("server disconnected while we waited");
@@ -105,9 +115,34 @@ final class NetworkClientThread extends Thread {
                         throw new DeviceTransferAuthentication.DeviceTransferAuthenticationException(e);
                     }
 
+                    int serverVersion = ClientTask.SERVER_VERSION_LEGACY;
+                    if (result == MultiStream.VERIFIED_MULTI) {
+                        serverVersion = ClientTask.SERVER_VERSION_MULTI_STREAM;
+                        connectAdditionalStreams(x509.getEncoded(), inputStream, outputStream);
+                    }
+
                     handler.sendEmptyMessage(NETWORK_CLIENT_CONNECTED);
-                    clientTask.run(context, outputStream);
-                    outputStream.flush();
+                    if (additionalClients.isEmpty()) {
+                        clientTask.run(context, outputStream, serverVersion);
+                        outputStream.flush();
+                    } else {
+                        List<OutputStream> outputs = new ArrayList<>(additionalClients.size() + 1);
+                        outputs.add(outputStream);
+                        for (SSLSocket additionalClient : additionalClients) {
+                            outputs.add(additionalClient.getOutputStream());
+                        }
+
+                        Log.i(TAG, "Sending over " + outputs.size() + " streams");
+                        MultiStreamOutputStream multiStreamOutputStream = new MultiStreamOutputStream(outputs);
+                        try {
+                            clientTask.run(context, multiStreamOutputStream, serverVersion);
+                        } catch (IOException | RuntimeException e) {
+                            multiStreamOutputStream.abort();
+                            closeAdditionalClients();
+                            throw e;
+                        }
+                        multiStreamOutputStream.close();
+                    }
 
                     Log.d(TAG, "Waiting for server to tell us they got everything");
                     try {
@@ -130,6 +165,7 @@ final class NetworkClientThread extends Thread {
                 if (success) {
                     clientTask.success();
                 }
+                closeAdditionalClients();
                 StreamUtil.close(client);
                 handler.sendEmptyMessage(NETWORK_CLIENT_DISCONNECTED);
             }
@@ -144,6 +180,70 @@ final class NetworkClientThread extends Thread {
         handler.sendEmptyMessage(NETWORK_CLIENT_STOPPED);
     }
 
+    /**
+     * Tells the server how many of the connections it offered will be opened, opens them, stopping at
+     * the first that fails, and then tells the server how many it got. Each must present the
+     * certificate that was verified on the first.
+     */
+    private void connectAdditionalStreams(@NonNull byte[] certificate, @NonNull InputStream inputStream, @NonNull OutputStream outputStream) throws IOException {
+        DataInputStream  dataInputStream  = new DataInputStream(inputStream);
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        byte[]           token            = new byte[MultiStream.TOKEN_LENGTH];
+
+        dataInputStream.readFully(token);
+        int count = Math.min(dataInputStream.readInt(), MultiStream.getStreamCount());
+
+        dataOutputStream.writeInt(count);
+        dataOutputStream.flush();
+
+        for (int i = 1; i < count && shouldKeepRunning(); i++) {
+            try {
+                additionalClients.add(connectAdditionalStream(certificate, token, i));
+            } catch (IOException | CertificateEncodingException e) {
+                Log.w(TAG, "Unable to open additional stream " + i, e);
+                break;
+            }
+        }
+
+        dataOutputStream.writeInt(additionalClients.size() + 1);
+        dataOutputStream.flush();
+    }
+
+    private @NonNull SSLSocket connectAdditionalStream(@NonNull byte[] certificate, @NonNull byte[] token, int index)
+            throws IOException, CertificateEncodingException
+    {
+        SelfSignedIdentity.ApprovingTrustManager trustManager = new SelfSignedIdentity.ApprovingTrustManager();
+        SSLSocket                                socket       = (SSLSocket) SelfSignedIdentity.getApprovingSocketFactory(trustManager).createSocket();
+
+        try {
+            socket.bind(null);
+            socket.connect(new InetSocketAddress(serverHostAddress, port), 10000);
+            socket.startHandshake();
+
+            X509Certificate x509 = trustManager.getX509Certificate();
+            if (x509 == null || !Arrays.equals(certificate, x509.getEncoded())) {
+                throw new SSLHandshakeException("additional stream presented a different certificate");
+            }
+
+            DataOutputStream dataOutputStream = new DataOutputStream(socket.getOutputStream());
+            dataOutputStream.write(token);
+            dataOutputStream.writeInt(index);
+            dataOutputStream.flush();
+
+            return socket;
+        } catch (IOException | CertificateEncodingException e) {
+            StreamUtil.close(socket);
+            throw e;
+        }
+    }
+
+    private void closeAdditionalClients() {
+        for (SSLSocket additionalClient : additionalClients) {
+            StreamUtil.close(additionalClient);
+        }
+        additionalClients.clear();
+    }
+
     private void awaitAuthenticationCodeVerification() throws DeviceTransferAuthentication.DeviceTransferAuthenticationException {
         synchronized (verificationLock) {
             try {
@@ -170,6 +270,7 @@ final class NetworkClientThread extends Thread {
     @AnyThread
     public void shutdown() {
         isRunning = false;
+        closeAdditionalClients();
         StreamUtil.close(client);
         interrupt();
     }
@@ -9,12 +9,19 @@ import androidx.annotation.NonNull;
 import su.sres.core.util.StreamUtil;
 import su.sres.core.util.logging.Log;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Performs the networking setup/tear down for the server. This includes
@@ -36,6 +43,8 @@ final class NetworkServerThread extends Thread {
     private volatile boolean      isRunning;
     private volatile Boolean      isVerified;
 
+    private final List<Socket> additionalSockets = new CopyOnWriteArrayList<>();
+
     private final Context                           context;
     private final ServerTask                        serverTask;
     private final SelfSignedIdentity.SelfSignedKeys keys;
@@ -82,10 +91,11 @@ final class NetworkServerThread extends Thread {
                     awaitAuthenticationCodeVerification();
 
                     Log.d(TAG, "Waiting for client to tell us they also verified");
-                    outputStream.write(0x43);
+                    outputStream.write(MultiStream.VERIFIED_MULTI);
                     outputStream.flush();
+                    int result;
                     try {
-                        int result = inputStream.read();
+                        result = inputStream.read();
                         if (result == -1) {
                             Log.w(TAG, "Something happened waiting for client to verify");
                             throw new DeviceTransferAuthentication.DeviceTransferAuthenticationException("client disconnected while we waited");
@@ -95,8 +105,28 @@ final class NetworkServerThread extends Thread {
                         throw new DeviceTransferAuthentication.DeviceTransferAuthenticationException(e);
                     }
 
+                    if (result == MultiStream.VERIFIED_MULTI) {
+                        acceptAdditionalStreams(inputStream, outputStream);
+                    }
+
                     handler.sendEmptyMessage(NETWORK_CLIENT_CONNECTED);
-                    serverTask.run(context, inputStream);
+                    if (additionalSockets.isEmpty()) {
+                        serverTask.run(context, inputStream);
+                    } else {
+                        List<InputStream> inputs = new ArrayList<>(additionalSockets.size() + 1);
+                        inputs.add(inputStream);
+                        for (Socket additionalSocket : additionalSockets) {
+                            inputs.add(additionalSocket.getInputStream());
+                        }
+
+                        Log.i(TAG, "Receiving over " + inputs.size() + " streams");
+                        MultiStreamInputStream multiStreamInputStream = new MultiStreamInputStream(inputs);
+                        try {
+                            serverTask.run(context, multiStreamInputStream);
+                        } finally {
+                            multiStreamInputStream.close();
+                        }
+                    }
                     outputStream.write(0x53);
                     outputStream.flush();
                 } catch (IOException e) {
@@ -106,6 +136,7 @@ final class NetworkServerThread extends Thread {
                         Log.i(TAG, "Server shutting down...");
                     }
                 } finally {
+                    closeAdditionalSockets();
                     StreamUtil.close(clientSocket);
                     handler.sendEmptyMessage(NETWORK_CLIENT_DISCONNECTED);
                 }
@@ -121,6 +152,91 @@ final class NetworkServerThread extends Thread {
         handler.sendEmptyMessage(NETWORK_SERVER_STOPPED);
     }
 
+    /**
+     * Offers the verified client a token to open additional connections with, and accepts as many as
+     * the client says it will open, in the order the client numbered them. A connection without the
+     * token is closed and does not count, and the client must then agree on how many were accepted.
+     */
+    private void acceptAdditionalStreams(@NonNull InputStream inputStream, @NonNull OutputStream outputStream) throws IOException {
+        DataInputStream  dataInputStream  = new DataInputStream(inputStream);
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        byte[]           token            = MultiStream.generateToken();
+        int              offered          = MultiStream.getStreamCount();
+
+        dataOutputStream.write(token);
+        dataOutputStream.writeInt(offered);
+        dataOutputStream.flush();
+
+        int count = dataInputStream.readInt();
+        if (count < 1 || count > offered) {
+            throw new IOException("Client wants " + count + " streams, offered " + offered);
+        }
+
+        Socket[] accepted      = new Socket[count];
+        int      acceptedCount = 0;
+
+        serverSocket.setSoTimeout(MultiStream.CONNECT_TIMEOUT_MS);
+        try {
+            for (int attempt = 1; attempt < count && shouldKeepRunning(); attempt++) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketTimeoutException e) {
+                    Log.i(TAG, "No more additional streams");
+                    break;
+                }
+
+                int index = readAdditionalStreamIndex(socket, token);
+                if (index > 0 && index < count && accepted[index] == null) {
+                    accepted[index] = socket;
+                    acceptedCount++;
+                } else {
+                    Log.w(TAG, "Rejecting additional stream");
+                    StreamUtil.close(socket);
+                }
+            }
+        } finally {
+            serverSocket.setSoTimeout(0);
+        }
+
+        for (int i = 1; i <= acceptedCount; i++) {
+            if (accepted[i] == null) {
+                throw new IOException("Missing additional stream " + i);
+            }
+            additionalSockets.add(accepted[i]);
+        }
+
+        int clientCount = dataInputStream.readInt();
+        if (clientCount != acceptedCount + 1) {
+            throw new IOException("Client connected " + clientCount + " streams, accepted " + (acceptedCount + 1));
+        }
+    }
+
+    private static int readAdditionalStreamIndex(@NonNull Socket socket, @NonNull byte[] token) {
+        try {
+            socket.setSoTimeout(MultiStream.CONNECT_TIMEOUT_MS);
+
+            DataInputStream dataInputStream = new DataInputStream(socket.getInputStream());
+            byte[]          received        = new byte[MultiStream.TOKEN_LENGTH];
+
+            dataInputStream.readFully(received);
+            int index = dataInputStream.readInt();
+
+            socket.setSoTimeout(0);
+            return MessageDigest.isEqual(token, received) ? index : -1;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read additional stream", e);
+            return -1;
+        }
+    }
+
+    private void closeAdditionalSockets() {
+        for (Socket additionalSocket : additionalSockets) {
+            StreamUtil.close(additionalSocket);
+        }
+        additionalSockets.clear();
+    }
+
     private void awaitAuthenticationCodeVerification() throws DeviceTransferAuthentication.DeviceTransferAuthenticationException {
         synchronized (verificationLock) {
             try {
@@ -160,6 +276,7 @@ final class NetworkServerThread extends Thread {
     @AnyThread
     public void shutdown() {
         isRunning = false;
+        closeAdditionalSockets();
         StreamUtil.close(clientSocket);
         StreamUtil.close(serverSocket);
         interrupt();
@@ -0,0 +1,107 @@
+package su.sres.devicetransfer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MultiStreamTest {
+
+    @Test
+    public void testRoundTrip_singleStream() throws Exception {
+        assertRoundTrip(1, randomBytes(MultiStream.CHUNK_SIZE * 3 + 17));
+    }
+
+    @Test
+    public void testRoundTrip_manyStreams() throws Exception {
+        assertRoundTrip(4, randomBytes(MultiStream.CHUNK_SIZE * 21 + 5));
+    }
+
+    @Test
+    public void testRoundTrip_lessThanOneChunk() throws Exception {
+        assertRoundTrip(3, randomBytes(100));
+    }
+
+    @Test
+    public void testRoundTrip_empty() throws Exception {
+        assertRoundTrip(3, new byte[0]);
+    }
+
+    @Test(expected = IOException.class)
+    public void testRead_truncatedStream() throws Exception {
+        PipedOutputStream output = new PipedOutputStream();
+        PipedInputStream  input  = new PipedInputStream(output);
+
+        output.write(new byte[] { 0, 0, 0, 10, 1, 2 });
+        output.close();
+
+        List<InputStream> inputs = new ArrayList<>();
+        inputs.add(input);
+
+        readFully(new MultiStreamInputStream(inputs));
+    }
+
+    private static void assertRoundTrip(int streams, byte[] data) throws Exception {
+        List<OutputStream> outputs = new ArrayList<>();
+        List<InputStream>  inputs  = new ArrayList<>();
+
+        for (int i = 0; i < streams; i++) {
+            PipedOutputStream output = new PipedOutputStream();
+            inputs.add(new PipedInputStream(output, MultiStream.CHUNK_SIZE));
+            outputs.add(output);
+        }
+
+        MultiStreamInputStream received = new MultiStreamInputStream(inputs);
+
+        Thread sender = new Thread(() -> {
+            try (MultiStreamOutputStream sent = new MultiStreamOutputStream(outputs)) {
+                Random random   = new Random(7);
+                int    position = 0;
+
+                while (position < data.length) {
+                    int length = Math.min(data.length - position, 1 + random.nextInt(MultiStream.CHUNK_SIZE / 3));
+                    sent.write(data, position, length);
+                    position += length;
+                }
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        sender.start();
+
+        byte[] result = readFully(received);
+        sender.join();
+        received.close();
+
+        assertEquals(data.length, result.length);
+        assertArrayEquals(data, result);
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[]                buffer = new byte[8192];
+        int                   read;
+
+        while ((read = inputStream.read(buffer)) != -1) {
+            result.write(buffer, 0, read);
+        }
+
+        return result.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,164 @@
+package su.sres.signalservice.api;
+
+import org.whispersystems.libsignal.IdentityKey;
+import org.whispersystems.libsignal.IdentityKeyPair;
+import org.whispersystems.libsignal.InvalidKeyIdException;
+import org.whispersystems.libsignal.SignalProtocolAddress;
+import org.whispersystems.libsignal.protocol.CiphertextMessage;
+import org.whispersystems.libsignal.state.PreKeyRecord;
+import org.whispersystems.libsignal.state.SessionRecord;
+import org.whispersystems.libsignal.state.SignedPreKeyRecord;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A protocol store that holds on to the sessions written through it, and serves them back to later
+ * reads, until they are all written to the underlying store at once with {@link #flush()}.
+ *
+ * Used to encrypt for all of a recipient's devices with one write, while the locks of those
+ * addresses are held. Anything written must be flushed before the ciphertext leaves the device,
+ * and dropped if it never does. Everything other than sessions goes straight through.
+ */
+final class BufferedSessionStore implements SignalServiceProtocolStore {
+
+    private final SignalServiceProtocolStore                 store;
+    private final Map<SignalProtocolAddress, SessionRecord> pending = new LinkedHashMap<>();
+
+    BufferedSessionStore(SignalServiceProtocolStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Writes every buffered session to the underlying store.
+     */
+    void flush() {
+        if (!pending.isEmpty()) {
+            store.storeSessions(new LinkedHashMap<>(pending));
+            pending.clear();
+        }
+    }
+
+    @Override
+    public SessionRecord loadSession(SignalProtocolAddress address) {
+        SessionRecord record = pending.get(address);
+        return record != null ? record : store.loadSession(address);
+    }
+
+    @Override
+    public void storeSession(SignalProtocolAddress address, SessionRecord record) {
+        pending.put(address, record);
+    }
+
+    @Override
+    public void storeSessions(Map<SignalProtocolAddress, SessionRecord> sessions) {
+        pending.putAll(sessions);
+    }
+
+    @Override
+    public boolean containsSession(SignalProtocolAddress address) {
+        SessionRecord record = pending.get(address);
+
+        if (record != null) {
+            return record.getSessionState().hasSenderChain() &&
+                   record.getSessionState().getSessionVersion() == CiphertextMessage.CURRENT_VERSION;
+        }
+
+        return store.containsSession(address);
+    }
+
+    @Override
+    public List<Integer> getSubDeviceSessions(String name) {
+        flush();
+        return store.getSubDeviceSessions(name);
+    }
+
+    @Override
+    public void deleteSession(SignalProtocolAddress address) {
+        pending.remove(address);
+        store.deleteSession(address);
+    }
+
+    @Override
+    public void deleteAllSessions(String name) {
+        flush();
+        store.deleteAllSessions(name);
+    }
+
+    @Override
+    public void archiveSession(SignalProtocolAddress address) {
+        flush();
+        store.archiveSession(address);
+    }
+
+    @Override
+    public IdentityKeyPair getIdentityKeyPair() {
+        return store.getIdentityKeyPair();
+    }
+
+    @Override
+    public int getLocalRegistrationId() {
+        return store.getLocalRegistrationId();
+    }
+
+    @Override
+    public boolean saveIdentity(SignalProtocolAddress address, IdentityKey identityKey) {
+        return store.saveIdentity(address, identityKey);
+    }
+
+    @Override
+    public boolean isTrustedIdentity(SignalProtocolAddress address, IdentityKey identityKey, Direction direction) {
+        return store.isTrustedIdentity(address, identityKey, direction);
+    }
+
+    @Override
+    public IdentityKey getIdentity(SignalProtocolAddress address) {
+        return store.getIdentity(address);
+    }
+
+    @Override
+    public PreKeyRecord loadPreKey(int preKeyId) throws InvalidKeyIdException {
+        return store.loadPreKey(preKeyId);
+    }
+
+    @Override
+    public void storePreKey(int preKeyId, PreKeyRecord record) {
+        store.storePreKey(preKeyId, record);
+    }
+
+    @Override
+    public boolean containsPreKey(int preKeyId) {
+        return store.containsPreKey(preKeyId);
+    }
+
+    @Override
+    public void removePreKey(int preKeyId) {
+        store.removePreKey(preKeyId);
+    }
+
+    @Override
+    public SignedPreKeyRecord loadSignedPreKey(int signedPreKeyId) throws InvalidKeyIdException {
+        return store.loadSignedPreKey(signedPreKeyId);
+    }
+
+    @Override
+    public List<SignedPreKeyRecord> loadSignedPreKeys() {
+        return store.loadSignedPreKeys();
+    }
+
+    @Override
+    public void storeSignedPreKey(int signedPreKeyId, SignedPreKeyRecord record) {
+        store.storeSignedPreKey(signedPreKeyId, record);
+    }
+
+    @Override
+    public boolean containsSignedPreKey(int signedPreKeyId) {
+        return store.containsSignedPreKey(signedPreKeyId);
+    }
+
+    @Override
+    public void removeSignedPreKey(int signedPreKeyId) {
+        store.removeSignedPreKey(signedPreKeyId);
+    }
+}
@@ -0,0 +1,127 @@
+package su.sres.signalservice.api;
+
+import org.whispersystems.libsignal.logging.Log;
+import org.whispersystems.libsignal.util.guava.Optional;
+
+import su.sres.signalservice.api.crypto.UnidentifiedAccess;
+import su.sres.signalservice.api.crypto.UntrustedIdentityException;
+import su.sres.signalservice.api.push.SignalServiceAddress;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Establishes sessions with recipients we have no session with ahead of a send, so that the pre-key
+ * round trips overlap with each other and with encrypting for the recipients we do have sessions
+ * with, instead of each send blocking on its own fetch.
+ *
+ * Fetched bundles are turned into sessions as soon as they arrive rather than held for the send, so
+ * the one-time pre-keys claimed from the server are never thrown away unused. A send waits for any
+ * prefetch of its recipient that is still in flight, then finds the session in the store. If the
+ * prefetch failed, the send fetches directly, as before, and reports the failure itself.
+ */
+final class PreKeyPrefetcher {
+
+    private static final String TAG = PreKeyPrefetcher.class.getSimpleName();
+
+    private static final int PARALLELISM = 8;
+    private static final int MAX_IN_FLIGHT = 1000;
+
+    private final Establisher            establisher;
+    private final Executor               executor;
+    private final Map<String, Future<?>> inFlight = new HashMap<>();
+
+    PreKeyPrefetcher(Establisher establisher) {
+        this(establisher, newExecutor());
+    }
+
+    PreKeyPrefetcher(Establisher establisher, Executor executor) {
+        this.establisher = establisher;
+        this.executor    = executor;
+    }
+
+    /**
+     * Starts establishing a session with a recipient's device, unless that is already under way.
+     */
+    void prefetch(SignalServiceAddress recipient, Optional<UnidentifiedAccess> unidentifiedAccess, int deviceId) {
+        String key = getKey(recipient, deviceId);
+
+        synchronized (inFlight) {
+            if (inFlight.containsKey(key) || inFlight.size() >= MAX_IN_FLIGHT) {
+                return;
+            }
+
+            AtomicReference<Future<?>> self = new AtomicReference<>();
+            FutureTask<Void>           task = new FutureTask<>(() -> {
+                try {
+                    establisher.establishSession(recipient, unidentifiedAccess, deviceId);
+                    return null;
+                } finally {
+                    synchronized (inFlight) {
+                        inFlight.remove(key, self.get());
+                    }
+                }
+            });
+
+            self.set(task);
+            inFlight.put(key, task);
+            executor.execute(task);
+        }
+    }
+
+    /**
+     * Waits for a prefetch of the recipient's device to finish, if one is in flight. Its failure is
+     * only logged, as the caller is expected to establish the session itself if there still is none.
+     */
+    void awaitPrefetch(SignalServiceAddress recipient, int deviceId) throws InterruptedIOException {
+        Future<?> prefetch;
+
+        synchronized (inFlight) {
+            prefetch = inFlight.get(getKey(recipient, deviceId));
+        }
+
+        if (prefetch == null) {
+            return;
+        }
+
+        try {
+            prefetch.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for pre-keys.");
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Prefetch failed, falling back to fetching directly.", e.getCause());
+        }
+    }
+
+    private static String getKey(SignalServiceAddress recipient, int deviceId) {
+        return recipient.getIdentifier() + "." + deviceId;
+    }
+
+    private static Executor newExecutor() {
+        AtomicInteger      counter  = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(PARALLELISM, PARALLELISM, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                                                             r -> new Thread(r, "signal-prekey-prefetch-" + counter.getAndIncrement()));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    interface Establisher {
+        /**
+         * Fetches the pre-keys of the recipient's device and builds a session with them, if there is
+         * still no session with it.
+         */
+        void establishSession(SignalServiceAddress recipient, Optional<UnidentifiedAccess> unidentifiedAccess, int deviceId)
+                throws IOException, UntrustedIdentityException;
+    }
+}
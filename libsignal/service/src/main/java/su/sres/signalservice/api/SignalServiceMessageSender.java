@@ -134,6 +134,7 @@ public class SignalServiceMessageSender {
 
     private final ExecutorService executor;
     private final long                                                maxEnvelopeSize;
+    private final PreKeyPrefetcher                                    preKeyPrefetcher;
 
     /**
      * Construct a SignalServiceMessageSender.
@@ -190,6 +191,7 @@ public class SignalServiceMessageSender {
         this.eventListener = eventListener;
         this.executor = executor != null ? executor : Executors.newSingleThreadExecutor();
         this.maxEnvelopeSize  = maxEnvelopeSize;
+        this.preKeyPrefetcher = new PreKeyPrefetcher(this::buildSessionIfMissing);
     }
 
     /**
@@ -420,6 +422,46 @@ public class SignalServiceMessageSender {
         }
     }
 
+    /**
+     * Uploads an attachment whose stream is still being written, e.g. a video that is being transcoded. The length set
+     * on the attachment is only used for progress; the pointer carries the number of bytes actually read.
+     * <p>
+     * Only supported for attachments V3, so a resumable upload spec is required.
+     */
+    public SignalServiceAttachmentPointer uploadStreamingAttachment(SignalServiceAttachmentStream attachment) throws IOException {
+        if (!attachment.getResumableUploadSpec().isPresent()) {
+            throw new IllegalArgumentException("Streaming uploads require a resumable upload spec!");
+        }
+
+        ResumableUploadSpec resumableUploadSpec = attachment.getResumableUploadSpec().get();
+        byte[]              attachmentKey       = resumableUploadSpec.getSecretKey();
+        PaddingInputStream  dataStream          = new PaddingInputStream(attachment.getInputStream());
+        PushAttachmentData  attachmentData      = new PushAttachmentData(attachment.getContentType(),
+                dataStream,
+                AttachmentCipherOutputStream.getCiphertextLength(PaddingInputStream.getPaddedSize(attachment.getLength())),
+                new AttachmentCipherOutputStreamFactory(attachmentKey, resumableUploadSpec.getIV()),
+                attachment.getListener(),
+                attachment.getCancelationSignal(),
+                resumableUploadSpec);
+
+        byte[] digest = socket.uploadStreamingAttachment(attachmentData);
+        return new SignalServiceAttachmentPointer(resumableUploadSpec.getCdnNumber(),
+                new SignalServiceAttachmentRemoteId(resumableUploadSpec.getCdnKey()),
+                attachment.getContentType(),
+                attachmentKey,
+                Optional.of(Util.toIntExact(dataStream.getPlaintextLength())),
+                attachment.getPreview(),
+                attachment.getWidth(),
+                attachment.getHeight(),
+                Optional.of(digest),
+                attachment.getFileName(),
+                attachment.getVoiceNote(),
+                attachment.isBorderless(),
+                attachment.getCaption(),
+                attachment.getBlurHash(),
+                attachment.getUploadTimestamp());
+    }
+
     private SignalServiceAttachmentPointer uploadAttachmentV2(SignalServiceAttachmentStream attachment, byte[] attachmentKey, PushAttachmentData attachmentData)
             throws NonSuccessfulResponseCodeException, PushNetworkException, MalformedResponseException
     {
@@ -1365,6 +1407,11 @@ public class SignalServiceMessageSender {
         enforceMaxContentSize(content);
 
         long startTime = System.currentTimeMillis();
+
+        if (recipients.size() > 1) {
+            prefetchPreKeys(recipients, unidentifiedAccess);
+        }
+
         List<Future<SendMessageResult>> futureResults = new LinkedList<>();
         Iterator<SignalServiceAddress> recipientIterator = recipients.iterator();
         Iterator<Optional<UnidentifiedAccess>> unidentifiedAccessIterator = unidentifiedAccess.iterator();
@@ -1424,6 +1471,30 @@ public class SignalServiceMessageSender {
         return results;
     }
 
+    /**
+     * Starts establishing a session with every recipient we have no session with, so that their sends
+     * do not each wait on a pre-key round trip of their own while the rest encrypt.
+     */
+    private void prefetchPreKeys(List<SignalServiceAddress> recipients, List<Optional<UnidentifiedAccess>> unidentifiedAccess) {
+        Iterator<Optional<UnidentifiedAccess>> unidentifiedAccessIterator = unidentifiedAccess.iterator();
+        int                                    prefetched                 = 0;
+
+        for (SignalServiceAddress recipient : recipients) {
+            Optional<UnidentifiedAccess> access = unidentifiedAccessIterator.next();
+
+            if ((!recipient.matches(localAddress) || access.isPresent()) &&
+                !store.containsSession(new SignalProtocolAddress(recipient.getIdentifier(), SignalServiceAddress.DEFAULT_DEVICE_ID)))
+            {
+                preKeyPrefetcher.prefetch(recipient, access, SignalServiceAddress.DEFAULT_DEVICE_ID);
+                prefetched++;
+            }
+        }
+
+        if (prefetched > 0) {
+            Log.d(TAG, "Prefetching sessions for " + prefetched + " of " + recipients.size() + " recipients.");
+        }
+    }
+
     private SendMessageResult sendMessage(SignalServiceAddress recipient,
                                           Optional<UnidentifiedAccess> unidentifiedAccess,
                                           long timestamp,
@@ -1576,6 +1647,12 @@ public class SignalServiceMessageSender {
         return createAttachmentPointer(uploadAttachment(attachment));
     }
 
+    /**
+     * Encrypts for each of a recipient's devices. Sessions are established first, without holding
+     * any locks, then the addresses of all the devices are locked in ascending order and encrypted
+     * for, with the session updates buffered and written in one batch before the locks are released.
+     * Other recipients' addresses stay unlocked, so they can be encrypted for at the same time.
+     */
     private OutgoingPushMessageList getEncryptedMessages(PushServiceSocket socket,
                                                          SignalServiceAddress recipient,
                                                          Optional<UnidentifiedAccess> unidentifiedAccess,
@@ -1583,29 +1660,68 @@ public class SignalServiceMessageSender {
                                                          byte[] plaintext,
                                                          boolean online)
             throws IOException, InvalidKeyException, UntrustedIdentityException {
-        List<OutgoingPushMessage> messages = new LinkedList<>();
+        List<Integer> deviceIds = new ArrayList<>();
 
         if (!recipient.matches(localAddress) || unidentifiedAccess.isPresent()) {
-            messages.add(getEncryptedMessage(socket, recipient, unidentifiedAccess, SignalServiceAddress.DEFAULT_DEVICE_ID, plaintext));
+            establishSession(recipient, unidentifiedAccess, SignalServiceAddress.DEFAULT_DEVICE_ID);
+            deviceIds.add(SignalServiceAddress.DEFAULT_DEVICE_ID);
         }
 
         for (int deviceId : store.getSubDeviceSessions(recipient.getIdentifier())) {
-            if (store.containsSession(new SignalProtocolAddress(recipient.getIdentifier(), deviceId))) {
-                messages.add(getEncryptedMessage(socket, recipient, unidentifiedAccess, deviceId, plaintext));
+            if (!deviceIds.contains(deviceId) && store.containsSession(new SignalProtocolAddress(recipient.getIdentifier(), deviceId))) {
+                deviceIds.add(deviceId);
             }
         }
 
-        return new OutgoingPushMessageList(recipient.getIdentifier(), timestamp, messages, online);
+        Collections.sort(deviceIds);
+
+        List<OutgoingPushMessage>    messages    = new ArrayList<>(deviceIds.size());
+        List<SignalSessionLock.Lock> locks       = new ArrayList<>(deviceIds.size());
+        BufferedSessionStore         bufferStore = new BufferedSessionStore(store);
+        SignalServiceCipher          cipher      = new SignalServiceCipher(localAddress, bufferStore, sessionLock, null);
+
+        try {
+            for (int deviceId : deviceIds) {
+                locks.add(sessionLock.acquire(new SignalProtocolAddress(recipient.getIdentifier(), deviceId)));
+            }
+
+            for (int deviceId : deviceIds) {
+                SignalProtocolAddress address = new SignalProtocolAddress(recipient.getIdentifier(), deviceId);
+
+                try {
+                    messages.add(cipher.encrypt(address, unidentifiedAccess, plaintext));
+                } catch (org.whispersystems.libsignal.UntrustedIdentityException e) {
+                    throw new UntrustedIdentityException("Untrusted on send", recipient.getIdentifier(), e.getUntrustedIdentity());
+                }
+            }
+
+            bufferStore.flush();
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).close();
+            }
+        }
+
+        return new OutgoingPushMessageList(recipient.getIdentifier(), timestamp, new LinkedList<>(messages), online);
     }
 
-    private OutgoingPushMessage getEncryptedMessage(PushServiceSocket socket,
-                                                    SignalServiceAddress recipient,
-                                                    Optional<UnidentifiedAccess> unidentifiedAccess,
-                                                    int deviceId,
-                                                    byte[] plaintext)
-            throws IOException, InvalidKeyException, UntrustedIdentityException {
+    /**
+     * Waits for any prefetch of the device's session, then fetches the recipient's pre-keys and
+     * builds a session with them if there is still no session with the given device.
+     */
+    private void establishSession(SignalServiceAddress recipient,
+                                  Optional<UnidentifiedAccess> unidentifiedAccess,
+                                  int deviceId)
+            throws IOException, UntrustedIdentityException {
+        preKeyPrefetcher.awaitPrefetch(recipient, deviceId);
+        buildSessionIfMissing(recipient, unidentifiedAccess, deviceId);
+    }
+
+    private void buildSessionIfMissing(SignalServiceAddress recipient,
+                                       Optional<UnidentifiedAccess> unidentifiedAccess,
+                                       int deviceId)
+            throws IOException, UntrustedIdentityException {
         SignalProtocolAddress signalProtocolAddress = new SignalProtocolAddress(recipient.getIdentifier(), deviceId);
-        SignalServiceCipher   cipher                = new SignalServiceCipher(localAddress, store, sessionLock, null);
 
         if (!store.containsSession(signalProtocolAddress)) {
             try {
@@ -1628,12 +1744,6 @@ public class SignalServiceMessageSender {
                 throw new IOException(e);
             }
         }
-
-        try {
-            return cipher.encrypt(signalProtocolAddress, unidentifiedAccess, plaintext);
-        } catch (org.whispersystems.libsignal.UntrustedIdentityException e) {
-            throw new UntrustedIdentityException("Untrusted on send", recipient.getIdentifier(), e.getUntrustedIdentity());
-        }
     }
 
     private void handleMismatchedDevices(PushServiceSocket socket, SignalServiceAddress recipient,
@@ -1,12 +1,25 @@
 package su.sres.signalservice.api;
 
 import org.whispersystems.libsignal.SignalProtocolAddress;
+import org.whispersystems.libsignal.state.SessionRecord;
 import org.whispersystems.libsignal.state.SessionStore;
 
+import java.util.Map;
+
 /**
  * And extension of the normal protocol session store interface that has additional methods that are
  * needed in the service layer, but not the protocol layer.
  */
 public interface SignalServiceSessionStore extends SessionStore {
     void archiveSession(SignalProtocolAddress address);
+
+    /**
+     * Stores several sessions at once. Implementations should write them together, in one
+     * transaction where they can.
+     */
+    default void storeSessions(Map<SignalProtocolAddress, SessionRecord> sessions) {
+        for (Map.Entry<SignalProtocolAddress, SessionRecord> session : sessions.entrySet()) {
+            storeSession(session.getKey(), session.getValue());
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package su.sres.signalservice.api;
 
+import org.whispersystems.libsignal.SignalProtocolAddress;
+
 import java.io.Closeable;
 
 /**
@@ -8,8 +10,20 @@ import java.io.Closeable;
  */
 public interface SignalSessionLock {
 
+    /**
+     * Locks all sessions, for work that may touch any number of addresses.
+     */
     Lock acquire();
 
+    /**
+     * Locks only the session with the given address, so that work on other addresses may carry on.
+     * Locks must be reentrant, and a thread holding several addresses of one recipient acquires them
+     * in ascending device order. Implementations that cannot tell addresses apart lock everything.
+     */
+    default Lock acquire(SignalProtocolAddress address) {
+        return acquire();
+    }
+
     interface Lock extends Closeable {
         @Override
         void close();
@@ -20,6 +20,9 @@ import su.sres.signalservice.api.SignalSessionLock;
 
 /**
  * A thread-safe wrapper around {@link SealedSessionCipher}.
+ *
+ * Work on a known address only locks that address. Decryption locks all sessions, since the sender
+ * is not known until the envelope is opened.
  */
 public class SignalSealedSessionCipher {
 
@@ -32,7 +35,7 @@ public class SignalSealedSessionCipher {
     }
 
     public byte[] encrypt(SignalProtocolAddress destinationAddress, SenderCertificate senderCertificate, byte[] paddedPlaintext) throws InvalidKeyException, org.whispersystems.libsignal.UntrustedIdentityException {
-        try (SignalSessionLock.Lock unused = lock.acquire()) {
+        try (SignalSessionLock.Lock unused = lock.acquire(destinationAddress)) {
             return cipher.encrypt(destinationAddress, senderCertificate, paddedPlaintext);
         }
     }
@@ -44,13 +47,13 @@ public class SignalSealedSessionCipher {
     }
 
     public int getSessionVersion(SignalProtocolAddress remoteAddress) {
-        try (SignalSessionLock.Lock unused = lock.acquire()) {
+        try (SignalSessionLock.Lock unused = lock.acquire(remoteAddress)) {
             return cipher.getSessionVersion(remoteAddress);
         }
     }
 
     public int getRemoteRegistrationId(SignalProtocolAddress remoteAddress) {
-        try (SignalSessionLock.Lock unused = lock.acquire()) {
+        try (SignalSessionLock.Lock unused = lock.acquire(remoteAddress)) {
             return cipher.getRemoteRegistrationId(remoteAddress);
         }
     }
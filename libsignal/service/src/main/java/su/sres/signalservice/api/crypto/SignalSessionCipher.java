@@ -7,6 +7,7 @@ import org.whispersystems.libsignal.InvalidMessageException;
 import org.whispersystems.libsignal.LegacyMessageException;
 import org.whispersystems.libsignal.NoSessionException;
 import org.whispersystems.libsignal.SessionCipher;
+import org.whispersystems.libsignal.SignalProtocolAddress;
 import org.whispersystems.libsignal.UntrustedIdentityException;
 import org.whispersystems.libsignal.protocol.CiphertextMessage;
 import org.whispersystems.libsignal.protocol.PreKeySignalMessage;
@@ -15,44 +16,57 @@ import su.sres.signalservice.api.SignalSessionLock;
 
 /**
  * A thread-safe wrapper around {@link SessionCipher}.
+ *
+ * If it is given the address of the cipher's session, it only locks that address, and otherwise
+ * all sessions.
  */
 public class SignalSessionCipher {
 
-    private final SignalSessionLock lock;
-    private final SessionCipher     cipher;
+    private final SignalSessionLock     lock;
+    private final SessionCipher         cipher;
+    private final SignalProtocolAddress address;
 
     public SignalSessionCipher(SignalSessionLock lock, SessionCipher cipher) {
-        this.lock   = lock;
-        this.cipher = cipher;
+        this(lock, cipher, null);
+    }
+
+    public SignalSessionCipher(SignalSessionLock lock, SessionCipher cipher, SignalProtocolAddress address) {
+        this.lock    = lock;
+        this.cipher  = cipher;
+        this.address = address;
     }
 
     public CiphertextMessage encrypt(byte[] paddedMessage) throws org.whispersystems.libsignal.UntrustedIdentityException {
-        try (SignalSessionLock.Lock unused = lock.acquire()) {
+        try (SignalSessionLock.Lock unused = acquire()) {
             return cipher.encrypt(paddedMessage);
         }
     }
 
     public byte[] decrypt(PreKeySignalMessage ciphertext) throws DuplicateMessageException, LegacyMessageException, InvalidMessageException, InvalidKeyIdException, InvalidKeyException, org.whispersystems.libsignal.UntrustedIdentityException {
-        try (SignalSessionLock.Lock unused = lock.acquire()) {
+        try (SignalSessionLock.Lock unused = acquire()) {
             return cipher.decrypt(ciphertext);
         }
     }
 
     public byte[] decrypt(SignalMessage ciphertext) throws InvalidMessageException, DuplicateMessageException, LegacyMessageException, NoSessionException, UntrustedIdentityException {
-        try (SignalSessionLock.Lock unused = lock.acquire()) {
+        try (SignalSessionLock.Lock unused = acquire()) {
             return cipher.decrypt(ciphertext);
         }
     }
 
     public int getRemoteRegistrationId() {
-        try (SignalSessionLock.Lock unused = lock.acquire()) {
+        try (SignalSessionLock.Lock unused = acquire()) {
             return cipher.getRemoteRegistrationId();
         }
     }
 
     public int getSessionVersion() {
-        try (SignalSessionLock.Lock unused = lock.acquire()) {
+        try (SignalSessionLock.Lock unused = acquire()) {
             return cipher.getSessionVersion();
         }
     }
+
+    private SignalSessionLock.Lock acquire() {
+        return address != null ? lock.acquire(address) : lock.acquire();
+    }
 }
@@ -0,0 +1,95 @@
+package su.sres.signalservice.api.groupsv2;
+
+import com.google.protobuf.ByteString;
+
+import org.signal.zkgroup.groups.GroupSecretParams;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Remembers what a group's UUID and profile key ciphertexts decrypt to.
+ * <p>
+ * The server hands back the same member ciphertexts on every group fetch and in every change that
+ * touches them, and each zkgroup decryption costs about a millisecond, so a large group would
+ * otherwise be decrypted in full on every refresh. Both the number of groups and the entries per
+ * group are bounded, least recently used first out.
+ */
+final class GroupCiphertextCache {
+
+    private static final int MAX_GROUPS            = 8;
+    private static final int MAX_ENTRIES_PER_GROUP = 2048;
+
+    private final Map<ByteString, Entries> groups = new BoundedMap<>(MAX_GROUPS);
+
+    synchronized Entries forGroup(GroupSecretParams groupSecretParams) {
+        ByteString key     = ByteString.copyFrom(groupSecretParams.serialize());
+        Entries    entries = groups.get(key);
+
+        if (entries == null) {
+            entries = new Entries();
+            groups.put(key, entries);
+        }
+
+        return entries;
+    }
+
+    /**
+     * The cached plaintexts of a single group. Safe to use from several threads at once.
+     */
+    static final class Entries {
+
+        private final Map<ByteString, UUID>       uuids       = new BoundedMap<>(MAX_ENTRIES_PER_GROUP);
+        private final Map<ByteString, ProfileKey> profileKeys = new BoundedMap<>(MAX_ENTRIES_PER_GROUP);
+
+        synchronized UUID getUuid(ByteString uuidCiphertext) {
+            return uuids.get(uuidCiphertext);
+        }
+
+        synchronized void putUuid(ByteString uuidCiphertext, UUID uuid) {
+            uuids.put(uuidCiphertext, uuid);
+        }
+
+        /**
+         * @return The serialized profile key, or null if this ciphertext has not been decrypted for this UUID.
+         */
+        synchronized byte[] getProfileKey(ByteString profileKeyCiphertext, UUID uuid) {
+            ProfileKey profileKey = profileKeys.get(profileKeyCiphertext);
+
+            return profileKey != null && profileKey.uuid.equals(uuid) ? profileKey.serialized : null;
+        }
+
+        synchronized void putProfileKey(ByteString profileKeyCiphertext, UUID uuid, byte[] serializedProfileKey) {
+            profileKeys.put(profileKeyCiphertext, new ProfileKey(uuid, serializedProfileKey));
+        }
+    }
+
+    /**
+     * A profile key ciphertext only decrypts against the UUID it was made for, so that is kept too.
+     */
+    private static final class ProfileKey {
+        private final UUID   uuid;
+        private final byte[] serialized;
+
+        private ProfileKey(UUID uuid, byte[] serialized) {
+            this.uuid       = uuid;
+            this.serialized = serialized;
+        }
+    }
+
+    private static final class BoundedMap<K, V> extends LinkedHashMap<K, V> {
+
+        private final int maxSize;
+
+        BoundedMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
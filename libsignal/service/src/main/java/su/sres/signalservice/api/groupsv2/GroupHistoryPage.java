@@ -0,0 +1,34 @@
+package su.sres.signalservice.api.groupsv2;
+
+import java.util.List;
+
+/**
+ * One page of a group's decrypted history, as the server returned it.
+ */
+public final class GroupHistoryPage {
+
+    private final List<DecryptedGroupHistoryEntry> results;
+    private final boolean                          hasMore;
+    private final int                              nextPageRevision;
+
+    GroupHistoryPage(List<DecryptedGroupHistoryEntry> results, boolean hasMore, int nextPageRevision) {
+        this.results          = results;
+        this.hasMore          = hasMore;
+        this.nextPageRevision = nextPageRevision;
+    }
+
+    public List<DecryptedGroupHistoryEntry> getResults() {
+        return results;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Valid if {@link #hasMore()}.
+     */
+    public int getNextPageRevision() {
+        return nextPageRevision;
+    }
+}
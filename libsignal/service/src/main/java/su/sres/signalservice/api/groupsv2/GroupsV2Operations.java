@@ -47,6 +47,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 
 /**
  * Contains operations to create, modify and validate groups and group changes.
@@ -61,16 +64,35 @@ public final class GroupsV2Operations {
     /** Highest change epoch this class knows now to decrypt */
     public static final int HIGHEST_KNOWN_EPOCH = 1;
 
+    /** Fewer members than this are not worth handing to other threads */
+    private static final int MIN_MEMBERS_PER_TASK = 16;
+
     private final ServerPublicParams        serverPublicParams;
     private final ClientZkProfileOperations clientZkProfileOperations;
     private final ClientZkAuthOperations    clientZkAuthOperations;
     private final SecureRandom              random;
+    private final GroupCiphertextCache      ciphertextCache;
+    private final ExecutorService           decryptionExecutor;
+    private final int                       decryptionParallelism;
 
     public GroupsV2Operations(ClientZkOperations clientZkOperations) {
+        this(clientZkOperations, null);
+    }
+
+    /**
+     * @param decryptionExecutor Used to decrypt the members of large groups in parallel, or null to
+     *                           decrypt them on the calling thread. The calling thread also takes
+     *                           part and runs any work the executor has not started, so this may be
+     *                           a pool that callers are themselves running on.
+     */
+    public GroupsV2Operations(ClientZkOperations clientZkOperations, ExecutorService decryptionExecutor) {
         this.serverPublicParams        = clientZkOperations.getServerPublicParams();
         this.clientZkProfileOperations = clientZkOperations.getProfileOperations();
         this.clientZkAuthOperations    = clientZkOperations.getAuthOperations();
         this.random                    = new SecureRandom();
+        this.ciphertextCache           = new GroupCiphertextCache();
+        this.decryptionExecutor        = decryptionExecutor;
+        this.decryptionParallelism     = decryptionExecutor != null ? Runtime.getRuntime().availableProcessors() : 1;
     }
 
     /**
@@ -135,12 +157,14 @@ public final class GroupsV2Operations {
      */
     public final class GroupOperations {
 
-        private final GroupSecretParams   groupSecretParams;
-        private final ClientZkGroupCipher clientZkGroupCipher;
+        private final GroupSecretParams            groupSecretParams;
+        private final ClientZkGroupCipher          clientZkGroupCipher;
+        private final GroupCiphertextCache.Entries plaintexts;
 
         private GroupOperations(GroupSecretParams groupSecretParams) {
             this.groupSecretParams   = groupSecretParams;
             this.clientZkGroupCipher = new ClientZkGroupCipher(groupSecretParams);
+            this.plaintexts          = ciphertextCache.forGroup(groupSecretParams);
         }
 
         public GroupChange.Actions.Builder createModifyGroupTitle(final String title) {
@@ -356,28 +380,15 @@ public final class GroupsV2Operations {
         public DecryptedGroup decryptGroup(Group group)
                 throws VerificationFailedException, InvalidGroupStateException
         {
-            List<Member>                    membersList                = group.getMembersList();
-            List<PendingMember>             pendingMembersList         = group.getPendingMembersList();
-            List<RequestingMember>          requestingMembersList      = group.getRequestingMembersList();
-            List<DecryptedMember>           decryptedMembers           = new ArrayList<>(membersList.size());
-            List<DecryptedPendingMember>    decryptedPendingMembers    = new ArrayList<>(pendingMembersList.size());
-            List<DecryptedRequestingMember> decryptedRequestingMembers = new ArrayList<>(requestingMembersList.size());
-
-            for (Member member : membersList) {
-                try {
-                    decryptedMembers.add(decryptMember(member).build());
-                } catch (InvalidInputException e) {
-                    throw new InvalidGroupStateException(e);
-                }
-            }
-
-            for (PendingMember member : pendingMembersList) {
-                decryptedPendingMembers.add(decryptMember(member));
-            }
-
-            for (RequestingMember member : requestingMembersList) {
-                decryptedRequestingMembers.add(decryptRequestingMember(member));
-            }
+            List<DecryptedMember>           decryptedMembers           = decryptAll(group.getMembersList(), member -> {
+                                                                             try {
+                                                                                 return decryptMember(member).build();
+                                                                             } catch (InvalidInputException e) {
+                                                                                 throw new InvalidGroupStateException(e);
+                                                                             }
+                                                                         });
+            List<DecryptedPendingMember>    decryptedPendingMembers    = decryptAll(group.getPendingMembersList(), this::decryptMember);
+            List<DecryptedRequestingMember> decryptedRequestingMembers = decryptAll(group.getRequestingMembersList(), this::decryptRequestingMember);
 
             return DecryptedGroup.newBuilder()
                     .setTitle(decryptTitle(group.getTitle()))
@@ -466,7 +477,7 @@ public final class GroupsV2Operations {
                             .setRole(Member.Role.UNKNOWN)
                             .setJoinedAtRevision(-1)
                             .setUuid(UuidUtil.toByteString(uuid))
-                            .setProfileKey(ByteString.copyFrom(decryptProfileKey(ByteString.copyFrom(presentation.getProfileKeyCiphertext().serialize()), uuid).serialize())));
+                            .setProfileKey(decryptProfileKeyToByteString(ByteString.copyFrom(presentation.getProfileKeyCiphertext().serialize()), uuid)));
                 } catch (InvalidInputException e) {
                     throw new InvalidGroupStateException(e);
                 }
@@ -505,13 +516,12 @@ public final class GroupsV2Operations {
                 } catch (InvalidInputException e) {
                     throw new InvalidGroupStateException(e);
                 }
-                UUID       uuid       = clientZkGroupCipher.decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
-                ProfileKey profileKey = clientZkGroupCipher.decryptProfileKey(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid);
+                UUID uuid = decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
                 builder.addPromotePendingMembers(DecryptedMember.newBuilder()
                         .setJoinedAtRevision(-1)
                         .setRole(Member.Role.DEFAULT)
                         .setUuid(UuidUtil.toByteString(uuid))
-                        .setProfileKey(ByteString.copyFrom(profileKey.serialize())));
+                        .setProfileKey(decryptProfileKeyToByteString(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid)));
             }
 
             // Field 10
@@ -592,13 +602,12 @@ public final class GroupsV2Operations {
                         .setRole(member.getRole());
             } else {
                 ProfileKeyCredentialPresentation profileKeyCredentialPresentation = new ProfileKeyCredentialPresentation(member.getPresentation().toByteArray());
-                UUID                             uuid                             = clientZkGroupCipher.decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
-                ProfileKey                       profileKey                       = clientZkGroupCipher.decryptProfileKey(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid);
+                UUID                             uuid                             = decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
 
                 return DecryptedMember.newBuilder()
                         .setUuid(UuidUtil.toByteString(uuid))
                         .setJoinedAtRevision(member.getJoinedAtRevision())
-                        .setProfileKey(ByteString.copyFrom(profileKey.serialize()))
+                        .setProfileKey(decryptProfileKeyToByteString(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid))
                         .setRole(member.getRole());
             }
         }
@@ -644,27 +653,34 @@ public final class GroupsV2Operations {
                     throw new InvalidGroupStateException(e);
                 }
 
-                UUID       uuid       = clientZkGroupCipher.decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
-                ProfileKey profileKey = clientZkGroupCipher.decryptProfileKey(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid);
+                UUID uuid = decryptUuid(profileKeyCredentialPresentation.getUuidCiphertext());
 
                 return DecryptedRequestingMember.newBuilder()
                         .setUuid(UuidUtil.toByteString(uuid))
-                        .setProfileKey(ByteString.copyFrom(profileKey.serialize()))
+                        .setProfileKey(decryptProfileKeyToByteString(profileKeyCredentialPresentation.getProfileKeyCiphertext(), uuid))
                         .build();
             }
         }
 
-        private ProfileKey decryptProfileKey(ByteString profileKey, UUID uuid) throws VerificationFailedException, InvalidGroupStateException {
+        private ByteString decryptProfileKeyToByteString(ByteString profileKey, UUID uuid) throws VerificationFailedException, InvalidGroupStateException {
+            byte[] cached = plaintexts.getProfileKey(profileKey, uuid);
+
+            if (cached != null) {
+                return ByteString.copyFrom(cached);
+            }
+
             try {
-                ProfileKeyCiphertext profileKeyCiphertext = new ProfileKeyCiphertext(profileKey.toByteArray());
-                return clientZkGroupCipher.decryptProfileKey(profileKeyCiphertext, uuid);
+                byte[] serialized = clientZkGroupCipher.decryptProfileKey(new ProfileKeyCiphertext(profileKey.toByteArray()), uuid).serialize();
+
+                plaintexts.putProfileKey(profileKey, uuid, serialized);
+                return ByteString.copyFrom(serialized);
             } catch (InvalidInputException e) {
                 throw new InvalidGroupStateException(e);
             }
         }
 
-        private ByteString decryptProfileKeyToByteString(ByteString profileKey, UUID uuid) throws VerificationFailedException, InvalidGroupStateException {
-            return ByteString.copyFrom(decryptProfileKey(profileKey, uuid).serialize());
+        private ByteString decryptProfileKeyToByteString(ProfileKeyCiphertext profileKey, UUID uuid) throws VerificationFailedException, InvalidGroupStateException {
+            return decryptProfileKeyToByteString(ByteString.copyFrom(profileKey.serialize()), uuid);
         }
 
         private ByteString decryptUuidToByteString(ByteString userId) throws InvalidGroupStateException, VerificationFailedException {
@@ -676,24 +692,96 @@ public final class GroupsV2Operations {
         }
 
         private UUID decryptUuid(ByteString userId) throws InvalidGroupStateException, VerificationFailedException {
+            UUID cached = plaintexts.getUuid(userId);
+
+            if (cached != null) {
+                return cached;
+            }
+
             try {
-                return clientZkGroupCipher.decryptUuid(new UuidCiphertext(userId.toByteArray()));
+                UUID uuid = clientZkGroupCipher.decryptUuid(new UuidCiphertext(userId.toByteArray()));
+
+                plaintexts.putUuid(userId, uuid);
+                return uuid;
             } catch (InvalidInputException e) {
                 throw new InvalidGroupStateException(e);
             }
         }
 
+        private UUID decryptUuid(UuidCiphertext userId) throws InvalidGroupStateException, VerificationFailedException {
+            return decryptUuid(ByteString.copyFrom(userId.serialize()));
+        }
+
         /**
          * Attempts to decrypt a UUID, but will return {@link #UNKNOWN_UUID} if it cannot.
          */
         private UUID decryptUuidOrUnknown(ByteString userId) {
             try {
-                return clientZkGroupCipher.decryptUuid(new UuidCiphertext(userId.toByteArray()));
-            } catch (InvalidInputException | VerificationFailedException e) {
+                return decryptUuid(userId);
+            } catch (InvalidGroupStateException | VerificationFailedException e) {
                 return UNKNOWN_UUID;
             }
         }
 
+        /**
+         * Decrypts each item, keeping their order. Large lists are split across the decryption
+         * executor, with this thread running whichever parts the executor has not got to.
+         */
+        private <I, O> List<O> decryptAll(List<I> items, Decryptor<I, O> decryptor)
+                throws VerificationFailedException, InvalidGroupStateException
+        {
+            int taskCount = Math.min(decryptionParallelism, items.size() / MIN_MEMBERS_PER_TASK);
+
+            if (taskCount <= 1) {
+                return decryptRange(items, 0, items.size(), decryptor);
+            }
+
+            List<FutureTask<List<O>>> tasks     = new ArrayList<>(taskCount);
+            int                       chunkSize = (items.size() + taskCount - 1) / taskCount;
+
+            for (int start = 0; start < items.size(); start += chunkSize) {
+                int from = start;
+                int to   = Math.min(start + chunkSize, items.size());
+
+                tasks.add(new FutureTask<>(() -> decryptRange(items, from, to, decryptor)));
+            }
+
+            for (int i = 1; i < tasks.size(); i++) {
+                decryptionExecutor.execute(tasks.get(i));
+            }
+
+            List<O> results = new ArrayList<>(items.size());
+
+            for (FutureTask<List<O>> task : tasks) {
+                task.run();
+
+                try {
+                    results.addAll(getUninterruptibly(task));
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+
+                    if      (cause instanceof VerificationFailedException) throw (VerificationFailedException) cause;
+                    else if (cause instanceof InvalidGroupStateException)  throw (InvalidGroupStateException) cause;
+                    else if (cause instanceof RuntimeException)            throw (RuntimeException) cause;
+                    else                                                   throw new AssertionError(cause);
+                }
+            }
+
+            return results;
+        }
+
+        private <I, O> List<O> decryptRange(List<I> items, int from, int to, Decryptor<I, O> decryptor)
+                throws VerificationFailedException, InvalidGroupStateException
+        {
+            List<O> results = new ArrayList<>(to - from);
+
+            for (int i = from; i < to; i++) {
+                results.add(decryptor.decrypt(items.get(i)));
+            }
+
+            return results;
+        }
+
         ByteString encryptTitle(String title) {
             try {
                 GroupAttributeBlob blob = GroupAttributeBlob.newBuilder().setTitle(title).build();
@@ -785,6 +873,31 @@ public final class GroupsV2Operations {
         }
     }
 
+    /**
+     * Only used once the task has been run on this thread or started on another, so the wait is short.
+     */
+    private static <T> T getUninterruptibly(FutureTask<T> task) throws ExecutionException {
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private interface Decryptor<I, O> {
+        O decrypt(I item) throws VerificationFailedException, InvalidGroupStateException;
+    }
+
     public static class NewGroup {
         private final GroupSecretParams groupSecretParams;
         private final Group             newGroupMessage;
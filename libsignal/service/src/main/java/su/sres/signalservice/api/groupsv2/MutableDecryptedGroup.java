@@ -0,0 +1,395 @@
+package su.sres.signalservice.api.groupsv2;
+
+import com.google.protobuf.ByteString;
+
+import org.whispersystems.libsignal.logging.Log;
+
+import su.sres.storageservice.protos.groups.Member;
+import su.sres.storageservice.protos.groups.local.DecryptedApproveMember;
+import su.sres.storageservice.protos.groups.local.DecryptedGroup;
+import su.sres.storageservice.protos.groups.local.DecryptedGroupChange;
+import su.sres.storageservice.protos.groups.local.DecryptedMember;
+import su.sres.storageservice.protos.groups.local.DecryptedModifyMemberRole;
+import su.sres.storageservice.protos.groups.local.DecryptedPendingMember;
+import su.sres.storageservice.protos.groups.local.DecryptedPendingMemberRemoval;
+import su.sres.storageservice.protos.groups.local.DecryptedRequestingMember;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A working copy of a {@link DecryptedGroup} that a run of {@link DecryptedGroupChange}s can be
+ * applied to, with the member, pending and requesting lists indexed by UUID (and pending members
+ * also by UUID ciphertext). Applying a change costs in proportion to the size of the change rather
+ * than the size of the group, and the protobuf is only built once, by {@link #build()}.
+ * <p>
+ * Lists keep their order, and where a UUID appears more than once the first is the one found, as
+ * with a linear search of the lists. If a change cannot be applied the model is left part way
+ * through it and should be discarded. Not thread safe.
+ */
+public final class MutableDecryptedGroup {
+
+    private static final String TAG = MutableDecryptedGroup.class.getSimpleName();
+
+    private static final int BY_UUID        = 0;
+    private static final int BY_CIPHER_TEXT = 1;
+
+    private final DecryptedGroup.Builder                 attributes;
+    private final IndexedList<DecryptedMember>           members;
+    private final IndexedList<DecryptedPendingMember>    pendingMembers;
+    private final IndexedList<DecryptedRequestingMember> requestingMembers;
+
+    public MutableDecryptedGroup(DecryptedGroup group) {
+        this.attributes        = DecryptedGroup.newBuilder(group)
+                                               .clearMembers()
+                                               .clearPendingMembers()
+                                               .clearRequestingMembers();
+        this.members           = new IndexedList<>(group.getMembersList(), DecryptedMember::getUuid);
+        this.pendingMembers    = new IndexedList<>(group.getPendingMembersList(), DecryptedPendingMember::getUuid, DecryptedPendingMember::getUuidCipherText);
+        this.requestingMembers = new IndexedList<>(group.getRequestingMembersList(), DecryptedRequestingMember::getUuid);
+    }
+
+    public int getRevision() {
+        return attributes.getRevision();
+    }
+
+    public void apply(DecryptedGroupChange change)
+            throws NotAbleToApplyGroupV2ChangeException
+    {
+        if (change.getRevision() != getRevision() + 1) {
+            throw new NotAbleToApplyGroupV2ChangeException();
+        }
+
+        applyWithoutRevisionCheck(change);
+    }
+
+    public void applyWithoutRevisionCheck(DecryptedGroupChange change)
+            throws NotAbleToApplyGroupV2ChangeException
+    {
+        attributes.setRevision(change.getRevision());
+
+        applyAddMemberAction(change.getNewMembersList());
+
+        applyDeleteMemberActions(change.getDeleteMembersList());
+
+        applyModifyMemberRoleActions(change.getModifyMemberRolesList());
+
+        applyModifyMemberProfileKeyActions(change.getModifiedProfileKeysList());
+
+        applyAddPendingMemberActions(change.getNewPendingMembersList());
+
+        applyDeletePendingMemberActions(change.getDeletePendingMembersList());
+
+        applyPromotePendingMemberActions(change.getPromotePendingMembersList());
+
+        DecryptedGroupUtil.applyModifyTitleAction(attributes, change);
+
+        DecryptedGroupUtil.applyModifyAvatarAction(attributes, change);
+
+        DecryptedGroupUtil.applyModifyDisappearingMessagesTimerAction(attributes, change);
+
+        DecryptedGroupUtil.applyModifyAttributesAccessControlAction(attributes, change);
+
+        DecryptedGroupUtil.applyModifyMembersAccessControlAction(attributes, change);
+
+        DecryptedGroupUtil.applyModifyAddFromInviteLinkAccessControlAction(attributes, change);
+
+        applyAddRequestingMembers(change.getNewRequestingMembersList());
+
+        applyDeleteRequestingMembers(change.getDeleteRequestingMembersList());
+
+        applyPromoteRequestingMemberActions(change.getPromoteRequestingMembersList());
+
+        DecryptedGroupUtil.applyInviteLinkPassword(attributes, change);
+    }
+
+    public DecryptedGroup build() {
+        return attributes.clone()
+                         .addAllMembers(members.toList())
+                         .addAllPendingMembers(pendingMembers.toList())
+                         .addAllRequestingMembers(requestingMembers.toList())
+                         .build();
+    }
+
+    private void applyAddMemberAction(List<DecryptedMember> newMembersList) {
+        for (DecryptedMember member : newMembersList) {
+            int index = members.indexOf(BY_UUID, member.getUuid());
+
+            if (index == -1) {
+                members.add(member);
+            } else {
+                members.set(index, member);
+            }
+
+            pendingMembers.removeAll(BY_UUID, member.getUuid());
+            requestingMembers.removeAll(BY_UUID, member.getUuid());
+        }
+    }
+
+    private void applyDeleteMemberActions(List<ByteString> deleteMembersList) {
+        for (ByteString removedMember : deleteMembersList) {
+            int index = members.indexOf(BY_UUID, removedMember);
+
+            if (index == -1) {
+                Log.w(TAG, "Deleted member on change not found in group");
+                continue;
+            }
+
+            members.remove(index);
+        }
+    }
+
+    private void applyModifyMemberRoleActions(List<DecryptedModifyMemberRole> modifyMemberRolesList) throws NotAbleToApplyGroupV2ChangeException {
+        for (DecryptedModifyMemberRole modifyMemberRole : modifyMemberRolesList) {
+            int index = members.indexOf(BY_UUID, modifyMemberRole.getUuid());
+
+            if (index == -1) {
+                throw new NotAbleToApplyGroupV2ChangeException();
+            }
+
+            Member.Role role = modifyMemberRole.getRole();
+
+            DecryptedGroupUtil.ensureKnownRole(role);
+
+            members.set(index, DecryptedMember.newBuilder(members.get(index))
+                                              .setRole(role)
+                                              .build());
+        }
+    }
+
+    private void applyModifyMemberProfileKeyActions(List<DecryptedMember> modifiedProfileKeysList) throws NotAbleToApplyGroupV2ChangeException {
+        for (DecryptedMember modifyProfileKey : modifiedProfileKeysList) {
+            int index = members.indexOf(BY_UUID, modifyProfileKey.getUuid());
+
+            if (index == -1) {
+                throw new NotAbleToApplyGroupV2ChangeException();
+            }
+
+            members.set(index, DecryptedMember.newBuilder(members.get(index))
+                                              .setProfileKey(modifyProfileKey.getProfileKey())
+                                              .build());
+        }
+    }
+
+    private void applyAddPendingMemberActions(List<DecryptedPendingMember> newPendingMembersList) throws NotAbleToApplyGroupV2ChangeException {
+        for (DecryptedPendingMember pendingMember : newPendingMembersList) {
+            if (members.indexOf(BY_UUID, pendingMember.getUuid()) != -1) {
+                throw new NotAbleToApplyGroupV2ChangeException();
+            }
+
+            if (pendingMembers.indexOf(BY_CIPHER_TEXT, pendingMember.getUuidCipherText()) == -1) {
+                pendingMembers.add(pendingMember);
+            }
+        }
+    }
+
+    private void applyDeletePendingMemberActions(List<DecryptedPendingMemberRemoval> deletePendingMembersList) {
+        for (DecryptedPendingMemberRemoval removedMember : deletePendingMembersList) {
+            int index = pendingMembers.indexOf(BY_CIPHER_TEXT, removedMember.getUuidCipherText());
+
+            if (index == -1) {
+                Log.w(TAG, "Deleted pending member on change not found in group");
+                continue;
+            }
+
+            pendingMembers.remove(index);
+        }
+    }
+
+    private void applyPromotePendingMemberActions(List<DecryptedMember> promotePendingMembersList) throws NotAbleToApplyGroupV2ChangeException {
+        for (DecryptedMember newMember : promotePendingMembersList) {
+            int index = pendingMembers.indexOf(BY_UUID, newMember.getUuid());
+
+            if (index == -1) {
+                throw new NotAbleToApplyGroupV2ChangeException();
+            }
+
+            pendingMembers.remove(index);
+            members.add(newMember);
+        }
+    }
+
+    private void applyAddRequestingMembers(List<DecryptedRequestingMember> newRequestingMembers) {
+        for (DecryptedRequestingMember requestingMember : newRequestingMembers) {
+            requestingMembers.add(requestingMember);
+        }
+    }
+
+    private void applyDeleteRequestingMembers(List<ByteString> deleteRequestingMembersList) {
+        for (ByteString removedMember : deleteRequestingMembersList) {
+            int index = requestingMembers.indexOf(BY_UUID, removedMember);
+
+            if (index == -1) {
+                Log.w(TAG, "Deleted member on change not found in group");
+                continue;
+            }
+
+            requestingMembers.remove(index);
+        }
+    }
+
+    private void applyPromoteRequestingMemberActions(List<DecryptedApproveMember> promoteRequestingMembers) throws NotAbleToApplyGroupV2ChangeException {
+        for (DecryptedApproveMember approvedMember : promoteRequestingMembers) {
+            int index = requestingMembers.indexOf(BY_UUID, approvedMember.getUuid());
+
+            if (index == -1) {
+                Log.w(TAG, "Deleted member on change not found in group");
+                continue;
+            }
+
+            DecryptedRequestingMember requestingMember = requestingMembers.get(index);
+            Member.Role               role             = approvedMember.getRole();
+
+            DecryptedGroupUtil.ensureKnownRole(role);
+
+            requestingMembers.remove(index);
+            members.add(DecryptedMember.newBuilder()
+                                       .setUuid(approvedMember.getUuid())
+                                       .setProfileKey(requestingMember.getProfileKey())
+                                       .setRole(role)
+                                       .build());
+        }
+    }
+
+    private interface KeyFunction<V> {
+        ByteString keyOf(V value);
+    }
+
+    /**
+     * An ordered list with constant time lookup by one or more keys. Removed entries leave a hole
+     * that is compacted away once holes outnumber entries, so indexes stay valid until then.
+     */
+    private static final class IndexedList<V> {
+
+        private static final int MIN_HOLES_TO_COMPACT = 64;
+
+        private final ArrayList<V>                                 slots;
+        private final KeyFunction<V>[]                             keyFunctions;
+        private final List<Map<ByteString, ArrayDeque<Integer>>>   indexes;
+
+        private int holes;
+
+        @SafeVarargs
+        IndexedList(List<V> values, KeyFunction<V>... keyFunctions) {
+            this.slots        = new ArrayList<>(values);
+            this.keyFunctions = keyFunctions;
+            this.indexes      = new ArrayList<>(keyFunctions.length);
+
+            for (int i = 0; i < keyFunctions.length; i++) {
+                indexes.add(new HashMap<>());
+            }
+
+            reindex();
+        }
+
+        /**
+         * @return The slot of the first entry with this key, or -1.
+         */
+        int indexOf(int keyIndex, ByteString key) {
+            ArrayDeque<Integer> matches = indexes.get(keyIndex).get(key);
+
+            return matches != null ? matches.peekFirst() : -1;
+        }
+
+        V get(int slot) {
+            return slots.get(slot);
+        }
+
+        /**
+         * Replaces the entry in a slot with one that has the same keys.
+         */
+        void set(int slot, V value) {
+            slots.set(slot, value);
+        }
+
+        void add(V value) {
+            int slot = slots.size();
+
+            slots.add(value);
+            addToIndexes(value, slot);
+        }
+
+        void remove(int slot) {
+            V value = slots.get(slot);
+
+            for (int i = 0; i < keyFunctions.length; i++) {
+                ByteString          key     = keyFunctions[i].keyOf(value);
+                ArrayDeque<Integer> matches = indexes.get(i).get(key);
+
+                matches.remove(Integer.valueOf(slot));
+
+                if (matches.isEmpty()) {
+                    indexes.get(i).remove(key);
+                }
+            }
+
+            slots.set(slot, null);
+            holes++;
+
+            if (holes >= MIN_HOLES_TO_COMPACT && holes > slots.size() / 2) {
+                compact();
+            }
+        }
+
+        void removeAll(int keyIndex, ByteString key) {
+            int slot;
+
+            while ((slot = indexOf(keyIndex, key)) != -1) {
+                remove(slot);
+            }
+        }
+
+        List<V> toList() {
+            if (holes == 0) {
+                return slots;
+            }
+
+            List<V> values = new ArrayList<>(slots.size() - holes);
+
+            for (V value : slots) {
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+
+            return values;
+        }
+
+        private void compact() {
+            List<V> values = toList();
+
+            slots.clear();
+            slots.addAll(values);
+            holes = 0;
+
+            reindex();
+        }
+
+        private void reindex() {
+            for (Map<ByteString, ArrayDeque<Integer>> index : indexes) {
+                index.clear();
+            }
+
+            for (int slot = 0; slot < slots.size(); slot++) {
+                addToIndexes(slots.get(slot), slot);
+            }
+        }
+
+        private void addToIndexes(V value, int slot) {
+            for (int i = 0; i < keyFunctions.length; i++) {
+                ByteString          key     = keyFunctions[i].keyOf(value);
+                ArrayDeque<Integer> matches = indexes.get(i).get(key);
+
+                if (matches == null) {
+                    matches = new ArrayDeque<>(1);
+                    indexes.get(i).put(key, matches);
+                }
+
+                matches.addLast(slot);
+            }
+        }
+    }
+}
@@ -6,20 +6,40 @@ import su.sres.signalservice.internal.util.Util;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 public class PaddingInputStream extends FilterInputStream {
 
+  private static final long UNKNOWN = -1;
+
   private long paddingRemaining;
+  private long plaintextLength;
 
   public PaddingInputStream(InputStream inputStream, long plaintextLength) {
     super(inputStream);
     this.paddingRemaining = getPaddedSize(plaintextLength) - plaintextLength;
+    this.plaintextLength  = plaintextLength;
+  }
+
+  /**
+   * For streams whose length is not known up front. The padding is sized once the wrapped stream
+   * is exhausted, after which {@link #getPlaintextLength()} reports how much was read from it.
+   */
+  public PaddingInputStream(InputStream inputStream) {
+    super(inputStream);
+    this.paddingRemaining = UNKNOWN;
+    this.plaintextLength  = 0;
   }
 
   @Override
   public int read() throws IOException {
     int result = super.read();
-    if (result != -1) return result;
+    if (result != -1) {
+      onPlaintextRead(1);
+      return result;
+    }
+
+    onPlaintextEnd();
 
     if (paddingRemaining > 0) {
       paddingRemaining--;
@@ -32,10 +52,16 @@ public class PaddingInputStream extends FilterInputStream {
   @Override
   public int read(byte[] buffer, int offset, int length) throws IOException {
     int result = super.read(buffer, offset, length);
-    if (result != -1) return result;
+    if (result != -1) {
+      onPlaintextRead(result);
+      return result;
+    }
+
+    onPlaintextEnd();
 
     if (paddingRemaining > 0) {
       length = Math.min(length, Util.toIntExact(paddingRemaining));
+      Arrays.fill(buffer, offset, offset + length, (byte) 0x00);
       paddingRemaining -= length;
       return length;
     }
@@ -50,7 +76,26 @@ public class PaddingInputStream extends FilterInputStream {
 
   @Override
   public int available() throws IOException {
-    return super.available() + Util.toIntExact(paddingRemaining);
+    return super.available() + (paddingRemaining == UNKNOWN ? 0 : Util.toIntExact(paddingRemaining));
+  }
+
+  /**
+   * @return The unpadded length. For a stream of unknown length, this is only final once the stream has been read to the end.
+   */
+  public long getPlaintextLength() {
+    return plaintextLength;
+  }
+
+  private void onPlaintextRead(int count) {
+    if (paddingRemaining == UNKNOWN) {
+      plaintextLength += count;
+    }
+  }
+
+  private void onPlaintextEnd() {
+    if (paddingRemaining == UNKNOWN) {
+      paddingRemaining = getPaddedSize(plaintextLength) - plaintextLength;
+    }
   }
 
   public static long getPaddedSize(long size) {
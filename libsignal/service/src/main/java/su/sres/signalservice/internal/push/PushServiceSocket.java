@@ -46,6 +46,7 @@ import org.whispersystems.libsignal.state.SignedPreKeyRecord;
 import org.whispersystems.libsignal.util.Pair;
 import org.whispersystems.libsignal.util.guava.Optional;
 
+import su.sres.signalservice.api.crypto.DigestingOutputStream;
 import su.sres.signalservice.api.crypto.UnidentifiedAccess;
 import su.sres.signalservice.api.messages.SignalServiceAttachment.ProgressListener;
 import su.sres.signalservice.api.messages.calls.SystemCertificatesVersion;
@@ -229,6 +230,7 @@ public class PushServiceSocket {
     private static final ResponseCodeHandler NO_HANDLER = new EmptyResponseCodeHandler();
 
     private static final long CDN2_RESUMABLE_LINK_LIFETIME_MILLIS = TimeUnit.DAYS.toMillis(7);
+    private static final int  CDN2_STREAMING_CHUNK_SIZE           = 8 * 256 * 1024;
 
     private static final int MAX_FOLLOW_UPS = 20;
 
@@ -964,6 +966,26 @@ public class PushServiceSocket {
                 attachment.getCancelationSignal());
     }
 
+    /**
+     * Uploads an attachment whose length is not known until its stream ends, such as one that is still being
+     * written. The ciphertext is sent in fixed size chunks as it becomes available, and the total length is only
+     * declared with the final chunk.
+     */
+    public byte[] uploadStreamingAttachment(PushAttachmentData attachment) throws IOException {
+
+        if (attachment.getResumableUploadSpec() == null || attachment.getResumableUploadSpec().getExpirationTimestamp() < System.currentTimeMillis()) {
+            throw new ResumeLocationInvalidException();
+        }
+
+        return uploadToCdn2InChunks(attachment.getResumableUploadSpec().getResumeLocation(),
+                attachment.getData(),
+                "application/octet-stream",
+                attachment.getDataSize(),
+                attachment.getOutputStreamFactory(),
+                attachment.getListener(),
+                attachment.getCancelationSignal());
+    }
+
     private void downloadFromCdn(File destination, int cdnNumber, String path, long maxSizeBytes, ProgressListener listener)
             throws IOException, MissingConfigurationException
     {
@@ -1213,6 +1235,118 @@ public class PushServiceSocket {
         }
     }
 
+    private byte[] uploadToCdn2InChunks(String resumableUrl, InputStream data, String contentType, long expectedLength, OutputStreamFactory outputStreamFactory, ProgressListener progressListener, CancelationSignal cancelationSignal) throws IOException {
+        ConnectionHolder connectionHolder = getRandom(cdnClientsMap.get(2), random);
+        OkHttpClient okHttpClient = connectionHolder.getClient()
+                .newBuilder()
+                .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
+                .build();
+
+        ChunkBuffer           chunk        = new ChunkBuffer(CDN2_STREAMING_CHUNK_SIZE);
+        DigestingOutputStream outputStream = outputStreamFactory.createFor(chunk);
+        byte[]                buffer       = new byte[8192];
+        long                  uploaded     = 0;
+        long                  total        = 0;
+
+        int read;
+
+        while ((read = data.read(buffer, 0, buffer.length)) != -1) {
+            if (cancelationSignal != null && cancelationSignal.isCanceled()) {
+                throw new IOException("Canceled!");
+            }
+
+            outputStream.write(buffer, 0, read);
+            total += read;
+
+            while (chunk.size() >= CDN2_STREAMING_CHUNK_SIZE) {
+                uploaded = uploadChunk(okHttpClient, connectionHolder, resumableUrl, contentType, chunk, uploaded, CDN2_STREAMING_CHUNK_SIZE, -1);
+            }
+
+            if (progressListener != null) {
+                progressListener.onAttachmentProgress(Math.max(expectedLength, total), total);
+            }
+        }
+
+        outputStream.flush();
+
+        long contentLength = uploaded + chunk.size();
+
+        do {
+            uploaded = uploadChunk(okHttpClient, connectionHolder, resumableUrl, contentType, chunk, uploaded, chunk.size(), contentLength);
+        } while (uploaded < contentLength);
+
+        if (progressListener != null) {
+            progressListener.onAttachmentProgress(total, total);
+        }
+
+        return outputStream.getTransmittedDigest();
+    }
+
+    /**
+     * Sends the first {@code length} bytes of the chunk, starting at {@code offset} in the upload. A {@code contentLength}
+     * of -1 marks an intermediate chunk, whose length must be a multiple of 256 KiB.
+     *
+     * @return The new upload offset. The bytes the server persisted are removed from the chunk.
+     */
+    private long uploadChunk(OkHttpClient okHttpClient, ConnectionHolder connectionHolder, String resumableUrl, String contentType, ChunkBuffer chunk, long offset, int length, long contentLength)
+            throws IOException
+    {
+        String contentRange;
+
+        if (length == 0) contentRange = String.format(Locale.US, "bytes */%d", contentLength);
+        else if (contentLength < 0) contentRange = String.format(Locale.US, "bytes %d-%d/*", offset, offset + length - 1);
+        else contentRange = String.format(Locale.US, "bytes %d-%d/%d", offset, offset + length - 1, contentLength);
+
+        Request.Builder request = new Request.Builder().url(buildConfiguredUrl(connectionHolder, resumableUrl))
+                .put(RequestBody.create(MediaType.parse(contentType), chunk.getBuffer(), 0, length))
+                .addHeader("Content-Range", contentRange);
+
+        if (connectionHolder.getHostHeader().isPresent()) {
+            request.header("host", connectionHolder.getHostHeader().get());
+        }
+
+        Call call = okHttpClient.newCall(request.build());
+
+        synchronized (connections) {
+            connections.add(call);
+        }
+
+        try (Response response = executeUploadChunk(call)) {
+            long persisted;
+
+            if (response.isSuccessful() && contentLength >= 0) {
+                persisted = contentLength;
+            } else if (response.code() == 308) {
+                String rangeCompleted = response.header("Range");
+                persisted = rangeCompleted == null ? 0 : Long.parseLong(rangeCompleted.split("-")[1]) + 1;
+            } else if (response.code() == 404) {
+                throw new ResumeLocationInvalidException();
+            } else {
+                throw new NonSuccessfulResponseCodeException(response.code(), "Response: " + response);
+            }
+
+            if (persisted < offset || persisted > offset + length || (persisted == offset && !response.isSuccessful())) {
+                throw new PushNetworkException("Unexpected upload progress: " + persisted + " after sending " + contentRange);
+            }
+
+            chunk.discard(Util.toIntExact(persisted - offset));
+            return persisted;
+        } finally {
+            synchronized (connections) {
+                connections.remove(call);
+            }
+        }
+    }
+
+    private static Response executeUploadChunk(Call call) throws PushNetworkException {
+        try {
+            return call.execute();
+        } catch (IOException e) {
+            throw new PushNetworkException(e);
+        }
+    }
+
     private ResumeInfo getResumeInfo(String resumableUrl, long contentLength) throws IOException {
         ConnectionHolder connectionHolder = getRandom(cdnClientsMap.get(2), random);
         OkHttpClient okHttpClient = connectionHolder.getClient()
@@ -2081,6 +2215,25 @@ public class PushServiceSocket {
         }
     }
 
+    /**
+     * Holds ciphertext that has not been uploaded yet.
+     */
+    private static final class ChunkBuffer extends ByteArrayOutputStream {
+
+        ChunkBuffer(int size) {
+            super(size);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        void discard(int length) {
+            System.arraycopy(buf, length, buf, 0, count - length);
+            count -= length;
+        }
+    }
+
     private final class ResumeInfo {
         private final String contentRange;
         private final long contentStart;
@@ -0,0 +1,106 @@
+package su.sres.signalservice.api;
+
+import org.junit.Test;
+import org.whispersystems.libsignal.SignalProtocolAddress;
+import org.whispersystems.libsignal.state.SessionRecord;
+import org.whispersystems.libsignal.state.impl.InMemorySignalProtocolStore;
+import org.whispersystems.libsignal.util.KeyHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class BufferedSessionStoreTest {
+
+    private static final SignalProtocolAddress DEVICE_1 = new SignalProtocolAddress("+14155550101", 1);
+    private static final SignalProtocolAddress DEVICE_2 = new SignalProtocolAddress("+14155550101", 2);
+
+    private final TestStore            store    = new TestStore();
+    private final BufferedSessionStore buffered = new BufferedSessionStore(store);
+
+    @Test
+    public void storeSession_isNotWrittenUntilFlush() {
+        SessionRecord record = new SessionRecord();
+
+        buffered.storeSession(DEVICE_1, record);
+
+        assertFalse(store.containsSession(DEVICE_1));
+        assertSame(record, buffered.loadSession(DEVICE_1));
+        assertTrue(store.batches.isEmpty());
+    }
+
+    @Test
+    public void flush_writesAllSessionsInOneBatch() {
+        buffered.storeSession(DEVICE_1, new SessionRecord());
+        buffered.storeSession(DEVICE_2, new SessionRecord());
+
+        buffered.flush();
+        buffered.flush();
+
+        assertEquals(1, store.batches.size());
+        assertEquals(2, store.batches.get(0).size());
+        assertTrue(store.containsSession(DEVICE_1));
+        assertTrue(store.containsSession(DEVICE_2));
+    }
+
+    @Test
+    public void loadSession_fallsThroughToStore() {
+        store.storeSession(DEVICE_1, new SessionRecord());
+
+        assertNotNull(buffered.loadSession(DEVICE_1));
+        assertTrue(buffered.containsSession(DEVICE_1));
+        assertFalse(buffered.containsSession(DEVICE_2));
+    }
+
+    @Test
+    public void deleteSession_dropsBufferedSession() {
+        buffered.storeSession(DEVICE_1, new SessionRecord());
+        buffered.deleteSession(DEVICE_1);
+        buffered.flush();
+
+        assertTrue(store.batches.isEmpty());
+        assertFalse(store.containsSession(DEVICE_1));
+    }
+
+    @Test
+    public void getSubDeviceSessions_flushesFirst() {
+        buffered.storeSession(DEVICE_2, new SessionRecord());
+
+        List<Integer> subDevices = buffered.getSubDeviceSessions("+14155550101");
+
+        assertEquals(1, store.batches.size());
+        assertEquals(1, subDevices.size());
+        assertEquals(2, (int) subDevices.get(0));
+    }
+
+    private static final class TestStore extends InMemorySignalProtocolStore implements SignalServiceProtocolStore {
+
+        private final List<Map<SignalProtocolAddress, SessionRecord>> batches = new ArrayList<>();
+
+        TestStore() {
+            super(KeyHelper.generateIdentityKeyPair(), 1);
+        }
+
+        @Override
+        public void archiveSession(SignalProtocolAddress address) {
+            SessionRecord record = loadSession(address);
+            record.archiveCurrentState();
+            storeSession(address, record);
+        }
+
+        @Override
+        public void storeSessions(Map<SignalProtocolAddress, SessionRecord> sessions) {
+            batches.add(sessions);
+
+            for (Map.Entry<SignalProtocolAddress, SessionRecord> session : sessions.entrySet()) {
+                storeSession(session.getKey(), session.getValue());
+            }
+        }
+    }
+}
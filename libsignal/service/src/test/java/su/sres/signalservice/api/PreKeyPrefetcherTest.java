@@ -0,0 +1,115 @@
+package su.sres.signalservice.api;
+
+import org.junit.After;
+import org.junit.Test;
+import org.whispersystems.libsignal.util.guava.Optional;
+
+import su.sres.signalservice.api.push.SignalServiceAddress;
+import su.sres.signalservice.api.push.exceptions.PushNetworkException;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class PreKeyPrefetcherTest {
+
+    private static final SignalServiceAddress RECIPIENT = new SignalServiceAddress(UUID.randomUUID(), "+14155550101");
+
+    private final ExecutorService executor    = Executors.newSingleThreadExecutor();
+    private final AtomicInteger   established = new AtomicInteger();
+    private final CountDownLatch  release     = new CountDownLatch(1);
+
+    private final PreKeyPrefetcher.Establisher blockingEstablisher = (recipient, access, deviceId) -> {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        established.incrementAndGet();
+    };
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void awaitPrefetch_withoutPrefetch_returnsRightAway() throws Exception {
+        PreKeyPrefetcher prefetcher = new PreKeyPrefetcher(blockingEstablisher, executor);
+
+        prefetcher.awaitPrefetch(RECIPIENT, 1);
+
+        assertEquals(0, established.get());
+    }
+
+    @Test
+    public void awaitPrefetch_whenInFlight_waitsForSession() throws Exception {
+        PreKeyPrefetcher prefetcher = new PreKeyPrefetcher(blockingEstablisher, executor);
+
+        prefetcher.prefetch(RECIPIENT, Optional.absent(), 1);
+        prefetcher.prefetch(RECIPIENT, Optional.absent(), 1);
+
+        Thread waiter = new Thread(() -> {
+            try {
+                prefetcher.awaitPrefetch(RECIPIENT, 1);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        waiter.start();
+
+        waiter.join(100);
+        assertTrue(waiter.isAlive());
+
+        release.countDown();
+
+        waiter.join(1000);
+        assertFalse(waiter.isAlive());
+        assertEquals(1, established.get());
+    }
+
+    @Test
+    public void prefetch_whenUnused_stillEstablishesSession() throws Exception {
+        PreKeyPrefetcher prefetcher = new PreKeyPrefetcher(blockingEstablisher, executor);
+
+        prefetcher.prefetch(RECIPIENT, Optional.absent(), 1);
+        release.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(1, established.get());
+    }
+
+    @Test
+    public void prefetch_afterCompletion_canRunAgain() throws Exception {
+        release.countDown();
+
+        PreKeyPrefetcher prefetcher = new PreKeyPrefetcher(blockingEstablisher, executor);
+
+        prefetcher.prefetch(RECIPIENT, Optional.absent(), 1);
+        prefetcher.awaitPrefetch(RECIPIENT, 1);
+        executor.submit(() -> {}).get();
+
+        prefetcher.prefetch(RECIPIENT, Optional.absent(), 1);
+        prefetcher.awaitPrefetch(RECIPIENT, 1);
+        executor.submit(() -> {}).get();
+
+        assertEquals(2, established.get());
+    }
+
+    @Test
+    public void awaitPrefetch_whenPrefetchFailed_leavesItToCaller() throws Exception {
+        PreKeyPrefetcher prefetcher = new PreKeyPrefetcher((recipient, access, deviceId) -> { throw new PushNetworkException("failed"); }, executor);
+
+        prefetcher.prefetch(RECIPIENT, Optional.absent(), 1);
+        prefetcher.awaitPrefetch(RECIPIENT, 1);
+    }
+}
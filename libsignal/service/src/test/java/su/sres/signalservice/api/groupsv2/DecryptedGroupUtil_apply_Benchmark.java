@@ -0,0 +1,158 @@
+package su.sres.signalservice.api.groupsv2;
+
+import com.google.protobuf.ByteString;
+
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import su.sres.signalservice.api.util.UuidUtil;
+import su.sres.storageservice.protos.groups.local.DecryptedGroup;
+import su.sres.storageservice.protos.groups.local.DecryptedGroupChange;
+import su.sres.storageservice.protos.groups.local.DecryptedMember;
+import su.sres.storageservice.protos.groups.local.DecryptedPendingMemberRemoval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static su.sres.signalservice.api.groupsv2.ProtoTestUtils.demoteAdmin;
+import static su.sres.signalservice.api.groupsv2.ProtoTestUtils.member;
+import static su.sres.signalservice.api.groupsv2.ProtoTestUtils.pendingMember;
+import static su.sres.signalservice.api.groupsv2.ProtoTestUtils.promoteAdmin;
+
+/**
+ * Applies 1,000 changes to a 1,000 member group, both a change at a time with
+ * {@link DecryptedGroupUtil#apply} and in one go with {@link DecryptedGroupUtil#applyAll}, and
+ * checks they agree. The timing in {@link #benchmark()} is ignored in regular runs and reports on
+ * stdout when run by hand.
+ */
+public final class DecryptedGroupUtil_apply_Benchmark {
+
+    private static final int MEMBERS = 1000;
+    private static final int CHANGES = 1000;
+
+    private static final int WARMUP_ITERATIONS   = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private static DecryptedGroup             group;
+    private static List<DecryptedGroupChange> changes;
+
+    @BeforeClass
+    public static void setUp() {
+        Random                 random       = new Random(1234);
+        List<UUID>             memberUuids  = new ArrayList<>(MEMBERS);
+        List<UUID>             pendingUuids = new ArrayList<>();
+        DecryptedGroup.Builder builder      = DecryptedGroup.newBuilder().setRevision(0);
+
+        for (int i = 0; i < MEMBERS; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+
+            memberUuids.add(uuid);
+            builder.addMembers(member(uuid, newProfileKey(random), 0));
+        }
+
+        group   = builder.build();
+        changes = new ArrayList<>(CHANGES);
+
+        for (int revision = 1; revision <= CHANGES; revision++) {
+            DecryptedGroupChange.Builder change = DecryptedGroupChange.newBuilder().setRevision(revision);
+            UUID                         target = memberUuids.get(random.nextInt(memberUuids.size()));
+
+            switch (revision % 5) {
+                case 0:
+                    change.addModifiedProfileKeys(member(target, newProfileKey(random), 0));
+                    break;
+                case 1:
+                    change.addModifyMemberRoles(random.nextBoolean() ? promoteAdmin(target) : demoteAdmin(target));
+                    break;
+                case 2:
+                    UUID added = new UUID(random.nextLong(), random.nextLong());
+
+                    memberUuids.remove(target);
+                    memberUuids.add(added);
+                    change.addDeleteMembers(UuidUtil.toByteString(target))
+                          .addNewMembers(member(added, newProfileKey(random), revision));
+                    break;
+                case 3:
+                    UUID invited = new UUID(random.nextLong(), random.nextLong());
+
+                    pendingUuids.add(invited);
+                    change.addNewPendingMembers(pendingMember(invited));
+                    break;
+                case 4:
+                    if (pendingUuids.isEmpty()) break;
+
+                    UUID pending = pendingUuids.remove(random.nextInt(pendingUuids.size()));
+
+                    if (random.nextBoolean()) {
+                        memberUuids.add(pending);
+                        change.addPromotePendingMembers(member(pending, newProfileKey(random), revision));
+                    } else {
+                        change.addDeletePendingMembers(DecryptedPendingMemberRemoval.newBuilder()
+                                                                                    .setUuid(UuidUtil.toByteString(pending))
+                                                                                    .setUuidCipherText(ProtoTestUtils.encrypt(pending)));
+                    }
+                    break;
+            }
+
+            changes.add(change.build());
+        }
+    }
+
+    @Test
+    public void apply_all_matches_one_at_a_time() throws NotAbleToApplyGroupV2ChangeException {
+        DecryptedGroup expected = applyOneAtATime();
+        DecryptedGroup actual   = DecryptedGroupUtil.applyAll(group, changes);
+
+        assertEquals(expected, actual);
+        assertEquals(CHANGES, actual.getRevision());
+    }
+
+    @Test
+    @Ignore("Benchmark, run by hand")
+    public void benchmark() throws NotAbleToApplyGroupV2ChangeException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            applyOneAtATime();
+            DecryptedGroupUtil.applyAll(group, changes);
+        }
+
+        long oneAtATimeNanos = 0;
+        long applyAllNanos   = 0;
+
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            applyOneAtATime();
+            oneAtATimeNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            DecryptedGroupUtil.applyAll(group, changes);
+            applyAllNanos += System.nanoTime() - start;
+        }
+
+        System.out.println(String.format(Locale.US, "%d members x %d changes: apply %.1f ms, applyAll %.1f ms",
+                                         MEMBERS,
+                                         CHANGES,
+                                         oneAtATimeNanos / 1e6 / MEASURED_ITERATIONS,
+                                         applyAllNanos / 1e6 / MEASURED_ITERATIONS));
+    }
+
+    private static DecryptedGroup applyOneAtATime() throws NotAbleToApplyGroupV2ChangeException {
+        DecryptedGroup result = group;
+
+        for (DecryptedGroupChange change : changes) {
+            result = DecryptedGroupUtil.apply(result, change);
+        }
+
+        return result;
+    }
+
+    private static ByteString newProfileKey(Random random) {
+        byte[] profileKey = new byte[32];
+        random.nextBytes(profileKey);
+        return ByteString.copyFrom(profileKey);
+    }
+}
@@ -19,6 +19,9 @@ import org.signal.zkgroup.profiles.ProfileKey;
 import su.sres.signalservice.api.util.UuidUtil;
 import su.sres.signalservice.internal.util.Util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
@@ -848,4 +851,144 @@ public final class DecryptedGroupUtil_apply_Test {
                 newGroup);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void apply_all_matches_applying_one_at_a_time() throws NotAbleToApplyGroupV2ChangeException {
+        UUID                   uuid1    = UUID.randomUUID();
+        UUID                   uuid2    = UUID.randomUUID();
+        UUID                   uuid3    = UUID.randomUUID();
+        DecryptedPendingMember pending3 = pendingMember(uuid3);
+        DecryptedGroup         group    = DecryptedGroup.newBuilder()
+                                                        .setRevision(10)
+                                                        .addMembers(member(uuid1))
+                                                        .addPendingMembers(pending3)
+                                                        .build();
+
+        List<DecryptedGroupChange> changes = Arrays.asList(DecryptedGroupChange.newBuilder()
+                                                                               .setRevision(11)
+                                                                               .addNewMembers(member(uuid2))
+                                                                               .setNewTitle(DecryptedString.newBuilder().setValue("Title"))
+                                                                               .build(),
+                                                           DecryptedGroupChange.newBuilder()
+                                                                               .setRevision(12)
+                                                                               .addModifyMemberRoles(ProtoTestUtils.promoteAdmin(uuid2))
+                                                                               .addPromotePendingMembers(member(uuid3, randomProfileKey()))
+                                                                               .build(),
+                                                           DecryptedGroupChange.newBuilder()
+                                                                               .setRevision(13)
+                                                                               .addDeleteMembers(UuidUtil.toByteString(uuid1))
+                                                                               .addModifiedProfileKeys(member(uuid3, randomProfileKey()))
+                                                                               .build());
+
+        DecryptedGroup expected = group;
+        for (DecryptedGroupChange change : changes) {
+            expected = DecryptedGroupUtil.apply(expected, change);
+        }
+
+        DecryptedGroup newGroup = DecryptedGroupUtil.applyAll(group, changes);
+
+        assertEquals(expected, newGroup);
+        assertEquals(13, newGroup.getRevision());
+        assertEquals(Arrays.asList(uuid2, uuid3), DecryptedGroupUtil.toUuidList(newGroup.getMembersList()));
+        assertEquals(0, newGroup.getPendingMembersCount());
+    }
+
+    @Test(expected = NotAbleToApplyGroupV2ChangeException.class)
+    public void apply_all_checks_every_revision() throws NotAbleToApplyGroupV2ChangeException {
+        DecryptedGroupUtil.applyAll(DecryptedGroup.newBuilder()
+                                                  .setRevision(10)
+                                                  .build(),
+                                    Arrays.asList(DecryptedGroupChange.newBuilder().setRevision(11).build(),
+                                                  DecryptedGroupChange.newBuilder().setRevision(13).build()));
+    }
+
+    @Test
+    public void apply_remove_and_add_back_member_moves_to_end() throws NotAbleToApplyGroupV2ChangeException {
+        DecryptedMember member1 = member(UUID.randomUUID());
+        DecryptedMember member2 = member(UUID.randomUUID());
+        DecryptedMember member3 = member(UUID.randomUUID());
+
+        DecryptedGroup newGroup = DecryptedGroupUtil.applyAll(DecryptedGroup.newBuilder()
+                                                                            .setRevision(10)
+                                                                            .addMembers(member1)
+                                                                            .addMembers(member2)
+                                                                            .addMembers(member3)
+                                                                            .build(),
+                                                              Arrays.asList(DecryptedGroupChange.newBuilder()
+                                                                                                .setRevision(11)
+                                                                                                .addDeleteMembers(member1.getUuid())
+                                                                                                .build(),
+                                                                            DecryptedGroupChange.newBuilder()
+                                                                                                .setRevision(12)
+                                                                                                .addNewMembers(member1)
+                                                                                                .build()));
+
+        assertEquals(DecryptedGroup.newBuilder()
+                        .setRevision(12)
+                        .addMembers(member2)
+                        .addMembers(member3)
+                        .addMembers(member1)
+                        .build(),
+                newGroup);
+    }
+
+    @Test
+    public void apply_to_repeated_unknown_uuid_affects_first_only() throws NotAbleToApplyGroupV2ChangeException {
+        DecryptedMember member1  = member(UUID.randomUUID());
+        DecryptedMember unknown1 = member(UuidUtil.UNKNOWN_UUID, ByteString.EMPTY, 1);
+        DecryptedMember unknown2 = member(UuidUtil.UNKNOWN_UUID, ByteString.EMPTY, 2);
+
+        DecryptedGroup newGroup = DecryptedGroupUtil.apply(DecryptedGroup.newBuilder()
+                        .setRevision(10)
+                        .addMembers(unknown1)
+                        .addMembers(member1)
+                        .addMembers(unknown2)
+                        .build(),
+                DecryptedGroupChange.newBuilder()
+                        .setRevision(11)
+                        .addDeleteMembers(UuidUtil.toByteString(UuidUtil.UNKNOWN_UUID))
+                        .addModifyMemberRoles(ProtoTestUtils.promoteAdmin(UuidUtil.UNKNOWN_UUID))
+                        .build());
+
+        assertEquals(DecryptedGroup.newBuilder()
+                        .setRevision(11)
+                        .addMembers(member1)
+                        .addMembers(DecryptedMember.newBuilder(unknown2).setRole(Member.Role.ADMINISTRATOR))
+                        .build(),
+                newGroup);
+    }
+
+    @Test
+    public void apply_all_many_removals_keeps_order() throws NotAbleToApplyGroupV2ChangeException {
+        DecryptedGroup.Builder     group   = DecryptedGroup.newBuilder().setRevision(0);
+        List<DecryptedMember>      members = new ArrayList<>();
+        List<DecryptedGroupChange> changes = new ArrayList<>();
+
+        for (int i = 0; i < 300; i++) {
+            DecryptedMember member = member(UUID.randomUUID());
+            members.add(member);
+            group.addMembers(member);
+        }
+
+        for (int i = 0; i < 250; i++) {
+            changes.add(DecryptedGroupChange.newBuilder()
+                                            .setRevision(i + 1)
+                                            .addDeleteMembers(members.get(i).getUuid())
+                                            .build());
+        }
+
+        DecryptedMember member = member(UUID.randomUUID());
+        changes.add(DecryptedGroupChange.newBuilder()
+                                        .setRevision(251)
+                                        .addNewMembers(member)
+                                        .addModifyMemberRoles(ProtoTestUtils.promoteAdmin(DecryptedGroupUtil.toUuid(members.get(299))))
+                                        .build());
+
+        DecryptedGroup newGroup = DecryptedGroupUtil.applyAll(group.build(), changes);
+
+        List<DecryptedMember> expected = new ArrayList<>(members.subList(250, 299));
+        expected.add(asAdmin(members.get(299)));
+        expected.add(member);
+
+        assertEquals(expected, newGroup.getMembersList());
+    }
+}
@@ -40,16 +40,22 @@ import su.sres.signalservice.api.util.UuidUtil;
 import su.sres.signalservice.internal.util.Util;
 import su.sres.signalservice.testutil.ZkGroupLibraryUtil;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
 import static su.sres.signalservice.api.groupsv2.ProtobufTestUtils.getMaxDeclaredFieldNumber;
 
 public final class GroupsV2Operations_decrypt_group_Test {
 
+    private ClientZkOperations                 clientZkOperations;
     private GroupSecretParams                  groupSecretParams;
     private GroupsV2Operations.GroupOperations groupOperations;
 
@@ -57,8 +63,8 @@ public final class GroupsV2Operations_decrypt_group_Test {
     public void setup() throws InvalidInputException {
         ZkGroupLibraryUtil.assumeZkGroupSupportedOnOS();
 
-        TestZkGroupServer  server             = new TestZkGroupServer();
-        ClientZkOperations clientZkOperations = new ClientZkOperations(server.getServerPublicParams());
+        TestZkGroupServer server = new TestZkGroupServer();
+        clientZkOperations = new ClientZkOperations(server.getServerPublicParams());
 
         groupSecretParams = GroupSecretParams.deriveFromMasterKey(new GroupMasterKey(Util.getSecretBytes(32)));
         groupOperations   = new GroupsV2Operations(clientZkOperations).forGroup(groupSecretParams);
@@ -272,6 +278,70 @@ public final class GroupsV2Operations_decrypt_group_Test {
         assertEquals(password, decryptedGroup.getInviteLinkPassword());
     }
 
+    @Test
+    public void decrypt_many_members_in_parallel_keeps_order() throws VerificationFailedException, InvalidGroupStateException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            GroupsV2Operations.GroupOperations parallelOperations = new GroupsV2Operations(clientZkOperations, executor).forGroup(groupSecretParams);
+
+            List<DecryptedMember> expected = new ArrayList<>();
+            Group.Builder         group    = Group.newBuilder();
+
+            for (int i = 0; i < 100; i++) {
+                UUID       uuid       = UUID.randomUUID();
+                ProfileKey profileKey = newProfileKey();
+
+                group.addMembers(Member.newBuilder()
+                        .setRole(Member.Role.DEFAULT)
+                        .setUserId(groupOperations.encryptUuid(uuid))
+                        .setJoinedAtRevision(i)
+                        .setProfileKey(encryptProfileKey(uuid, profileKey)));
+
+                expected.add(DecryptedMember.newBuilder()
+                        .setJoinedAtRevision(i)
+                        .setRole(Member.Role.DEFAULT)
+                        .setUuid(UuidUtil.toByteString(uuid))
+                        .setProfileKey(ByteString.copyFrom(profileKey.serialize()))
+                        .build());
+            }
+
+            assertEquals(expected, parallelOperations.decryptGroup(group.build()).getMembersList());
+            assertEquals(expected, parallelOperations.decryptGroup(group.build()).getMembersList());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void decrypt_with_cached_uuid_does_not_reuse_profile_key_for_other_uuid() throws VerificationFailedException, InvalidGroupStateException {
+        UUID       member1    = UUID.randomUUID();
+        UUID       member2    = UUID.randomUUID();
+        ProfileKey profileKey = newProfileKey();
+        ByteString ciphertext = encryptProfileKey(member1, profileKey);
+
+        Group valid = Group.newBuilder()
+                .addMembers(Member.newBuilder()
+                        .setUserId(groupOperations.encryptUuid(member1))
+                        .setProfileKey(ciphertext))
+                .build();
+
+        Group mismatched = Group.newBuilder()
+                .addMembers(Member.newBuilder()
+                        .setUserId(groupOperations.encryptUuid(member2))
+                        .setProfileKey(ciphertext))
+                .build();
+
+        assertEquals(ByteString.copyFrom(profileKey.serialize()), groupOperations.decryptGroup(valid).getMembers(0).getProfileKey());
+
+        try {
+            groupOperations.decryptGroup(mismatched);
+            fail();
+        } catch (VerificationFailedException e) {
+            // expected
+        }
+    }
+
     private ByteString encryptProfileKey(UUID uuid, ProfileKey profileKey) {
         return ByteString.copyFrom(new ClientZkGroupCipher(groupSecretParams).encryptProfileKey(profileKey, uuid).serialize());
     }
@@ -0,0 +1,67 @@
+package su.sres.signalservice.internal.crypto;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PaddingInputStreamTest {
+
+    @Test
+    public void givenUnknownLength_whenIReadToEnd_thenOutputMatchesKnownLength() throws IOException {
+        byte[] plaintext = new byte[10_000];
+        new Random(1).nextBytes(plaintext);
+
+        byte[] known   = readFully(new PaddingInputStream(new ByteArrayInputStream(plaintext), plaintext.length));
+        byte[] unknown = readFully(new PaddingInputStream(new ByteArrayInputStream(plaintext)));
+
+        assertEquals(PaddingInputStream.getPaddedSize(plaintext.length), unknown.length);
+        assertArrayEquals(known, unknown);
+    }
+
+    @Test
+    public void givenUnknownLength_whenIReadToEnd_thenPlaintextLengthIsReported() throws IOException {
+        PaddingInputStream testSubject = new PaddingInputStream(new ByteArrayInputStream(new byte[1234]));
+
+        readFully(testSubject);
+
+        assertEquals(1234, testSubject.getPlaintextLength());
+    }
+
+    @Test
+    public void givenDirtyBuffer_whenIReadPadding_thenPaddingIsZero() throws IOException {
+        byte[]             plaintext   = new byte[]{1, 2, 3};
+        PaddingInputStream testSubject = new PaddingInputStream(new ByteArrayInputStream(plaintext));
+        byte[]             buffer      = new byte[1024];
+
+        Arrays.fill(buffer, (byte) 0x7f);
+        assertEquals(plaintext.length, testSubject.read(buffer));
+
+        Arrays.fill(buffer, (byte) 0x7f);
+        int read = testSubject.read(buffer);
+
+        assertEquals(PaddingInputStream.getPaddedSize(plaintext.length) - plaintext.length, read);
+        for (int i = 0; i < read; i++) {
+            assertEquals(0, buffer[i]);
+        }
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[]                buffer       = new byte[777];
+
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+
+        return outputStream.toByteArray();
+    }
+}
@@ -19,6 +19,10 @@ import java.util.concurrent.Executors;
  * It's also worth noting that this controller has lifecycle that matches the {@link PagedData} that
  * contains it. When invalidations come in, this class will just swap out the active controller with
  * a new one.
+ *
+ * Positional item changes can't wait on the executor, since they describe the data set as it is
+ * right now, so they are passed straight to the active controller. If one arrives while a new
+ * controller is being sized, the size may be stale, so the new controller is built again.
  */
 class BufferedPagingController<E> implements PagingController {
 
@@ -27,8 +31,9 @@ class BufferedPagingController<E> implements PagingController {
     private final MutableLiveData<List<E>> liveData;
     private final Executor                 serializationExecutor;
 
-    private PagingController activeController;
-    private int              lastRequestedIndex;
+    private volatile PagingController activeController;
+    private          int              lastRequestedIndex;
+    private          int              changeCount;
 
     BufferedPagingController(PagedDataSource<E> dataSource, PagingConfig config, @NonNull MutableLiveData<List<E>> liveData) {
         this.dataSource            = dataSource;
@@ -57,8 +62,62 @@ class BufferedPagingController<E> implements PagingController {
                 activeController.onDataInvalidated();
             }
 
-            activeController = new FixedSizePagingController<>(dataSource, config, liveData, dataSource.size());
-            activeController.onDataNeededAroundIndex(lastRequestedIndex);
+            PagingController controller = null;
+
+            while (controller == null) {
+                int expectedChangeCount = getChangeCount();
+
+                PagingController candidate = new FixedSizePagingController<>(dataSource, config, liveData, dataSource.size());
+
+                synchronized (this) {
+                    if (changeCount == expectedChangeCount) {
+                        controller       = candidate;
+                        activeController = candidate;
+                    }
+                }
+
+                if (controller == null) {
+                    candidate.onDataInvalidated();
+                }
+            }
+
+            controller.onDataNeededAroundIndex(lastRequestedIndex);
         });
     }
+
+    @Override
+    public synchronized void onDataItemInserted(int position) {
+        changeCount++;
+        if (activeController != null) {
+            activeController.onDataItemInserted(position);
+        }
+    }
+
+    @Override
+    public synchronized void onDataItemRemoved(int position) {
+        changeCount++;
+        if (activeController != null) {
+            activeController.onDataItemRemoved(position);
+        }
+    }
+
+    @Override
+    public synchronized void onDataItemMoved(int fromPosition, int toPosition) {
+        changeCount++;
+        if (activeController != null) {
+            activeController.onDataItemMoved(fromPosition, toPosition);
+        }
+    }
+
+    @Override
+    public synchronized void onDataItemChanged(int position) {
+        changeCount++;
+        if (activeController != null) {
+            activeController.onDataItemChanged(position);
+        }
+    }
+
+    private synchronized int getChangeCount() {
+        return changeCount;
+    }
 }
\ No newline at end of file
@@ -3,41 +3,217 @@ package su.sres.paging;
 import androidx.annotation.NonNull;
 
 import java.util.AbstractList;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
- * A placeholder class for efficiently storing lists that are mostly empty space.
- * TODO [greyson][paging]
+ * A list for storing data sets that are mostly empty space, such as the placeholders of a large
+ * paged conversation.
+ *
+ * Elements are kept in fixed-size pages, and a page is only allocated once something non-null is
+ * stored in it, so a list of any size costs one reference per {@link #PAGE_SIZE} elements until it
+ * is filled in. Because pages are fixed-size, {@link #size()} and {@link #get(int)} are constant
+ * time, while inserting or removing shifts only the pages after the position that are loaded.
+ *
+ * Copying a list shares all of its pages with the copy, and a page is only copied the first time
+ * either list writes to it. So a new snapshot with one page loaded into it costs one page, not the
+ * whole list. Like any list it is not thread safe, and neither may be written while it is copied.
  */
 public class CompressedList<E> extends AbstractList<E> {
 
-    private final List<E> wrapped;
+    static final int PAGE_SIZE = 64;
+
+    private static final int PAGE_SHIFT = 6;
+    private static final int PAGE_MASK  = PAGE_SIZE - 1;
+
+    private static final Object[][] EMPTY_PAGES = new Object[0][];
+
+    private Object[][] pages;
+    private boolean[]  owned;
+    private int        size;
 
     public CompressedList(@NonNull List<E> source) {
-        this.wrapped = new ArrayList<>(source);
+        if (source instanceof CompressedList) {
+            CompressedList<?> other = (CompressedList<?>) source;
+
+            this.size  = other.size;
+            this.pages = other.pages.clone();
+            this.owned = new boolean[pages.length];
+
+            // Its pages are now shared, so it has to copy them before writing too.
+            Arrays.fill(other.owned, false);
+        } else {
+            this.size  = source.size();
+            this.pages = newPages(size);
+            this.owned = new boolean[pages.length];
+
+            for (int i = 0; i < size; i++) {
+                E element = source.get(i);
+
+                if (element != null) {
+                    set(i, element);
+                }
+            }
+        }
     }
 
     public CompressedList(int totalSize) {
-        this.wrapped = new ArrayList<>(totalSize);
-
-        for (int i = 0; i < totalSize; i++) {
-            wrapped.add(null);
+        if (totalSize < 0) {
+            throw new IllegalArgumentException("Negative size: " + totalSize);
         }
+
+        this.size  = totalSize;
+        this.pages = newPages(totalSize);
+        this.owned = new boolean[pages.length];
     }
 
     @Override
     public int size() {
-        return wrapped.size();
+        return size;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public E get(int index) {
-        return wrapped.get(index);
+        checkIndex(index);
+
+        Object[] page = pages[index >> PAGE_SHIFT];
+        return page != null ? (E) page[index & PAGE_MASK] : null;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public E set(int globalIndex, E element) {
-        return wrapped.set(globalIndex, element);
+        checkIndex(globalIndex);
+
+        if (element == null && pages[globalIndex >> PAGE_SHIFT] == null) {
+            return null;
+        }
+
+        Object[] page     = writablePage(globalIndex >> PAGE_SHIFT);
+        int      offset   = globalIndex & PAGE_MASK;
+        E        previous = (E) page[offset];
+
+        page[offset] = element;
+        return previous;
+    }
+
+    @Override
+    public void add(int globalIndex, E element) {
+        if (globalIndex < 0 || globalIndex > size) {
+            throw new IndexOutOfBoundsException("Index: " + globalIndex + ", Size: " + size);
+        }
+
+        if (size + 1 > pages.length * PAGE_SIZE) {
+            int length = Math.max(pages.length + 1, pages.length + (pages.length >> 3));
+
+            pages = Arrays.copyOf(pages, length);
+            owned = Arrays.copyOf(owned, length);
+        }
+
+        int    first = globalIndex >> PAGE_SHIFT;
+        int    last  = size >> PAGE_SHIFT;
+        Object carry = element;
+
+        for (int p = first; p <= last; p++) {
+            if (carry == null && pages[p] == null) {
+                continue;
+            }
+
+            Object[] page  = writablePage(p);
+            int      start = p == first ? globalIndex & PAGE_MASK : 0;
+            Object   out   = page[PAGE_MASK];
+
+            System.arraycopy(page, start, page, start + 1, PAGE_MASK - start);
+            page[start] = carry;
+            carry       = out;
+        }
+
+        size++;
+        modCount++;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int globalIndex) {
+        checkIndex(globalIndex);
+
+        int    first = globalIndex >> PAGE_SHIFT;
+        int    last  = (size - 1) >> PAGE_SHIFT;
+        Object carry = null;
+
+        for (int p = last; p >= first; p--) {
+            if (carry == null && pages[p] == null) {
+                continue;
+            }
+
+            Object[] page  = writablePage(p);
+            int      start = p == first ? globalIndex & PAGE_MASK : 0;
+            Object   out   = page[start];
+
+            System.arraycopy(page, start + 1, page, start, PAGE_MASK - start);
+            page[PAGE_MASK] = carry;
+            carry           = out;
+        }
+
+        size--;
+        modCount++;
+
+        if ((size & PAGE_MASK) == 0 && last < pages.length) {
+            pages[last] = null;
+            owned[last] = false;
+        }
+
+        return (E) carry;
+    }
+
+    /**
+     * @return The number of pages that have been allocated, whether shared or not.
+     */
+    int getAllocatedPageCount() {
+        int count = 0;
+
+        for (Object[] page : pages) {
+            if (page != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return True if the page holding the given index is the same instance in both lists.
+     */
+    boolean sharesPageWith(@NonNull CompressedList<?> other, int index) {
+        int p = index >> PAGE_SHIFT;
+        return p < pages.length && p < other.pages.length && pages[p] != null && pages[p] == other.pages[p];
+    }
+
+    private @NonNull Object[] writablePage(int p) {
+        Object[] page = pages[p];
+
+        if (page == null) {
+            page = new Object[PAGE_SIZE];
+        } else if (!owned[p]) {
+            page = page.clone();
+        } else {
+            return page;
+        }
+
+        pages[p] = page;
+        owned[p] = true;
+
+        return page;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static @NonNull Object[][] newPages(int size) {
+        return size > 0 ? new Object[((size - 1) >> PAGE_SHIFT) + 1][] : EMPTY_PAGES;
     }
-}
\ No newline at end of file
+}
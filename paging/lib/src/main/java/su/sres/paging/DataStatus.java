@@ -13,7 +13,8 @@ class DataStatus {
     private static final Pools.Pool<BitSet> POOL = new Pools.SynchronizedPool<>(1);
 
     private final BitSet state;
-    private final int    size;
+
+    private int size;
 
     public static DataStatus obtain(int size) {
         BitSet bitset = POOL.acquire();
@@ -36,6 +37,40 @@ class DataStatus {
         state.set(startInclusive, endExclusive, true);
     }
 
+    void clear(int index) {
+        state.clear(index);
+    }
+
+    /**
+     * Opens up an unmarked slot at {@code index}, shifting everything after it up by one.
+     */
+    void insertState(int index) {
+        for (int i = size; i > index; i--) {
+            state.set(i, state.get(i - 1));
+        }
+        state.clear(index);
+        size++;
+    }
+
+    /**
+     * Drops the slot at {@code index}, shifting everything after it down by one.
+     */
+    void removeState(int index) {
+        for (int i = index; i < size - 1; i++) {
+            state.set(i, state.get(i + 1));
+        }
+        state.clear(size - 1);
+        size--;
+    }
+
+    void moveState(int fromIndex, int toIndex) {
+        boolean marked = state.get(fromIndex);
+
+        removeState(fromIndex);
+        insertState(toIndex);
+        state.set(toIndex, marked);
+    }
+
     int getEarliestUnmarkedIndexInRange(int startInclusive, int endExclusive) {
         for (int i = startInclusive; i < endExclusive; i++) {
             if (!state.get(i)) {
@@ -13,10 +13,14 @@ import su.sres.core.util.logging.Log;
 /**
  * The workhorse of managing page requests.
  *
- * A controller whose life focuses around one invalidation cycle of a data set, and therefore has
- * a fixed size throughout. It assumes that all interface methods are called on a single thread,
- * which allows it to keep track of pending requests in a thread-safe way, while spinning off
- * tasks to fetch data on its own executor.
+ * A controller whose life focuses around one invalidation cycle of a data set. Its size only changes
+ * through the positional item callbacks, which shift the loaded data and load state in place rather
+ * than throwing them away. All interface methods are synchronized, so they may come from different
+ * threads, while tasks to fetch data are spun off onto its own executor.
+ *
+ * Every positional change bumps a version. A fetch that finishes after the data set has shifted
+ * underneath it is thrown away and retried, since its results may no longer line up with the
+ * positions it asked for.
  */
 class FixedSizePagingController<E> implements PagingController {
 
@@ -31,6 +35,8 @@ class FixedSizePagingController<E> implements PagingController {
     private final DataStatus               loadState;
 
     private List<E> data;
+    private int     lastAroundIndex;
+    private int     version;
 
     private volatile boolean invalidated;
 
@@ -47,17 +53,18 @@ class FixedSizePagingController<E> implements PagingController {
     }
 
     /**
-     * We assume this method is always called on the same thread, so we can read our
-     * {@code loadState} and construct the parameters of a fetch request. That fetch request can
-     * then be performed on separate single-thread executor.
+     * Reads our {@code loadState} and constructs the parameters of a fetch request, which is then
+     * performed on a separate single-thread executor.
      */
     @Override
-    public void onDataNeededAroundIndex(int aroundIndex) {
+    public synchronized void onDataNeededAroundIndex(int aroundIndex) {
         if (invalidated) {
             Log.w(TAG, buildLog(aroundIndex, "Invalidated! At very beginning."));
             return;
         }
 
+        lastAroundIndex = aroundIndex;
+
         if (loadState.size() == 0) {
             liveData.postValue(Collections.emptyList());
             return;
@@ -84,7 +91,8 @@ class FixedSizePagingController<E> implements PagingController {
             return;
         }
 
-        int totalSize = loadState.size();
+        int totalSize      = loadState.size();
+        int requestVersion = version;
 
         loadState.markRange(loadStart, loadEnd);
 
@@ -103,19 +111,41 @@ class FixedSizePagingController<E> implements PagingController {
                 return;
             }
 
-            List<E> updated = new CompressedList<>(data);
+            onDataLoaded(aroundIndex, loadStart, loaded, requestVersion);
+        });
+    }
+
+    private synchronized void onDataLoaded(int aroundIndex, int loadStart, @NonNull List<E> loaded, int requestVersion) {
+        if (invalidated) {
+            Log.w(TAG, buildLog(aroundIndex, "Invalidated! Before data could be applied."));
+            return;
+        }
+
+        if (requestVersion != version) {
+            if (DEBUG) Log.i(TAG, buildLog(aroundIndex, "Data shifted during load, retrying."));
 
-            for (int i = 0, len = Math.min(loaded.size(), data.size() - loadStart); i < len; i++) {
-                updated.set(loadStart + i, loaded.get(i));
+            for (int i = 0; i < data.size(); i++) {
+                if (data.get(i) == null) {
+                    loadState.clear(i);
+                }
             }
 
-            data = updated;
-            liveData.postValue(updated);
-        });
+            onDataNeededAroundIndex(lastAroundIndex);
+            return;
+        }
+
+        List<E> updated = new CompressedList<>(data);
+
+        for (int i = 0, len = Math.min(loaded.size(), data.size() - loadStart); i < len; i++) {
+            updated.set(loadStart + i, loaded.get(i));
+        }
+
+        data = updated;
+        liveData.postValue(updated);
     }
 
     @Override
-    public void onDataInvalidated() {
+    public synchronized void onDataInvalidated() {
         if (invalidated) {
             return;
         }
@@ -124,6 +154,70 @@ class FixedSizePagingController<E> implements PagingController {
         loadState.recycle();
     }
 
+    @Override
+    public synchronized void onDataItemInserted(int position) {
+        if (invalidated) {
+            return;
+        }
+
+        CompressedList<E> updated = new CompressedList<>(data);
+        updated.add(position, null);
+        loadState.insertState(position);
+
+        onDataShifted(updated);
+    }
+
+    @Override
+    public synchronized void onDataItemRemoved(int position) {
+        if (invalidated) {
+            return;
+        }
+
+        CompressedList<E> updated = new CompressedList<>(data);
+        updated.remove(position);
+        loadState.removeState(position);
+
+        onDataShifted(updated);
+    }
+
+    /**
+     * The moved item stays visible at its new position until its reload finishes.
+     */
+    @Override
+    public synchronized void onDataItemMoved(int fromPosition, int toPosition) {
+        if (invalidated) {
+            return;
+        }
+
+        CompressedList<E> updated = new CompressedList<>(data);
+        updated.add(toPosition, updated.remove(fromPosition));
+        loadState.moveState(fromPosition, toPosition);
+        loadState.clear(toPosition);
+
+        onDataShifted(updated);
+    }
+
+    @Override
+    public synchronized void onDataItemChanged(int position) {
+        if (invalidated) {
+            return;
+        }
+
+        loadState.clear(position);
+        onDataShifted(data);
+    }
+
+    private void onDataShifted(@NonNull List<E> updated) {
+        version++;
+
+        data = updated;
+        liveData.postValue(updated);
+
+        if (loadState.size() > 0) {
+            onDataNeededAroundIndex(Math.min(lastAroundIndex, loadState.size() - 1));
+        }
+    }
+
     private static String buildLog(int aroundIndex, String message) {
         return "onDataNeededAroundIndex(" + aroundIndex + ") " + message;
     }
@@ -3,4 +3,24 @@ package su.sres.paging;
 public interface PagingController {
     void onDataNeededAroundIndex(int aroundIndex);
     void onDataInvalidated();
+
+    /**
+     * An item was added at {@code position}. Later items move down by one.
+     */
+    void onDataItemInserted(int position);
+
+    /**
+     * The item at {@code position} was removed. Later items move up by one.
+     */
+    void onDataItemRemoved(int position);
+
+    /**
+     * The item at {@code fromPosition} now lives at {@code toPosition}, and its contents may have changed.
+     */
+    void onDataItemMoved(int fromPosition, int toPosition);
+
+    /**
+     * The contents of the item at {@code position} changed, but it did not move.
+     */
+    void onDataItemChanged(int position);
 }
@@ -27,6 +27,34 @@ public class ProxyPagingController implements PagingController {
         }
     }
 
+    @Override
+    public synchronized void onDataItemInserted(int position) {
+        if (proxied != null) {
+            proxied.onDataItemInserted(position);
+        }
+    }
+
+    @Override
+    public synchronized void onDataItemRemoved(int position) {
+        if (proxied != null) {
+            proxied.onDataItemRemoved(position);
+        }
+    }
+
+    @Override
+    public synchronized void onDataItemMoved(int fromPosition, int toPosition) {
+        if (proxied != null) {
+            proxied.onDataItemMoved(fromPosition, toPosition);
+        }
+    }
+
+    @Override
+    public synchronized void onDataItemChanged(int position) {
+        if (proxied != null) {
+            proxied.onDataItemChanged(position);
+        }
+    }
+
     /**
      * Updates the underlying controller to the one specified.
      */
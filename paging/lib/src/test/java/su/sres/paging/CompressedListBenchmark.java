@@ -0,0 +1,180 @@
+package su.sres.paging;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the memory and time taken by {@link CompressedList} with the null-padded
+ * {@link ArrayList} it replaced, for the placeholder list of a large conversation that has a few
+ * pages loaded into it. Results are printed.
+ * <p>
+ * Ignored, as memory and timings measured on a shared machine are too noisy to pass or fail a
+ * build on. Remove the annotation to run it by hand.
+ */
+@Ignore("Benchmark, run by hand")
+public final class CompressedListBenchmark {
+
+    private static final int SIZE       = 300_000;
+    private static final int PAGE       = 50;
+    private static final int SNAPSHOTS  = 200;
+    private static final int ITERATIONS = 5;
+
+    @Test
+    public void memory() {
+        long arrayList      = measureMemory(() -> paddedArrayList(SIZE));
+        long compressedList = measureMemory(() -> new CompressedList<Integer>(SIZE));
+
+        report("memory of an empty list", arrayList, compressedList, "bytes");
+
+        assertTrue(compressedList < arrayList);
+    }
+
+    @Test
+    public void time_snapshotsWhileLoading() {
+        long arrayList = measureTime(() -> {
+            List<Integer> data = paddedArrayList(SIZE);
+
+            for (int i = 0; i < SNAPSHOTS; i++) {
+                data = new ArrayList<>(data);
+                load(data, i);
+            }
+
+            return data;
+        });
+
+        long compressedList = measureTime(() -> {
+            List<Integer> data = new CompressedList<>(SIZE);
+
+            for (int i = 0; i < SNAPSHOTS; i++) {
+                data = new CompressedList<>(data);
+                load(data, i);
+            }
+
+            return data;
+        });
+
+        report(SNAPSHOTS + " snapshots with a page loaded into each", arrayList, compressedList, "ns");
+    }
+
+    @Test
+    public void time_insertAtTop() {
+        long arrayList = measureTime(() -> {
+            List<Integer> data = paddedArrayList(SIZE);
+            load(data, 0);
+
+            for (int i = 0; i < SNAPSHOTS; i++) {
+                data = new ArrayList<>(data);
+                data.add(0, i);
+            }
+
+            return data;
+        });
+
+        long compressedList = measureTime(() -> {
+            List<Integer> data = new CompressedList<>(SIZE);
+            load(data, 0);
+
+            for (int i = 0; i < SNAPSHOTS; i++) {
+                data = new CompressedList<>(data);
+                data.add(0, i);
+            }
+
+            return data;
+        });
+
+        report(SNAPSHOTS + " snapshots with an item inserted at the top", arrayList, compressedList, "ns");
+    }
+
+    @Test
+    public void time_get() {
+        List<Integer> arrayList      = paddedArrayList(SIZE);
+        List<Integer> compressedList = new CompressedList<>(SIZE);
+
+        for (int i = 0; i < 20; i++) {
+            load(arrayList, i);
+            load(compressedList, i);
+        }
+
+        report("reading every item", measureTime(() -> readAll(arrayList)), measureTime(() -> readAll(compressedList)), "ns");
+    }
+
+    private static List<Integer> paddedArrayList(int size) {
+        List<Integer> list = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            list.add(null);
+        }
+
+        return list;
+    }
+
+    private static void load(List<Integer> data, int page) {
+        int start = (page * 997 * PAGE) % (data.size() - PAGE);
+
+        for (int i = start; i < start + PAGE; i++) {
+            data.set(i, i);
+        }
+    }
+
+    private static Object readAll(List<Integer> data) {
+        int loaded = 0;
+
+        for (int i = 0; i < data.size(); i++) {
+            if (data.get(i) != null) {
+                loaded++;
+            }
+        }
+
+        return loaded;
+    }
+
+    private static long measureMemory(Operation operation) {
+        Runtime runtime = Runtime.getRuntime();
+
+        gc();
+        long   before = runtime.totalMemory() - runtime.freeMemory();
+        Object result = operation.run();
+        gc();
+        long   after  = runtime.totalMemory() - runtime.freeMemory();
+
+        if (result == null) {
+            throw new AssertionError();
+        }
+
+        return Math.max(0, after - before);
+    }
+
+    private static long measureTime(Operation operation) {
+        operation.run();
+
+        long best = Long.MAX_VALUE;
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return best;
+    }
+
+    private static void gc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+    }
+
+    private static void report(String name, long arrayList, long compressedList, String unit) {
+        System.out.println(String.format(Locale.US, "%s: ArrayList %,d %s, CompressedList %,d %s", name, arrayList, unit, compressedList, unit));
+    }
+
+    private interface Operation {
+        Object run();
+    }
+}
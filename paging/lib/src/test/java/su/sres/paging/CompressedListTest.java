@@ -0,0 +1,134 @@
+package su.sres.paging;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class CompressedListTest {
+
+    @Test
+    public void new_isAllNullsWithoutAllocatingPages() {
+        CompressedList<String> list = new CompressedList<>(300_000);
+
+        assertEquals(300_000, list.size());
+        assertNull(list.get(0));
+        assertNull(list.get(299_999));
+        assertEquals(0, list.getAllocatedPageCount());
+    }
+
+    @Test
+    public void set_onlyAllocatesPagesThatAreWritten() {
+        CompressedList<String> list = new CompressedList<>(1000);
+
+        list.set(500, "a");
+        list.set(501, "b");
+        list.set(900, null);
+
+        assertEquals("a", list.get(500));
+        assertEquals("b", list.get(501));
+        assertEquals(1, list.getAllocatedPageCount());
+    }
+
+    @Test
+    public void copy_sharesPagesUntilWritten() {
+        CompressedList<String> original = new CompressedList<>(1000);
+        original.set(0, "a");
+        original.set(500, "b");
+
+        CompressedList<String> copy = new CompressedList<>(original);
+        copy.set(1, "c");
+
+        assertTrue(copy.sharesPageWith(original, 500));
+        assertFalse(copy.sharesPageWith(original, 0));
+        assertNull(original.get(1));
+        assertEquals("c", copy.get(1));
+    }
+
+    @Test
+    public void copy_originalWritesDoNotLeakIntoCopy() {
+        CompressedList<String> original = new CompressedList<>(1000);
+        original.set(500, "a");
+
+        CompressedList<String> copy = new CompressedList<>(original);
+        original.set(501, "b");
+
+        assertNull(copy.get(501));
+        assertEquals("b", original.get(501));
+    }
+
+    @Test
+    public void copy_fromPlainList() {
+        CompressedList<String> list = new CompressedList<>(Arrays.asList(null, "a", null, "b"));
+
+        assertEquals(Arrays.asList(null, "a", null, "b"), list);
+    }
+
+    @Test
+    public void add_andRemove_acrossPageBoundaries() {
+        List<Integer>           expected = new ArrayList<>(Collections.nCopies(200, null));
+        CompressedList<Integer> actual   = new CompressedList<>(200);
+
+        for (int i = 0; i < 200; i += 3) {
+            expected.set(i, i);
+            actual.set(i, i);
+        }
+
+        expected.add(0, -1);
+        actual.add(0, -1);
+        expected.add(64, -2);
+        actual.add(64, -2);
+        expected.add(expected.size(), -3);
+        actual.add(actual.size(), -3);
+        assertEquals(expected, actual);
+
+        assertEquals(expected.remove(63), actual.remove(63));
+        assertEquals(expected.remove(0), actual.remove(0));
+        assertEquals(expected.remove(expected.size() - 1), actual.remove(actual.size() - 1));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void randomOperations_matchArrayList() {
+        Random                  random   = new Random(42);
+        List<Integer>           expected = new ArrayList<>(Collections.nCopies(500, null));
+        CompressedList<Integer> actual   = new CompressedList<>(500);
+
+        for (int i = 0; i < 5000; i++) {
+            int op = random.nextInt(10);
+
+            if (op < 4 && !expected.isEmpty()) {
+                int index = random.nextInt(expected.size());
+                Integer value = random.nextBoolean() ? i : null;
+                assertEquals(expected.set(index, value), actual.set(index, value));
+            } else if (op < 6) {
+                int index = random.nextInt(expected.size() + 1);
+                Integer value = random.nextBoolean() ? i : null;
+                expected.add(index, value);
+                actual.add(index, value);
+            } else if (op < 8 && !expected.isEmpty()) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), actual.remove(index));
+            } else {
+                actual = new CompressedList<>(actual);
+            }
+
+            assertEquals(expected.size(), actual.size());
+        }
+
+        assertEquals(expected, actual);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_outOfBounds() {
+        new CompressedList<String>(10).get(10);
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) https://github.com/sannies/mp4parser/blob/master/LICENSE
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * https://github.com/sannies/mp4parser/blob/4ed724754cde751c3f27fdda51f288df4f4c5db5/streaming/src/main/java/org/mp4parser/streaming/output/mp4/FragmentedMp4Writer.java
+ *
+ * This file has been modified by Signal.
+ */
+package su.sres.securesms.video.videoconverter.muxer;
+
+import androidx.annotation.NonNull;
+
+import org.mp4parser.Box;
+import org.mp4parser.boxes.iso14496.part12.FileTypeBox;
+import org.mp4parser.boxes.iso14496.part12.MediaHeaderBox;
+import org.mp4parser.boxes.iso14496.part12.MovieBox;
+import org.mp4parser.boxes.iso14496.part12.MovieExtendsBox;
+import org.mp4parser.boxes.iso14496.part12.MovieFragmentBox;
+import org.mp4parser.boxes.iso14496.part12.MovieFragmentHeaderBox;
+import org.mp4parser.boxes.iso14496.part12.MovieHeaderBox;
+import org.mp4parser.boxes.iso14496.part12.SampleFlags;
+import org.mp4parser.boxes.iso14496.part12.TrackExtendsBox;
+import org.mp4parser.boxes.iso14496.part12.TrackFragmentBaseMediaDecodeTimeBox;
+import org.mp4parser.boxes.iso14496.part12.TrackFragmentBox;
+import org.mp4parser.boxes.iso14496.part12.TrackFragmentHeaderBox;
+import org.mp4parser.boxes.iso14496.part12.TrackRunBox;
+import org.mp4parser.streaming.StreamingSample;
+import org.mp4parser.streaming.StreamingTrack;
+import org.mp4parser.streaming.extensions.CompositionTimeSampleExtension;
+import org.mp4parser.streaming.extensions.CompositionTimeTrackExtension;
+import org.mp4parser.streaming.extensions.SampleFlagsSampleExtension;
+import org.mp4parser.streaming.extensions.TrackIdTrackExtension;
+import org.mp4parser.streaming.output.SampleSink;
+import org.mp4parser.streaming.output.mp4.DefaultBoxes;
+import org.mp4parser.tools.Mp4Arrays;
+import org.mp4parser.tools.Mp4Math;
+import su.sres.core.util.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.mp4parser.tools.CastUtils.l2i;
+
+/**
+ * Creates a fragmented MP4 file with ftyp, moov, (moof, mdat)+ order.
+ * <p>
+ * Unlike {@link Mp4Writer}, the sample tables live in the fragments rather than in a trailing moov, so every
+ * fragment is complete and playable once it has been written. This lets a consumer of the <code>sink</code>
+ * (such as an upload) treat the output as final while later fragments are still being encoded.
+ */
+final class FragmentedMp4Writer extends DefaultBoxes implements SampleSink, Closeable {
+
+    private static final String TAG = "FragmentedMp4Writer";
+
+    private static final int FRAGMENT_SECONDS     = 2;
+    private static final int MAX_FRAGMENT_SECONDS = 10;
+
+    private final WritableByteChannel  sink;
+    private final List<StreamingTrack> source;
+    private final Date                 creationTime = new Date();
+
+    /**
+     * Contains the start time of the next fragment in line that will be created.
+     */
+    private final Map<StreamingTrack, Long>                  nextFragmentStartTime = new HashMap<>();
+    /**
+     * Contains the next sample's start time.
+     */
+    private final Map<StreamingTrack, Long>                  nextSampleStartTime   = new HashMap<>();
+    /**
+     * Buffers the samples per track until there are enough samples to form a fragment.
+     */
+    private final Map<StreamingTrack, List<StreamingSample>> sampleBuffers         = new HashMap<>();
+    private       long                                       sequenceNumber        = 1;
+
+    FragmentedMp4Writer(final @NonNull List<StreamingTrack> source, final @NonNull WritableByteChannel sink) throws IOException {
+        this.source = new ArrayList<>(source);
+        this.sink   = sink;
+
+        final HashSet<Long> trackIds = new HashSet<>();
+        for (StreamingTrack streamingTrack : source) {
+            streamingTrack.setSampleSink(this);
+            nextSampleStartTime.put(streamingTrack, 0L);
+            nextFragmentStartTime.put(streamingTrack, 0L);
+            sampleBuffers.put(streamingTrack, new ArrayList<>());
+            if (streamingTrack.getTrackExtension(TrackIdTrackExtension.class) != null) {
+                final TrackIdTrackExtension trackIdTrackExtension = streamingTrack.getTrackExtension(TrackIdTrackExtension.class);
+                if (trackIds.contains(trackIdTrackExtension.getTrackId())) {
+                    throw new MuxingException("There may not be two tracks with the same trackID within one file");
+                }
+                trackIds.add(trackIdTrackExtension.getTrackId());
+            }
+        }
+        for (StreamingTrack streamingTrack : source) {
+            if (streamingTrack.getTrackExtension(TrackIdTrackExtension.class) == null) {
+                long maxTrackId = 0;
+                for (Long trackId : trackIds) {
+                    maxTrackId = Math.max(trackId, maxTrackId);
+                }
+                final TrackIdTrackExtension tiExt = new TrackIdTrackExtension(maxTrackId + 1);
+                trackIds.add(tiExt.getTrackId());
+                streamingTrack.addTrackExtension(tiExt);
+            }
+        }
+
+        final List<String> minorBrands = new LinkedList<>();
+        minorBrands.add("isom");
+        minorBrands.add("iso6");
+        minorBrands.add("mp42");
+        write(new FileTypeBox("mp42", 0, minorBrands), createMoov());
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (StreamingTrack streamingTrack : source) {
+            writeFragment(streamingTrack);
+            streamingTrack.close();
+        }
+    }
+
+    @Override
+    public void acceptSample(
+            final @NonNull StreamingSample streamingSample,
+            final @NonNull StreamingTrack streamingTrack) throws IOException
+    {
+        if (isFragmentReady(streamingTrack, streamingSample)) {
+            writeFragment(streamingTrack);
+        }
+
+        Objects.requireNonNull(sampleBuffers.get(streamingTrack)).add(streamingSample);
+        nextSampleStartTime.put(streamingTrack, Objects.requireNonNull(nextSampleStartTime.get(streamingTrack)) + streamingSample.getDuration());
+    }
+
+    /**
+     * Fragments are cut every 2 seconds, which keeps the tracks roughly interleaved and bounds how much is held in
+     * memory before it reaches the sink. Where possible a fragment starts on a sync sample, so each one can be
+     * decoded on its own.
+     */
+    private boolean isFragmentReady(final @NonNull StreamingTrack streamingTrack, final @NonNull StreamingSample next) {
+        final long ts  = Objects.requireNonNull(nextSampleStartTime.get(streamingTrack));
+        final long fst = Objects.requireNonNull(nextFragmentStartTime.get(streamingTrack));
+
+        if (ts >= fst + MAX_FRAGMENT_SECONDS * streamingTrack.getTimescale()) {
+            return true;
+        }
+
+        // sample durations are rounded from microsecond timestamps, so the next sample overshooting the target counts as reaching it
+        final SampleFlagsSampleExtension sampleFlags = next.getSampleExtension(SampleFlagsSampleExtension.class);
+        return (ts + next.getDuration() > fst + FRAGMENT_SECONDS * streamingTrack.getTimescale()) && (sampleFlags == null || sampleFlags.isSyncSample());
+    }
+
+    private void writeFragment(final @NonNull StreamingTrack streamingTrack) throws IOException {
+        final List<StreamingSample> samples = Objects.requireNonNull(sampleBuffers.get(streamingTrack));
+        if (samples.isEmpty()) {
+            return;
+        }
+
+        final long baseMediaDecodeTime = Objects.requireNonNull(nextFragmentStartTime.get(streamingTrack));
+        final Mdat mdat                = new Mdat(samples);
+        final Box  moof                = createMoof(streamingTrack, samples, baseMediaDecodeTime);
+
+        write(moof, mdat);
+
+        final long duration = Objects.requireNonNull(nextSampleStartTime.get(streamingTrack)) - baseMediaDecodeTime;
+        nextFragmentStartTime.put(streamingTrack, baseMediaDecodeTime + duration);
+        Log.d(TAG, "fragment written for " + streamingTrack.getHandler() + ". mdat size: " + mdat.getSize() + ". fragment duration is " + (double) duration / streamingTrack.getTimescale());
+        samples.clear();
+    }
+
+    private @NonNull Box createMoov() {
+        final MovieBox movieBox = new MovieBox();
+        movieBox.addBox(createMvhd());
+
+        final MovieExtendsBox mvex = new MovieExtendsBox();
+        for (StreamingTrack streamingTrack : source) {
+            movieBox.addBox(createTrak(streamingTrack));
+            mvex.addBox(createTrex(streamingTrack));
+        }
+        movieBox.addBox(mvex);
+
+        return movieBox;
+    }
+
+    private @NonNull Box createMoof(final @NonNull StreamingTrack streamingTrack,
+                                    final @NonNull List<StreamingSample> samples,
+                                    final long baseMediaDecodeTime)
+    {
+        final MovieFragmentBox moof = new MovieFragmentBox();
+
+        final MovieFragmentHeaderBox mfhd = new MovieFragmentHeaderBox();
+        mfhd.setSequenceNumber(sequenceNumber++);
+        moof.addBox(mfhd);
+
+        final TrackFragmentBox traf = new TrackFragmentBox();
+
+        final TrackFragmentHeaderBox tfhd = new TrackFragmentHeaderBox();
+        tfhd.setDefaultBaseIsMoof(true);
+        tfhd.setTrackId(streamingTrack.getTrackExtension(TrackIdTrackExtension.class).getTrackId());
+        traf.addBox(tfhd);
+
+        final TrackFragmentBaseMediaDecodeTimeBox tfdt = new TrackFragmentBaseMediaDecodeTimeBox();
+        tfdt.setVersion(1);
+        tfdt.setBaseMediaDecodeTime(baseMediaDecodeTime);
+        traf.addBox(tfdt);
+
+        final boolean     hasCompositionTimes = streamingTrack.getTrackExtension(CompositionTimeTrackExtension.class) != null;
+        final TrackRunBox trun                = new TrackRunBox();
+        trun.setVersion(1);
+        trun.setSampleDurationPresent(true);
+        trun.setSampleSizePresent(true);
+        trun.setSampleFlagsPresent(true);
+        trun.setSampleCompositionTimeOffsetPresent(hasCompositionTimes);
+        trun.setDataOffsetPresent(true);
+
+        final List<TrackRunBox.Entry> entries = new ArrayList<>(samples.size());
+        for (StreamingSample sample : samples) {
+            final TrackRunBox.Entry entry = new TrackRunBox.Entry();
+            entry.setSampleDuration(sample.getDuration());
+            entry.setSampleSize(sample.getContent().limit());
+            entry.setSampleFlags(toSampleFlags(sample.getSampleExtension(SampleFlagsSampleExtension.class)));
+            if (hasCompositionTimes) {
+                entry.setSampleCompositionTimeOffset(l2i(sample.getSampleExtension(CompositionTimeSampleExtension.class).getCompositionTimeOffset()));
+            }
+            entries.add(entry);
+        }
+        trun.setEntries(entries);
+        traf.addBox(trun);
+        moof.addBox(traf);
+
+        // The data offset is relative to the start of the moof, and its own value does not change the size of the box.
+        trun.setDataOffset(l2i(moof.getSize() + 8));
+
+        return moof;
+    }
+
+    private static @NonNull SampleFlags toSampleFlags(final SampleFlagsSampleExtension extension) {
+        final SampleFlags sampleFlags = new SampleFlags();
+        if (extension != null) {
+            sampleFlags.setIsLeading(extension.getIsLeading());
+            sampleFlags.setSampleDependsOn(extension.getSampleDependsOn());
+            sampleFlags.setSampleIsDependedOn(extension.getSampleIsDependedOn());
+            sampleFlags.setSampleHasRedundancy(extension.getSampleHasRedundancy());
+            sampleFlags.setSamplePaddingValue(extension.getSamplePaddingValue());
+            sampleFlags.setSampleIsDifferenceSample(extension.isSampleIsNonSyncSample());
+            sampleFlags.setSampleDegradationPriority(extension.getSampleDegradationPriority());
+        }
+        return sampleFlags;
+    }
+
+    private @NonNull Box createTrex(final @NonNull StreamingTrack streamingTrack) {
+        final TrackExtendsBox trex = new TrackExtendsBox();
+        trex.setTrackId(streamingTrack.getTrackExtension(TrackIdTrackExtension.class).getTrackId());
+        trex.setDefaultSampleDescriptionIndex(1);
+        trex.setDefaultSampleDuration(0);
+        trex.setDefaultSampleSize(0);
+        trex.setDefaultSampleFlags(new SampleFlags());
+        return trex;
+    }
+
+    @Override
+    protected MovieHeaderBox createMvhd() {
+        final MovieHeaderBox mvhd = new MovieHeaderBox();
+        mvhd.setVersion(1);
+        mvhd.setCreationTime(creationTime);
+        mvhd.setModificationTime(creationTime);
+
+        long[] timescales = new long[0];
+        long   maxTrackId = 0;
+        for (StreamingTrack streamingTrack : source) {
+            timescales = Mp4Arrays.copyOfAndAppend(timescales, streamingTrack.getTimescale());
+            maxTrackId = Math.max(streamingTrack.getTrackExtension(TrackIdTrackExtension.class).getTrackId(), maxTrackId);
+        }
+
+        mvhd.setTimescale(Mp4Math.lcm(timescales));
+        // the duration is carried by the fragments
+        mvhd.setDuration(0);
+        mvhd.setNextTrackId(maxTrackId + 1);
+        return mvhd;
+    }
+
+    @Override
+    protected @NonNull Box createMdhd(final @NonNull StreamingTrack streamingTrack) {
+        final MediaHeaderBox mdhd = new MediaHeaderBox();
+        mdhd.setCreationTime(creationTime);
+        mdhd.setModificationTime(creationTime);
+        mdhd.setDuration(0);
+        mdhd.setTimescale(streamingTrack.getTimescale());
+        mdhd.setLanguage(streamingTrack.getLanguage());
+        return mdhd;
+    }
+
+    private void write(Box... boxes) throws IOException {
+        for (Box box : boxes) {
+            box.getBox(sink);
+        }
+    }
+}
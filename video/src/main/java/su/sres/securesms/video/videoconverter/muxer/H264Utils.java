@@ -29,6 +29,7 @@ package su.sres.securesms.video.videoconverter.muxer;
 
 import androidx.annotation.NonNull;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
@@ -38,62 +39,64 @@ final class H264Utils {
 
     private H264Utils() {}
 
-    static @NonNull List<ByteBuffer> getNals(ByteBuffer buffer) {
+    static @NonNull List<ByteBuffer> getNals(@NonNull ByteBuffer buffer) throws IOException {
         final List<ByteBuffer> nals = new ArrayList<>();
-        ByteBuffer             nal;
-        while ((nal = nextNALUnit(buffer)) != null) {
-            nals.add(nal);
-        }
+        forEachNal(buffer, nals::add);
         return nals;
     }
 
-    static ByteBuffer nextNALUnit(ByteBuffer buf) {
-        skipToNALUnit(buf);
-        return gotoNALUnit(buf);
-    }
+    /**
+     * Splits an Annex B byte stream into NAL units without copying. Each NAL is handed to the consumer as a
+     * big endian slice that shares the backing storage of {@code buffer}. The position of {@code buffer} is not
+     * modified, and no intermediate collections are allocated.
+     */
+    static void forEachNal(@NonNull ByteBuffer buffer, @NonNull NalConsumer consumer) throws IOException {
+        final int limit = buffer.limit();
 
-    static void skipToNALUnit(ByteBuffer buf) {
-        if (!buf.hasRemaining())
-            return;
+        int startCode = findStartCode(buffer, buffer.position(), limit);
+        while (startCode < limit) {
+            final int nalStart      = startCode + 3;
+            final int nextStartCode = findStartCode(buffer, nalStart, limit);
 
-        int val = 0xffffffff;
-        while (buf.hasRemaining()) {
-            val <<= 8;
-            val |= (buf.get() & 0xff);
-            if ((val & 0xffffff) == 1) {
-                buf.position(buf.position());
-                break;
+            int nalEnd = nextStartCode;
+            if (nextStartCode < limit && nalEnd > nalStart && buffer.get(nalEnd - 1) == 0) {
+                nalEnd--; // four byte start code
             }
+
+            if (nalEnd > nalStart) {
+                final ByteBuffer nal = buffer.duplicate();
+                nal.limit(nalEnd);
+                nal.position(nalStart);
+                consumer.accept(nal.slice().order(ByteOrder.BIG_ENDIAN));
+            }
+
+            startCode = nextStartCode;
         }
     }
 
     /**
-     * Finds next Nth H.264 bitstream NAL unit (0x00000001) and returns the data
-     * that preceeds it as a ByteBuffer slice
+     * Returns the absolute index of the next three byte start code (0x000001) at or after {@code from}, or
+     * {@code limit} if there is none.
      * <p>
-     * Segment byte order is always little endian
-     * <p>
-     * TODO: emulation prevention
+     * If the third byte of a candidate window is neither 0 nor 1, no start code can begin at any of the three
+     * positions, so the scan advances by three bytes at a time over slice data.
      */
-    static ByteBuffer gotoNALUnit(ByteBuffer buf) {
-
-        if (!buf.hasRemaining())
-            return null;
-
-        int        from   = buf.position();
-        ByteBuffer result = buf.slice();
-        result.order(ByteOrder.BIG_ENDIAN);
-
-        int val = 0xffffffff;
-        while (buf.hasRemaining()) {
-            val <<= 8;
-            val |= (buf.get() & 0xff);
-            if ((val & 0xffffff) == 1) {
-                buf.position(buf.position() - (val == 1 ? 4 : 3));
-                result.limit(buf.position() - from);
-                break;
+    private static int findStartCode(@NonNull ByteBuffer buffer, int from, int limit) {
+        int i = from;
+        while (i + 2 < limit) {
+            final byte third = buffer.get(i + 2);
+            if (third != 0 && third != 1) {
+                i += 3;
+            } else if (third == 1 && buffer.get(i + 1) == 0 && buffer.get(i) == 0) {
+                return i;
+            } else {
+                i++;
             }
         }
-        return result;
+        return limit;
+    }
+
+    interface NalConsumer {
+        void accept(@NonNull ByteBuffer nal) throws IOException;
     }
 }
@@ -0,0 +1,72 @@
+package su.sres.securesms.video.videoconverter.muxer;
+
+import androidx.annotation.NonNull;
+
+import org.mp4parser.Box;
+import org.mp4parser.streaming.StreamingSample;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An mdat box over a run of samples, written with a single gathering write where the channel supports it.
+ */
+final class Mdat implements Box {
+
+    private final List<StreamingSample> samples;
+    private final long                  size;
+
+    Mdat(final @NonNull List<StreamingSample> samples) {
+        this.samples = new ArrayList<>(samples);
+
+        long size = 8;
+        for (StreamingSample sample : samples) {
+            size += sample.getContent().limit();
+        }
+        this.size = size;
+    }
+
+    @Override
+    public String getType() {
+        return "mdat";
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void getBox(WritableByteChannel writableByteChannel) throws IOException {
+        final ByteBuffer[] buffers = new ByteBuffer[samples.size() + 1];
+        buffers[0] = ByteBuffer.wrap(new byte[]{
+                (byte) ((size & 0xff000000) >> 24),
+                (byte) ((size & 0xff0000) >> 16),
+                (byte) ((size & 0xff00) >> 8),
+                (byte) ((size & 0xff)),
+                109, 100, 97, 116, // mdat
+
+        });
+        for (int i = 0; i < samples.size(); i++) {
+            buffers[i + 1] = (ByteBuffer) samples.get(i).getContent().rewind();
+        }
+
+        if (writableByteChannel instanceof GatheringByteChannel) {
+            final GatheringByteChannel gatheringByteChannel = (GatheringByteChannel) writableByteChannel;
+            long                       remaining            = size;
+            while (remaining > 0) {
+                remaining -= gatheringByteChannel.write(buffers);
+            }
+        } else {
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    writableByteChannel.write(buffer);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package su.sres.securesms.video.videoconverter.muxer;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * A {@link GatheringByteChannel} over an {@link OutputStream}.
+ * <p>
+ * Unlike {@link java.nio.channels.Channels#newChannel(OutputStream)}, heap buffers are written straight from their
+ * backing array, and gathering writes coalesce small buffers (such as audio samples) into a single stream write.
+ */
+final class OutputStreamChannel implements GatheringByteChannel {
+
+    private static final int STAGING_SIZE = 64 * 1024;
+
+    private final OutputStream outputStream;
+    private final byte[]       staging = new byte[STAGING_SIZE];
+
+    private int     stagingSize;
+    private boolean open = true;
+
+    OutputStreamChannel(@NonNull OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    @Override
+    public int write(@NonNull ByteBuffer src) throws IOException {
+        ensureOpen();
+        return writeDirect(src);
+    }
+
+    @Override
+    public long write(@NonNull ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public long write(@NonNull ByteBuffer[] srcs, int offset, int length) throws IOException {
+        ensureOpen();
+
+        long written = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final ByteBuffer src       = srcs[i];
+            final int        remaining = src.remaining();
+
+            if (remaining > staging.length - stagingSize) {
+                flushStaging();
+            }
+
+            if (remaining >= staging.length) {
+                written += writeDirect(src);
+            } else {
+                src.get(staging, stagingSize, remaining);
+                stagingSize += remaining;
+                written     += remaining;
+            }
+        }
+        flushStaging();
+
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        outputStream.close();
+    }
+
+    private int writeDirect(@NonNull ByteBuffer src) throws IOException {
+        final int remaining = src.remaining();
+
+        if (src.hasArray()) {
+            outputStream.write(src.array(), src.arrayOffset() + src.position(), remaining);
+            src.position(src.limit());
+        } else {
+            while (src.hasRemaining()) {
+                final int count = Math.min(src.remaining(), staging.length);
+                src.get(staging, 0, count);
+                outputStream.write(staging, 0, count);
+            }
+        }
+
+        return remaining;
+    }
+
+    private void flushStaging() throws IOException {
+        if (stagingSize > 0) {
+            outputStream.write(staging, 0, stagingSize);
+            stagingSize = 0;
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -8,21 +8,31 @@ import androidx.annotation.NonNull;
 import org.mp4parser.streaming.StreamingTrack;
 import su.sres.securesms.video.videoconverter.Muxer;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.List;
 
 public final class StreamingMuxer implements Muxer {
 
     private final OutputStream          outputStream;
+    private final boolean               fragmented;
     private final List<MediaCodecTrack> tracks = new ArrayList<>();
-    private       Mp4Writer             mp4Writer;
+    private       Closeable             mp4Writer;
 
     public StreamingMuxer(OutputStream outputStream) {
+        this(outputStream, false);
+    }
+
+    /**
+     * @param fragmented If true, writes a fragmented MP4 whose output is final as soon as it is written, so it can
+     *                   be consumed (e.g. uploaded) while muxing is still in progress.
+     */
+    public StreamingMuxer(OutputStream outputStream, boolean fragmented) {
         this.outputStream = outputStream;
+        this.fragmented   = fragmented;
     }
 
     @Override
@@ -31,7 +41,9 @@ public final class StreamingMuxer implements Muxer {
         for (MediaCodecTrack track : tracks) {
             source.add((StreamingTrack) track);
         }
-        mp4Writer = new Mp4Writer(source, Channels.newChannel(outputStream));
+        final OutputStreamChannel channel = new OutputStreamChannel(outputStream);
+        mp4Writer = fragmented ? new FragmentedMp4Writer(source, channel)
+                               : new Mp4Writer(source, channel);
     }
 
     @Override
@@ -89,10 +101,9 @@ public final class StreamingMuxer implements Muxer {
 
         @Override
         public void writeSampleData(@NonNull ByteBuffer byteBuf, @NonNull MediaCodec.BufferInfo bufferInfo) throws IOException {
-            final List<ByteBuffer> nals = H264Utils.getNals(byteBuf);
-            for (ByteBuffer nal : nals) {
-                consumeNal(Utils.clone(nal), bufferInfo.presentationTimeUs);
-            }
+            final ByteBuffer frame              = Utils.copyOf(byteBuf, bufferInfo.offset, bufferInfo.size);
+            final long       presentationTimeUs = bufferInfo.presentationTimeUs;
+            H264Utils.forEachNal(frame, nal -> consumeNal(nal, presentationTimeUs));
         }
 
         @Override
@@ -109,10 +120,9 @@ public final class StreamingMuxer implements Muxer {
 
         @Override
         public void writeSampleData(@NonNull ByteBuffer byteBuf, @NonNull MediaCodec.BufferInfo bufferInfo) throws IOException {
-            final List<ByteBuffer> nals = H264Utils.getNals(byteBuf);
-            for (ByteBuffer nal : nals) {
-                consumeNal(Utils.clone(nal), bufferInfo.presentationTimeUs);
-            }
+            final ByteBuffer frame              = Utils.copyOf(byteBuf, bufferInfo.offset, bufferInfo.size);
+            final long       presentationTimeUs = bufferInfo.presentationTimeUs;
+            H264Utils.forEachNal(frame, nal -> consumeNal(nal, presentationTimeUs));
         }
 
         @Override
@@ -131,10 +141,7 @@ public final class StreamingMuxer implements Muxer {
 
         @Override
         public void writeSampleData(@NonNull ByteBuffer byteBuf, @NonNull MediaCodec.BufferInfo bufferInfo) throws IOException {
-            final byte[] buffer = new byte[bufferInfo.size];
-            byteBuf.position(bufferInfo.offset);
-            byteBuf.get(buffer, 0, bufferInfo.size);
-            processSample(ByteBuffer.wrap(buffer));
+            processSample(Utils.copyOf(byteBuf, bufferInfo.offset, bufferInfo.size));
         }
 
         @Override
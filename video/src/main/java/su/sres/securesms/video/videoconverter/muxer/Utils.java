@@ -21,13 +21,19 @@ final class Utils {
         return bytes;
     }
 
-    public static ByteBuffer clone(final @NonNull ByteBuffer original) {
-        final ByteBuffer clone = ByteBuffer.allocate(original.capacity());
-        original.rewind();
-        clone.put(original);
-        original.rewind();
-        clone.flip();
-        return clone;
+    /**
+     * Copies {@code count} bytes starting at the absolute index {@code start} into a new, exactly sized buffer.
+     * The source buffer's position and limit are left untouched.
+     */
+    static @NonNull ByteBuffer copyOf(final @NonNull ByteBuffer buf, final int start, final int count) {
+        final ByteBuffer source = buf.duplicate();
+        source.limit(start + count);
+        source.position(start);
+
+        final ByteBuffer copy = ByteBuffer.allocate(count);
+        copy.put(source);
+        copy.flip();
+        return copy;
     }
 
     static @NonNull ByteBuffer subBuffer(final @NonNull ByteBuffer buf, final int start) {
@@ -0,0 +1,416 @@
+package su.sres.securesms.video.videoconverter.muxer;
+
+import androidx.annotation.NonNull;
+
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.mp4parser.IsoFile;
+import org.mp4parser.boxes.iso14496.part12.MediaDataBox;
+import org.mp4parser.boxes.iso14496.part12.MovieBox;
+import org.mp4parser.boxes.iso14496.part12.MovieExtendsBox;
+import org.mp4parser.boxes.iso14496.part12.MovieFragmentBox;
+import org.mp4parser.boxes.iso14496.part12.TrackRunBox;
+import org.mp4parser.streaming.StreamingTrack;
+
+import su.sres.core.util.logging.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pure JVM benchmark of the muxing path used by {@link StreamingMuxer}. A pre-recorded H.264 (Annex B) and AAC sample
+ * stream is fed through the tracks and {@link Mp4Writer} exactly as the MediaCodec callbacks would, and throughput and
+ * GC churn are reported on stdout. The same stream is also muxed with {@link FragmentedMp4Writer} and parsed back.
+ * <p>
+ * The timing is ignored in regular runs, as it can't pass or fail on a shared machine, and is meant to be run by hand.
+ * The correctness checks run as normal tests.
+ */
+public final class Mp4WriterBenchmark {
+
+    private static final int VIDEO_FPS          = 30;
+    private static final int GOP_LENGTH         = VIDEO_FPS;
+    private static final int IDR_FRAME_SIZE     = 48 * 1024;
+    private static final int P_FRAME_SIZE       = 8 * 1024;
+    private static final int AUDIO_SAMPLE_RATE  = 44100;
+    private static final int AUDIO_FRAME_LENGTH = 1024;
+    private static final int AUDIO_FRAME_SIZE   = 372;
+    private static final int DURATION_SECONDS   = 60;
+
+    private static final int WARMUP_ITERATIONS   = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private static RecordedStream stream;
+
+    @BeforeClass
+    public static void setUp() {
+        Log.initialize(new NoopLogger());
+        stream = RecordedStream.create(DURATION_SECONDS);
+    }
+
+    @Test
+    public void nal_splitter_returns_slices_without_start_codes() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[]{ 0, 0, 0, 1, 0x65, 10, 11, 0, 0, 1, 0x41, 12, 0, 0, 0, 1, 0x06, 13 });
+        final List<ByteBuffer> nals = H264Utils.getNals(buffer);
+
+        assertEquals(0, buffer.position());
+        assertEquals(3, nals.size());
+        assertArrayEquals(new byte[]{ 0x65, 10, 11 }, Utils.toArray(nals.get(0)));
+        assertArrayEquals(new byte[]{ 0x41, 12 }, Utils.toArray(nals.get(1)));
+        assertArrayEquals(new byte[]{ 0x06, 13 }, Utils.toArray(nals.get(2)));
+    }
+
+    @Test
+    public void mux_recorded_stream() throws IOException {
+        final ByteArrayOutputStream verification = new ByteArrayOutputStream();
+        mux(stream, verification);
+
+        final byte[] output = verification.toByteArray();
+        assertTrue(output.length > stream.totalBytes);
+        assertEquals("ftyp", new String(output, 4, 4, "US-ASCII"));
+    }
+
+    @Test
+    @Ignore("Benchmark, run by hand")
+    public void benchmark_mux_recorded_stream() throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            mux(stream, new CountingOutputStream());
+        }
+
+        final ThreadMXBean threadMXBean    = ManagementFactory.getThreadMXBean();
+        final long         gcCountBefore   = getGcCount();
+        final long         gcTimeBefore    = getGcTimeMs();
+        final long         allocatedBefore = getAllocatedBytes(threadMXBean);
+        final long         start           = System.nanoTime();
+
+        long written = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            final CountingOutputStream outputStream = new CountingOutputStream();
+            mux(stream, outputStream);
+            written += outputStream.count;
+        }
+
+        final long   elapsedNs = System.nanoTime() - start;
+        final long   allocated = getAllocatedBytes(threadMXBean) - allocatedBefore;
+        final double megabytes = (double) stream.totalBytes * MEASURED_ITERATIONS / (1024 * 1024);
+        final double seconds   = elapsedNs / 1_000_000_000.0;
+
+        System.out.println(String.format(Locale.US,
+                                         "Mp4Writer: muxed %.1f MB (%d bytes written) in %.3f s, %.1f MB/s",
+                                         megabytes, written, seconds, megabytes / seconds));
+        System.out.println(String.format(Locale.US,
+                                         "Mp4Writer: GC count %d, GC time %d ms, allocated %s",
+                                         getGcCount() - gcCountBefore,
+                                         getGcTimeMs() - gcTimeBefore,
+                                         allocated >= 0 ? String.format(Locale.US, "%.2f bytes per muxed byte", (double) allocated / (stream.totalBytes * (long) MEASURED_ITERATIONS)) : "n/a"));
+    }
+
+    @Test
+    public void mux_recorded_stream_fragmented() throws IOException {
+        final ByteArrayOutputStream verification = new ByteArrayOutputStream();
+        mux(stream, verification, true);
+
+        final IsoFile isoFile = new IsoFile(Channels.newChannel(new ByteArrayInputStream(verification.toByteArray())));
+        try {
+            assertEquals(1, isoFile.getBoxes(MovieBox.class).size());
+            assertEquals(1, isoFile.getMovieBox().getBoxes(MovieExtendsBox.class).size());
+
+            final List<MovieFragmentBox> fragments = isoFile.getBoxes(MovieFragmentBox.class);
+            assertEquals(fragments.size(), isoFile.getBoxes(MediaDataBox.class).size());
+            assertTrue(fragments.size() >= DURATION_SECONDS);
+
+            long sampleCount = 0;
+            for (MovieFragmentBox fragment : fragments) {
+                for (TrackRunBox trun : fragment.getTrackRunBoxes()) {
+                    assertEquals(fragment.getSize() + 8, trun.getDataOffset());
+                    sampleCount += trun.getSampleCount();
+                }
+            }
+            assertEquals(stream.videoFrames.size() + stream.audioFrames.size(), sampleCount);
+        } finally {
+            isoFile.close();
+        }
+    }
+
+    private static void mux(@NonNull RecordedStream stream, @NonNull OutputStream outputStream) throws IOException {
+        mux(stream, outputStream, false);
+    }
+
+    private static void mux(@NonNull RecordedStream stream, @NonNull OutputStream outputStream, boolean fragmented) throws IOException {
+        final BenchmarkAvcTrack videoTrack = new BenchmarkAvcTrack(stream.sps, stream.pps);
+        final BenchmarkAacTrack audioTrack = new BenchmarkAacTrack();
+
+        final List<StreamingTrack> tracks = new ArrayList<>();
+        tracks.add(videoTrack);
+        tracks.add(audioTrack);
+
+        final OutputStreamChannel channel   = new OutputStreamChannel(outputStream);
+        final Closeable           mp4Writer = fragmented ? new FragmentedMp4Writer(tracks, channel)
+                                                         : new Mp4Writer(tracks, channel);
+
+        int videoIndex = 0;
+        int audioIndex = 0;
+        while (videoIndex < stream.videoFrames.size() || audioIndex < stream.audioFrames.size()) {
+            final boolean nextIsVideo = audioIndex >= stream.audioFrames.size() ||
+                                        (videoIndex < stream.videoFrames.size() && stream.videoTimesUs[videoIndex] <= stream.audioTimesUs[audioIndex]);
+            if (nextIsVideo) {
+                final ByteBuffer encoderBuffer      = stream.videoFrames.get(videoIndex);
+                final ByteBuffer frame              = Utils.copyOf(encoderBuffer, 0, encoderBuffer.limit());
+                final long       presentationTimeUs = stream.videoTimesUs[videoIndex];
+                H264Utils.forEachNal(frame, nal -> videoTrack.consumeNal(nal, presentationTimeUs));
+                videoIndex++;
+            } else {
+                final ByteBuffer encoderBuffer = stream.audioFrames.get(audioIndex);
+                audioTrack.processSample(Utils.copyOf(encoderBuffer, 0, encoderBuffer.limit()));
+                audioIndex++;
+            }
+        }
+
+        videoTrack.consumeLastNal();
+        mp4Writer.close();
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getGcTimeMs() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static long getAllocatedBytes(@NonNull ThreadMXBean threadMXBean) {
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * A deterministic H.264 baseline (320x240, 30fps) and AAC (44.1kHz mono) elementary stream, laid out the way the
+     * encoders hand it to the muxer: one access unit per buffer, slices prefixed with four byte start codes.
+     */
+    private static final class RecordedStream {
+
+        final ByteBuffer       sps;
+        final ByteBuffer       pps;
+        final List<ByteBuffer> videoFrames = new ArrayList<>();
+        final List<ByteBuffer> audioFrames = new ArrayList<>();
+        final long[]           videoTimesUs;
+        final long[]           audioTimesUs;
+        long                   totalBytes;
+
+        private RecordedStream(int durationSeconds) {
+            final Random random = new Random(42);
+
+            sps = createSps();
+            pps = createPps();
+
+            final int videoFrameCount = durationSeconds * VIDEO_FPS;
+            videoTimesUs = new long[videoFrameCount];
+            for (int i = 0; i < videoFrameCount; i++) {
+                final boolean idr   = i % GOP_LENGTH == 0;
+                final byte[]  frame = createSlice(random, idr, i % GOP_LENGTH, i / GOP_LENGTH, idr ? IDR_FRAME_SIZE : P_FRAME_SIZE);
+                videoFrames.add(ByteBuffer.wrap(frame));
+                videoTimesUs[i] = i * 1_000_000L / VIDEO_FPS;
+                totalBytes += frame.length;
+            }
+
+            final int audioFrameCount = durationSeconds * AUDIO_SAMPLE_RATE / AUDIO_FRAME_LENGTH;
+            audioTimesUs = new long[audioFrameCount];
+            for (int i = 0; i < audioFrameCount; i++) {
+                final byte[] frame = new byte[AUDIO_FRAME_SIZE - 16 + random.nextInt(32)];
+                random.nextBytes(frame);
+                audioFrames.add(ByteBuffer.wrap(frame));
+                audioTimesUs[i] = i * AUDIO_FRAME_LENGTH * 1_000_000L / AUDIO_SAMPLE_RATE;
+                totalBytes += frame.length;
+            }
+        }
+
+        static @NonNull RecordedStream create(int durationSeconds) {
+            return new RecordedStream(durationSeconds);
+        }
+
+        private static @NonNull ByteBuffer createSps() {
+            final BitWriter writer = new BitWriter();
+            writer.u(8, 0x67);
+            writer.u(8, 66);   // profile_idc: baseline
+            writer.u(8, 0xC0); // constraint_set0_flag, constraint_set1_flag
+            writer.u(8, 30);   // level_idc
+            writer.ue(0);      // seq_parameter_set_id
+            writer.ue(0);      // log2_max_frame_num_minus4
+            writer.ue(2);      // pic_order_cnt_type
+            writer.ue(1);      // max_num_ref_frames
+            writer.u(1, 0);    // gaps_in_frame_num_value_allowed_flag
+            writer.ue(19);     // pic_width_in_mbs_minus1
+            writer.ue(14);     // pic_height_in_map_units_minus1
+            writer.u(1, 1);    // frame_mbs_only_flag
+            writer.u(1, 1);    // direct_8x8_inference_flag
+            writer.u(1, 0);    // frame_cropping_flag
+            writer.u(1, 0);    // vui_parameters_present_flag
+            writer.trailingBits();
+            return ByteBuffer.wrap(writer.toByteArray());
+        }
+
+        private static @NonNull ByteBuffer createPps() {
+            final BitWriter writer = new BitWriter();
+            writer.u(8, 0x68);
+            writer.ue(0);   // pic_parameter_set_id
+            writer.ue(0);   // seq_parameter_set_id
+            writer.u(1, 0); // entropy_coding_mode_flag
+            writer.u(1, 0); // bottom_field_pic_order_in_frame_present_flag
+            writer.ue(0);   // num_slice_groups_minus1
+            writer.ue(0);   // num_ref_idx_l0_default_active_minus1
+            writer.ue(0);   // num_ref_idx_l1_default_active_minus1
+            writer.u(1, 0); // weighted_pred_flag
+            writer.u(2, 0); // weighted_bipred_idc
+            writer.se(0);   // pic_init_qp_minus26
+            writer.se(0);   // pic_init_qs_minus26
+            writer.se(0);   // chroma_qp_index_offset
+            writer.u(1, 1); // deblocking_filter_control_present_flag
+            writer.u(1, 0); // constrained_intra_pred_flag
+            writer.u(1, 0); // redundant_pic_cnt_present_flag
+            writer.trailingBits();
+            return ByteBuffer.wrap(writer.toByteArray());
+        }
+
+        private static @NonNull byte[] createSlice(@NonNull Random random, boolean idr, int frameNum, int idrPicId, int size) {
+            final BitWriter writer = new BitWriter();
+            writer.u(8, idr ? 0x65 : 0x41);
+            writer.ue(0);               // first_mb_in_slice
+            writer.ue(idr ? 7 : 5);     // slice_type: I or P, all slices
+            writer.ue(0);               // pic_parameter_set_id
+            writer.u(4, frameNum % 16); // frame_num
+            if (idr) {
+                writer.ue(idrPicId % 16); // idr_pic_id
+            }
+            writer.trailingBits();
+
+            final byte[] header  = writer.toByteArray();
+            final byte[] payload = new byte[size - header.length - 4];
+            random.nextBytes(payload);
+            for (int i = 0; i < payload.length; i++) {
+                if ((payload[i] & 0xff) < 4) {
+                    payload[i] = (byte) 0xff; // slice data never contains a start code or emulation prevention byte
+                }
+            }
+
+            final byte[] frame = new byte[size];
+            frame[3] = 1;
+            System.arraycopy(header, 0, frame, 4, header.length);
+            System.arraycopy(payload, 0, frame, 4 + header.length, payload.length);
+            return frame;
+        }
+    }
+
+    private static final class BitWriter {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        private int current;
+        private int bitCount;
+
+        void u(int bits, int value) {
+            for (int i = bits - 1; i >= 0; i--) {
+                current = (current << 1) | ((value >> i) & 1);
+                if (++bitCount == 8) {
+                    out.write(current);
+                    current  = 0;
+                    bitCount = 0;
+                }
+            }
+        }
+
+        void ue(int value) {
+            final int codeNum = value + 1;
+            final int bits    = 32 - Integer.numberOfLeadingZeros(codeNum);
+            u(bits - 1, 0);
+            u(bits, codeNum);
+        }
+
+        void se(int value) {
+            ue(value <= 0 ? -2 * value : 2 * value - 1);
+        }
+
+        void trailingBits() {
+            u(1, 1);
+            while (bitCount != 0) {
+                u(1, 0);
+            }
+        }
+
+        byte[] toByteArray() {
+            final byte[]                raw     = out.toByteArray();
+            final ByteArrayOutputStream escaped = new ByteArrayOutputStream(raw.length + 4);
+            int                         zeros   = 0;
+            for (byte b : raw) {
+                if (zeros == 2 && (b & 0xff) <= 3) {
+                    escaped.write(3);
+                    zeros = 0;
+                }
+                escaped.write(b);
+                zeros = b == 0 ? zeros + 1 : 0;
+            }
+            return escaped.toByteArray();
+        }
+    }
+
+    private static final class BenchmarkAvcTrack extends AvcTrack {
+        BenchmarkAvcTrack(@NonNull ByteBuffer sps, @NonNull ByteBuffer pps) {
+            super(sps.duplicate(), pps.duplicate());
+        }
+    }
+
+    private static final class BenchmarkAacTrack extends AacTrack {
+        BenchmarkAacTrack() {
+            super(128000, 128000, AUDIO_SAMPLE_RATE, 1, 2);
+        }
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    private static final class NoopLogger extends Log.Logger {
+        @Override public void v(String tag, String message, Throwable t) { }
+        @Override public void d(String tag, String message, Throwable t) { }
+        @Override public void i(String tag, String message, Throwable t) { }
+        @Override public void w(String tag, String message, Throwable t) { }
+        @Override public void e(String tag, String message, Throwable t) { }
+        @Override public void wtf(String tag, String message, Throwable t) { }
+        @Override public void blockUntilAllWritesFinished() { }
+    }
+}